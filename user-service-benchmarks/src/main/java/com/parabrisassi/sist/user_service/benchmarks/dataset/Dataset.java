@@ -0,0 +1,138 @@
+package com.parabrisassi.sist.user_service.benchmarks.dataset;
+
+import com.opentable.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.Duration;
+
+/**
+ * A database with a generated dataset (see {@link DatasetSettings}), together with its persistence context.
+ * <p>
+ * If no external database is configured, an embedded one is started. Its data directory depends on the
+ * dataset settings and is kept after closing, so the dataset is only generated once
+ * (and not each time it is opened).
+ */
+public final class Dataset implements Closeable {
+
+    /**
+     * Name of the embedded database user (and database).
+     */
+    private static final String EMBEDDED_DATABASE_USER = "postgres";
+
+    /**
+     * Name of the file that indicates the dataset of an embedded database data directory was fully generated.
+     */
+    private static final String COMPLETED_MARKER = "dataset-completed";
+
+    /**
+     * Max. amount of time to wait for the embedded database to start
+     * (it might need to recover a big dataset if it was not cleanly stopped).
+     */
+    private static final Duration EMBEDDED_STARTUP_WAIT = Duration.ofMinutes(1);
+
+    /**
+     * The embedded database, or {@code null} if an external database is used.
+     */
+    private final EmbeddedPostgres postgres;
+
+    /**
+     * The persistence context.
+     */
+    private final ConfigurableApplicationContext context;
+
+    /**
+     * Constructor.
+     *
+     * @param postgres The embedded database, or {@code null} if an external database is used.
+     * @param context  The persistence context.
+     */
+    private Dataset(EmbeddedPostgres postgres, ConfigurableApplicationContext context) {
+        this.postgres = postgres;
+        this.context = context;
+    }
+
+    /**
+     * Opens the dataset, generating it if the database does not contain data.
+     *
+     * @param settings                 The dataset settings.
+     * @param additionalConfigurations Configuration classes to be added to the persistence context.
+     * @return The opened {@link Dataset}.
+     * @throws IOException  If the embedded database can not be started.
+     * @throws SQLException If the dataset can not be generated.
+     */
+    public static Dataset open(DatasetSettings settings, Class<?>... additionalConfigurations)
+            throws IOException, SQLException {
+        if (settings.getJdbcUrl().isPresent()) {
+            final ConfigurableApplicationContext context = PersistenceContext.start(settings.getJdbcUrl().get(),
+                    settings.getJdbcUsername(), settings.getJdbcPassword(), additionalConfigurations);
+            new DatasetGenerator(context.getBean(DataSource.class), settings).generate();
+            return new Dataset(null, context);
+        }
+
+        final Path dataDirectory = Paths.get(System.getProperty("java.io.tmpdir"),
+                "user-service-dataset-" + Integer.toHexString(settings.getKey().hashCode()));
+        final Path marker = dataDirectory.resolve(COMPLETED_MARKER);
+        // A data directory with a partially generated dataset is not reused
+        if (!Files.exists(marker)) {
+            FileSystemUtils.deleteRecursively(dataDirectory.toFile());
+        }
+        final EmbeddedPostgres postgres = EmbeddedPostgres.builder()
+                .setDataDirectory(dataDirectory)
+                .setCleanDataDirectory(false)
+                .setPGStartupWait(EMBEDDED_STARTUP_WAIT)
+                .start();
+        final ConfigurableApplicationContext context;
+        try {
+            context = PersistenceContext.start(postgres.getJdbcUrl(EMBEDDED_DATABASE_USER, EMBEDDED_DATABASE_USER),
+                    EMBEDDED_DATABASE_USER, "", additionalConfigurations);
+        } catch (RuntimeException e) {
+            postgres.close();
+            throw e;
+        }
+        final Dataset dataset = new Dataset(postgres, context);
+        try {
+            if (new DatasetGenerator(context.getBean(DataSource.class), settings).generate()) {
+                // Generated data is flushed now, so stopping (and starting again) does not take long
+                new JdbcTemplate(context.getBean(DataSource.class)).execute("CHECKPOINT");
+            }
+            if (!Files.exists(marker)) {
+                Files.createFile(marker);
+            }
+        } catch (IOException | SQLException | RuntimeException e) {
+            dataset.close();
+            throw e;
+        }
+        return dataset;
+    }
+
+    /**
+     * Gets a bean from the persistence context.
+     *
+     * @param beanClass The class of the bean.
+     * @param <T>       The concrete type of the bean.
+     * @return The bean.
+     */
+    public <T> T getBean(Class<T> beanClass) {
+        return context.getBean(beanClass);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            context.close();
+        } finally {
+            if (postgres != null) {
+                postgres.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.parabrisassi.sist.user_service.benchmarks.dataset;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Generates a dataset with realistic distributions, bulk loading it straight into the (already migrated) schema.
+ * Data is generated by the database itself with set based statements, one chunk of users at a time,
+ * so production sized datasets (e.g 10M users and 500M tokens) can be loaded in a reasonable time.
+ * <p>
+ * The generated data has the following shape:
+ * <ul>
+ * <li>Users are named "{@code user_<id>}", with ids going from 1 to the amount of users,
+ * and all of them have the {@code ROLE_USER} role.</li>
+ * <li>Each user has a geometrically distributed amount of credentials (i.e previous passwords),
+ * created every 30 days or so. All of them hash the configured password.</li>
+ * <li>Each user has a log-normally distributed amount of tokens (i.e a few users have most of the tokens),
+ * with random ids (as the service does) and inserted in random order (within each chunk),
+ * so they are scattered in the table as they would be after a while in production.
+ * A share of them is blacklisted.</li>
+ * </ul>
+ * The database random generator is seeded, so the same settings generate the same dataset.
+ */
+public class DatasetGenerator {
+
+    /**
+     * The {@link Logger} object.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatasetGenerator.class);
+
+    /**
+     * Prefix of the generated users' usernames (followed by their id).
+     */
+    public static final String USERNAME_PREFIX = "user_";
+
+    /**
+     * The {@link DataSource} from where the connection used to load data is taken.
+     */
+    private final DataSource dataSource;
+
+    /**
+     * The dataset settings.
+     */
+    private final DatasetSettings settings;
+
+    /**
+     * Constructor.
+     *
+     * @param dataSource The {@link DataSource} from where the connection used to load data is taken.
+     * @param settings   The dataset settings.
+     */
+    public DatasetGenerator(DataSource dataSource, DatasetSettings settings) {
+        this.dataSource = dataSource;
+        this.settings = settings;
+    }
+
+    /**
+     * Generates the dataset. If the database already contains users, nothing is generated
+     * (i.e a previously generated database is reused).
+     *
+     * @return {@code true} if the dataset was generated, or {@code false} if the database already contained data.
+     * @throws SQLException If a connection can not be obtained.
+     */
+    public boolean generate() throws SQLException {
+        // The same connection must be used for all statements, as the random generator seed is per session
+        try (Connection connection = dataSource.getConnection()) {
+            final JdbcTemplate jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+            if (jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM users)", Boolean.class)) {
+                LOGGER.info("The database already contains users. Skipping dataset generation");
+                return false;
+            }
+            generate(jdbcTemplate);
+            return true;
+        }
+    }
+
+    /**
+     * Generates a dataset in the database configured with the system properties (see {@link DatasetSettings}).
+     * The schema is migrated before generating the dataset.
+     *
+     * @param args Ignored.
+     * @throws SQLException If a connection can not be obtained.
+     */
+    public static void main(String[] args) throws SQLException {
+        final DatasetSettings settings = DatasetSettings.fromSystemProperties();
+        final String jdbcUrl = settings.getJdbcUrl()
+                .orElseThrow(() -> new IllegalArgumentException("The jdbc-url setting must be set"));
+        try (ConfigurableApplicationContext context =
+                     PersistenceContext.start(jdbcUrl, settings.getJdbcUsername(), settings.getJdbcPassword())) {
+            new DatasetGenerator(context.getBean(DataSource.class), settings).generate();
+        }
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Generates the dataset using the given {@code jdbcTemplate}, which must always use the same connection.
+     *
+     * @param jdbcTemplate The {@link JdbcTemplate} used to load data.
+     */
+    private void generate(JdbcTemplate jdbcTemplate) {
+        LOGGER.info("Generating dataset for {} users", settings.getUsers());
+        final long start = System.currentTimeMillis();
+        final String hashedPassword = new BCryptPasswordEncoder().encode(settings.getPassword());
+
+        // Losing the last chunks on a crash is not a problem, as the dataset must be generated again anyway
+        jdbcTemplate.execute("SET synchronous_commit TO OFF");
+        jdbcTemplate.queryForObject("SELECT setseed(?)", Object.class, settings.getSeed());
+
+        long credentials = 0;
+        long tokens = 0;
+        for (int from = 1; from <= settings.getUsers(); from += settings.getChunkSize()) {
+            final int to = (int) Math.min(settings.getUsers(), (long) from + settings.getChunkSize() - 1);
+            generateUsers(jdbcTemplate, from, to);
+            credentials += generateCredentials(jdbcTemplate, from, to, hashedPassword);
+            tokens += generateTokens(jdbcTemplate, from, to);
+            LOGGER.info("Generated {} of {} users ({} credentials and {} tokens so far) in {} ms",
+                    to, settings.getUsers(), credentials, tokens, System.currentTimeMillis() - start);
+        }
+        // Ids were set explicitly, so the sequence must be updated in order to keep creating users
+        jdbcTemplate.queryForObject("SELECT setval('users_id_seq', ?)", Long.class, (long) settings.getUsers());
+        // Statistics are updated so the planner behaves as with a live database
+        jdbcTemplate.execute("ANALYZE");
+
+        LOGGER.info("Dataset generated in {} ms", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Generates the users with ids from {@code from} to {@code to} (inclusive), together with their roles.
+     *
+     * @param jdbcTemplate The {@link JdbcTemplate} used to load data.
+     * @param from         The first user id.
+     * @param to           The last user id.
+     */
+    private static void generateUsers(JdbcTemplate jdbcTemplate, int from, int to) {
+        jdbcTemplate.update("INSERT INTO users (id, username) " +
+                "SELECT i, CAST(? AS VARCHAR) || i FROM generate_series(?, ?) AS i", USERNAME_PREFIX, from, to);
+        jdbcTemplate.update("INSERT INTO user_roles (user_id, role) " +
+                "SELECT i, 'ROLE_USER' FROM generate_series(?, ?) AS i", from, to);
+    }
+
+    /**
+     * Generates the credentials of the users with ids from {@code from} to {@code to} (inclusive).
+     * The amount of credentials of each user is geometrically distributed, with the configured mean.
+     *
+     * @param jdbcTemplate   The {@link JdbcTemplate} used to load data.
+     * @param from           The first user id.
+     * @param to             The last user id.
+     * @param hashedPassword The hashed password of all the credentials.
+     * @return The amount of generated credentials.
+     */
+    private long generateCredentials(JdbcTemplate jdbcTemplate, int from, int to, String hashedPassword) {
+        // Amount of previous credentials is floor(-ln(U) / -ln(q)), with q = 1 - 1 / mean (i.e geometric)
+        final double mean = settings.getCredentialsPerUser();
+        final double factor = mean == 1 ? 0 : -1 / Math.log(1 - 1 / mean);
+        return jdbcTemplate.update("INSERT INTO user_credentials (user_id, hashed_password, created_at) " +
+                        "SELECT u.i, ?, LOCALTIMESTAMP - (c.n - 1 + random()) * INTERVAL '30 days' " +
+                        "FROM (SELECT i, 1 + floor(-ln(1 - random()) * ?) AS amount " +
+                        "      FROM generate_series(?, ?) AS i) AS u " +
+                        "CROSS JOIN LATERAL generate_series(1, CAST(u.amount AS INTEGER)) AS c(n)",
+                hashedPassword, factor, from, to);
+    }
+
+    /**
+     * Generates the tokens of the users with ids from {@code from} to {@code to} (inclusive).
+     * The amount of tokens of each user is log-normally distributed, with the configured mean and skew.
+     *
+     * @param jdbcTemplate The {@link JdbcTemplate} used to load data.
+     * @param from         The first user id.
+     * @param to           The last user id.
+     * @return The amount of generated tokens.
+     */
+    private long generateTokens(JdbcTemplate jdbcTemplate, int from, int to) {
+        if (settings.getTokensPerUser() == 0) {
+            return 0;
+        }
+        // Amount of tokens is exp(mu + sigma * Z), with Z standard normal (Box-Muller transform),
+        // and mu chosen so the mean is the configured one
+        final double sigma = settings.getTokensSkew();
+        final double mu = Math.log(settings.getTokensPerUser()) - sigma * sigma / 2;
+        // Random ids might (rarely) collide, in which case the token is just not inserted
+        return jdbcTemplate.update("INSERT INTO authentication_tokens (id, user_id, valid) " +
+                        "SELECT CAST((random() * 2 - 1) * 9.2e18 AS BIGINT), u.i, random() >= ? " +
+                        "FROM (SELECT i, LEAST(?, floor(exp(? + ? * sqrt(-2 * ln(1 - random())) " +
+                        "                                     * cos(2 * pi() * random())))) AS amount " +
+                        "      FROM generate_series(?, ?) AS i) AS u " +
+                        "CROSS JOIN LATERAL generate_series(1, CAST(u.amount AS INTEGER)) " +
+                        "ORDER BY random() " +
+                        "ON CONFLICT DO NOTHING",
+                settings.getBlacklistedShare(), settings.getMaxTokensPerUser(), mu, sigma, from, to);
+    }
+}
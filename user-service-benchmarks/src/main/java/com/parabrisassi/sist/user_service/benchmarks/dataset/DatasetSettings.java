@@ -0,0 +1,240 @@
+package com.parabrisassi.sist.user_service.benchmarks.dataset;
+
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Settings of a generated dataset, taken from system properties with the {@link #PREFIX} prefix
+ * (e.g {@code -Ddataset.users=10000000} or {@code -Ddataset.tokens-per-user=50}).
+ */
+public final class DatasetSettings {
+
+    /**
+     * Prefix of the system properties holding the settings.
+     */
+    private static final String PREFIX = "dataset.";
+
+    /**
+     * Amount of users to be generated.
+     */
+    private final int users;
+
+    /**
+     * Mean amount of credentials per user (i.e current password plus previous ones).
+     */
+    private final double credentialsPerUser;
+
+    /**
+     * Mean amount of authentication tokens per user.
+     */
+    private final double tokensPerUser;
+
+    /**
+     * Skew of the amount of tokens per user (i.e sigma of the log-normal distribution).
+     */
+    private final double tokensSkew;
+
+    /**
+     * Max. amount of authentication tokens of a single user.
+     */
+    private final int maxTokensPerUser;
+
+    /**
+     * Share (between 0 and 1) of authentication tokens that are blacklisted.
+     */
+    private final double blacklistedShare;
+
+    /**
+     * The password of all the generated users.
+     */
+    private final String password;
+
+    /**
+     * Seed (between -1 and 1) of the database random generator, so the same settings generate the same dataset.
+     */
+    private final double seed;
+
+    /**
+     * Amount of users generated (together with their credentials, roles and tokens) by each statement.
+     */
+    private final int chunkSize;
+
+    /**
+     * Url of an external database to be used instead of an embedded one, or {@code null} if not set.
+     */
+    private final String jdbcUrl;
+
+    /**
+     * Username of the external database.
+     */
+    private final String jdbcUsername;
+
+    /**
+     * Password of the external database.
+     */
+    private final String jdbcPassword;
+
+    /**
+     * Constructor.
+     *
+     * @param properties The {@link Properties} from where settings are taken.
+     * @throws IllegalArgumentException If any of the settings is not valid.
+     */
+    private DatasetSettings(Properties properties) throws IllegalArgumentException {
+        this.users = positiveInt(properties, "users", 100_000);
+        this.credentialsPerUser = doubleSetting(properties, "credentials-per-user", 3, 1, Double.MAX_VALUE);
+        this.tokensPerUser = doubleSetting(properties, "tokens-per-user", 20, 0, Double.MAX_VALUE);
+        this.tokensSkew = doubleSetting(properties, "tokens-skew", 1.5, 0, Double.MAX_VALUE);
+        this.maxTokensPerUser = positiveInt(properties, "max-tokens-per-user", 100_000);
+        this.blacklistedShare = doubleSetting(properties, "blacklisted-share", 0.3, 0, 1);
+        this.password = properties.getProperty(PREFIX + "password", "dataset-password");
+        this.seed = doubleSetting(properties, "seed", 0.5, -1, 1);
+        this.chunkSize = positiveInt(properties, "chunk-size", 100_000);
+        this.jdbcUrl = properties.getProperty(PREFIX + "jdbc-url");
+        this.jdbcUsername = properties.getProperty(PREFIX + "jdbc-username", "");
+        this.jdbcPassword = properties.getProperty(PREFIX + "jdbc-password", "");
+    }
+
+    /**
+     * @return The settings taken from the system properties.
+     * @throws IllegalArgumentException If any of the settings is not valid.
+     */
+    public static DatasetSettings fromSystemProperties() throws IllegalArgumentException {
+        return new DatasetSettings(System.getProperties());
+    }
+
+    /**
+     * @return Amount of users to be generated.
+     */
+    public int getUsers() {
+        return users;
+    }
+
+    /**
+     * @return Mean amount of credentials per user.
+     */
+    public double getCredentialsPerUser() {
+        return credentialsPerUser;
+    }
+
+    /**
+     * @return Mean amount of authentication tokens per user.
+     */
+    public double getTokensPerUser() {
+        return tokensPerUser;
+    }
+
+    /**
+     * @return Skew of the amount of tokens per user (i.e sigma of the log-normal distribution).
+     */
+    public double getTokensSkew() {
+        return tokensSkew;
+    }
+
+    /**
+     * @return Max. amount of authentication tokens of a single user.
+     */
+    public int getMaxTokensPerUser() {
+        return maxTokensPerUser;
+    }
+
+    /**
+     * @return Share (between 0 and 1) of authentication tokens that are blacklisted.
+     */
+    public double getBlacklistedShare() {
+        return blacklistedShare;
+    }
+
+    /**
+     * @return The password of all the generated users.
+     */
+    public String getPassword() {
+        return password;
+    }
+
+    /**
+     * @return Seed (between -1 and 1) of the database random generator.
+     */
+    public double getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return Amount of users generated by each statement.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return Url of an external database to be used instead of an embedded one, if set.
+     */
+    public Optional<String> getJdbcUrl() {
+        return Optional.ofNullable(jdbcUrl);
+    }
+
+    /**
+     * @return Username of the external database.
+     */
+    public String getJdbcUsername() {
+        return jdbcUsername;
+    }
+
+    /**
+     * @return Password of the external database.
+     */
+    public String getJdbcPassword() {
+        return jdbcPassword;
+    }
+
+    /**
+     * @return A key that identifies the generated data (i.e two settings with the same key generate the same data).
+     */
+    public String getKey() {
+        return users + "-" + credentialsPerUser + "-" + tokensPerUser + "-" + tokensSkew + "-" + maxTokensPerUser
+                + "-" + blacklistedShare + "-" + seed;
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Gets a positive int setting.
+     *
+     * @param properties   The {@link Properties} from where the setting is taken.
+     * @param name         The name of the setting (without the {@link #PREFIX}).
+     * @param defaultValue The value to be used if the setting is not set.
+     * @return The setting value.
+     * @throws IllegalArgumentException If the value is not a positive int.
+     */
+    private static int positiveInt(Properties properties, String name, int defaultValue)
+            throws IllegalArgumentException {
+        final int value = Integer.parseInt(properties.getProperty(PREFIX + name, Integer.toString(defaultValue)));
+        if (value <= 0) {
+            throw new IllegalArgumentException("The " + name + " setting must be positive");
+        }
+        return value;
+    }
+
+    /**
+     * Gets a double setting, checking it is within the given bounds.
+     *
+     * @param properties   The {@link Properties} from where the setting is taken.
+     * @param name         The name of the setting (without the {@link #PREFIX}).
+     * @param defaultValue The value to be used if the setting is not set.
+     * @param min          The min. valid value (inclusive).
+     * @param max          The max. valid value (inclusive).
+     * @return The setting value.
+     * @throws IllegalArgumentException If the value is not within the bounds.
+     */
+    private static double doubleSetting(Properties properties, String name, double defaultValue,
+                                        double min, double max) throws IllegalArgumentException {
+        final double value = Double.parseDouble(properties.getProperty(PREFIX + name, Double.toString(defaultValue)));
+        if (value < min || value > max) {
+            throw new IllegalArgumentException("The " + name + " setting must be between " + min + " and " + max);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,74 @@
+package com.parabrisassi.sist.user_service.benchmarks.dataset;
+
+import com.parabrisassi.sist.user_service.persistence.PersistenceConfig;
+import org.springframework.boot.Banner;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.context.PropertyPlaceholderAutoConfiguration;
+import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Starts a Spring context with just the persistence layer (i.e data source, Flyway migrations, JPA and DAOs),
+ * configured as in the application, against a given database.
+ */
+public final class PersistenceContext {
+
+    /**
+     * Private constructor to avoid instantiation.
+     */
+    private PersistenceContext() {
+    }
+
+    /**
+     * Starts the persistence context. The database schema is migrated when starting.
+     *
+     * @param jdbcUrl                  The database url.
+     * @param jdbcUsername             The database username.
+     * @param jdbcPassword             The database password.
+     * @param additionalConfigurations Configuration classes to be added to the context.
+     * @return The started {@link ConfigurableApplicationContext}.
+     */
+    public static ConfigurableApplicationContext start(String jdbcUrl, String jdbcUsername, String jdbcPassword,
+                                                       Class<?>... additionalConfigurations) {
+        // Command line arguments take precedence over the application configuration
+        // The second-level cache is disabled, as DAO calls must reach the database to be measured
+        final List<String> args = new ArrayList<>(Arrays.asList("--spring.profiles.active=benchmarks",
+                "--spring.datasource.url=" + jdbcUrl,
+                "--spring.datasource.username=" + jdbcUsername,
+                "--spring.jpa.properties.hibernate.cache.use_second_level_cache=false"));
+        // Empty values are not supported as arguments (and an empty password is the same as not having one)
+        if (!jdbcPassword.isEmpty()) {
+            args.add("--spring.datasource.password=" + jdbcPassword);
+        }
+        return new SpringApplicationBuilder(Config.class)
+                .sources(additionalConfigurations)
+                .web(false)
+                .bannerMode(Banner.Mode.OFF)
+                .run(args.toArray(new String[args.size()]));
+    }
+
+    /**
+     * Configuration class of the persistence context.
+     */
+    @Configuration
+    @ImportAutoConfiguration({
+            PropertyPlaceholderAutoConfiguration.class,
+            DataSourceAutoConfiguration.class,
+            FlywayAutoConfiguration.class,
+            HibernateJpaAutoConfiguration.class,
+            TransactionAutoConfiguration.class,
+    })
+    @Import(PersistenceConfig.class)
+    /* package */ static class Config {
+    }
+}
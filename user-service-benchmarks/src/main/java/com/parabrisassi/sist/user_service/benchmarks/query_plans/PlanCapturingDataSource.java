@@ -0,0 +1,265 @@
+package com.parabrisassi.sist.user_service.benchmarks.query_plans;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.*;
+
+/**
+ * {@link DataSource} that, while capturing, obtains the query plan of each prepared statement before executing it
+ * (by executing {@code EXPLAIN (FORMAT JSON)} with the same sql and parameters in the same connection).
+ * Only queries, updates and deletes are explained (i.e not inserts).
+ */
+/* package */ class PlanCapturingDataSource extends DelegatingDataSource {
+
+    /**
+     * Prefix added to statements in order to obtain their query plans.
+     */
+    private static final String EXPLAIN_PREFIX = "EXPLAIN (FORMAT JSON) ";
+
+    /**
+     * Names of the {@link PreparedStatement} methods that execute the statement.
+     */
+    private static final Set<String> EXECUTE_METHODS =
+            new HashSet<>(Arrays.asList("execute", "executeQuery", "executeUpdate", "executeLargeUpdate"));
+
+    /**
+     * The captured plans.
+     */
+    private final List<CapturedPlan> capturedPlans;
+
+    /**
+     * Indicates whether plans are being captured.
+     */
+    private volatile boolean capturing;
+
+    /**
+     * Constructor.
+     *
+     * @param targetDataSource The {@link DataSource} to which calls are delegated.
+     */
+    /* package */ PlanCapturingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+        this.capturedPlans = Collections.synchronizedList(new LinkedList<>());
+        this.capturing = false;
+    }
+
+    /**
+     * Executes the given {@code action}, capturing the plans of the statements it executes.
+     *
+     * @param action The action to be executed.
+     * @return The captured plans.
+     */
+    /* package */ List<CapturedPlan> capture(Runnable action) {
+        capturedPlans.clear();
+        capturing = true;
+        try {
+            action.run();
+        } finally {
+            capturing = false;
+        }
+        synchronized (capturedPlans) {
+            return new ArrayList<>(capturedPlans);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return capturingConnection(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return capturingConnection(super.getConnection(username, password));
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Wraps the given {@code connection} so its prepared statements capture their plans.
+     *
+     * @param connection The {@link Connection} to be wrapped.
+     * @return The wrapped {@link Connection}.
+     */
+    private Connection capturingConnection(Connection connection) {
+        return proxy(Connection.class, connection, (proxy, method, args) -> {
+            final Object result = invoke(connection, method, args);
+            if (result instanceof PreparedStatement && method.getName().equals("prepareStatement")) {
+                return capturingStatement(connection, (PreparedStatement) result, (String) args[0]);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Wraps the given {@code statement} so its plan is captured before executing it.
+     *
+     * @param connection The {@link Connection} that prepared the statement.
+     * @param statement  The {@link PreparedStatement} to be wrapped.
+     * @param sql        The statement's sql.
+     * @return The wrapped {@link PreparedStatement}.
+     */
+    private PreparedStatement capturingStatement(Connection connection, PreparedStatement statement, String sql) {
+        if (!isExplainable(sql)) {
+            return statement;
+        }
+        // Parameters are recorded (by index) so they can be set again in the explain statement
+        final Map<Integer, ParameterSetting> parameters = new TreeMap<>();
+        return proxy(PreparedStatement.class, statement, (proxy, method, args) -> {
+            if (method.getName().startsWith("set") && args != null && args.length >= 2
+                    && args[0] instanceof Integer) {
+                parameters.put((Integer) args[0], new ParameterSetting(method, args));
+            } else if (method.getName().equals("clearParameters")) {
+                parameters.clear();
+            } else if (capturing && EXECUTE_METHODS.contains(method.getName()) && args == null) {
+                capturedPlans.add(new CapturedPlan(sql, explain(connection, sql, parameters.values())));
+            }
+            return invoke(statement, method, args);
+        });
+    }
+
+    /**
+     * Obtains the plan of the given {@code sql}.
+     *
+     * @param connection The {@link Connection} in which the plan is obtained.
+     * @param sql        The sql.
+     * @param parameters The {@link ParameterSetting}s of the statement.
+     * @return The plan, in JSON format.
+     * @throws SQLException If the plan can not be obtained.
+     */
+    private static String explain(Connection connection, String sql, Collection<ParameterSetting> parameters)
+            throws SQLException {
+        try (PreparedStatement explain = connection.prepareStatement(EXPLAIN_PREFIX + sql)) {
+            for (ParameterSetting parameter : parameters) {
+                invoke(explain, parameter.method, parameter.args);
+            }
+            try (ResultSet resultSet = explain.executeQuery()) {
+                if (!resultSet.next()) {
+                    throw new SQLException("No plan was returned for " + sql);
+                }
+                return resultSet.getString(1);
+            }
+        } catch (SQLException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new SQLException("Could not obtain the plan of " + sql, e);
+        }
+    }
+
+    /**
+     * Indicates whether plans are obtained for the given {@code sql}.
+     *
+     * @param sql The sql.
+     * @return {@code true} if it is a query, update or delete, or {@code false} otherwise.
+     */
+    private static boolean isExplainable(String sql) {
+        final String trimmed = sql.trim().toLowerCase(Locale.ROOT);
+        return trimmed.startsWith("select") || trimmed.startsWith("update") || trimmed.startsWith("delete");
+    }
+
+    /**
+     * Creates a proxy of the given {@code target}.
+     *
+     * @param type    The interface to be proxied.
+     * @param target  The proxied object.
+     * @param handler The {@link InvocationHandler}.
+     * @param <T>     The concrete type of the proxied object.
+     * @return The proxy.
+     */
+    private static <T> T proxy(Class<T> type, T target, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(target.getClass().getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    /**
+     * Invokes the given {@code method}, unwrapping exceptions thrown by it.
+     *
+     * @param target The object on which the method is invoked.
+     * @param method The {@link Method} to be invoked.
+     * @param args   The arguments.
+     * @return The method's result.
+     * @throws Throwable The exception thrown by the method.
+     */
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * A call to a parameter setter of a {@link PreparedStatement}.
+     */
+    private static final class ParameterSetting {
+
+        /**
+         * The setter {@link Method}.
+         */
+        private final Method method;
+
+        /**
+         * The arguments (the first one being the parameter index).
+         */
+        private final Object[] args;
+
+        /**
+         * Constructor.
+         *
+         * @param method The setter {@link Method}.
+         * @param args   The arguments (the first one being the parameter index).
+         */
+        private ParameterSetting(Method method, Object[] args) {
+            this.method = method;
+            this.args = args.clone();
+        }
+    }
+
+    /**
+     * The plan of an executed statement.
+     */
+    /* package */ static final class CapturedPlan {
+
+        /**
+         * The statement's sql.
+         */
+        private final String sql;
+
+        /**
+         * The plan, in JSON format.
+         */
+        private final String plan;
+
+        /**
+         * Constructor.
+         *
+         * @param sql  The statement's sql.
+         * @param plan The plan, in JSON format.
+         */
+        /* package */ CapturedPlan(String sql, String plan) {
+            this.sql = sql;
+            this.plan = plan;
+        }
+
+        /**
+         * @return The statement's sql.
+         */
+        /* package */ String getSql() {
+            return sql;
+        }
+
+        /**
+         * @return The plan, in JSON format.
+         */
+        /* package */ String getPlan() {
+            return plan;
+        }
+    }
+}
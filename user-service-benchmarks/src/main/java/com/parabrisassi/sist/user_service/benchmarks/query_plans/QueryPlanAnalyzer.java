@@ -0,0 +1,92 @@
+package com.parabrisassi.sist.user_service.benchmarks.query_plans;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Analyzes query plans (in PostgreSQL JSON format), looking for nodes that do not scale with data:
+ * sequential scans over tables with more rows than a given threshold, and sorts
+ * (i.e results that are not read in order from an index).
+ */
+/* package */ class QueryPlanAnalyzer {
+
+    /**
+     * {@link ObjectMapper} used to parse plans.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * The estimated amount of rows of each table.
+     */
+    private final Map<String, Double> tableRows;
+
+    /**
+     * Min. amount of rows of a table for a sequential scan over it to be reported.
+     */
+    private final long seqScanThreshold;
+
+    /**
+     * Constructor.
+     *
+     * @param objectMapper     {@link ObjectMapper} used to parse plans.
+     * @param tableRows        The estimated amount of rows of each table.
+     * @param seqScanThreshold Min. amount of rows of a table for a sequential scan over it to be reported.
+     */
+    /* package */ QueryPlanAnalyzer(ObjectMapper objectMapper, Map<String, Double> tableRows, long seqScanThreshold) {
+        this.objectMapper = objectMapper;
+        this.tableRows = Collections.unmodifiableMap(new HashMap<>(tableRows));
+        this.seqScanThreshold = seqScanThreshold;
+    }
+
+    /**
+     * Finds the violations in the given {@code plan}.
+     *
+     * @param plan The plan, in JSON format (i.e as returned by {@code EXPLAIN (FORMAT JSON)}).
+     * @return The violations (e.g "{@code Seq Scan on users}" or "{@code Sort on users.username}").
+     * @throws IOException If the plan can not be parsed.
+     */
+    /* package */ Set<String> findViolations(String plan) throws IOException {
+        final Set<String> violations = new TreeSet<>();
+        for (JsonNode statement : objectMapper.readTree(plan)) {
+            findViolations(statement.path("Plan"), violations);
+        }
+        return violations;
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Finds the violations in the given {@code node} and its children, adding them to the given {@code violations}.
+     *
+     * @param node       The plan node.
+     * @param violations {@link Set} to which violations are added.
+     */
+    private void findViolations(JsonNode node, Set<String> violations) {
+        final String nodeType = node.path("Node Type").asText();
+        if ("Seq Scan".equals(nodeType)) {
+            final String relation = node.path("Relation Name").asText();
+            if (tableRows.getOrDefault(relation, 0d) >= seqScanThreshold) {
+                violations.add("Seq Scan on " + relation);
+            }
+        } else if ("Sort".equals(nodeType)) {
+            violations.add("Sort on " + StreamSupport.stream(node.path("Sort Key").spliterator(), false)
+                    .map(JsonNode::asText)
+                    .collect(Collectors.joining(", ")));
+        }
+        for (JsonNode child : node.path("Plans")) {
+            findViolations(child, violations);
+        }
+    }
+}
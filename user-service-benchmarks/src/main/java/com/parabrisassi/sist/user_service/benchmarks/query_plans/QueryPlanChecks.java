@@ -0,0 +1,294 @@
+package com.parabrisassi.sist.user_service.benchmarks.query_plans;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.parabrisassi.sist.user_service.benchmarks.dataset.Dataset;
+import com.parabrisassi.sist.user_service.benchmarks.dataset.DatasetSettings;
+import com.parabrisassi.sist.user_service.models.AuthenticationToken;
+import com.parabrisassi.sist.user_service.models.User;
+import com.parabrisassi.sist.user_service.persistence.UserQueryHelperImpl;
+import com.parabrisassi.sist.user_service.persistence.daos.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Checks the query plans of every DAO query against a generated dataset (see {@link DatasetSettings}),
+ * looking for sequential scans over big tables and sorts (see {@link QueryPlanAnalyzer}).
+ * <p>
+ * Known violations are listed in the {@link #BASELINE_RESOURCE} resource. The check fails (i.e an exception
+ * is thrown, so the build fails) if a violation that is not in the baseline is found (i.e a plan regression).
+ * Baseline violations that are not found anymore are reported, so they can be removed from the baseline.
+ * <p>
+ * Settings are taken from system properties: {@code query-plans.seq-scan-threshold} (min. amount of rows of a table
+ * for a sequential scan over it to be reported, defaults to 10000), and {@code query-plans.output-dir}
+ * (directory in which the captured plans are written, optional).
+ */
+public class QueryPlanChecks {
+
+    /**
+     * The {@link Logger} object.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryPlanChecks.class);
+
+    /**
+     * Classpath resource listing the known violations (one "{@code <check>: <violation>}" per line).
+     */
+    private static final String BASELINE_RESOURCE = "/query-plans-baseline.txt";
+
+    /**
+     * Amount of ids validated at once by the batch validation check.
+     */
+    private static final int VALIDATION_BATCH_SIZE = 64;
+
+    /**
+     * The {@link PlanCapturingDataSource} through which the checks are executed.
+     */
+    private final PlanCapturingDataSource dataSource;
+
+    /**
+     * The {@link QueryPlanAnalyzer} that looks for violations.
+     */
+    private final QueryPlanAnalyzer analyzer;
+
+    /**
+     * {@link ObjectMapper} used to write the captured plans.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Directory in which the captured plans are written, or {@code null} if they must not be written.
+     */
+    private final Path outputDirectory;
+
+    /**
+     * Constructor.
+     *
+     * @param dataSource      The {@link PlanCapturingDataSource} through which the checks are executed.
+     * @param analyzer        The {@link QueryPlanAnalyzer} that looks for violations.
+     * @param objectMapper    {@link ObjectMapper} used to write the captured plans.
+     * @param outputDirectory Directory in which the captured plans are written (or {@code null}).
+     */
+    private QueryPlanChecks(PlanCapturingDataSource dataSource, QueryPlanAnalyzer analyzer,
+                            ObjectMapper objectMapper, Path outputDirectory) {
+        this.dataSource = dataSource;
+        this.analyzer = analyzer;
+        this.objectMapper = objectMapper;
+        this.outputDirectory = outputDirectory;
+    }
+
+    public static void main(String[] args) throws IOException, SQLException {
+        final long seqScanThreshold = Long.parseLong(System.getProperty("query-plans.seq-scan-threshold", "10000"));
+        final Path outputDirectory = Optional.ofNullable(System.getProperty("query-plans.output-dir"))
+                .map(Paths::get)
+                .orElse(null);
+
+        try (Dataset dataset = Dataset.open(DatasetSettings.fromSystemProperties(), CaptureConfig.class)) {
+            final PlanCapturingDataSource dataSource = dataset.getBean(PlanCapturingDataSource.class);
+            final ObjectMapper objectMapper = new ObjectMapper();
+            final QueryPlanAnalyzer analyzer =
+                    new QueryPlanAnalyzer(objectMapper, tableRows(dataSource), seqScanThreshold);
+            final Set<String> violations = new QueryPlanChecks(dataSource, analyzer, objectMapper, outputDirectory)
+                    .run(checks(dataset), new TransactionTemplate(dataset.getBean(PlatformTransactionManager.class)));
+            compareWithBaseline(violations, readBaseline());
+        }
+    }
+
+    /**
+     * Runs the given {@code checks}, each of them in a transaction that is rolled back.
+     *
+     * @param checks              The checks (by name).
+     * @param transactionTemplate The {@link TransactionTemplate} used to run the checks.
+     * @return The found violations (i.e "{@code <check>: <violation>}").
+     * @throws IOException If a plan can not be analyzed or written.
+     */
+    private Set<String> run(Map<String, Runnable> checks, TransactionTemplate transactionTemplate)
+            throws IOException {
+        if (outputDirectory != null) {
+            Files.createDirectories(outputDirectory);
+        }
+        final Set<String> violations = new TreeSet<>();
+        for (Map.Entry<String, Runnable> check : checks.entrySet()) {
+            final List<PlanCapturingDataSource.CapturedPlan> plans = dataSource.capture(() ->
+                    transactionTemplate.execute(status -> {
+                        status.setRollbackOnly();
+                        check.getValue().run();
+                        return null;
+                    }));
+            if (plans.isEmpty()) {
+                throw new IllegalStateException("No statement was executed by check " + check.getKey());
+            }
+            final ArrayNode output = objectMapper.createArrayNode();
+            for (PlanCapturingDataSource.CapturedPlan plan : plans) {
+                analyzer.findViolations(plan.getPlan()).stream()
+                        .map(violation -> check.getKey() + ": " + violation)
+                        .forEach(violations::add);
+                output.addObject()
+                        .put("sql", plan.getSql())
+                        .set("plan", objectMapper.readTree(plan.getPlan()));
+            }
+            if (outputDirectory != null) {
+                objectMapper.writerWithDefaultPrettyPrinter()
+                        .writeValue(outputDirectory.resolve(check.getKey() + ".json").toFile(), output);
+            }
+        }
+        return violations;
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Creates the checks, which execute each DAO query with existing data.
+     *
+     * @param dataset The {@link Dataset} whose DAOs are checked.
+     * @return The checks (by name).
+     */
+    private static Map<String, Runnable> checks(Dataset dataset) {
+        final UserDao userDao = dataset.getBean(UserDao.class);
+        final UserCredentialDao userCredentialDao = dataset.getBean(UserCredentialDao.class);
+        final AuthenticationTokenDao authenticationTokenDao = dataset.getBean(AuthenticationTokenDao.class);
+        final RefreshTokenDao refreshTokenDao = dataset.getBean(RefreshTokenDao.class);
+        final RevokedTokenDao revokedTokenDao = dataset.getBean(RevokedTokenDao.class);
+        final UserQueryHelperImpl userQueryHelper = new UserQueryHelperImpl();
+
+        final User user = userDao.findAll(new PageRequest(0, 1)).getContent().stream().findFirst()
+                .orElseThrow(() -> new IllegalStateException("The database does not contain users"));
+        final List<Long> tokenIds = authenticationTokenDao.findAll(new PageRequest(0, VALIDATION_BATCH_SIZE))
+                .getContent().stream()
+                .map(AuthenticationToken::getId)
+                .collect(Collectors.toList());
+
+        final Map<String, Runnable> checks = new LinkedHashMap<>();
+        checks.put("UserDao.findById", () -> userDao.findById(user.getId()));
+        checks.put("UserDao.findByUsername", () -> userDao.findByUsername(user.getUsername()));
+        checks.put("UserDao.findProjectionByUsername",
+                () -> userDao.findProjectionByUsername(user.getUsername()));
+        checks.put("UserDao.existsByUsername", () -> userDao.existsByUsername(user.getUsername()));
+        checks.put("UserDao.findTokenVersionByUsername",
+                () -> userDao.findTokenVersionByUsername(user.getUsername()));
+        checks.put("UserDao.search", () -> userDao.findAll(
+                userQueryHelper.createUserSpecification(user.getUsername()), new PageRequest(0, 25)));
+        checks.put("UserCredentialDao.findActualByUser", () -> userCredentialDao.findActualByUser(user));
+        checks.put("AuthenticationTokenDao.findById", () -> authenticationTokenDao.findById(tokenIds.get(0)));
+        checks.put("AuthenticationTokenDao.findOwnerUsername",
+                () -> authenticationTokenDao.findOwnerUsername(tokenIds.get(0)));
+        checks.put("AuthenticationTokenDao.findByUser",
+                () -> authenticationTokenDao.findByUser(user, new PageRequest(0, 25)));
+        checks.put("AuthenticationTokenDao.findValidIds", () -> authenticationTokenDao.findValidIds(tokenIds));
+        checks.put("RefreshTokenDao.findByTokenHash", () -> refreshTokenDao.findByTokenHash("hash"));
+        checks.put("RefreshTokenDao.markUsed", () -> refreshTokenDao.markUsed(0));
+        checks.put("RefreshTokenDao.deleteExpired", () -> refreshTokenDao.deleteExpired(Instant.now()));
+        checks.put("RevokedTokenDao.deleteExpired", () -> revokedTokenDao.deleteExpired(Instant.now()));
+        return checks;
+    }
+
+    /**
+     * Gets the estimated amount of rows of each table, taken from the statistics.
+     *
+     * @param dataSource The {@link DataSource} used to query the statistics.
+     * @return The estimated amount of rows of each table.
+     */
+    private static Map<String, Double> tableRows(DataSource dataSource) {
+        final Map<String, Double> tableRows = new HashMap<>();
+        new JdbcTemplate(dataSource).query("SELECT relname, reltuples FROM pg_class WHERE relkind = 'r'",
+                resultSet -> {
+                    tableRows.put(resultSet.getString("relname"), resultSet.getDouble("reltuples"));
+                });
+        return tableRows;
+    }
+
+    /**
+     * Reads the baseline (i.e the known violations).
+     *
+     * @return The known violations.
+     * @throws IOException If the baseline can not be read.
+     */
+    private static Set<String> readBaseline() throws IOException {
+        try (InputStream inputStream = QueryPlanChecks.class.getResourceAsStream(BASELINE_RESOURCE)) {
+            if (inputStream == null) {
+                return Collections.emptySet();
+            }
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            return reader.lines()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .collect(Collectors.toCollection(TreeSet::new));
+        }
+    }
+
+    /**
+     * Compares the found violations with the baseline.
+     *
+     * @param violations The found violations.
+     * @param baseline   The known violations.
+     * @throws IllegalStateException If there are violations that are not in the baseline.
+     */
+    private static void compareWithBaseline(Set<String> violations, Set<String> baseline)
+            throws IllegalStateException {
+        final Set<String> fixed = new TreeSet<>(baseline);
+        fixed.removeAll(violations);
+        final Set<String> regressions = new TreeSet<>(violations);
+        regressions.removeAll(baseline);
+
+        fixed.forEach(violation -> LOGGER.info("Fixed (it can be removed from the baseline): {}", violation));
+        violations.stream()
+                .filter(baseline::contains)
+                .forEach(violation -> LOGGER.info("Known violation: {}", violation));
+        if (!regressions.isEmpty()) {
+            regressions.forEach(violation -> LOGGER.error("Plan regression: {}", violation));
+            throw new IllegalStateException("Found " + regressions.size() + " query plan regressions");
+        }
+        LOGGER.info("No query plan regressions found");
+    }
+
+    /**
+     * Configuration class that makes the persistence context use a {@link PlanCapturingDataSource}.
+     */
+    @Configuration
+    /* package */ static class CaptureConfig {
+
+        /**
+         * Wraps the application {@link DataSource} with a {@link PlanCapturingDataSource}.
+         *
+         * @return The {@link BeanPostProcessor} that wraps the {@link DataSource}.
+         */
+        @Bean
+        public static BeanPostProcessor planCapturingDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                    return bean;
+                }
+
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource && !(bean instanceof PlanCapturingDataSource) ?
+                            new PlanCapturingDataSource((DataSource) bean) : bean;
+                }
+            };
+        }
+    }
+}
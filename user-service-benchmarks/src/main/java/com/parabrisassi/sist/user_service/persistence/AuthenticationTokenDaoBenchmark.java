@@ -0,0 +1,65 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import com.parabrisassi.sist.user_service.models.AuthenticationToken;
+import com.parabrisassi.sist.user_service.persistence.daos.AuthenticationTokenDao;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the {@link AuthenticationTokenDao} methods against a generated dataset (see {@link DatasetState}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthenticationTokenDaoBenchmark {
+
+    /**
+     * Amount of ids validated at once (i.e the size of a batch validation request).
+     */
+    private static final int VALIDATION_BATCH_SIZE = 64;
+
+    /**
+     * The {@link AuthenticationTokenDao} being benchmarked.
+     */
+    private AuthenticationTokenDao authenticationTokenDao;
+
+    /**
+     * The {@link Pageable} used to list a user's tokens (i.e the first page, as requested by default by the API).
+     */
+    private Pageable pageable;
+
+    @Setup
+    public void setup(DatasetState dataset) {
+        authenticationTokenDao = dataset.getBean(AuthenticationTokenDao.class);
+        pageable = new PageRequest(0, 25);
+    }
+
+    @Benchmark
+    public Optional<AuthenticationToken> findById(DatasetState dataset) {
+        return authenticationTokenDao.findById(dataset.randomTokenIds(1).get(0));
+    }
+
+    @Benchmark
+    public Optional<String> findOwnerUsername(DatasetState dataset) {
+        return authenticationTokenDao.findOwnerUsername(dataset.randomTokenIds(1).get(0));
+    }
+
+    @Benchmark
+    public Page<AuthenticationToken> findByUser(DatasetState dataset) {
+        return authenticationTokenDao.findByUser(dataset.randomUser(), pageable);
+    }
+
+    @Benchmark
+    public List<Long> findValidIds(DatasetState dataset) {
+        return authenticationTokenDao.findValidIds(dataset.randomTokenIds(VALIDATION_BATCH_SIZE));
+    }
+}
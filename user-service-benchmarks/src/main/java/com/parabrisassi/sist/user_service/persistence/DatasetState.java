@@ -0,0 +1,119 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import com.parabrisassi.sist.user_service.benchmarks.dataset.Dataset;
+import com.parabrisassi.sist.user_service.benchmarks.dataset.DatasetSettings;
+import com.parabrisassi.sist.user_service.models.User;
+import com.parabrisassi.sist.user_service.persistence.daos.UserDao;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Benchmark state holding a {@link Dataset} (see {@link DatasetSettings}),
+ * together with a sample of its existing users and tokens.
+ */
+@State(Scope.Benchmark)
+public class DatasetState {
+
+    /**
+     * Amount of users and tokens sampled from the database.
+     */
+    private static final int SAMPLE_SIZE = 1024;
+
+    /**
+     * The {@link Dataset}.
+     */
+    private Dataset dataset;
+
+    /**
+     * A sample of the existing users.
+     */
+    private List<User> users;
+
+    /**
+     * A sample of the existing tokens' ids.
+     */
+    private List<Long> tokenIds;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SQLException {
+        dataset = Dataset.open(DatasetSettings.fromSystemProperties());
+
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataset.getBean(DataSource.class));
+        final List<Long> userIds = sample(jdbcTemplate, "users");
+        this.users = Collections.unmodifiableList(new ArrayList<>(dataset.getBean(UserDao.class).findAll(userIds)));
+        this.tokenIds = Collections.unmodifiableList(sample(jdbcTemplate, "authentication_tokens"));
+        if (users.isEmpty() || tokenIds.isEmpty()) {
+            throw new IllegalStateException("The database does not contain users or tokens");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (dataset != null) {
+            dataset.close();
+        }
+    }
+
+    /**
+     * Gets a bean from the persistence context.
+     *
+     * @param beanClass The class of the bean.
+     * @param <T>       The concrete type of the bean.
+     * @return The bean.
+     */
+    public <T> T getBean(Class<T> beanClass) {
+        return dataset.getBean(beanClass);
+    }
+
+    /**
+     * @return A random (existing) {@link User}.
+     */
+    public User randomUser() {
+        return users.get(ThreadLocalRandom.current().nextInt(users.size()));
+    }
+
+    /**
+     * Returns random (existing) token ids.
+     *
+     * @param amount The amount of ids.
+     * @return The token ids (there might be less than {@code amount} ids if the sample is not big enough).
+     */
+    public List<Long> randomTokenIds(int amount) {
+        final int size = Math.min(amount, tokenIds.size());
+        final int from = ThreadLocalRandom.current().nextInt(tokenIds.size() - size + 1);
+        return tokenIds.subList(from, from + size);
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Samples ids of the given {@code table}, in random order. Sampling is performed by blocks,
+     * so large tables are not fully read (i.e sampled ids might be close to each other).
+     *
+     * @param jdbcTemplate The {@link JdbcTemplate} used to query the database.
+     * @param table        The table.
+     * @return The sampled ids.
+     */
+    private static List<Long> sample(JdbcTemplate jdbcTemplate, String table) {
+        // Estimated amount of rows, taken from the statistics (the table was analyzed after being generated)
+        final double rows = jdbcTemplate.queryForObject("SELECT reltuples FROM pg_class WHERE relname = ?",
+                Double.class, table);
+        // More rows than needed are sampled, as blocks are not full
+        final double percentage = Math.min(100, 400d * SAMPLE_SIZE / Math.max(1, rows));
+        final List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM " + table
+                + " TABLESAMPLE SYSTEM (?) LIMIT ?", Long.class, percentage, SAMPLE_SIZE);
+        Collections.shuffle(ids);
+        return ids;
+    }
+}
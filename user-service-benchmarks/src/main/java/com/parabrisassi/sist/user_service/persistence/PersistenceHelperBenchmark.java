@@ -0,0 +1,55 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import com.parabrisassi.sist.user_service.models.User;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link PersistenceHelper#validatePageable(Pageable, SortablePropertyRegistry)},
+ * which is executed by each paginated query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceHelperBenchmark {
+
+    /**
+     * A {@link Pageable} without sorting.
+     */
+    private Pageable unsorted;
+
+    /**
+     * A {@link Pageable} sorted by valid properties.
+     */
+    private Pageable sorted;
+
+    /**
+     * The {@link SortablePropertyRegistry} of {@link User}s (built once, as query helpers do).
+     */
+    private SortablePropertyRegistry userSortableProperties;
+
+    @Setup
+    public void setup() {
+        unsorted = new PageRequest(0, 25);
+        sorted = new PageRequest(0, 25, new Sort(new Sort.Order(Sort.Direction.ASC, "username"),
+                new Sort.Order(Sort.Direction.DESC, "id")));
+        userSortableProperties = SortablePropertyRegistry.of(User.class);
+    }
+
+    @Benchmark
+    public void validateUnsorted() {
+        PersistenceHelper.validatePageable(unsorted, userSortableProperties);
+    }
+
+    @Benchmark
+    public void validateSorted() {
+        PersistenceHelper.validatePageable(sorted, userSortableProperties);
+    }
+}
@@ -0,0 +1,35 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import com.parabrisassi.sist.user_service.models.UserCredential;
+import com.parabrisassi.sist.user_service.persistence.daos.UserCredentialDao;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the {@link UserCredentialDao} methods against a generated dataset (see {@link DatasetState}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserCredentialDaoBenchmark {
+
+    /**
+     * The {@link UserCredentialDao} being benchmarked.
+     */
+    private UserCredentialDao userCredentialDao;
+
+    @Setup
+    public void setup(DatasetState dataset) {
+        userCredentialDao = dataset.getBean(UserCredentialDao.class);
+    }
+
+    @Benchmark
+    public Optional<UserCredential> findActualByUser(DatasetState dataset) {
+        return userCredentialDao.findActualByUser(dataset.randomUser());
+    }
+}
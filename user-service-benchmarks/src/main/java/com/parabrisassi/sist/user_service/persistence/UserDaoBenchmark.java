@@ -0,0 +1,83 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import com.parabrisassi.sist.user_service.models.User;
+import com.parabrisassi.sist.user_service.persistence.daos.UserDao;
+import com.parabrisassi.sist.user_service.persistence.projections.UserProjection;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the {@link UserDao} methods (and the users search {@link UserQueryHelperImpl Specification})
+ * against a generated dataset (see {@link DatasetState}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserDaoBenchmark {
+
+    /**
+     * Search term matching a big share of the users (i.e all whose id starts with 1).
+     */
+    private static final String FREQUENT_TERM = "user_1";
+
+    /**
+     * The {@link UserDao} being benchmarked.
+     */
+    private UserDao userDao;
+
+    /**
+     * {@link UserQueryHelperImpl} used to create the search specification.
+     */
+    private UserQueryHelperImpl userQueryHelper;
+
+    /**
+     * The {@link Pageable} used to search (i.e the first page, as requested by default by the API).
+     */
+    private Pageable pageable;
+
+    @Setup
+    public void setup(DatasetState dataset) {
+        userDao = dataset.getBean(UserDao.class);
+        userQueryHelper = new UserQueryHelperImpl();
+        pageable = new PageRequest(0, 25);
+    }
+
+    @Benchmark
+    public Optional<User> findByUsername(DatasetState dataset) {
+        return userDao.findByUsername(dataset.randomUser().getUsername());
+    }
+
+    @Benchmark
+    public Optional<UserProjection> findProjectionByUsername(DatasetState dataset) {
+        return userDao.findProjectionByUsername(dataset.randomUser().getUsername());
+    }
+
+    @Benchmark
+    public boolean existsByUsername(DatasetState dataset) {
+        return userDao.existsByUsername(dataset.randomUser().getUsername());
+    }
+
+    @Benchmark
+    public Optional<Integer> findTokenVersionByUsername(DatasetState dataset) {
+        return userDao.findTokenVersionByUsername(dataset.randomUser().getUsername());
+    }
+
+    @Benchmark
+    public Page<User> searchFrequentTerm() {
+        return userDao.findAll(userQueryHelper.createUserSpecification(FREQUENT_TERM), pageable);
+    }
+
+    @Benchmark
+    public Page<User> searchRareTerm(DatasetState dataset) {
+        return userDao.findAll(userQueryHelper.createUserSpecification(dataset.randomUser().getUsername()),
+                pageable);
+    }
+}
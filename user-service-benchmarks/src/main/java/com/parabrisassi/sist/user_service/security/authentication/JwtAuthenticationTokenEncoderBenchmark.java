@@ -0,0 +1,71 @@
+package com.parabrisassi.sist.user_service.security.authentication;
+
+import com.parabrisassi.sist.user_service.models.Role;
+import com.parabrisassi.sist.user_service.services.AuthenticationTokenService.TokenData;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link JwtAuthenticationTokenEncoder} encoding and decoding, for each supported algorithm.
+ * Decoding includes signature verification, which is performed by each authenticated request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtAuthenticationTokenEncoderBenchmark {
+
+    /**
+     * The signature algorithm to benchmark.
+     */
+    @Param({"HS512", "ES256"})
+    private String signatureAlgorithm;
+
+    /**
+     * The {@link JwtAuthenticationTokenEncoder} being benchmarked.
+     */
+    private JwtAuthenticationTokenEncoder encoder;
+
+    /**
+     * The token to be encoded.
+     */
+    private TokenData tokenData;
+
+    /**
+     * An already encoded token, to be decoded.
+     */
+    private String encodedToken;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        final KeyPair keyPair = generator.generateKeyPair();
+        final SigningKeyRing signingKeyRing = new SigningKeyRing(signatureAlgorithm,
+                "benchmarks-signing-key-benchmarks-signing-key-benchmarks-signing-key",
+                Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded()),
+                Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()), "", new String[0]);
+        encoder = new JwtAuthenticationTokenEncoder(signingKeyRing, 3600L);
+        tokenData = new TokenData(1234567890L, "benchmark_user", Arrays.asList(Role.ROLE_USER, Role.ROLE_ADMIN), 3);
+        encodedToken = encoder.encode(tokenData);
+    }
+
+    @Benchmark
+    public String encode() {
+        return encoder.encode(tokenData);
+    }
+
+    @Benchmark
+    public TokenData decode() throws AuthenticationTokenEncoder.TokenDecodingException {
+        return encoder.decode(encodedToken);
+    }
+}
@@ -0,0 +1,68 @@
+package com.parabrisassi.sist.user_service.security.authorization;
+
+import com.parabrisassi.sist.user_service.models.Role;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Benchmarks for the admin check performed by the permission providers, which is evaluated by each secured call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermissionProvidersBenchmark {
+
+    /**
+     * The roles of the authenticated user (comma separated).
+     */
+    @Param({"ROLE_USER", "ROLE_USER,ROLE_ADMIN"})
+    private String roles;
+
+    /**
+     * The {@link Authentication} of the authenticated user.
+     */
+    private Authentication authentication;
+
+    /**
+     * The {@link UserPermissionProviderImpl} being benchmarked (its dao is not used to check for admins).
+     */
+    private UserPermissionProviderImpl userPermissionProvider;
+
+    @Setup
+    public void setup() {
+        final List<SimpleGrantedAuthority> authorities = Arrays.stream(roles.split(","))
+                .map(Role::valueOf)
+                .map(Role::toString)
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toList());
+        authentication = new UsernamePasswordAuthenticationToken("benchmark_user", "token", authorities);
+        userPermissionProvider = new UserPermissionProviderImpl(null, null);
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+    }
+
+    @TearDown
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public boolean helperIsAdmin() {
+        return PermissionProviderHelper.isAdmin(authentication);
+    }
+
+    @Benchmark
+    public boolean userPermissionProviderIsAdmin() {
+        return userPermissionProvider.isAdmin();
+    }
+}
@@ -0,0 +1,90 @@
+package com.parabrisassi.sist.user_service.web.security.authentication;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.RegexRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the {@link TokenAuthenticationFilter} request processing (i.e header parsing and matching),
+ * which is executed by each request. The authentication manager returns an already built {@link Authentication},
+ * so token decoding is not included (see the encoder benchmarks).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenAuthenticationFilterBenchmark {
+
+    /**
+     * The {@link TokenAuthenticationFilter} being benchmarked.
+     */
+    private TokenAuthenticationFilter filter;
+
+    /**
+     * A request with a bearer token.
+     */
+    private MockHttpServletRequest bearerRequest;
+
+    /**
+     * A request without credentials, to an endpoint in which authentication is optional.
+     */
+    private MockHttpServletRequest anonymousRequest;
+
+    /**
+     * The response passed to the {@link #filter}.
+     */
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setup() {
+        final List<RequestMatcher> optionalAuthenticationMatchers = new LinkedList<>();
+        optionalAuthenticationMatchers.add(new AntPathRequestMatcher("/users", "POST"));
+        optionalAuthenticationMatchers.add(new AntPathRequestMatcher("/tokens/validations", "POST"));
+        optionalAuthenticationMatchers.add(new AntPathRequestMatcher("/tokens/refresh", "POST"));
+        optionalAuthenticationMatchers.add(new AntPathRequestMatcher("/tokens/introspection", "HEAD"));
+        filter = new TokenAuthenticationFilter(new RegexRequestMatcher("/tokens", "POST"),
+                new RegexRequestMatcher("/tokens/.+", "GET"),
+                optionalAuthenticationMatchers,
+                (request, response, exception) -> {
+                    throw new IllegalStateException("Unexpected authentication failure", exception);
+                });
+        final Authentication authentication = new UsernamePasswordAuthenticationToken("benchmark_user", "token",
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER")));
+        filter.setAuthenticationManager(rawAuthentication -> authentication);
+
+        // Request matchers use the servlet path
+        bearerRequest = new MockHttpServletRequest("GET", "/users/benchmark_user");
+        bearerRequest.setServletPath("/users/benchmark_user");
+        bearerRequest.addHeader(AuthenticationConstants.AUTHENTICATION_HEADER,
+                AuthenticationConstants.AUTHENTICATION_SCHEME + " eyJraWQiOiJkZWZhdWx0IiwiYWxnIjoiSFM1MTIifQ" +
+                        ".eyJqdGkiOiIxMjM0NTY3ODkwIiwic3ViIjoiYmVuY2htYXJrX3VzZXIifQ.c2lnbmF0dXJl");
+        anonymousRequest = new MockHttpServletRequest("POST", "/users");
+        anonymousRequest.setServletPath("/users");
+        response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public Authentication bearerToken() throws IOException, ServletException {
+        return filter.attemptAuthentication(bearerRequest, response);
+    }
+
+    @Benchmark
+    public Authentication anonymous() throws IOException, ServletException {
+        return filter.attemptAuthentication(anonymousRequest, response);
+    }
+}
@@ -0,0 +1,111 @@
+package com.parabrisassi.sist.user_service.web.support.data_transfer.jersey_providers;
+
+import com.parabrisassi.sist.user_service.web.support.annotations.PaginationParam;
+import org.glassfish.jersey.internal.MapPropertiesDelegate;
+import org.glassfish.jersey.server.ApplicationHandler;
+import org.glassfish.jersey.server.ContainerRequest;
+import org.glassfish.jersey.server.ContainerResponse;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.data.domain.Pageable;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link PageableValueFactoryProvider}, which parses the pagination params of each paginated request.
+ * As the created value factory gets the params from the request being handled,
+ * requests are handled by an in-memory Jersey application. The {@link #unpaginated()} benchmark
+ * measures the same application without pagination params, as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageableValueFactoryProviderBenchmark {
+
+    /**
+     * Base uri of the in-memory application.
+     */
+    private static final URI BASE_URI = URI.create("http://localhost/");
+
+    /**
+     * Uri of a request to the paginated resource, with page, size and two sort params.
+     */
+    private static final URI PAGINATED_URI =
+            URI.create("http://localhost/paginated?page=3&size=50&sort=username,asc&sort=id,desc");
+
+    /**
+     * Uri of a request to the unpaginated resource.
+     */
+    private static final URI UNPAGINATED_URI = URI.create("http://localhost/unpaginated");
+
+    /**
+     * Empty Spring context, handed to the Jersey Spring integration (which otherwise looks for an xml context).
+     */
+    private GenericApplicationContext applicationContext;
+
+    /**
+     * The in-memory Jersey application.
+     */
+    private ApplicationHandler applicationHandler;
+
+    @Setup
+    public void setup() {
+        applicationContext = new GenericApplicationContext();
+        applicationContext.refresh();
+        applicationHandler = new ApplicationHandler(new ResourceConfig(BenchmarkResource.class,
+                PageableValueFactoryProvider.class)
+                .property("contextConfig", applicationContext));
+    }
+
+    @TearDown
+    public void tearDown() {
+        applicationContext.close();
+    }
+
+    @Benchmark
+    public ContainerResponse paginated() throws ExecutionException, InterruptedException {
+        return applicationHandler.apply(request(PAGINATED_URI)).get();
+    }
+
+    @Benchmark
+    public ContainerResponse unpaginated() throws ExecutionException, InterruptedException {
+        return applicationHandler.apply(request(UNPAGINATED_URI)).get();
+    }
+
+    /**
+     * Creates a GET {@link ContainerRequest} to the given {@code uri} (requests can not be reused).
+     *
+     * @param uri The request uri.
+     * @return The created {@link ContainerRequest}.
+     */
+    private static ContainerRequest request(URI uri) {
+        return new ContainerRequest(BASE_URI, uri, "GET", null, new MapPropertiesDelegate());
+    }
+
+    /**
+     * Resource handling the benchmark requests.
+     */
+    @Path("/")
+    public static class BenchmarkResource {
+
+        @GET
+        @Path("paginated")
+        public String paginated(@PaginationParam Pageable pageable) {
+            return pageable.getSort().toString();
+        }
+
+        @GET
+        @Path("unpaginated")
+        public String unpaginated() {
+            return "";
+        }
+    }
+}
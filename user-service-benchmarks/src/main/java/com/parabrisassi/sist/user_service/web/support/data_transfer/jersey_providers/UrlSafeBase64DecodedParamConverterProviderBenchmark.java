@@ -0,0 +1,79 @@
+package com.parabrisassi.sist.user_service.web.support.data_transfer.jersey_providers;
+
+import com.parabrisassi.sist.user_service.web.support.annotations.Base64url;
+import org.openjdk.jmh.annotations.*;
+
+import javax.ws.rs.ext.ParamConverter;
+import java.lang.annotation.Annotation;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the converters created by {@link UrlSafeBase64DecodedParamConverterProvider},
+ * which are executed by each request with a base64url encoded param (e.g token ids).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlSafeBase64DecodedParamConverterProviderBenchmark {
+
+    /**
+     * The {@link UrlSafeBase64DecodedParamConverterProvider} being benchmarked.
+     */
+    private UrlSafeBase64DecodedParamConverterProvider provider;
+
+    /**
+     * The annotations of a {@link Base64url} annotated {@link Long} param.
+     */
+    private Annotation[] annotations;
+
+    /**
+     * The {@link ParamConverter} for {@link Long}s.
+     */
+    private ParamConverter<Long> converter;
+
+    /**
+     * The value to be encoded.
+     */
+    private Long value;
+
+    /**
+     * The encoded {@link #value}, to be decoded.
+     */
+    private String encodedValue;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        provider = new UrlSafeBase64DecodedParamConverterProvider();
+        annotations = AnnotatedParams.class.getDeclaredMethod("tokenId", Long.class).getParameterAnnotations()[0];
+        converter = provider.getConverter(Long.class, Long.class, annotations);
+        value = 8_734_582_349_871_234L;
+        encodedValue = converter.toString(value);
+    }
+
+    @Benchmark
+    public ParamConverter<Long> getConverter() {
+        return provider.getConverter(Long.class, Long.class, annotations);
+    }
+
+    @Benchmark
+    public Long decode() {
+        return converter.fromString(encodedValue);
+    }
+
+    @Benchmark
+    public String encode() {
+        return converter.toString(value);
+    }
+
+    /**
+     * Holds a method whose param is annotated like the endpoints params are.
+     */
+    private interface AnnotatedParams {
+
+        @SuppressWarnings("unused")
+        void tokenId(@Base64url Long tokenId);
+    }
+}
@@ -0,0 +1,34 @@
+package com.parabrisassi.sist.user_service.exceptions;
+
+/**
+ * {@link RuntimeException} thrown when trying to use a feature that is disabled by configuration.
+ */
+public class DisabledFeatureException extends RuntimeException {
+
+    /**
+     * Default constructor.
+     */
+    public DisabledFeatureException() {
+        super();
+    }
+
+    /**
+     * Constructor which can set a {@code message}.
+     *
+     * @param message The detail message, which is saved for later retrieval by the {@link #getMessage()} method.
+     */
+    public DisabledFeatureException(String message) {
+        super(message);
+    }
+
+    /**
+     * Constructor which can set a mes{@code message} and a {@code cause}.
+     *
+     * @param message The detail message, which is saved for later retrieval by the {@link #getMessage()} method.
+     * @param cause   The cause (which is saved for later retrieval by the {@link #getCause()} method).
+     *                For more information, see {@link RuntimeException#RuntimeException(Throwable)}.
+     */
+    public DisabledFeatureException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,73 @@
+package com.parabrisassi.sist.user_service.instrumentation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for a call to a DAO method.
+ * It begins when created, and its fields are only set if it is going to be committed
+ * (so its overhead is negligible while not recording).
+ * <p>
+ * Must only be used if {@link FlightRecorderEvents#isAvailable()}.
+ */
+@Name("com.parabrisassi.sist.user_service.DaoCall")
+@Label("DAO Call")
+@Category({"User Service", "Persistence"})
+@Description("Call to a DAO method")
+@StackTrace(false)
+public class DaoCallEvent extends Event {
+
+    /**
+     * The name of the called DAO (e.g UserDao).
+     */
+    @Label("DAO")
+    private String dao;
+
+    /**
+     * The name of the called method (e.g findByUsername).
+     */
+    @Label("Method")
+    private String method;
+
+    /**
+     * The amount of rows returned (or affected) by the call, or -1 if it is not known.
+     */
+    @Label("Row Count")
+    private int rowCount;
+
+    /**
+     * Indicates whether the call completed normally (i.e without throwing).
+     */
+    @Label("Success")
+    private boolean success;
+
+    /**
+     * Constructor, which begins the event.
+     */
+    public DaoCallEvent() {
+        begin();
+    }
+
+    /**
+     * Ends the event, committing it if enabled.
+     *
+     * @param dao      The name of the called DAO (e.g UserDao).
+     * @param method   The name of the called method (e.g findByUsername).
+     * @param rowCount The amount of rows returned (or affected) by the call, or -1 if it is not known.
+     * @param success  Indicates whether the call completed normally (i.e without throwing).
+     */
+    public void complete(String dao, String method, int rowCount, boolean success) {
+        end();
+        if (shouldCommit()) {
+            this.dao = dao;
+            this.method = method;
+            this.rowCount = rowCount;
+            this.success = success;
+            commit();
+        }
+    }
+}
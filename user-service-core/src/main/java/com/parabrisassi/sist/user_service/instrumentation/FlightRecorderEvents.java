@@ -0,0 +1,40 @@
+package com.parabrisassi.sist.user_service.instrumentation;
+
+/**
+ * Helper class to check whether the custom Java Flight Recorder events (e.g {@link TokenValidationEvent})
+ * can be used, as the {@code jdk.jfr} API is not available in every Java 8 runtime (only since 8u262).
+ * <p>
+ * Event classes must not be loaded if it returns {@code false} (i.e they must only be instantiated after checking).
+ */
+public final class FlightRecorderEvents {
+
+    /**
+     * Indicates whether the {@code jdk.jfr} API is available.
+     */
+    private static final boolean AVAILABLE = isApiPresent();
+
+    /**
+     * Private constructor to avoid instantiation.
+     */
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * @return {@code true} if custom events can be used, or {@code false} otherwise.
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * @return {@code true} if the {@code jdk.jfr} API is present in this runtime, or {@code false} otherwise.
+     */
+    private static boolean isApiPresent() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecorderEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.parabrisassi.sist.user_service.instrumentation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for the hashing of a password (i.e encoding it, or matching it against a hash).
+ * It begins when created, and its fields are only set if it is going to be committed
+ * (so its overhead is negligible while not recording).
+ * <p>
+ * Must only be used if {@link FlightRecorderEvents#isAvailable()}.
+ */
+@Name("com.parabrisassi.sist.user_service.PasswordHashing")
+@Label("Password Hashing")
+@Category({"User Service", "Security"})
+@Description("Encoding of a password, or matching of a password against a hash")
+@StackTrace(false)
+public class PasswordHashingEvent extends Event {
+
+    /**
+     * The performed operation (i.e encode or matches).
+     */
+    @Label("Operation")
+    private String operation;
+
+    /**
+     * The cost (i.e log rounds) of the hash, or -1 if it is not known.
+     */
+    @Label("Cost")
+    private int cost;
+
+    /**
+     * Constructor, which begins the event.
+     */
+    public PasswordHashingEvent() {
+        begin();
+    }
+
+    /**
+     * Ends the event, committing it if enabled.
+     *
+     * @param operation The performed operation (i.e encode or matches).
+     * @param cost      The cost (i.e log rounds) of the hash, or -1 if it is not known.
+     */
+    public void complete(String operation, int cost) {
+        end();
+        if (shouldCommit()) {
+            this.operation = operation;
+            this.cost = cost;
+            commit();
+        }
+    }
+}
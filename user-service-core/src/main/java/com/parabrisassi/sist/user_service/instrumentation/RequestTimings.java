@@ -0,0 +1,188 @@
+package com.parabrisassi.sist.user_service.instrumentation;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Accumulates, for the request being handled by the current thread, the amount of executed sql statements
+ * and the time spent in each {@link Category} (e.g the database).
+ * <p>
+ * Instances are bound to the handling thread with {@link #start()}, and unbound with {@link #finish()}.
+ * Recording when no instance is bound (e.g in background threads) does nothing.
+ * Categories might overlap (e.g database time spent while authenticating is recorded in both categories).
+ */
+public final class RequestTimings {
+
+    /**
+     * Value of the statement limit indicating that there is no limit.
+     */
+    public static final int NO_STATEMENT_LIMIT = -1;
+
+    /**
+     * The {@link RequestTimings} bound to each thread.
+     */
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Nanoseconds spent in each {@link Category} (indexed by ordinal).
+     */
+    private final AtomicLongArray nanos;
+
+    /**
+     * Amount of executed sql statements.
+     */
+    private final AtomicInteger statements;
+
+    /**
+     * Max. amount of sql statements the request can execute (or {@link #NO_STATEMENT_LIMIT}).
+     */
+    private volatile int statementLimit;
+
+    /**
+     * Private constructor (instances are created with {@link #start()}).
+     */
+    private RequestTimings() {
+        this.nanos = new AtomicLongArray(Category.values().length);
+        this.statements = new AtomicInteger();
+        this.statementLimit = NO_STATEMENT_LIMIT;
+    }
+
+    /**
+     * Creates a new {@link RequestTimings}, binding it to the current thread.
+     *
+     * @return The created {@link RequestTimings}.
+     */
+    public static RequestTimings start() {
+        final RequestTimings timings = new RequestTimings();
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    /**
+     * Binds the given {@link RequestTimings} to the current thread (e.g a worker thread performing part of the
+     * request), so what it records is accumulated together with what the request's thread records.
+     *
+     * @param timings The {@link RequestTimings} of the request.
+     */
+    public static void bind(RequestTimings timings) {
+        CURRENT.set(timings);
+    }
+
+    /**
+     * Unbinds the {@link RequestTimings} bound to the current thread (if any).
+     */
+    public static void finish() {
+        CURRENT.remove();
+    }
+
+    /**
+     * @return The {@link RequestTimings} bound to the current thread.
+     */
+    public static Optional<RequestTimings> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    /**
+     * Records time spent in the given {@code category} by the request being handled by the current thread.
+     *
+     * @param category The {@link Category}.
+     * @param nanos    The amount of nanoseconds spent.
+     */
+    public static void record(Category category, long nanos) {
+        final RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.nanos.addAndGet(category.ordinal(), nanos);
+        }
+    }
+
+    /**
+     * Records an sql statement executed by this request (time is recorded in the {@link Category#DATABASE}).
+     *
+     * @param nanos The amount of nanoseconds the statement took.
+     */
+    public void recordStatement(long nanos) {
+        statements.incrementAndGet();
+        this.nanos.addAndGet(Category.DATABASE.ordinal(), nanos);
+    }
+
+    /**
+     * @return The amount of sql statements executed by this request.
+     */
+    public int getStatements() {
+        return statements.get();
+    }
+
+    /**
+     * @param category The {@link Category}.
+     * @return The amount of nanoseconds this request spent in the given {@code category}.
+     */
+    public long getNanos(Category category) {
+        return nanos.get(category.ordinal());
+    }
+
+    /**
+     * Sets the max. amount of sql statements this request can execute.
+     *
+     * @param statementLimit The limit (or {@link #NO_STATEMENT_LIMIT}).
+     */
+    public void setStatementLimit(int statementLimit) {
+        this.statementLimit = statementLimit;
+    }
+
+    /**
+     * @return The max. amount of sql statements this request can execute (or {@link #NO_STATEMENT_LIMIT}).
+     */
+    public int getStatementLimit() {
+        return statementLimit;
+    }
+
+    /**
+     * Indicates whether this request can not execute more sql statements.
+     *
+     * @return {@code true} if there is a limit, and it has been reached, or {@code false} otherwise.
+     */
+    public boolean isStatementLimitReached() {
+        final int limit = statementLimit;
+        return limit != NO_STATEMENT_LIMIT && statements.get() >= limit;
+    }
+
+    /**
+     * Categories in which a request spends time.
+     */
+    public enum Category {
+        /**
+         * Executing sql statements.
+         */
+        DATABASE("db"),
+        /**
+         * Authenticating the request (i.e validating its token).
+         */
+        AUTHENTICATION("auth"),
+        /**
+         * Hashing passwords (i.e encoding or matching them).
+         */
+        PASSWORD_HASHING("hash");
+
+        /**
+         * Short name of the category (e.g to be reported in a header).
+         */
+        private final String shortName;
+
+        /**
+         * Constructor.
+         *
+         * @param shortName Short name of the category (e.g to be reported in a header).
+         */
+        Category(String shortName) {
+            this.shortName = shortName;
+        }
+
+        /**
+         * @return Short name of the category (e.g to be reported in a header).
+         */
+        public String getShortName() {
+            return shortName;
+        }
+    }
+}
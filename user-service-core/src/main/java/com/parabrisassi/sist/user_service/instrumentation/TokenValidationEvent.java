@@ -0,0 +1,57 @@
+package com.parabrisassi.sist.user_service.instrumentation;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for the validation of an authentication token.
+ * It begins when created, and its fields are only set if it is going to be committed
+ * (so its overhead is negligible while not recording).
+ * <p>
+ * Must only be used if {@link FlightRecorderEvents#isAvailable()}.
+ */
+@Name("com.parabrisassi.sist.user_service.TokenValidation")
+@Label("Token Validation")
+@Category({"User Service", "Authentication"})
+@Description("Validation of an authentication token")
+@StackTrace(false)
+public class TokenValidationEvent extends Event {
+
+    /**
+     * The id of the validated token (0 if it could not be decoded).
+     */
+    @Label("Token Id")
+    private long tokenId;
+
+    /**
+     * The outcome of the validation (e.g valid, expired, blacklisted).
+     */
+    @Label("Outcome")
+    private String outcome;
+
+    /**
+     * Constructor, which begins the event.
+     */
+    public TokenValidationEvent() {
+        begin();
+    }
+
+    /**
+     * Ends the event, committing it if enabled.
+     *
+     * @param tokenId The id of the validated token (0 if it could not be decoded).
+     * @param outcome The outcome of the validation (e.g valid, expired, blacklisted).
+     */
+    public void complete(long tokenId, String outcome) {
+        end();
+        if (shouldCommit()) {
+            this.tokenId = tokenId;
+            this.outcome = outcome;
+            commit();
+        }
+    }
+}
@@ -6,7 +6,9 @@ import javax.persistence.*;
  * Class representing an authentication token.
  */
 @Entity
-@Table(name = "authentication_tokens")
+@Table(name = "authentication_tokens", indexes = {
+        @Index(name = "authentication_tokens_user_id_index", columnList = "user_id"),
+})
 public class AuthenticationToken {
 
     /**
@@ -28,6 +30,13 @@ public class AuthenticationToken {
     @Column(name = "valid")
     private boolean valid;
 
+    /**
+     * The {@link User}'s token version when this token was created.
+     * The token is not valid anymore if it differs from the {@link User}'s actual token version.
+     */
+    @Column(name = "token_version", nullable = false)
+    private int tokenVersion;
+
     /* package */ AuthenticationToken() {
         // For Hibernate.
     }
@@ -46,6 +55,7 @@ public class AuthenticationToken {
         this.id = id;
         this.user = user;
         this.valid = true;
+        this.tokenVersion = user.getTokenVersion();
     }
 
     /**
@@ -62,6 +72,13 @@ public class AuthenticationToken {
         return user;
     }
 
+    /**
+     * @return The {@link User}'s token version when this token was created.
+     */
+    public int getTokenVersion() {
+        return tokenVersion;
+    }
+
     /**
      * @return {@code true} if it is a valid token, or {@code false} otherwise.
      */
@@ -0,0 +1,151 @@
+package com.parabrisassi.sist.user_service.models;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * Class representing a refresh token, which allows obtaining new (short lived) encoded tokens
+ * for an {@link AuthenticationToken} without sending credentials again.
+ * Only a hash of the token value is stored.
+ */
+@Entity
+@Table(name = "refresh_tokens", indexes = {
+        @Index(name = "refresh_tokens_token_hash_unique_index", columnList = "token_hash", unique = true),
+        @Index(name = "refresh_tokens_expires_at_index", columnList = "expires_at"),
+})
+public class RefreshToken {
+
+    /**
+     * The refresh token's id.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private long id;
+
+    /**
+     * The {@link AuthenticationToken} that can be refreshed with this refresh token.
+     */
+    @JoinColumn(columnDefinition = "integer", name = "authentication_token_id", referencedColumnName = "id")
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    private AuthenticationToken authenticationToken;
+
+    /**
+     * The hash of the refresh token value.
+     */
+    @Column(name = "token_hash", nullable = false)
+    private String tokenHash;
+
+    /**
+     * {@link Instant} at which this refresh token expires.
+     */
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    /**
+     * Indicates if this refresh token was already used (i.e it was exchanged for a new one).
+     */
+    @Column(name = "used", nullable = false)
+    private boolean used;
+
+    /* package */ RefreshToken() {
+        // For Hibernate.
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param authenticationToken The {@link AuthenticationToken} that can be refreshed with this refresh token.
+     * @param tokenHash           The hash of the refresh token value.
+     * @param expiresAt           {@link Instant} at which this refresh token expires.
+     * @throws IllegalArgumentException If any of the arguments is {@code null}.
+     */
+    public RefreshToken(AuthenticationToken authenticationToken, String tokenHash, Instant expiresAt)
+            throws IllegalArgumentException {
+        if (authenticationToken == null || tokenHash == null || expiresAt == null) {
+            throw new IllegalArgumentException("The authentication token, hash and expiration must not be null");
+        }
+        this.authenticationToken = authenticationToken;
+        this.tokenHash = tokenHash;
+        this.expiresAt = expiresAt;
+        this.used = false;
+    }
+
+    /**
+     * @return The refresh token's id.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return The {@link AuthenticationToken} that can be refreshed with this refresh token.
+     */
+    public AuthenticationToken getAuthenticationToken() {
+        return authenticationToken;
+    }
+
+    /**
+     * @return The hash of the refresh token value.
+     */
+    public String getTokenHash() {
+        return tokenHash;
+    }
+
+    /**
+     * @return {@link Instant} at which this refresh token expires.
+     */
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * @return {@code true} if this refresh token was already used, or {@code false} otherwise.
+     */
+    public boolean isUsed() {
+        return used;
+    }
+
+    /**
+     * Indicates whether this refresh token is expired.
+     *
+     * @param now The {@link Instant} to be compared with the expiration.
+     * @return {@code true} if it is expired at the given {@link Instant}, or {@code false} otherwise.
+     */
+    public boolean isExpired(Instant now) {
+        return !now.isBefore(expiresAt);
+    }
+
+    // ================================
+    // equals, hashcode and toString
+    // ================================
+
+    /**
+     * Equals based on the {@code id}.
+     *
+     * @param o The object to be compared with.
+     * @return {@code true} if they are the equals, or {@code false} otherwise.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RefreshToken)) return false;
+
+        RefreshToken other = (RefreshToken) o;
+
+        return id == other.id;
+    }
+
+    /**
+     * @return This refresh token's hashcode, based on the {@code id}.
+     */
+    @Override
+    public int hashCode() {
+        return (int) (id ^ (id >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "RefreshToken: [ID: " + id + ']';
+    }
+}
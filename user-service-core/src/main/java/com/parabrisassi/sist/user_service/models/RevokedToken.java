@@ -0,0 +1,91 @@
+package com.parabrisassi.sist.user_service.models;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * Class representing a revoked token when tokens are stateless (i.e an entry in the tokens deny-list).
+ * It is kept only until the revoked token expires.
+ */
+@Entity
+@Table(name = "revoked_tokens")
+public class RevokedToken {
+
+    /**
+     * The revoked token's id.
+     */
+    @Id
+    private long id;
+
+    /**
+     * {@link Instant} from which the revoked token is expired, and hence, this entry is not needed anymore.
+     */
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    /* package */ RevokedToken() {
+        // For Hibernate.
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param id        The revoked token's id.
+     * @param expiresAt {@link Instant} from which the revoked token is expired.
+     * @throws IllegalArgumentException If the {@code expiresAt} is {@code null}.
+     */
+    public RevokedToken(long id, Instant expiresAt) throws IllegalArgumentException {
+        if (expiresAt == null) {
+            throw new IllegalArgumentException("The expiration must not be null");
+        }
+        this.id = id;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @return The revoked token's id.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return {@link Instant} from which the revoked token is expired.
+     */
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    // ================================
+    // equals, hashcode and toString
+    // ================================
+
+    /**
+     * Equals based on the {@code id}.
+     *
+     * @param o The object to be compared with.
+     * @return {@code true} if they are the equals, or {@code false} otherwise.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RevokedToken)) return false;
+
+        RevokedToken other = (RevokedToken) o;
+
+        return id == other.id;
+    }
+
+    /**
+     * @return This revoked token's hashcode, based on the {@code id}.
+     */
+    @Override
+    public int hashCode() {
+        return (int) (id ^ (id >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "RevokedToken: [ID: " + id + ']';
+    }
+}
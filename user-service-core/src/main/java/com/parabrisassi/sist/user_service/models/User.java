@@ -6,6 +6,10 @@ import com.parabrisassi.sist.user_service.error_handling.helpers.ValidationHelpe
 import com.parabrisassi.sist.user_service.exceptions.ValidationException;
 import com.parabrisassi.sist.user_service.models.constants.ValidationConstants;
 import com.parabrisassi.sist.user_service.models.constants.ValidationErrorConstants;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 import javax.persistence.*;
 import java.util.LinkedList;
@@ -18,11 +22,15 @@ import java.util.stream.Stream;
 
 /**
  * Class representing a user of the application.
+ * Users are kept in the second-level cache, and can be looked up by username (i.e their natural id)
+ * through the natural id cache.
  */
 @Entity
 @Table(name = "users", indexes = {
         @Index(name = "users_username_unique_index", columnList = "username", unique = true),
 })
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
+@NaturalIdCache(region = "users.natural-ids")
 public class User implements ValidationExceptionThrower {
 
     /**
@@ -34,8 +42,9 @@ public class User implements ValidationExceptionThrower {
     private long id;
 
     /**
-     * The username.
+     * The username (mutable, as it can be changed).
      */
+    @NaturalId(mutable = true)
     @Column(name = "username")
     private String username;
 
@@ -43,11 +52,18 @@ public class User implements ValidationExceptionThrower {
      * The user's authorities.
      */
     @ElementCollection(fetch = FetchType.LAZY)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users.roles")
     @CollectionTable(name = "user_roles", joinColumns = @JoinColumn(name = "user_id"))
     @Column(name = "role", nullable = false)
     @Enumerated(EnumType.STRING)
     private Set<Role> roles;
 
+    /**
+     * The version of this user's tokens. Tokens issued with another version are not valid.
+     */
+    @Column(name = "token_version", nullable = false)
+    private int tokenVersion;
+
 
     /* package */ User() {
         // For Hibernate.
@@ -89,6 +105,13 @@ public class User implements ValidationExceptionThrower {
         return this.roles;
     }
 
+    /**
+     * @return The version of this user's tokens.
+     */
+    public int getTokenVersion() {
+        return tokenVersion;
+    }
+
     /**
      * Changes this user's username.
      *
@@ -102,6 +125,7 @@ public class User implements ValidationExceptionThrower {
 
     /**
      * Adds the given {@code role} to this user's list of roles.
+     * If the role was not present, all the user's tokens are invalidated.
      *
      * @param role The {@link Role} to be added.
      * @apiNote This is an idempotent operation (i.e adding twice the same role is the same as adding it once).
@@ -111,11 +135,14 @@ public class User implements ValidationExceptionThrower {
         validateRole(role, errorList);
         throwValidationException(errorList);
 
-        this.roles.add(role);
+        if (this.roles.add(role)) {
+            invalidateTokens();
+        }
     }
 
     /**
      * Removes the given {@code role} to this user's list of roles.
+     * If the role was present, all the user's tokens are invalidated.
      *
      * @param role The {@link Role} to be removed.
      * @apiNote This is an idempotent operation (i.e removing twice the same role is the same as removing it once).
@@ -125,7 +152,46 @@ public class User implements ValidationExceptionThrower {
         validateRole(role, errorList);
         throwValidationException(errorList);
 
-        this.roles.remove(role);
+        if (this.roles.remove(role)) {
+            invalidateTokens();
+        }
+    }
+
+    /**
+     * Invalidates all this user's tokens, by increasing the {@code tokenVersion}.
+     */
+    public void invalidateTokens() {
+        this.tokenVersion++;
+    }
+
+    /**
+     * Checks that the given {@code username} is valid, without changing any user
+     * (e.g when it is changed in the database without loading the user).
+     *
+     * @param username The username to be checked.
+     * @throws ValidationException If it is not valid.
+     */
+    public static void checkUsername(String username) throws ValidationException {
+        final List<ValidationError> errorList = new LinkedList<>();
+        validateUsername(username, errorList);
+        if (!errorList.isEmpty()) {
+            throw new ValidationException(errorList);
+        }
+    }
+
+    /**
+     * Checks that the given {@code role} is valid, without changing any user
+     * (e.g when it is added in the database without loading the user).
+     *
+     * @param role The {@link Role} to be checked.
+     * @throws ValidationException If it is not valid.
+     */
+    public static void checkRole(Role role) throws ValidationException {
+        final List<ValidationError> errorList = new LinkedList<>();
+        validateRole(role, errorList);
+        if (!errorList.isEmpty()) {
+            throw new ValidationException(errorList);
+        }
     }
 
 
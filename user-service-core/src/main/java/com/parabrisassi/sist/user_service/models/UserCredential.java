@@ -15,7 +15,9 @@ import java.util.List;
  * Class representing a user access credential (i.e it's password).
  */
 @Entity
-@Table(name = "user_credentials")
+@Table(name = "user_credentials", indexes = {
+        @Index(name = "user_credentials_user_id_created_at_index", columnList = "user_id, created_at"),
+})
 public class UserCredential implements ValidationExceptionThrower {
 
     /**
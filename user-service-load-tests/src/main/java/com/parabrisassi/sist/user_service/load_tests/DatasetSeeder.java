@@ -0,0 +1,76 @@
+package com.parabrisassi.sist.user_service.load_tests;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Seeds the database with the users and tokens used by the load test.
+ * Data is inserted with set based statements straight into the (already migrated) schema,
+ * so large datasets can be seeded quickly. All users share the same password hash.
+ */
+/* package */ class DatasetSeeder {
+
+    /**
+     * The {@link Logger} object.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatasetSeeder.class);
+
+    /**
+     * Prefix of the seeded users' usernames (followed by a number from 1 to the amount of users).
+     */
+    /* package */ static final String USERNAME_PREFIX = "user_";
+
+    /**
+     * Username of the seeded admin.
+     */
+    /* package */ static final String ADMIN_USERNAME = "load_test_admin";
+
+    /**
+     * {@link JdbcTemplate} used to insert data.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Constructor.
+     *
+     * @param jdbcTemplate {@link JdbcTemplate} used to insert data.
+     */
+    /* package */ DatasetSeeder(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Seeds the given amount of users (plus an admin) and tokens. Tokens are assigned to users round robin.
+     * If the database already contains users, nothing is seeded (i.e a previously seeded database is reused).
+     *
+     * @param users          Amount of users to be seeded.
+     * @param tokens         Amount of tokens to be seeded (their ids go from 1 to this value).
+     * @param hashedPassword The hashed password of all the users.
+     */
+    /* package */ void seed(int users, int tokens, String hashedPassword) {
+        final Long existingUsers = jdbcTemplate.queryForObject("SELECT count(*) FROM users", Long.class);
+        if (existingUsers != null && existingUsers > 0) {
+            LOGGER.warn("The database already contains {} users. Skipping seeding", existingUsers);
+            return;
+        }
+        LOGGER.info("Seeding {} users and {} tokens", users, tokens);
+        final long start = System.currentTimeMillis();
+
+        jdbcTemplate.update("INSERT INTO users (username) " +
+                "SELECT CAST(? AS VARCHAR) || i FROM generate_series(1, ?) AS i", USERNAME_PREFIX, users);
+        jdbcTemplate.update("INSERT INTO users (username) VALUES (?)", ADMIN_USERNAME);
+        jdbcTemplate.update("INSERT INTO user_credentials (user_id, hashed_password, created_at) " +
+                "SELECT id, ?, now() FROM users", hashedPassword);
+        jdbcTemplate.update("INSERT INTO user_roles (user_id, role) SELECT id, 'ROLE_USER' FROM users");
+        jdbcTemplate.update("INSERT INTO user_roles (user_id, role) " +
+                "SELECT id, 'ROLE_ADMIN' FROM users WHERE username = ?", ADMIN_USERNAME);
+        jdbcTemplate.update("INSERT INTO authentication_tokens (id, user_id, valid) " +
+                "SELECT i, u.id, TRUE FROM generate_series(1, ?) AS i " +
+                "JOIN users u ON u.username = CAST(? AS VARCHAR) || (1 + i % ?)", tokens, USERNAME_PREFIX, users);
+        // Statistics are updated so the planner behaves as with a live database
+        jdbcTemplate.execute("ANALYZE");
+
+        LOGGER.info("Seeding finished in {} ms", System.currentTimeMillis() - start);
+    }
+}
@@ -0,0 +1,239 @@
+package com.parabrisassi.sist.user_service.load_tests;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the mixed workload against the user service, using an open model:
+ * requests arrive at the configured fixed rates regardless of how fast they are served,
+ * and are performed by a fixed amount of client threads (i.e the max. amount of in-flight requests).
+ * Latency is measured from the moment each request should have started, so time spent waiting
+ * for a free thread is included (i.e results are not affected by coordinated omission).
+ */
+/* package */ class LoadDriver {
+
+    /**
+     * The {@link Logger} object.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadDriver.class);
+
+    /**
+     * Amount of significant digits kept by latency histograms.
+     */
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    /**
+     * The load test settings.
+     */
+    private final LoadTestSettings settings;
+
+    /**
+     * The {@link UserServiceClient} performing the requests.
+     */
+    private final UserServiceClient client;
+
+    /**
+     * Sessions of users that read their own data.
+     */
+    private final List<Session> sessions;
+
+    /**
+     * The admin session, used to search users.
+     */
+    private final Session adminSession;
+
+    /**
+     * Constructor.
+     *
+     * @param settings     The load test settings.
+     * @param client       The {@link UserServiceClient} performing the requests.
+     * @param sessions     Sessions of users that read their own data.
+     * @param adminSession The admin session, used to search users.
+     */
+    /* package */ LoadDriver(LoadTestSettings settings, UserServiceClient client,
+                             List<Session> sessions, Session adminSession) {
+        if (sessions.isEmpty()) {
+            throw new IllegalArgumentException("At least one session is needed");
+        }
+        this.settings = settings;
+        this.client = client;
+        this.sessions = Collections.unmodifiableList(new ArrayList<>(sessions));
+        this.adminSession = adminSession;
+    }
+
+    /**
+     * Runs one step of the load test (i.e warmup and measurement) with the given amount of client threads.
+     *
+     * @param threads The amount of client threads.
+     * @return The {@link StepResult}.
+     * @throws InterruptedException If interrupted while running the step.
+     */
+    /* package */ StepResult run(int threads) throws InterruptedException {
+        final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+        final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new ConcurrentHistogram(SIGNIFICANT_DIGITS));
+            errors.put(operation, new LongAdder());
+        }
+        final LongAccumulator lastCompletion = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+
+        final double totalRate = settings.getRates().values().stream().mapToDouble(Double::doubleValue).sum();
+        final long interval = (long) (TimeUnit.SECONDS.toNanos(1) / totalRate);
+        final long start = System.nanoTime();
+        final long measurementStart = start + TimeUnit.SECONDS.toNanos(settings.getWarmup());
+        final long end = measurementStart + TimeUnit.SECONDS.toNanos(settings.getDuration());
+        final Random random = new Random(threads);
+        LOGGER.info("Running with {} threads at {} requests per second", threads, totalRate);
+
+        // Requests are dispatched at their intended start time, no matter how many are waiting for a thread
+        for (long intendedStart = start; intendedStart < end; intendedStart += interval) {
+            final long delay = intendedStart - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            if (Thread.interrupted()) {
+                executor.shutdownNow();
+                throw new InterruptedException();
+            }
+            final Operation operation = pickOperation(random.nextDouble() * totalRate);
+            final long requestStart = intendedStart;
+            final boolean measured = requestStart >= measurementStart;
+            executor.execute(() -> {
+                final boolean successful = perform(operation);
+                final long now = System.nanoTime();
+                if (measured) {
+                    latencies.get(operation).recordValue(now - requestStart);
+                    if (!successful) {
+                        errors.get(operation).increment();
+                    }
+                    lastCompletion.accumulate(now);
+                }
+            });
+        }
+
+        // Requests still waiting after a grace period (as long as the measurement) are dropped
+        executor.shutdown();
+        long dropped = 0;
+        if (!executor.awaitTermination(settings.getDuration(), TimeUnit.SECONDS)) {
+            dropped = executor.shutdownNow().size();
+            executor.awaitTermination(settings.getDuration(), TimeUnit.SECONDS);
+            LOGGER.warn("Dropped {} requests that could not be performed in time", dropped);
+        }
+
+        final Map<Operation, Long> errorCounts = new EnumMap<>(Operation.class);
+        errors.forEach((operation, count) -> errorCounts.put(operation, count.sum()));
+        final long elapsed = Math.max(0, lastCompletion.get() - measurementStart);
+        return new StepResult(threads, elapsed, latencies, errorCounts, dropped);
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Picks the {@link Operation} of the next request, with a probability proportional to its rate.
+     *
+     * @param point A random number between zero and the sum of all rates.
+     * @return The picked {@link Operation}.
+     */
+    private Operation pickOperation(double point) {
+        double accumulated = 0;
+        Operation picked = null;
+        for (Map.Entry<Operation, Double> entry : settings.getRates().entrySet()) {
+            if (entry.getValue() <= 0) {
+                continue;
+            }
+            picked = entry.getKey();
+            accumulated += entry.getValue();
+            if (point < accumulated) {
+                break;
+            }
+        }
+        return picked;
+    }
+
+    /**
+     * Performs a request of the given {@code operation}, with random data.
+     *
+     * @param operation The {@link Operation} to perform.
+     * @return {@code true} if the response was the expected one, or {@code false} otherwise.
+     */
+    private boolean perform(Operation operation) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            switch (operation) {
+                case LOGIN:
+                    return client.login(DatasetSeeder.USERNAME_PREFIX + (1 + random.nextInt(settings.getUsers())),
+                            settings.getPassword()) == 201;
+                case TOKEN_VALIDATION:
+                    // Tokens that are not valid anymore are also an expected result
+                    final int validationStatus = client.validateToken(1 + random.nextInt(settings.getTokens()));
+                    return validationStatus == 204 || validationStatus == 404;
+                case USER_READ:
+                    final Session session = sessions.get(random.nextInt(sessions.size()));
+                    return client.getUser(session.getToken(), session.getUsername()) == 200;
+                case ADMIN_SEARCH:
+                    return client.searchUsers(adminSession.getToken(),
+                            DatasetSeeder.USERNAME_PREFIX + (1 + random.nextInt(9))) == 200;
+                default:
+                    throw new IllegalArgumentException("Unsupported operation " + operation);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Request of operation {} failed", operation.getKey(), e);
+            return false;
+        }
+    }
+
+    /**
+     * A logged in user.
+     */
+    /* package */ static final class Session {
+
+        /**
+         * The username.
+         */
+        private final String username;
+
+        /**
+         * The token issued when logging in.
+         */
+        private final String token;
+
+        /**
+         * Constructor.
+         *
+         * @param username The username.
+         * @param token    The token issued when logging in.
+         */
+        /* package */ Session(String username, String token) {
+            this.username = username;
+            this.token = token;
+        }
+
+        /**
+         * @return The username.
+         */
+        /* package */ String getUsername() {
+            return username;
+        }
+
+        /**
+         * @return The token issued when logging in.
+         */
+        /* package */ String getToken() {
+            return token;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.parabrisassi.sist.user_service.load_tests;
+
+import com.opentable.db.postgres.embedded.EmbeddedPostgres;
+import com.parabrisassi.sist.user_service.application.Application;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.Banner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Entry point of the load test. Starts an embedded Postgres (unless an external database is configured),
+ * boots the user service against it, seeds the dataset, and then drives the workload
+ * once for each configured amount of client threads, reporting throughput and latency percentiles.
+ * See {@link LoadTestSettings} for the available settings.
+ */
+public class LoadTestLauncher {
+
+    /**
+     * The {@link Logger} object.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadTestLauncher.class);
+
+    /**
+     * Name of the embedded database user (and database).
+     */
+    private static final String EMBEDDED_DATABASE_USER = "postgres";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        final LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+
+        // Try-with-resources skips closing null resources (i.e when an external database is used)
+        try (EmbeddedPostgres postgres = settings.getJdbcUrl().isPresent() ? null : EmbeddedPostgres.start()) {
+            final String jdbcUrl = settings.getJdbcUrl()
+                    .orElseGet(() -> postgres.getJdbcUrl(EMBEDDED_DATABASE_USER, EMBEDDED_DATABASE_USER));
+            final String jdbcUsername = postgres == null ? settings.getJdbcUsername() : EMBEDDED_DATABASE_USER;
+            final String jdbcPassword = postgres == null ? settings.getJdbcPassword() : "";
+
+            try (ConfigurableApplicationContext context = startApplication(jdbcUrl, jdbcUsername, jdbcPassword)) {
+                final String hashedPassword = context.getBean(PasswordEncoder.class).encode(settings.getPassword());
+                new DatasetSeeder(new JdbcTemplate(context.getBean(DataSource.class)))
+                        .seed(settings.getUsers(), settings.getTokens(), hashedPassword);
+
+                final String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+                        + context.getEnvironment().getProperty("spring.jersey.application-path", "");
+                final int maxThreads = Collections.max(settings.getThreadCounts());
+                try (UserServiceClient client = new UserServiceClient(baseUrl, maxThreads)) {
+                    final LoadDriver loadDriver = new LoadDriver(settings, client, logIn(settings, client),
+                            new LoadDriver.Session(DatasetSeeder.ADMIN_USERNAME,
+                                    client.obtainToken(DatasetSeeder.ADMIN_USERNAME, settings.getPassword())));
+
+                    final List<StepResult> results = new ArrayList<>();
+                    for (int threads : settings.getThreadCounts()) {
+                        results.add(loadDriver.run(threads));
+                    }
+                    LoadTestReport.print(results, System.out);
+                    if (settings.getOutputDirectory().isPresent()) {
+                        LoadTestReport.writeDistributions(results, Paths.get(settings.getOutputDirectory().get()));
+                    }
+                }
+            }
+        }
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Boots the user service against the given database, listening in a random port.
+     *
+     * @param jdbcUrl      The database url.
+     * @param jdbcUsername The database username.
+     * @param jdbcPassword The database password.
+     * @return The application's {@link ConfigurableApplicationContext}.
+     */
+    private static ConfigurableApplicationContext startApplication(String jdbcUrl, String jdbcUsername,
+                                                                   String jdbcPassword) {
+        // Command line arguments take precedence over the application configuration
+        final List<String> args = new ArrayList<>(Arrays.asList("--spring.profiles.active=load-test",
+                "--spring.datasource.url=" + jdbcUrl,
+                "--spring.datasource.username=" + jdbcUsername,
+                "--server.port=0",
+                "--custom.security.jwt.signing-key=" + UUID.randomUUID(),
+                "--custom.web.statement-limits.enforced=true",
+                "--logging.level.root=WARN",
+                "--logging.level.com.parabrisassi.sist.user_service.load_tests=INFO"));
+        // Empty values are not supported as arguments (and an empty password is the same as not having one)
+        if (!jdbcPassword.isEmpty()) {
+            args.add("--spring.datasource.password=" + jdbcPassword);
+        }
+        return new SpringApplicationBuilder(Application.class)
+                .bannerMode(Banner.Mode.OFF)
+                .run(args.toArray(new String[args.size()]));
+    }
+
+    /**
+     * Logs in with the configured amount of seeded users (spread along all of them).
+     *
+     * @param settings The load test settings.
+     * @param client   The {@link UserServiceClient} used to log in.
+     * @return The created {@link LoadDriver.Session}s.
+     * @throws IOException If a login request fails.
+     */
+    private static List<LoadDriver.Session> logIn(LoadTestSettings settings, UserServiceClient client)
+            throws IOException {
+        LOGGER.info("Logging in {} users", settings.getSessions());
+        final List<LoadDriver.Session> sessions = new ArrayList<>(settings.getSessions());
+        final int step = settings.getUsers() / settings.getSessions();
+        for (int i = 0; i < settings.getSessions(); i++) {
+            final String username = DatasetSeeder.USERNAME_PREFIX + (1 + i * step);
+            sessions.add(new LoadDriver.Session(username, client.obtainToken(username, settings.getPassword())));
+        }
+        return sessions;
+    }
+}
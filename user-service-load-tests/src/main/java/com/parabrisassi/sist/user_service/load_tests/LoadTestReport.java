@@ -0,0 +1,105 @@
+package com.parabrisassi.sist.user_service.load_tests;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Reports the results of a load test: a table with throughput and latency percentiles for each amount of threads,
+ * and (optionally) the full latency distributions in HdrHistogram's percentile format, which can be plotted.
+ */
+/* package */ class LoadTestReport {
+
+    /**
+     * Amount of nanoseconds in a millisecond, used to report latencies in milliseconds.
+     */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /**
+     * Format of the table rows.
+     */
+    private static final String ROW_FORMAT = "%7s  %-16s  %9s  %7s  %10s  %9s  %9s  %9s  %9s  %9s%n";
+
+    /**
+     * Prints the results table.
+     *
+     * @param results The {@link StepResult}s to be reported.
+     * @param out     The {@link PrintStream} to which the table is printed.
+     */
+    /* package */
+    static void print(List<StepResult> results, PrintStream out) {
+        out.printf(ROW_FORMAT, "threads", "operation", "count", "errors", "req/s",
+                "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (StepResult result : results) {
+            result.getLatencies().forEach((operation, histogram) -> {
+                if (histogram.getTotalCount() == 0) {
+                    return;
+                }
+                out.printf(ROW_FORMAT, result.getThreads(), operation.getKey(), histogram.getTotalCount(),
+                        result.getErrors().get(operation),
+                        format(result.getThroughput(operation)),
+                        millis(histogram.getValueAtPercentile(50)),
+                        millis(histogram.getValueAtPercentile(90)),
+                        millis(histogram.getValueAtPercentile(99)),
+                        millis(histogram.getValueAtPercentile(99.9)),
+                        millis(histogram.getMaxValue()));
+            });
+            out.printf("%7s  %-16s  total throughput: %s req/s, dropped: %d%n", result.getThreads(), "all",
+                    format(result.getTotalThroughput()), result.getDropped());
+        }
+    }
+
+    /**
+     * Writes the latency distribution of each operation of each step
+     * into a file named "{@code <threads>-threads-<operation>.hgrm}" in the given {@code directory}.
+     *
+     * @param results   The {@link StepResult}s to be reported.
+     * @param directory The directory in which files are written (it is created if it does not exist).
+     * @throws IOException If the files can not be written.
+     */
+    /* package */
+    static void writeDistributions(List<StepResult> results, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        for (StepResult result : results) {
+            for (Operation operation : Operation.values()) {
+                final Histogram histogram = result.getLatencies().get(operation);
+                if (histogram.getTotalCount() == 0) {
+                    continue;
+                }
+                final Path file = directory.resolve(result.getThreads() + "-threads-" + operation.getKey() + ".hgrm");
+                try (PrintStream out = new PrintStream(Files.newOutputStream(file), false, "UTF-8")) {
+                    histogram.outputPercentileDistribution(out, NANOS_PER_MILLI);
+                }
+            }
+        }
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Converts the given {@code nanos} into a formatted amount of milliseconds.
+     *
+     * @param nanos The amount of nanoseconds.
+     * @return The formatted amount of milliseconds.
+     */
+    private static String millis(long nanos) {
+        return format(nanos / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Formats the given {@code value} with two decimals.
+     *
+     * @param value The value to be formatted.
+     * @return The formatted value.
+     */
+    private static String format(double value) {
+        return String.format("%.2f", value);
+    }
+}
@@ -0,0 +1,251 @@
+package com.parabrisassi.sist.user_service.load_tests;
+
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Settings of a load test run, taken from system properties with the {@link #PREFIX} prefix
+ * (e.g {@code -Dload.users=100000} or {@code -Dload.rate.login=50}).
+ */
+/* package */ final class LoadTestSettings {
+
+    /**
+     * Prefix of the system properties holding the settings.
+     */
+    private static final String PREFIX = "load.";
+
+    /**
+     * Amount of users to be seeded.
+     */
+    private final int users;
+
+    /**
+     * Amount of authentication tokens to be seeded.
+     */
+    private final int tokens;
+
+    /**
+     * Amount of users that log in before the test, whose tokens are used to read their own data.
+     */
+    private final int sessions;
+
+    /**
+     * The password of all the seeded users.
+     */
+    private final String password;
+
+    /**
+     * The amount of client threads of each step of the test (i.e the max. amount of in-flight requests).
+     */
+    private final List<Integer> threadCounts;
+
+    /**
+     * The arrival rate of each {@link Operation}, in requests per second.
+     */
+    private final Map<Operation, Double> rates;
+
+    /**
+     * Duration of the warmup of each step, in seconds (requests arriving during warmup are not recorded).
+     */
+    private final int warmup;
+
+    /**
+     * Duration of the measurement of each step, in seconds.
+     */
+    private final int duration;
+
+    /**
+     * Url of an external database to be used instead of an embedded one, or {@code null} if not set.
+     */
+    private final String jdbcUrl;
+
+    /**
+     * Username of the external database.
+     */
+    private final String jdbcUsername;
+
+    /**
+     * Password of the external database.
+     */
+    private final String jdbcPassword;
+
+    /**
+     * Directory in which latency histograms are written, or {@code null} if they must not be written.
+     */
+    private final String outputDirectory;
+
+    /**
+     * Constructor.
+     *
+     * @param properties The {@link Properties} from where settings are taken.
+     * @throws IllegalArgumentException If any of the settings is not valid.
+     */
+    private LoadTestSettings(Properties properties) throws IllegalArgumentException {
+        this.users = positiveInt(properties, "users", 10_000);
+        this.tokens = positiveInt(properties, "tokens", 100_000);
+        this.sessions = Math.min(users, positiveInt(properties, "sessions", 100));
+        this.password = properties.getProperty(PREFIX + "password", "load-test-password");
+        this.threadCounts = Arrays.stream(properties.getProperty(PREFIX + "threads", "1,2,4,8,16").split(","))
+                .map(String::trim)
+                .map(Integer::valueOf)
+                .collect(Collectors.toList());
+        if (threadCounts.stream().anyMatch(count -> count <= 0)) {
+            throw new IllegalArgumentException("Thread counts must be positive");
+        }
+        final Map<Operation, Double> rates = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            final double rate = Double.parseDouble(properties.getProperty(PREFIX + "rate." + operation.getKey(),
+                    Double.toString(operation.getDefaultRate())));
+            if (rate < 0) {
+                throw new IllegalArgumentException("The rate of " + operation.getKey() + " must not be negative");
+            }
+            rates.put(operation, rate);
+        }
+        if (rates.values().stream().mapToDouble(Double::doubleValue).sum() <= 0) {
+            throw new IllegalArgumentException("At least one operation must have a positive rate");
+        }
+        this.rates = Collections.unmodifiableMap(rates);
+        this.warmup = nonNegativeInt(properties, "warmup", 10);
+        this.duration = positiveInt(properties, "duration", 30);
+        this.jdbcUrl = properties.getProperty(PREFIX + "jdbc-url");
+        this.jdbcUsername = properties.getProperty(PREFIX + "jdbc-username", "");
+        this.jdbcPassword = properties.getProperty(PREFIX + "jdbc-password", "");
+        this.outputDirectory = properties.getProperty(PREFIX + "output-dir");
+    }
+
+    /**
+     * @return The settings taken from the system properties.
+     * @throws IllegalArgumentException If any of the settings is not valid.
+     */
+    /* package */
+    static LoadTestSettings fromSystemProperties() throws IllegalArgumentException {
+        return new LoadTestSettings(System.getProperties());
+    }
+
+    /**
+     * @return Amount of users to be seeded.
+     */
+    /* package */ int getUsers() {
+        return users;
+    }
+
+    /**
+     * @return Amount of authentication tokens to be seeded.
+     */
+    /* package */ int getTokens() {
+        return tokens;
+    }
+
+    /**
+     * @return Amount of users that log in before the test, whose tokens are used to read their own data.
+     */
+    /* package */ int getSessions() {
+        return sessions;
+    }
+
+    /**
+     * @return The password of all the seeded users.
+     */
+    /* package */ String getPassword() {
+        return password;
+    }
+
+    /**
+     * @return The amount of client threads of each step of the test.
+     */
+    /* package */ List<Integer> getThreadCounts() {
+        return threadCounts;
+    }
+
+    /**
+     * @return The arrival rate of each {@link Operation}, in requests per second.
+     */
+    /* package */ Map<Operation, Double> getRates() {
+        return rates;
+    }
+
+    /**
+     * @return Duration of the warmup of each step, in seconds.
+     */
+    /* package */ int getWarmup() {
+        return warmup;
+    }
+
+    /**
+     * @return Duration of the measurement of each step, in seconds.
+     */
+    /* package */ int getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return An {@link Optional} containing the url of the external database, if set.
+     */
+    /* package */ Optional<String> getJdbcUrl() {
+        return Optional.ofNullable(jdbcUrl).filter(StringUtils::hasText);
+    }
+
+    /**
+     * @return Username of the external database.
+     */
+    /* package */ String getJdbcUsername() {
+        return jdbcUsername;
+    }
+
+    /**
+     * @return Password of the external database.
+     */
+    /* package */ String getJdbcPassword() {
+        return jdbcPassword;
+    }
+
+    /**
+     * @return An {@link Optional} containing the directory in which latency histograms are written, if set.
+     */
+    /* package */ Optional<String> getOutputDirectory() {
+        return Optional.ofNullable(outputDirectory).filter(StringUtils::hasText);
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Gets a positive int setting.
+     *
+     * @param properties   The {@link Properties} from where the setting is taken.
+     * @param name         The name of the setting (without the {@link #PREFIX}).
+     * @param defaultValue The value to be used if the setting is not set.
+     * @return The setting value.
+     * @throws IllegalArgumentException If the value is not a positive int.
+     */
+    private static int positiveInt(Properties properties, String name, int defaultValue)
+            throws IllegalArgumentException {
+        final int value = nonNegativeInt(properties, name, defaultValue);
+        if (value == 0) {
+            throw new IllegalArgumentException("The " + name + " setting must be positive");
+        }
+        return value;
+    }
+
+    /**
+     * Gets a non negative int setting.
+     *
+     * @param properties   The {@link Properties} from where the setting is taken.
+     * @param name         The name of the setting (without the {@link #PREFIX}).
+     * @param defaultValue The value to be used if the setting is not set.
+     * @return The setting value.
+     * @throws IllegalArgumentException If the value is not a non negative int.
+     */
+    private static int nonNegativeInt(Properties properties, String name, int defaultValue)
+            throws IllegalArgumentException {
+        final int value = Integer.parseInt(properties.getProperty(PREFIX + name, Integer.toString(defaultValue)));
+        if (value < 0) {
+            throw new IllegalArgumentException("The " + name + " setting must not be negative");
+        }
+        return value;
+    }
+}
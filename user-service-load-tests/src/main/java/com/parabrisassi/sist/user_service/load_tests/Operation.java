@@ -0,0 +1,58 @@
+package com.parabrisassi.sist.user_service.load_tests;
+
+/**
+ * Enum containing the operations included in the load test workload.
+ */
+/* package */ enum Operation {
+    /**
+     * Password authentication (i.e a new token is issued).
+     */
+    LOGIN("login", 10),
+    /**
+     * Validation of a token by its id.
+     */
+    TOKEN_VALIDATION("token-validation", 200),
+    /**
+     * A user reading its own data, authenticated with a token.
+     */
+    USER_READ("user-read", 200),
+    /**
+     * An admin searching users by username.
+     */
+    ADMIN_SEARCH("admin-search", 20);
+
+    /**
+     * The key used to configure this operation (and to report it).
+     */
+    private final String key;
+
+    /**
+     * The default arrival rate of this operation, in requests per second.
+     */
+    private final double defaultRate;
+
+    /**
+     * Constructor.
+     *
+     * @param key         The key used to configure this operation (and to report it).
+     * @param defaultRate The default arrival rate of this operation, in requests per second.
+     */
+    Operation(String key, double defaultRate) {
+        this.key = key;
+        this.defaultRate = defaultRate;
+    }
+
+    /**
+     * @return The key used to configure this operation (and to report it).
+     */
+    /* package */ String getKey() {
+        return key;
+    }
+
+    /**
+     * @return The default arrival rate of this operation, in requests per second.
+     */
+    /* package */ double getDefaultRate() {
+        return defaultRate;
+    }
+}
@@ -0,0 +1,101 @@
+package com.parabrisassi.sist.user_service.load_tests;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Results of one step of the load test (i.e a run with a given amount of client threads).
+ */
+/* package */ final class StepResult {
+
+    /**
+     * The amount of client threads.
+     */
+    private final int threads;
+
+    /**
+     * The amount of nanoseconds elapsed between the start of the measurement and the last recorded response.
+     */
+    private final long elapsedNanos;
+
+    /**
+     * The latency (in nanoseconds, measured from the intended start of each request) of each {@link Operation}.
+     */
+    private final Map<Operation, Histogram> latencies;
+
+    /**
+     * The amount of failed requests of each {@link Operation}.
+     */
+    private final Map<Operation, Long> errors;
+
+    /**
+     * The amount of requests that were scheduled but not performed, as the step timed out.
+     */
+    private final long dropped;
+
+    /**
+     * Constructor.
+     *
+     * @param threads      The amount of client threads.
+     * @param elapsedNanos The amount of nanoseconds elapsed between the start of the measurement
+     *                     and the last recorded response.
+     * @param latencies    The latency of each {@link Operation}.
+     * @param errors       The amount of failed requests of each {@link Operation}.
+     * @param dropped      The amount of requests that were scheduled but not performed.
+     */
+    /* package */ StepResult(int threads, long elapsedNanos, Map<Operation, Histogram> latencies,
+                             Map<Operation, Long> errors, long dropped) {
+        this.threads = threads;
+        this.elapsedNanos = elapsedNanos;
+        this.latencies = Collections.unmodifiableMap(latencies);
+        this.errors = Collections.unmodifiableMap(errors);
+        this.dropped = dropped;
+    }
+
+    /**
+     * @return The amount of client threads.
+     */
+    /* package */ int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return The latency (in nanoseconds) of each {@link Operation}.
+     */
+    /* package */ Map<Operation, Histogram> getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * @return The amount of failed requests of each {@link Operation}.
+     */
+    /* package */ Map<Operation, Long> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return The amount of requests that were scheduled but not performed, as the step timed out.
+     */
+    /* package */ long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Calculates the throughput of the given {@code operation}.
+     *
+     * @param operation The {@link Operation}.
+     * @return The amount of completed requests per second.
+     */
+    /* package */ double getThroughput(Operation operation) {
+        return elapsedNanos == 0 ? 0 : latencies.get(operation).getTotalCount() * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return The amount of completed requests (of all the operations) per second.
+     */
+    /* package */ double getTotalThroughput() {
+        return latencies.keySet().stream().mapToDouble(this::getThroughput).sum();
+    }
+}
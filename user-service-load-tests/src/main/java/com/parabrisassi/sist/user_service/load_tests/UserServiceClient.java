@@ -0,0 +1,215 @@
+package com.parabrisassi.sist.user_service.load_tests;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.springframework.util.Base64Utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * HTTP client for the user service API, performing the requests of the load test workload.
+ * Responses are fully consumed, so connections are always returned to the pool.
+ */
+/* package */ class UserServiceClient implements Closeable {
+
+    /**
+     * Header in which issued tokens are returned.
+     */
+    private static final String TOKEN_HEADER = "X-Token";
+
+    /**
+     * Size of the pages requested when searching users.
+     */
+    private static final int SEARCH_PAGE_SIZE = 20;
+
+    /**
+     * The base url of the API.
+     */
+    private final String baseUrl;
+
+    /**
+     * The {@link CloseableHttpClient} performing the requests.
+     */
+    private final CloseableHttpClient httpClient;
+
+    /**
+     * {@link ObjectMapper} used to build request bodies.
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Constructor.
+     *
+     * @param baseUrl        The base url of the API.
+     * @param maxConnections The max. amount of (pooled) connections.
+     */
+    /* package */ UserServiceClient(String baseUrl, int maxConnections) {
+        this.baseUrl = baseUrl;
+        this.httpClient = HttpClients.custom()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .disableCookieManagement()
+                .build();
+        this.objectMapper = new ObjectMapper();
+    }
+
+    /**
+     * Logs in with the given credentials.
+     *
+     * @param username The username.
+     * @param password The password.
+     * @return The response status code.
+     * @throws IOException If the request fails.
+     */
+    /* package */ int login(String username, String password) throws IOException {
+        return execute(loginRequest(username, password), response -> response.getStatusLine().getStatusCode());
+    }
+
+    /**
+     * Logs in with the given credentials, returning the issued token.
+     *
+     * @param username The username.
+     * @param password The password.
+     * @return The issued (encoded) token.
+     * @throws IOException           If the request fails.
+     * @throws IllegalStateException If the credentials are not accepted.
+     */
+    /* package */ String obtainToken(String username, String password) throws IOException, IllegalStateException {
+        return execute(loginRequest(username, password), response -> Optional
+                .ofNullable(response.getFirstHeader(TOKEN_HEADER))
+                .map(Header::getValue)
+                .orElseThrow(() -> new IllegalStateException("Could not log in as " + username
+                        + ". Status: " + response.getStatusLine().getStatusCode())));
+    }
+
+    /**
+     * Validates the token with the given {@code tokenId}.
+     *
+     * @param tokenId The token id.
+     * @return The response status code.
+     * @throws IOException If the request fails.
+     */
+    /* package */ int validateToken(long tokenId) throws IOException {
+        final String encodedId = Base64Utils.encodeToUrlSafeString(Long.toString(tokenId).getBytes());
+        return execute(new HttpGet(baseUrl + "/tokens/" + encodedId),
+                response -> response.getStatusLine().getStatusCode());
+    }
+
+    /**
+     * Gets the user with the given {@code username}.
+     *
+     * @param token    The token with which the request is authenticated.
+     * @param username The username.
+     * @return The response status code.
+     * @throws IOException If the request fails.
+     */
+    /* package */ int getUser(String token, String username) throws IOException {
+        final HttpGet request = new HttpGet(baseUrl + "/users/" + encode(username));
+        request.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        return execute(request, response -> response.getStatusLine().getStatusCode());
+    }
+
+    /**
+     * Searches the first page of users whose username matches the given {@code username}.
+     *
+     * @param token    The token with which the request is authenticated.
+     * @param username The username to match.
+     * @return The response status code.
+     * @throws IOException If the request fails.
+     */
+    /* package */ int searchUsers(String token, String username) throws IOException {
+        final HttpGet request;
+        try {
+            request = new HttpGet(new URIBuilder(baseUrl + "/users")
+                    .addParameter("username", username)
+                    .addParameter("size", Integer.toString(SEARCH_PAGE_SIZE))
+                    .build());
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid base url " + baseUrl, e);
+        }
+        request.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        return execute(request, response -> response.getStatusLine().getStatusCode());
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Builds a login request.
+     *
+     * @param username The username.
+     * @param password The password.
+     * @return The request.
+     * @throws JsonProcessingException If the body can not be built.
+     */
+    private HttpPost loginRequest(String username, String password) throws JsonProcessingException {
+        final Map<String, String> credentials = new HashMap<>();
+        credentials.put("username", username);
+        credentials.put("password", password);
+        final HttpPost request = new HttpPost(baseUrl + "/tokens");
+        request.setEntity(new StringEntity(objectMapper.writeValueAsString(credentials),
+                ContentType.APPLICATION_JSON));
+        return request;
+    }
+
+    /**
+     * Executes the given {@code request}, consuming the response.
+     *
+     * @param request         The request to be executed.
+     * @param responseHandler {@link Function} that takes the response and returns the result.
+     * @param <T>             The concrete type of the result.
+     * @return The result.
+     * @throws IOException If the request fails.
+     */
+    private <T> T execute(HttpUriRequest request, Function<HttpResponse, T> responseHandler) throws IOException {
+        return httpClient.execute(request, response -> {
+            try {
+                return responseHandler.apply(response);
+            } finally {
+                EntityUtils.consumeQuietly(response.getEntity());
+            }
+        });
+    }
+
+    /**
+     * Url encodes the given {@code value}.
+     *
+     * @param value The value to be encoded.
+     * @return The encoded value.
+     */
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is not supported", e);
+        }
+    }
+}
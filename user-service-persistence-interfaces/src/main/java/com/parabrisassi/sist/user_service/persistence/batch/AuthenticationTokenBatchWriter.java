@@ -0,0 +1,24 @@
+package com.parabrisassi.sist.user_service.persistence.batch;
+
+import com.parabrisassi.sist.user_service.models.AuthenticationToken;
+
+/**
+ * Defines behaviour of an object in charge of inserting {@link AuthenticationToken}s in batches
+ * (i.e concurrent insertions are grouped and written using one statement and one commit).
+ */
+public interface AuthenticationTokenBatchWriter {
+
+    /**
+     * Inserts the given {@link AuthenticationToken} together with other concurrent insertions,
+     * blocking until the batch it belongs to is committed.
+     * Note that the insertion is committed independently of any transaction the caller is running
+     * (so callers should not hold a connection while waiting, as the batch is written using another one).
+     * If the batch is not taken in time, the {@link AuthenticationToken} is inserted on its own.
+     *
+     * @param token The {@link AuthenticationToken} to be inserted.
+     * @return {@code true} if it was inserted, or {@code false} if its id is already in use.
+     * @throws org.springframework.dao.DataAccessException If the batch could not be written.
+     * @throws IllegalStateException                       If the writer was shut down.
+     */
+    boolean insert(AuthenticationToken token);
+}
@@ -5,8 +5,15 @@ import com.parabrisassi.sist.user_service.models.User;
 import com.parabrisassi.sist.user_service.persistence.custom_repositories.ExtendedJpaRepository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 /**
  * Defines behaviour of the DAO in charge of managing {@link AuthenticationToken}s data.
  */
@@ -22,4 +29,37 @@ public interface AuthenticationTokenDao extends ExtendedJpaRepository<Authentica
      * @return The resultant {@link Page}.
      */
     Page<AuthenticationToken> findByUser(User user, Pageable pageable);
+
+    /**
+     * Retrieves, among the given {@code ids}, those belonging to valid (i.e not blacklisted,
+     * and with the same token version as their {@link User}) {@link AuthenticationToken}s, using only one query.
+     *
+     * @param ids The ids of the {@link AuthenticationToken}s to be checked. Must not be empty.
+     * @return A {@link List} containing the ids of those valid {@link AuthenticationToken}s.
+     */
+    @Query("SELECT t.id FROM AuthenticationToken t JOIN t.user u " +
+            "WHERE t.id IN :ids AND t.valid = true AND t.tokenVersion = u.tokenVersion")
+    List<Long> findValidIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Retrieves the username of the {@link User} owning the {@link AuthenticationToken} with the given {@code id},
+     * using only one query (i.e without loading the {@link AuthenticationToken}, nor its {@link User}).
+     *
+     * @param id The id of the {@link AuthenticationToken}.
+     * @return A <b>nullable</b> {@link Optional} containing the owner's username
+     * if an {@link AuthenticationToken} exists with the given {@code id}, or empty otherwise.
+     */
+    @Query("SELECT u.username FROM AuthenticationToken t JOIN t.user u WHERE t.id = :id")
+    Optional<String> findOwnerUsername(@Param("id") long id);
+
+    /**
+     * Blacklists the {@link AuthenticationToken} with the given {@code id}, using only one statement
+     * (i.e without loading it).
+     *
+     * @param id The id of the {@link AuthenticationToken} to be blacklisted.
+     * @return The amount of blacklisted {@link AuthenticationToken}s (i.e zero if none exists with the given id).
+     */
+    @Modifying
+    @Query("UPDATE AuthenticationToken t SET t.valid = false WHERE t.id = :id")
+    int blacklist(@Param("id") long id);
 }
@@ -0,0 +1,50 @@
+package com.parabrisassi.sist.user_service.persistence.daos;
+
+import com.parabrisassi.sist.user_service.models.RefreshToken;
+import com.parabrisassi.sist.user_service.persistence.custom_repositories.ExtendedJpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Defines behaviour of the DAO in charge of managing {@link RefreshToken}s data.
+ */
+@Repository
+public interface RefreshTokenDao extends ExtendedJpaRepository<RefreshToken, Long> {
+
+    /**
+     * Retrieves the {@link RefreshToken} with the given {@code tokenHash}.
+     *
+     * @param tokenHash The hash of the {@link RefreshToken} value.
+     * @return A <b>nullable</b> {@link Optional} of {@link RefreshToken}
+     * containing the {@link RefreshToken} with the given {@code tokenHash} if it exists, or {@code null} otherwise.
+     */
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+
+    /**
+     * Marks the {@link RefreshToken} with the given {@code id} as used, if it was not used yet.
+     * The check and the update are performed in the same statement,
+     * so only one of many concurrent refreshes with the same token can succeed.
+     *
+     * @param id The id of the {@link RefreshToken} to be marked as used.
+     * @return The amount of updated rows (i.e {@code 1} if it was marked as used, or {@code 0} otherwise).
+     */
+    @Modifying
+    @Query("UPDATE RefreshToken t SET t.used = true WHERE t.id = :id AND t.used = false")
+    int markUsed(@Param("id") long id);
+
+    /**
+     * Removes those {@link RefreshToken}s that are already expired, whether used or not
+     * (used ones are kept until then to detect their reuse).
+     *
+     * @param now The {@link Instant} to be compared with the expiration.
+     * @return The amount of removed {@link RefreshToken}s.
+     */
+    @Modifying
+    @Query("DELETE FROM RefreshToken t WHERE t.expiresAt <= :now")
+    int deleteExpired(@Param("now") Instant now);
+}
@@ -0,0 +1,27 @@
+package com.parabrisassi.sist.user_service.persistence.daos;
+
+import com.parabrisassi.sist.user_service.models.RevokedToken;
+import com.parabrisassi.sist.user_service.persistence.custom_repositories.ExtendedJpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+
+/**
+ * Defines behaviour of the DAO in charge of managing {@link RevokedToken}s data (i.e the tokens deny-list).
+ */
+@Repository
+public interface RevokedTokenDao extends ExtendedJpaRepository<RevokedToken, Long> {
+
+    /**
+     * Removes those {@link RevokedToken}s whose tokens are already expired.
+     *
+     * @param now The {@link Instant} to be compared with the expiration.
+     * @return The amount of removed {@link RevokedToken}s.
+     */
+    @Modifying
+    @Query("DELETE FROM RevokedToken t WHERE t.expiresAt <= :now")
+    int deleteExpired(@Param("now") Instant now);
+}
@@ -2,6 +2,9 @@ package com.parabrisassi.sist.user_service.persistence.daos;
 
 import com.parabrisassi.sist.user_service.models.User;
 import com.parabrisassi.sist.user_service.persistence.custom_repositories.ExtendedJpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -10,22 +13,37 @@ import java.util.Optional;
  * Defines behaviour of the DAO in charge of managing {@link User}s data.
  */
 @Repository
-public interface UserDao extends ExtendedJpaRepository<User, Long> {
+public interface UserDao extends ExtendedJpaRepository<User, Long>, UserDaoCustom {
 
     /**
-     * Retrieves the {@link User} with the given {@code username}.
+     * Checks if a {@link User} exists with the given {@code username}.
+     *
+     * @param username The username to check if a {@link User} exists with.
+     * @return {@code true} if a {@link User} exists with the given {@code username}, or {@code false} otherwise.
+     */
+    boolean existsByUsername(String username);
+
+    /**
+     * Retrieves the token version of the {@link User} with the given {@code username},
+     * without loading the {@link User}.
      *
      * @param username The {@link User}'s username.
-     * @return A <b>nullable</b> {@link Optional} of {@link User}
-     * containing the {@link User} with the given {@code username} if it exists, or {@code null} otherwise.
+     * @return A <b>nullable</b> {@link Optional} containing the token version
+     * if a {@link User} exists with the given {@code username}, or empty otherwise.
      */
-    Optional<User> findByUsername(String username);
+    @Query("SELECT u.tokenVersion FROM User u WHERE u.username = :username")
+    Optional<Integer> findTokenVersionByUsername(@Param("username") String username);
 
     /**
-     * Checks if a {@link User} exists with the given {@code username}.
+     * Changes the username of the {@link User} with the given {@code oldUsername}, using only one statement
+     * (i.e without loading the {@link User}). The new username is not validated.
      *
-     * @param username The username to check if a {@link User} exists with.
-     * @return {@code true} if a {@link User} exists with the given {@code username}, or {@code false} otherwise.
+     * @param oldUsername The actual username of the {@link User} to be altered.
+     * @param newUsername The new username.
+     * @return The amount of changed {@link User}s (i.e zero if none exists with the given {@code oldUsername}).
+     * @throws org.springframework.dao.DataIntegrityViolationException If the new username is already in use.
      */
-    boolean existsByUsername(String username);
+    @Modifying
+    @Query("UPDATE User u SET u.username = :newUsername WHERE u.username = :oldUsername")
+    int changeUsername(@Param("oldUsername") String oldUsername, @Param("newUsername") String newUsername);
 }
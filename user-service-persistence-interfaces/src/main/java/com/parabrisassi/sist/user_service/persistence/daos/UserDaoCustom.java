@@ -0,0 +1,57 @@
+package com.parabrisassi.sist.user_service.persistence.daos;
+
+import com.parabrisassi.sist.user_service.models.Role;
+import com.parabrisassi.sist.user_service.models.User;
+import com.parabrisassi.sist.user_service.persistence.projections.UserProjection;
+
+import java.util.Optional;
+
+/**
+ * Defines behaviour of the {@link UserDao} that is not derived by Spring Data
+ * (i.e it is implemented by hand, in order to use the persistence provider's specific features).
+ */
+public interface UserDaoCustom {
+
+    /**
+     * Retrieves the {@link User} with the given {@code username}.
+     * The username is the {@link User}'s natural id, so it is resolved through the natural id cache
+     * (without querying the database if the {@link User} is cached).
+     *
+     * @param username The {@link User}'s username.
+     * @return A <b>nullable</b> {@link Optional} of {@link User}
+     * containing the {@link User} with the given {@code username} if it exists, or {@code null} otherwise.
+     */
+    Optional<User> findByUsername(String username);
+
+    /**
+     * Retrieves a {@link UserProjection} of the {@link User} with the given {@code username}, using only one query
+     * (i.e the {@link User} is not loaded, nor kept in the persistence context).
+     *
+     * @param username The {@link User}'s username.
+     * @return A <b>nullable</b> {@link Optional} of {@link UserProjection} containing the projection
+     * of the {@link User} with the given {@code username} if it exists, or {@code null} otherwise.
+     */
+    Optional<UserProjection> findProjectionByUsername(String username);
+
+    /**
+     * Adds the given {@code role} to the {@link User} with the given {@code username}, invalidating its tokens
+     * if it did not have it, using only one statement (i.e without loading the {@link User}).
+     *
+     * @param username The username of the {@link User} to which the given {@link Role} must be added.
+     * @param role     The {@link Role} to be added.
+     * @return The amount of {@link User}s whose roles changed
+     * (i.e zero if none exists with the given {@code username}, or if it already had the role).
+     */
+    int addRole(String username, Role role);
+
+    /**
+     * Removes the given {@code role} from the {@link User} with the given {@code username}, invalidating its tokens
+     * if it had it, using only one statement (i.e without loading the {@link User}).
+     *
+     * @param username The username of the {@link User} from which the given {@link Role} must be removed.
+     * @param role     The {@link Role} to be removed.
+     * @return The amount of {@link User}s whose roles changed
+     * (i.e zero if none exists with the given {@code username}, or if it did not have the role).
+     */
+    int removeRole(String username, Role role);
+}
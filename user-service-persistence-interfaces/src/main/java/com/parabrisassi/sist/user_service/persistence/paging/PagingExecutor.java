@@ -0,0 +1,61 @@
+package com.parabrisassi.sist.user_service.persistence.paging;
+
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Defines behaviour of an object in charge of querying pages of entities, counting them only when a total
+ * is requested (in the way defined by the configured {@link CountMode}).
+ */
+public interface PagingExecutor {
+
+    /**
+     * Retrieves a {@link Slice} of the entities satisfying the given {@code specification},
+     * according to the given {@code pageable}. Nothing is counted (i.e only one more element than requested
+     * is fetched, in order to know whether there is a next slice).
+     *
+     * @param entityClass   The class of the entities.
+     * @param specification The {@link Specification} the entities must satisfy.
+     * @param pageable      The {@link Pageable} used to set page stuff.
+     * @param <T>           The type of the entities.
+     * @return The resultant {@link Slice}.
+     */
+    <T> Slice<T> findSlice(Class<T> entityClass, Specification<T> specification, Pageable pageable);
+
+    /**
+     * Retrieves a {@link Page} of the entities satisfying the given {@code specification},
+     * according to the given {@code pageable}, whose total is obtained according to the configured {@link CountMode}.
+     * The total is not counted if it can be known from the page itself (i.e it is the last one).
+     *
+     * @param entityClass   The class of the entities.
+     * @param specification The {@link Specification} the entities must satisfy.
+     * @param filterKey     A key identifying the filter applied by the {@code specification}
+     *                      (i.e specifications with the same key must match the same entities),
+     *                      used to cache totals. If {@code null}, totals are not cached.
+     * @param pageable      The {@link Pageable} used to set page stuff.
+     * @param <T>           The type of the entities.
+     * @return The resultant {@link Page}.
+     */
+    <T> Page<T> findPage(Class<T> entityClass, Specification<T> specification, String filterKey,
+                         Pageable pageable);
+
+    /**
+     * Enum containing the ways in which totals can be obtained.
+     */
+    enum CountMode {
+        /**
+         * Totals are counted each time they are requested.
+         */
+        EXACT,
+        /**
+         * Totals are counted, and then reused (by entity, filter key and shard) until they reach a max. age.
+         */
+        CACHED,
+        /**
+         * Totals are the amount of rows estimated by the database's query planner (i.e nothing is counted).
+         */
+        ESTIMATED,
+    }
+}
@@ -0,0 +1,64 @@
+package com.parabrisassi.sist.user_service.persistence.projections;
+
+import com.parabrisassi.sist.user_service.models.Role;
+import com.parabrisassi.sist.user_service.models.User;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Read-only projection of a {@link User}, containing only the data needed to answer lookups
+ * (i.e it is not a managed entity, so nothing is kept in the persistence context when it is queried).
+ */
+public final class UserProjection {
+
+    /**
+     * The user's id.
+     */
+    private final long id;
+
+    /**
+     * The username.
+     */
+    private final String username;
+
+    /**
+     * The user's roles.
+     */
+    private final Set<Role> roles;
+
+    /**
+     * Constructor.
+     *
+     * @param id       The user's id.
+     * @param username The username.
+     * @param roles    The user's roles (copied).
+     */
+    public UserProjection(long id, String username, Set<Role> roles) {
+        this.id = id;
+        this.username = username;
+        this.roles = Collections.unmodifiableSet(roles.isEmpty() ? EnumSet.noneOf(Role.class) : EnumSet.copyOf(roles));
+    }
+
+    /**
+     * @return The user's id.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return The username.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return The user's roles (unmodifiable).
+     */
+    public Set<Role> getRoles() {
+        return roles;
+    }
+}
@@ -2,7 +2,9 @@ package com.parabrisassi.sist.user_service.persistence.query_helpers;
 
 import com.parabrisassi.sist.user_service.exceptions.InvalidPropertiesException;
 import com.parabrisassi.sist.user_service.models.AuthenticationToken;
+import com.parabrisassi.sist.user_service.models.User;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 
 /**
  * Defines behaviour of an object in charge of helping the task of querying {@link AuthenticationToken}s
@@ -10,12 +12,23 @@ import org.springframework.data.domain.Pageable;
  */
 public interface AuthenticationTokenQueryHelper {
 
+    /**
+     * Creates a new {@link Specification} of {@link AuthenticationToken} used to query those belonging
+     * to the given {@code user}.
+     *
+     * @param user The {@link User} owning the {@link AuthenticationToken}s.
+     * @return The {@link Specification} of {@link AuthenticationToken}
+     * that can be used to get those {@link AuthenticationToken}s belonging to the given {@code user}.
+     */
+    Specification<AuthenticationToken> createUserTokensSpecification(User user);
+
     /**
      * Validates that the given {@link Pageable} is valid for querying {@link AuthenticationToken}s.
      *
      * @param pageable The {@link Pageable} to be validated.
      * @throws InvalidPropertiesException If it has a {@link org.springframework.data.domain.Sort}
-     *                                    with invalid properties.
+     *                                    with invalid properties
+     *                                    (i.e not existing, not backed by an index, or ignoring case).
      */
     void validatePageable(Pageable pageable) throws InvalidPropertiesException;
 }
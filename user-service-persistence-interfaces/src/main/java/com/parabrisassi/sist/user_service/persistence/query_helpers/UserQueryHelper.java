@@ -6,6 +6,9 @@ import com.parabrisassi.sist.user_service.persistence.daos.UserDao;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 
+import java.util.Comparator;
+import java.util.Map;
+
 /**
  * Defines behaviour of an object in charge of helping the task of querying {@link User}s
  * by a {@link UserDao}.
@@ -29,7 +32,16 @@ public interface UserQueryHelper {
      *
      * @param pageable The {@link Pageable} to be validated.
      * @throws InvalidPropertiesException If it has a {@link org.springframework.data.domain.Sort}
-     *                                    with invalid properties.
+     *                                    with invalid properties
+     *                                    (i.e not existing, not backed by an index, or ignoring case).
      */
     void validatePageable(Pageable pageable) throws InvalidPropertiesException;
+
+    /**
+     * Gets the {@link Comparator}s used to sort {@link User}s in memory (e.g when merging those of several shards).
+     *
+     * @return A {@link Map} holding, for each property that can be used to sort {@link User}s,
+     * a {@link Comparator} that sorts them by it in ascending order (like the database does).
+     */
+    Map<String, Comparator<User>> getComparators();
 }
@@ -0,0 +1,46 @@
+package com.parabrisassi.sist.user_service.persistence.replication;
+
+import com.parabrisassi.sist.user_service.persistence.sharding.ShardKey;
+
+import java.util.function.Supplier;
+
+/**
+ * Defines behaviour of an object in charge of tracking, for each subject (i.e a username or an authentication
+ * token id, like {@link ShardKey}s), when it was last written, so reads of a subject that was recently written
+ * stay on the primary database instead of going to a read replica that might be lagging behind.
+ * <p>
+ * Writes and reads are attributed to the subject bound to the current thread (nothing is attributed if none
+ * is bound, so reads of other subjects keep going to the replicas). Methods with a {@link ShardKey} parameter
+ * have its value bound while they are called. Nothing is tracked if read replicas are disabled.
+ * <p>
+ * Writes are only tracked by the instance that made them, so reads of a subject written through another instance
+ * might still go to a replica that does not have the write yet.
+ */
+public interface ReadAfterWriteTracker {
+
+    /**
+     * Performs the given {@code action} with the given {@code subject} bound to the current thread.
+     *
+     * @param subject The subject (i.e a username, or an authentication token id).
+     * @param action  The action to be performed.
+     * @param <T>     The type of the action's result.
+     * @return The action's result.
+     */
+    <T> T onBehalfOf(Object subject, Supplier<T> action);
+
+    /**
+     * Records a write of the given {@code subject} (e.g one made by another thread, or on behalf of another
+     * subject), so reads of it stay on the primary database during the read after write window.
+     *
+     * @param subject The written subject.
+     */
+    void recordWrite(Object subject);
+
+    /**
+     * Indicates whether the subject bound to the current thread was written within the read after write window
+     * (i.e whether reads made on its behalf are served by the primary database).
+     *
+     * @return {@code true} if it was, or {@code false} otherwise (or if no subject is bound).
+     */
+    boolean isWithinWindow();
+}
@@ -0,0 +1,41 @@
+package com.parabrisassi.sist.user_service.persistence.sharding;
+
+import com.parabrisassi.sist.user_service.persistence.replication.ReadAfterWriteTracker;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indicates that the annotated parameter determines the shard holding the data a method works with.
+ * The shard is bound before the method is called (i.e before any transaction or permission check it has),
+ * so everything it does is performed in that shard. With read replicas, its value is also bound as the subject
+ * whose recent writes keep reads on the primary database (see {@link ReadAfterWriteTracker}).
+ * <p>
+ * Only methods of concrete classes are taken into account (i.e not those of interfaces).
+ */
+@Documented
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ShardKey {
+
+    /**
+     * @return The kind of key the annotated parameter is.
+     */
+    Kind value();
+
+    /**
+     * Kinds of shard keys.
+     */
+    enum Kind {
+        /**
+         * A username (i.e a {@link String}), whose hash determines the shard.
+         */
+        USERNAME,
+        /**
+         * An authentication token id (i.e a {@code long}), which encodes its shard.
+         */
+        TOKEN_ID,
+    }
+}
@@ -0,0 +1,122 @@
+package com.parabrisassi.sist.user_service.persistence.sharding;
+
+import com.parabrisassi.sist.user_service.exceptions.ValidationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Defines behaviour of an object in charge of routing data access to the shard holding the data.
+ * Users (and all their data, like credentials and tokens) are assigned to a shard by a stable hash
+ * of their username, and authentication token ids encode the shard of their owner.
+ * <p>
+ * Connections are obtained from the shard bound to the current thread (the first one if none is bound).
+ * Note that a transaction uses only one shard (i.e the one bound when it executes its first statement).
+ */
+public interface ShardRouter {
+
+    /**
+     * @return The amount of shards (one if sharding is disabled).
+     */
+    int getShardCount();
+
+    /**
+     * Gets the shard holding the user with the given {@code username}.
+     *
+     * @param username The username.
+     * @return The shard.
+     */
+    int shardOfUsername(String username);
+
+    /**
+     * Gets the shard holding the authentication token with the given {@code tokenId}.
+     *
+     * @param tokenId The token id.
+     * @return The shard.
+     */
+    int shardOfToken(long tokenId);
+
+    /**
+     * Creates a token id belonging to the given {@code shard} from the given {@code randomId}.
+     *
+     * @param randomId A random value.
+     * @param shard    The shard of the token's owner.
+     * @return The token id (the given {@code randomId} if sharding is disabled).
+     */
+    long encodeTokenId(long randomId, int shard);
+
+    /**
+     * Performs the given {@code action} with the given {@code shard} bound to the current thread.
+     * Note that an active transaction keeps using its shard (i.e this is meant to be used before any statement
+     * is executed, or outside transactions).
+     *
+     * @param shard  The shard.
+     * @param action The action to be performed.
+     * @param <T>    The type of the action's result.
+     * @return The action's result.
+     */
+    <T> T onShard(int shard, Supplier<T> action);
+
+    /**
+     * Performs the given {@code action} with the given {@code shard} bound to the current thread,
+     * in a new read-write transaction (suspending the current one, if any, which keeps using its own shard).
+     *
+     * @param shard  The shard.
+     * @param action The action to be performed.
+     * @param <T>    The type of the action's result.
+     * @return The action's result.
+     */
+    <T> T inNewTransaction(int shard, Supplier<T> action);
+
+    /**
+     * Performs the given {@code action} in each of the given {@code shards}, in parallel,
+     * each in its own read-only transaction (or in the caller's one if sharding is disabled).
+     *
+     * @param shards The shards.
+     * @param action An {@link IntFunction} that takes the shard, and performs the action in it.
+     * @param <T>    The type of the action's result.
+     * @return The result of each shard, by shard.
+     */
+    <T> Map<Integer, T> onShards(Collection<Integer> shards, IntFunction<T> action);
+
+    /**
+     * Gets the requested page of the results of a query performed in all the shards,
+     * merge-sorting (by the requested sort) the elements of each shard.
+     * Each shard is queried for all the elements up to the end of the requested page,
+     * so pages ending beyond {@code custom.persistence.sharding.max-scatter-depth} elements are rejected.
+     *
+     * @param pageable    The requested page.
+     * @param comparators A {@link Map} holding, for each property that can be used to sort,
+     *                    a {@link Comparator} that sorts elements by it in ascending order
+     *                    (like the database does, i.e with nulls last).
+     * @param query       A {@link Function} that performs the query in a shard, for the given page.
+     * @param <T>         The type of the elements.
+     * @return The requested page (whose total is the sum of the totals of each shard).
+     * @throws ValidationException If the requested page ends beyond the maximum depth.
+     */
+    <T> Page<T> findPageInAllShards(Pageable pageable, Map<String, Comparator<T>> comparators,
+                                    Function<Pageable, Page<T>> query) throws ValidationException;
+
+    /**
+     * Gets the requested slice of the results of a query performed in all the shards,
+     * like {@link #findPageInAllShards(Pageable, Map, Function)} does, but without counting them.
+     *
+     * @param pageable    The requested slice.
+     * @param comparators A {@link Map} holding, for each property that can be used to sort,
+     *                    a {@link Comparator} that sorts elements by it in ascending order
+     *                    (like the database does, i.e with nulls last).
+     * @param query       A {@link Function} that performs the query in a shard, for the given slice.
+     * @param <T>         The type of the elements.
+     * @return The requested slice (which has a next one if any shard has more elements).
+     * @throws ValidationException If the requested slice ends beyond the maximum depth.
+     */
+    <T> Slice<T> findSliceInAllShards(Pageable pageable, Map<String, Comparator<T>> comparators,
+                                      Function<Pageable, Slice<T>> query) throws ValidationException;
+}
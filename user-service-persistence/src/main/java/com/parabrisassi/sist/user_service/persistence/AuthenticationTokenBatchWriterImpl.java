@@ -0,0 +1,410 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import com.parabrisassi.sist.user_service.models.AuthenticationToken;
+import com.parabrisassi.sist.user_service.persistence.batch.AuthenticationTokenBatchWriter;
+import com.parabrisassi.sist.user_service.persistence.sharding.ShardRouter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Concrete implementation of {@link AuthenticationTokenBatchWriter}.
+ * A single writer thread takes pending insertions, waits up to the configured time (or until the configured
+ * max. batch size is reached) for more of them, and then writes all of them using one multi-row statement,
+ * which is committed once (i.e group commit). Batch sizes, write times and waiting times are exported as metrics.
+ * With sharding, insertions are grouped by shard, and each group is written as a batch in its shard.
+ * <p>
+ * Callers wait for their insertion for a bounded time: if the writer has not taken it by then (e.g the writer is
+ * stuck waiting for a connection), it is withdrawn and inserted by the caller on its own.
+ * Insertions are rejected once the writer is shut down.
+ */
+@Component
+public class AuthenticationTokenBatchWriterImpl implements AuthenticationTokenBatchWriter, DisposableBean {
+
+    /**
+     * The {@link Logger} object.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuthenticationTokenBatchWriterImpl.class);
+
+    /**
+     * Beginning of the insert statement, to which a values tuple is appended for each {@link AuthenticationToken}.
+     */
+    private static final String INSERT_PREFIX =
+            "INSERT INTO authentication_tokens (id, user_id, valid, token_version) VALUES ";
+
+    /**
+     * Values tuple of an {@link AuthenticationToken}.
+     */
+    private static final String VALUES_TUPLE = "(?, ?, ?, ?)";
+
+    /**
+     * End of the insert statement. Ids already in use are skipped, and the inserted ones are returned.
+     */
+    private static final String INSERT_SUFFIX = " ON CONFLICT (id) DO NOTHING RETURNING id";
+
+    /**
+     * {@link JdbcTemplate} used to write batches (each statement is committed on its own).
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * {@link ShardRouter} used to write each {@link AuthenticationToken} in the shard its id belongs to.
+     */
+    private final ShardRouter shardRouter;
+
+    /**
+     * Max. amount of {@link AuthenticationToken}s written in one batch.
+     */
+    private final int maxBatchSize;
+
+    /**
+     * Max. amount of nanoseconds to wait for more insertions before writing a batch.
+     */
+    private final long maxWait;
+
+    /**
+     * Max. amount of nanoseconds a caller waits for its insertion to be written before trying to insert it alone
+     * (which is only done if the writer thread has not taken it yet).
+     */
+    private final long insertTimeout;
+
+    /**
+     * Insertions waiting to be written.
+     */
+    private final BlockingQueue<PendingInsert> pendingInserts;
+
+    /**
+     * {@link ExecutorService} running the writer thread.
+     */
+    private final ExecutorService writerExecutor;
+
+    /**
+     * Indicates whether the writer thread was started (it is started with the first insertion).
+     */
+    private final AtomicBoolean started;
+
+    /**
+     * Indicates whether the writer was shut down (i.e insertions are rejected).
+     */
+    private volatile boolean shutDown;
+
+    /**
+     * Records the size of written batches.
+     */
+    private final DistributionSummary batchSizes;
+
+    /**
+     * Records the time taken to write batches.
+     */
+    private final Timer batchWrites;
+
+    /**
+     * Records the time callers wait until their insertion is committed.
+     */
+    private final Timer insertWaits;
+
+    @Autowired
+    public AuthenticationTokenBatchWriterImpl(JdbcTemplate jdbcTemplate, ShardRouter shardRouter,
+                                              @Value("${custom.persistence.token-batching.max-size}")
+                                                      int maxBatchSize,
+                                              @Value("${custom.persistence.token-batching.max-wait}") long maxWait,
+                                              @Value("${custom.persistence.token-batching.insert-timeout}")
+                                                      long insertTimeout) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("The max. batch size must be positive");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWait = TimeUnit.MILLISECONDS.toNanos(maxWait);
+        this.insertTimeout = TimeUnit.MILLISECONDS.toNanos(insertTimeout);
+        this.pendingInserts = new LinkedBlockingQueue<>();
+        this.writerExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "authentication-token-batch-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.started = new AtomicBoolean(false);
+
+        // Meters are registered in the global registry, to which any configured registry is added
+        this.batchSizes = DistributionSummary.builder("tokens.batch.size")
+                .description("Amount of authentication tokens written in one batch")
+                .register(Metrics.globalRegistry);
+        this.batchWrites = Timer.builder("tokens.batch.write")
+                .description("Time taken to write (and commit) a batch of authentication tokens")
+                .register(Metrics.globalRegistry);
+        this.insertWaits = Timer.builder("tokens.batch.wait")
+                .description("Time an authentication token insertion waits until its batch is committed")
+                .register(Metrics.globalRegistry);
+        Metrics.globalRegistry.gauge("tokens.batch.pending", pendingInserts, Collection::size);
+    }
+
+    @Override
+    public boolean insert(AuthenticationToken token) {
+        Objects.requireNonNull(token, "The token must not be null");
+        checkNotShutDown();
+        if (started.compareAndSet(false, true)) {
+            writerExecutor.execute(this::writeLoop);
+        }
+        final PendingInsert pendingInsert = new PendingInsert(token);
+        final long start = System.nanoTime();
+        pendingInserts.add(pendingInsert);
+        // Shutting down might have drained the queue before the insertion was added
+        if (shutDown && pendingInsert.withdraw()) {
+            throw new IllegalStateException("The batch writer was shut down");
+        }
+        try {
+            return pendingInsert.result.get(insertTimeout, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (pendingInsert.withdraw()) {
+                LOGGER.warn("The batch writer did not take an authentication token in time, so it is inserted alone");
+                return insertAlone(token);
+            }
+            return awaitTaken(pendingInsert);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the token to be inserted", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } finally {
+            insertWaits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        shutDown = true;
+        writerExecutor.shutdownNow();
+        final List<PendingInsert> remaining = new LinkedList<>();
+        pendingInserts.drainTo(remaining);
+        remaining.stream()
+                .filter(PendingInsert::withdraw)
+                .forEach(pending ->
+                        pending.result.completeExceptionally(new IllegalStateException("The batch writer was shut down")));
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * @throws IllegalStateException If the writer was shut down.
+     */
+    private void checkNotShutDown() throws IllegalStateException {
+        if (shutDown) {
+            throw new IllegalStateException("The batch writer was shut down");
+        }
+    }
+
+    /**
+     * Inserts the given {@code token} using its own statement, in the shard its id belongs to.
+     *
+     * @param token The {@link AuthenticationToken} to be inserted.
+     * @return {@code true} if it was inserted, or {@code false} if its id is already in use.
+     */
+    private boolean insertAlone(AuthenticationToken token) {
+        final Object[] args = {token.getId(), token.getUser().getId(), token.isValid(), token.getTokenVersion()};
+        return shardRouter.onShard(shardRouter.shardOfToken(token.getId()),
+                () -> !jdbcTemplate.queryForList(INSERT_PREFIX + VALUES_TUPLE + INSERT_SUFFIX, Long.class, args)
+                        .isEmpty());
+    }
+
+    /**
+     * Waits until the given {@code pendingInsert}, already taken by the writer thread, is written.
+     * The writer completes every insertion it takes (even if it fails), and waiting for its connection
+     * is bounded by the pool's max. wait, so this does not wait forever.
+     *
+     * @param pendingInsert The {@link PendingInsert} taken by the writer thread.
+     * @return {@code true} if it was inserted, or {@code false} if its id is already in use.
+     */
+    private boolean awaitTaken(PendingInsert pendingInsert) {
+        try {
+            return pendingInsert.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the token to be inserted", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * @param e An {@link ExecutionException} thrown when waiting for an insertion.
+     * @return The {@link RuntimeException} to be thrown to the caller.
+     */
+    private static RuntimeException unwrap(ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new IllegalStateException("Could not insert the token", cause);
+    }
+
+    /**
+     * Takes pending insertions and writes them in batches, until the writer thread is interrupted.
+     * Any error is reported to the callers of the batch being written, so the writer thread keeps running.
+     */
+    private void writeLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            final List<PendingInsert> batch = new ArrayList<>(maxBatchSize);
+            try {
+                takeBatch(batch);
+                batch.stream()
+                        .collect(Collectors.groupingBy(pending -> shardRouter.shardOfToken(pending.token.getId()),
+                                LinkedHashMap::new, Collectors.toList()))
+                        .forEach(this::writeShardBatch);
+            } catch (Throwable e) {
+                LOGGER.error("Unexpected error in the authentication token batch writer", e);
+                batch.forEach(pending -> pending.result.completeExceptionally(e));
+            }
+        }
+    }
+
+    /**
+     * Takes, into the given {@code batch}, pending insertions until the max. batch size is reached,
+     * or until the max. wait elapses after the first one is taken. Insertions already withdrawn by their callers
+     * are skipped.
+     *
+     * @param batch The {@link List} into which insertions are taken.
+     */
+    private void takeBatch(List<PendingInsert> batch) {
+        try {
+            PendingInsert first;
+            do {
+                first = pendingInserts.take();
+            } while (!first.take());
+            batch.add(first);
+            final long deadline = System.nanoTime() + maxWait;
+            while (batch.size() < maxBatchSize) {
+                final long remaining = deadline - System.nanoTime();
+                final PendingInsert next = remaining > 0 ?
+                        pendingInserts.poll(remaining, TimeUnit.NANOSECONDS) : pendingInserts.poll();
+                if (next == null) {
+                    break;
+                }
+                if (next.take()) {
+                    batch.add(next);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Already taken insertions are still written
+        }
+    }
+
+    /**
+     * Writes the given {@code batch} in the given {@code shard}.
+     *
+     * @param shard The shard to which all the {@link PendingInsert}s belong.
+     * @param batch The {@link PendingInsert}s to be written.
+     */
+    private void writeShardBatch(int shard, List<PendingInsert> batch) {
+        try {
+            shardRouter.onShard(shard, () -> {
+                writeBatch(batch);
+                return null;
+            });
+        } catch (Throwable e) {
+            LOGGER.error("Unexpected error in the authentication token batch writer", e);
+            batch.forEach(pending -> pending.result.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Writes the given {@code batch} using one statement, and completes each of the {@link PendingInsert}s.
+     *
+     * @param batch The {@link PendingInsert}s to be written.
+     */
+    private void writeBatch(List<PendingInsert> batch) {
+        // The same id can not be inserted twice in the same statement
+        final Map<Long, PendingInsert> insertsById = new LinkedHashMap<>();
+        batch.stream()
+                .filter(pending -> insertsById.putIfAbsent(pending.token.getId(), pending) != null)
+                .forEach(pending -> pending.result.complete(false));
+
+        final StringJoiner sql = new StringJoiner(", ", INSERT_PREFIX, INSERT_SUFFIX);
+        final List<Object> args = new ArrayList<>(insertsById.size() * 4);
+        insertsById.values().forEach(pending -> {
+            sql.add(VALUES_TUPLE);
+            args.add(pending.token.getId());
+            args.add(pending.token.getUser().getId());
+            args.add(pending.token.isValid());
+            args.add(pending.token.getTokenVersion());
+        });
+
+        final long start = System.nanoTime();
+        try {
+            final Set<Long> inserted =
+                    new HashSet<>(jdbcTemplate.queryForList(sql.toString(), Long.class, args.toArray()));
+            insertsById.forEach((id, pending) -> pending.result.complete(inserted.contains(id)));
+        } catch (Throwable e) {
+            LOGGER.warn("Could not write a batch of {} authentication tokens", insertsById.size(), e);
+            insertsById.values().forEach(pending -> pending.result.completeExceptionally(e));
+        } finally {
+            batchWrites.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSizes.record(insertsById.size());
+        }
+    }
+
+    /**
+     * An {@link AuthenticationToken} waiting to be inserted, together with the result of the insertion.
+     */
+    private static final class PendingInsert {
+
+        /**
+         * The {@link AuthenticationToken} to be inserted.
+         */
+        private final AuthenticationToken token;
+
+        /**
+         * Completed with {@code true} if the token is inserted, or {@code false} if its id is already in use.
+         */
+        private final CompletableFuture<Boolean> result;
+
+        /**
+         * Whether the insertion was taken by the writer thread ({@code true}) or withdrawn by its caller
+         * ({@code false}), or {@code null} if neither happened yet.
+         */
+        private final AtomicReference<Boolean> taken;
+
+        /**
+         * @param token The {@link AuthenticationToken} to be inserted.
+         */
+        private PendingInsert(AuthenticationToken token) {
+            this.token = token;
+            this.result = new CompletableFuture<>();
+            this.taken = new AtomicReference<>();
+        }
+
+        /**
+         * Marks this insertion as taken by the writer thread.
+         *
+         * @return {@code true} if it was taken, or {@code false} if it was already withdrawn.
+         */
+        private boolean take() {
+            return taken.compareAndSet(null, true);
+        }
+
+        /**
+         * Withdraws this insertion (i.e the writer thread will skip it when taking it from the queue).
+         *
+         * @return {@code true} if it was withdrawn, or {@code false} if it was already taken by the writer thread.
+         */
+        private boolean withdraw() {
+            return taken.compareAndSet(null, false);
+        }
+    }
+}
@@ -2,8 +2,10 @@ package com.parabrisassi.sist.user_service.persistence;
 
 import com.parabrisassi.sist.user_service.exceptions.InvalidPropertiesException;
 import com.parabrisassi.sist.user_service.models.AuthenticationToken;
+import com.parabrisassi.sist.user_service.models.User;
 import com.parabrisassi.sist.user_service.persistence.query_helpers.AuthenticationTokenQueryHelper;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Component;
 
 /**
@@ -12,8 +14,26 @@ import org.springframework.stereotype.Component;
 @Component
 public class AuthenticationTokenQueryHelperImpl implements AuthenticationTokenQueryHelper {
 
+    /**
+     * The sortable properties of {@link AuthenticationToken}s (built once, when this helper is created).
+     */
+    private final SortablePropertyRegistry sortableProperties;
+
+    /**
+     * Constructor.
+     */
+    public AuthenticationTokenQueryHelperImpl() {
+        this.sortableProperties = SortablePropertyRegistry.of(AuthenticationToken.class);
+    }
+
+    @Override
+    public Specification<AuthenticationToken> createUserTokensSpecification(User user) {
+        final long userId = user.getId();
+        return (root, query, cb) -> cb.equal(root.get("user").get("id"), userId);
+    }
+
     @Override
     public void validatePageable(Pageable pageable) throws InvalidPropertiesException {
-        PersistenceHelper.validatePageable(pageable, AuthenticationToken.class);
+        PersistenceHelper.validatePageable(pageable, sortableProperties);
     }
 }
@@ -0,0 +1,98 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jdbc.metadata.DataSourcePoolMetadata;
+import org.springframework.boot.autoconfigure.jdbc.metadata.DataSourcePoolMetadataProvider;
+import org.springframework.boot.autoconfigure.jdbc.metadata.DataSourcePoolMetadataProviders;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Component in charge of exporting gauges for the connection pool of the application's {@link DataSource}
+ * (i.e active, min. and max. connections, and usage). The pool implementation is resolved
+ * through Spring Boot's {@link DataSourcePoolMetadataProvider}s, so any supported pool can be measured.
+ * When read replicas or sharding are enabled, each of their pools is measured
+ * (gauges are tagged with the pool's name).
+ */
+@Component
+public class DataSourcePoolMetrics implements InitializingBean {
+
+    /**
+     * The application's {@link DataSource}.
+     */
+    private final DataSource dataSource;
+
+    /**
+     * The {@link DataSourcePoolMetadataProvider}s that can resolve the pool metadata.
+     */
+    private final Collection<DataSourcePoolMetadataProvider> metadataProviders;
+
+    /**
+     * The {@link MultiPoolDataSource} ({@code null} if neither read replicas nor sharding are enabled).
+     */
+    private final MultiPoolDataSource multiPoolDataSource;
+
+    /**
+     * The {@link DataSourcePoolMetadata} of each measured pool
+     * (kept here as gauges only hold weak references to the objects they measure).
+     */
+    private final List<DataSourcePoolMetadata> poolMetadata;
+
+    @Autowired
+    public DataSourcePoolMetrics(DataSource dataSource,
+                                 ObjectProvider<List<DataSourcePoolMetadataProvider>> metadataProviders,
+                                 ObjectProvider<MultiPoolDataSource> multiPoolDataSource) {
+        this.dataSource = dataSource;
+        final List<DataSourcePoolMetadataProvider> providers = metadataProviders.getIfAvailable();
+        this.metadataProviders = providers == null ? Collections.emptyList() : providers;
+        this.multiPoolDataSource = multiPoolDataSource.getIfAvailable();
+        this.poolMetadata = new ArrayList<>();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        final Map<String, DataSource> pools = multiPoolDataSource == null ?
+                Collections.singletonMap("primary", dataSource) : multiPoolDataSource.getPools();
+        final DataSourcePoolMetadataProviders providers = new DataSourcePoolMetadataProviders(metadataProviders);
+        pools.forEach((pool, poolDataSource) -> {
+            final DataSourcePoolMetadata metadata = providers.getDataSourcePoolMetadata(poolDataSource);
+            if (metadata == null) {
+                return; // Not a supported pool
+            }
+            poolMetadata.add(metadata);
+            registerGauge("db.pool.active", pool, metadata, DataSourcePoolMetadata::getActive);
+            registerGauge("db.pool.min", pool, metadata, DataSourcePoolMetadata::getMin);
+            registerGauge("db.pool.max", pool, metadata, DataSourcePoolMetadata::getMax);
+            registerGauge("db.pool.usage", pool, metadata, DataSourcePoolMetadata::getUsage);
+        });
+    }
+
+    /**
+     * Registers a gauge with the given {@code name}, whose value is taken from the given {@code metadata}.
+     *
+     * @param name     The gauge name.
+     * @param pool     The name of the pool (used as a tag).
+     * @param metadata The {@link DataSourcePoolMetadata}.
+     * @param getter   A {@link Function} that takes the value from the {@link DataSourcePoolMetadata}
+     *                 (which might be {@code null} if not known).
+     */
+    private static void registerGauge(String name, String pool, DataSourcePoolMetadata metadata,
+                                      Function<DataSourcePoolMetadata, Number> getter) {
+        Metrics.globalRegistry.gauge(name, Tags.of("pool", pool), metadata,
+                data -> Optional.ofNullable(getter.apply(data))
+                        .map(Number::doubleValue)
+                        .orElse(Double.NaN));
+    }
+}
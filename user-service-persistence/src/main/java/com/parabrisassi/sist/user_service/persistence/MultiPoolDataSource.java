@@ -0,0 +1,16 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Defines behaviour of a {@link DataSource} that gets connections from several pools
+ * (e.g one for each read replica or shard).
+ */
+/* package */ interface MultiPoolDataSource {
+
+    /**
+     * @return The pools, by name.
+     */
+    Map<String, DataSource> getPools();
+}
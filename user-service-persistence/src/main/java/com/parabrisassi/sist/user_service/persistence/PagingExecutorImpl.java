@@ -0,0 +1,589 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import com.parabrisassi.sist.user_service.instrumentation.RequestTimings;
+import com.parabrisassi.sist.user_service.persistence.paging.PagingExecutor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.hql.internal.ast.ASTQueryTranslatorFactory;
+import org.hibernate.hql.spi.QueryTranslator;
+import org.hibernate.jpa.internal.QueryImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.*;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Concrete implementation of {@link PagingExecutor}, which builds the queries from the {@link Specification}s
+ * (like {@link org.springframework.data.jpa.repository.JpaSpecificationExecutor} does).
+ * The {@link CountMode} is configured through the {@code custom.persistence.pagination.count-mode} property.
+ * <p>
+ * Cached totals are kept in memory for the configured max. age (they are not evicted when entities change),
+ * and estimated totals are taken from the {@code EXPLAIN} of the content query (as translated by Hibernate),
+ * so they are only as accurate as the database's statistics.
+ * <p>
+ * Totals can be counted in parallel with the content query (enabled through the
+ * {@code custom.persistence.pagination.parallel-count.enabled} property), in a read-only transaction of a dedicated
+ * pool of threads (i.e using another connection). That transaction imports the snapshot of the caller's one
+ * (exported when the page is requested), so the count sees the same data the content query sees. This only holds
+ * if the caller's transaction is (at least) repeatable read, as otherwise each of its statements takes a new snapshot,
+ * so totals are counted in parallel only for such transactions. It can not be used together with read replicas,
+ * as snapshots can only be imported in the server that exported them.
+ */
+@Component
+@Transactional(readOnly = true)
+public class PagingExecutorImpl implements PagingExecutor, DisposableBean {
+
+    /**
+     * The {@link Logger} object.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(PagingExecutorImpl.class);
+
+    /**
+     * {@link Pattern} matching the amount of rows estimated in the first line of a PostgreSQL query plan.
+     */
+    private static final Pattern ESTIMATED_ROWS = Pattern.compile("rows=(\\d+)");
+
+    /**
+     * Max. amount of query translations kept in memory. When reached, all of them are discarded.
+     */
+    private static final int MAX_TRANSLATIONS = 256;
+
+    /**
+     * The {@link EntityManager} used to query.
+     */
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * The way in which totals are obtained.
+     */
+    private final CountMode countMode;
+
+    /**
+     * Max. amount of milliseconds a cached total is reused.
+     */
+    private final long cachedCountMaxAge;
+
+    /**
+     * Max. amount of cached totals. When reached, all of them are discarded.
+     */
+    private final int cachedCountMaxEntries;
+
+    /**
+     * The cached totals.
+     */
+    private final Map<CountKey, CachedCount> cachedCounts;
+
+    /**
+     * The SQL translations of the queries whose totals were estimated, by HQL.
+     */
+    private final Map<String, QueryTranslator> translations;
+
+    /**
+     * Counts the totals obtained, by how they were obtained.
+     */
+    private final Map<String, Counter> totals;
+
+    /**
+     * {@link TransactionTemplate} used to count in parallel, in a new read-only transaction
+     * (repeatable read, as required to import a snapshot).
+     */
+    private final TransactionTemplate parallelCountTransactions;
+
+    /**
+     * {@link ExecutorService} running the parallel counts ({@code null} if they are disabled).
+     */
+    private final ExecutorService parallelCountExecutor;
+
+    /**
+     * Constructor.
+     *
+     * @param countMode             The way in which totals are obtained.
+     * @param maxAge                Max. amount of seconds a cached total is reused.
+     * @param maxEntries            Max. amount of cached totals.
+     * @param parallelCountEnabled  Indicates whether totals are counted in parallel with the content query.
+     * @param parallelCountThreads  Amount of threads counting in parallel.
+     * @param readReplicasEnabled   Indicates whether read replicas are enabled.
+     * @param transactionManager    The {@link PlatformTransactionManager} used to count in parallel.
+     * @throws IllegalStateException If parallel counts are enabled together with read replicas.
+     */
+    @Autowired
+    public PagingExecutorImpl(@Value("${custom.persistence.pagination.count-mode}") String countMode,
+                              @Value("${custom.persistence.pagination.cached-counts.max-age}") long maxAge,
+                              @Value("${custom.persistence.pagination.cached-counts.max-entries}") int maxEntries,
+                              @Value("${custom.persistence.pagination.parallel-count.enabled}")
+                                      boolean parallelCountEnabled,
+                              @Value("${custom.persistence.pagination.parallel-count.threads}")
+                                      int parallelCountThreads,
+                              @Value("${custom.persistence.read-replicas.enabled}") boolean readReplicasEnabled,
+                              PlatformTransactionManager transactionManager)
+            throws IllegalStateException {
+        Assert.isTrue(maxAge >= 0, "The cached counts max. age must not be negative");
+        Assert.isTrue(maxEntries > 0, "The cached counts max. entries must be positive");
+        if (parallelCountEnabled && readReplicasEnabled) {
+            throw new IllegalStateException("Parallel counts can not be enabled together with read replicas");
+        }
+        this.countMode = CountMode.valueOf(countMode.trim().toUpperCase(Locale.ROOT));
+        this.cachedCountMaxAge = maxAge * 1000;
+        this.cachedCountMaxEntries = maxEntries;
+        this.cachedCounts = new ConcurrentHashMap<>();
+        this.translations = new ConcurrentHashMap<>();
+        this.totals = new HashMap<>();
+        for (String source : Arrays.asList("counted", "cached", "estimated", "inferred")) {
+            this.totals.put(source, Counter.builder("pagination.totals")
+                    .description("Amount of page totals obtained, by how they were obtained")
+                    .tag("source", source)
+                    .register(Metrics.globalRegistry));
+        }
+        this.parallelCountTransactions = new TransactionTemplate(transactionManager);
+        this.parallelCountTransactions.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.parallelCountTransactions.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.parallelCountTransactions.setReadOnly(true);
+        if (!parallelCountEnabled) {
+            this.parallelCountExecutor = null;
+            return;
+        }
+        Assert.isTrue(parallelCountThreads > 0, "The amount of parallel count threads must be positive");
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.parallelCountExecutor = Executors.newFixedThreadPool(parallelCountThreads, runnable -> {
+            final Thread thread = new Thread(runnable, "parallel-count-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public <T> Slice<T> findSlice(Class<T> entityClass, Specification<T> specification, Pageable pageable) {
+        Assert.notNull(pageable, "The pageable must not be null");
+        final List<T> content = createContentQuery(entityClass, specification, pageable.getSort())
+                .setFirstResult(pageable.getOffset())
+                .setMaxResults(pageable.getPageSize() + 1) // The extra element tells whether there is a next slice
+                .getResultList();
+        final boolean hasNext = content.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? content.subList(0, pageable.getPageSize()) : content, pageable, hasNext);
+    }
+
+    @Override
+    public <T> Page<T> findPage(Class<T> entityClass, Specification<T> specification, String filterKey,
+                                Pageable pageable) {
+        Assert.notNull(pageable, "The pageable must not be null");
+        final Future<Long> parallelCount = startParallelCount(entityClass, specification, filterKey);
+        final List<T> content = createContentQuery(entityClass, specification, pageable.getSort())
+                .setFirstResult(pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+        if (content.size() < pageable.getPageSize() && (!content.isEmpty() || pageable.getOffset() == 0)) {
+            Optional.ofNullable(parallelCount).ifPresent(PagingExecutorImpl::awaitQuietly);
+            totals.get("inferred").increment();
+            // The last page, so the total is known
+            return new PageImpl<>(content, pageable, pageable.getOffset() + content.size());
+        }
+        final long total = parallelCount == null ?
+                getTotal(entityClass, specification, filterKey) :
+                awaitParallelCount(parallelCount, entityClass, specification, filterKey);
+        // Approximations must not contradict the content (e.g an estimate lower than the elements seen)
+        final long seen = content.isEmpty() ? 0 : pageable.getOffset() + content.size();
+        return new PageImpl<>(content, pageable, Math.max(seen, total));
+    }
+
+
+    @Override
+    public void destroy() {
+        if (parallelCountExecutor != null) {
+            parallelCountExecutor.shutdownNow();
+        }
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Starts counting the entities satisfying the given {@code specification} in parallel, if parallel counts
+     * are enabled, the total must be counted (i.e it is not estimated nor cached), and the current transaction
+     * is (at least) repeatable read (i.e the content query sees the snapshot exported for the count).
+     *
+     * @param entityClass   The class of the entities.
+     * @param specification The {@link Specification} the entities must satisfy.
+     * @param filterKey     The key identifying the filter applied by the {@code specification}.
+     * @param <T>           The type of the entities.
+     * @return A {@link Future} of the amount of entities, or {@code null} if they are not counted in parallel.
+     */
+    private <T> Future<Long> startParallelCount(Class<T> entityClass, Specification<T> specification,
+                                                String filterKey) {
+        final boolean cached = countMode == CountMode.CACHED && filterKey != null
+                && getCachedCount(entityClass, filterKey) != null;
+        if (parallelCountExecutor == null || countMode == CountMode.ESTIMATED || cached
+                || !isRepeatableRead(TransactionSynchronizationManager.getCurrentTransactionIsolationLevel())) {
+            return null;
+        }
+        final String snapshot = entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT pg_export_snapshot()");
+                 ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getString(1);
+            }
+        });
+        final RequestTimings timings = RequestTimings.current().orElse(null);
+        final int shard = ShardRouterImpl.currentShard();
+        return parallelCountExecutor.submit(() -> {
+            RequestTimings.bind(timings);
+            final Integer previous = ShardRouterImpl.bind(shard);
+            try {
+                return parallelCountTransactions.execute(status -> {
+                    entityManager.unwrap(Session.class).doWork(connection -> {
+                        try (PreparedStatement statement =
+                                     connection.prepareStatement("SET TRANSACTION SNAPSHOT '" + snapshot + "'")) {
+                            statement.execute();
+                        }
+                    });
+                    return count(entityClass, specification);
+                });
+            } finally {
+                ShardRouterImpl.restore(previous);
+                RequestTimings.finish();
+            }
+        });
+    }
+
+    /**
+     * Indicates whether the given isolation level is (at least) repeatable read.
+     *
+     * @param isolationLevel The isolation level (i.e a {@link TransactionDefinition} constant),
+     *                       or {@code null} if it is the database's default one (i.e read committed).
+     * @return {@code true} if it is, or {@code false} otherwise.
+     */
+    private static boolean isRepeatableRead(Integer isolationLevel) {
+        return isolationLevel != null && isolationLevel >= TransactionDefinition.ISOLATION_REPEATABLE_READ;
+    }
+
+    /**
+     * Waits for the given parallel count, caching its result if needed.
+     * If it failed (e.g no connection could be obtained), entities are counted in the caller's transaction.
+     *
+     * @param parallelCount The {@link Future} of the parallel count.
+     * @param entityClass   The class of the entities.
+     * @param specification The {@link Specification} the entities must satisfy.
+     * @param filterKey     The key identifying the filter applied by the {@code specification}.
+     * @param <T>           The type of the entities.
+     * @return The total.
+     */
+    private <T> long awaitParallelCount(Future<Long> parallelCount, Class<T> entityClass,
+                                        Specification<T> specification, String filterKey) {
+        try {
+            final long total = parallelCount.get();
+            totals.get("counted").increment();
+            if (countMode == CountMode.CACHED && filterKey != null) {
+                cacheCount(entityClass, filterKey, total);
+            }
+            return total;
+        } catch (InterruptedException e) {
+            parallelCount.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a parallel count", e);
+        } catch (ExecutionException e) {
+            LOGGER.warn("Could not count in parallel. Counting in the caller's transaction", e.getCause());
+            return getTotal(entityClass, specification, filterKey);
+        }
+    }
+
+    /**
+     * Waits for the given parallel count, whose result is not needed. It is not cancelled, as the caller's
+     * transaction must not end (i.e its snapshot must be available) until the count has imported the snapshot.
+     *
+     * @param parallelCount The {@link Future} of the parallel count.
+     */
+    private static void awaitQuietly(Future<Long> parallelCount) {
+        try {
+            parallelCount.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.debug("Could not count in parallel, but the total was not needed", e.getCause());
+        }
+    }
+
+    /**
+     * Obtains the total of entities satisfying the given {@code specification}, according to the {@link CountMode}.
+     *
+     * @param entityClass   The class of the entities.
+     * @param specification The {@link Specification} the entities must satisfy.
+     * @param filterKey     The key identifying the filter applied by the {@code specification}
+     *                      (totals are not cached if it is {@code null}).
+     * @param <T>           The type of the entities.
+     * @return The total.
+     */
+    private <T> long getTotal(Class<T> entityClass, Specification<T> specification, String filterKey) {
+        if (countMode == CountMode.ESTIMATED) {
+            totals.get("estimated").increment();
+            return estimate(createContentQuery(entityClass, specification, null));
+        }
+        if (countMode == CountMode.EXACT || filterKey == null) {
+            totals.get("counted").increment();
+            return count(entityClass, specification);
+        }
+        final Long cached = getCachedCount(entityClass, filterKey);
+        if (cached != null) {
+            totals.get("cached").increment();
+            return cached;
+        }
+        totals.get("counted").increment();
+        final long total = count(entityClass, specification);
+        cacheCount(entityClass, filterKey, total);
+        return total;
+    }
+
+    /**
+     * Gets the cached total of the given entities (in the current shard), if it has not reached the max. age.
+     *
+     * @param entityClass The class of the entities.
+     * @param filterKey   The key identifying the filter applied to the entities.
+     * @return The cached total, or {@code null} if there is none.
+     */
+    private Long getCachedCount(Class<?> entityClass, String filterKey) {
+        final CachedCount cached =
+                cachedCounts.get(new CountKey(entityClass, filterKey, ShardRouterImpl.currentShard()));
+        return cached != null && System.currentTimeMillis() - cached.countedAt < cachedCountMaxAge ?
+                cached.total : null;
+    }
+
+    /**
+     * Caches the given {@code total} of the given entities (in the current shard).
+     *
+     * @param entityClass The class of the entities.
+     * @param filterKey   The key identifying the filter applied to the entities.
+     * @param total       The total.
+     */
+    private void cacheCount(Class<?> entityClass, String filterKey, long total) {
+        if (cachedCounts.size() >= cachedCountMaxEntries) {
+            cachedCounts.clear();
+        }
+        cachedCounts.put(new CountKey(entityClass, filterKey, ShardRouterImpl.currentShard()),
+                new CachedCount(total, System.currentTimeMillis()));
+    }
+
+    /**
+     * Creates the query of the entities satisfying the given {@code specification}.
+     *
+     * @param entityClass   The class of the entities.
+     * @param specification The {@link Specification} the entities must satisfy (might be {@code null}).
+     * @param sort          The {@link Sort} of the entities (might be {@code null}).
+     * @param <T>           The type of the entities.
+     * @return The {@link TypedQuery}.
+     */
+    private <T> TypedQuery<T> createContentQuery(Class<T> entityClass, Specification<T> specification, Sort sort) {
+        final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<T> query = cb.createQuery(entityClass);
+        final Root<T> root = query.from(entityClass);
+        Optional.ofNullable(specification)
+                .map(spec -> spec.toPredicate(root, query, cb))
+                .ifPresent(query::where);
+        query.select(root);
+        if (sort != null) {
+            query.orderBy(QueryUtils.toOrders(sort, root, cb));
+        }
+        return entityManager.createQuery(query);
+    }
+
+    /**
+     * Counts the entities satisfying the given {@code specification}.
+     *
+     * @param entityClass   The class of the entities.
+     * @param specification The {@link Specification} the entities must satisfy (might be {@code null}).
+     * @param <T>           The type of the entities.
+     * @return The amount of entities.
+     */
+    private <T> long count(Class<T> entityClass, Specification<T> specification) {
+        final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        final Root<T> root = query.from(entityClass);
+        final Predicate predicate = specification == null ? null : specification.toPredicate(root, query, cb);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        query.select(query.isDistinct() ? cb.countDistinct(root) : cb.count(root));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    /**
+     * Obtains the amount of rows the database's query planner estimates the given {@code query} returns.
+     *
+     * @param query The query.
+     * @return The estimated amount of rows.
+     */
+    private long estimate(TypedQuery<?> query) {
+        final org.hibernate.Query hibernateQuery = query.unwrap(org.hibernate.Query.class);
+        final QueryImpl<?> jpaQuery = query.unwrap(QueryImpl.class);
+        final QueryTranslator translator = getTranslator(hibernateQuery.getQueryString());
+        final List<Object> values = new ArrayList<>();
+        for (String name : hibernateQuery.getNamedParameters()) {
+            final Object value = toJdbcValue(jpaQuery.getParameterValue(name));
+            for (int location : translator.getParameterTranslations().getNamedParameterSqlLocations(name)) {
+                while (values.size() <= location) {
+                    values.add(null);
+                }
+                values.set(location, value);
+            }
+        }
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + translator.getSQLString())) {
+                for (int i = 0; i < values.size(); i++) {
+                    statement.setObject(i + 1, values.get(i));
+                }
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    final Matcher matcher = ESTIMATED_ROWS.matcher(resultSet.next() ? resultSet.getString(1) : "");
+                    return matcher.find() ? Long.parseLong(matcher.group(1)) : 0L;
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the SQL translation of the given HQL {@code query}, translating it if it was not translated before.
+     *
+     * @param query The HQL query.
+     * @return The {@link QueryTranslator} holding the translation.
+     */
+    private QueryTranslator getTranslator(String query) {
+        final QueryTranslator cached = translations.get(query);
+        if (cached != null) {
+            return cached;
+        }
+        final SessionFactoryImplementor sessionFactory =
+                (SessionFactoryImplementor) entityManager.unwrap(Session.class).getSessionFactory();
+        final QueryTranslator translator = new ASTQueryTranslatorFactory()
+                .createQueryTranslator(query, query, Collections.emptyMap(), sessionFactory, null);
+        translator.compile(Collections.emptyMap(), false);
+        if (translations.size() >= MAX_TRANSLATIONS) {
+            translations.clear();
+        }
+        translations.put(query, translator);
+        return translator;
+    }
+
+    /**
+     * Converts the given query parameter {@code value} into the value bound to the SQL statement
+     * (i.e entities are bound by their id, and enums by their name).
+     *
+     * @param value The parameter value.
+     * @return The value to be bound.
+     */
+    private Object toJdbcValue(Object value) {
+        if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        }
+        if (value != null && ((Class<?>) Hibernate.getClass(value)).isAnnotationPresent(Entity.class)) {
+            return entityManager.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(value);
+        }
+        return value;
+    }
+
+    /**
+     * Identifies a cached total.
+     */
+    private static final class CountKey {
+
+        /**
+         * The class of the counted entities.
+         */
+        private final Class<?> entityClass;
+
+        /**
+         * The key identifying the filter applied to the counted entities.
+         */
+        private final String filterKey;
+
+        /**
+         * The shard in which entities were counted.
+         */
+        private final int shard;
+
+        /**
+         * @param entityClass The class of the counted entities.
+         * @param filterKey   The key identifying the filter applied to the counted entities.
+         * @param shard       The shard in which entities were counted.
+         */
+        private CountKey(Class<?> entityClass, String filterKey, int shard) {
+            this.entityClass = entityClass;
+            this.filterKey = filterKey;
+            this.shard = shard;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CountKey)) {
+                return false;
+            }
+            final CountKey that = (CountKey) o;
+            return shard == that.shard && entityClass.equals(that.entityClass) && filterKey.equals(that.filterKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(entityClass, filterKey, shard);
+        }
+    }
+
+    /**
+     * A total, together with the moment it was counted.
+     */
+    private static final class CachedCount {
+
+        /**
+         * The total.
+         */
+        private final long total;
+
+        /**
+         * The moment (in milliseconds since epoch) at which the total was counted.
+         */
+        private final long countedAt;
+
+        /**
+         * @param total     The total.
+         * @param countedAt The moment (in milliseconds since epoch) at which the total was counted.
+         */
+        private CachedCount(long total, long countedAt) {
+            this.total = total;
+            this.countedAt = countedAt;
+        }
+    }
+}
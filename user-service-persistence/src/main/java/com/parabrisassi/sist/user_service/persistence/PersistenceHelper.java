@@ -10,7 +10,6 @@ import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import javax.persistence.metamodel.EntityType;
-import java.lang.reflect.Field;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -53,27 +52,26 @@ import java.util.stream.StreamSupport;
     }
 
     /**
-     * Validates that the given {@link Pageable} is valid for querying entities of the given {@code klass}.
+     * Validates that the given {@link Pageable} is valid for querying entities
+     * whose sortable properties are registered in the given {@code sortableProperties}.
+     * Orders are valid if they use a sortable property (i.e backed by an index), and are not case insensitive
+     * (as indexes can not be used to sort ignoring case).
      *
-     * @param pageable The {@link Pageable} to be validated.
-     * @param klass    The class representing the entity.
-     * @param <T>      The concrete type of the entities.
+     * @param pageable           The {@link Pageable} to be validated.
+     * @param sortableProperties The {@link SortablePropertyRegistry} of the entity.
      * @throws InvalidPropertiesException If it has a {@link org.springframework.data.domain.Sort}
      *                                    with invalid properties.
      */
-    static <T> void validatePageable(Pageable pageable, Class<T> klass) throws InvalidPropertiesException {
+    static void validatePageable(Pageable pageable, SortablePropertyRegistry sortableProperties)
+            throws InvalidPropertiesException {
         final Sort sort = pageable.getSort();
         if (sort == null) {
             return;
         }
-        final Set<String> properties = Arrays.stream(klass.getDeclaredFields())
-                .map(Field::getName)
-                .collect(Collectors.toSet());
-
         final List<String> invalidProperties = StreamSupport.stream(Spliterators
                 .spliteratorUnknownSize(sort.iterator(), Spliterator.ORDERED), false)
+                .filter(order -> order.isIgnoreCase() || !sortableProperties.isSortable(order.getProperty()))
                 .map(Sort.Order::getProperty)
-                .filter(property -> !properties.contains(property))
                 .collect(Collectors.toList());
 
         if (!invalidProperties.isEmpty()) {
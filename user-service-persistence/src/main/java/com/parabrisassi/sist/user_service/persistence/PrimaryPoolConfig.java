@@ -0,0 +1,43 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DatabaseDriver;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration class to set up the primary database's pool configuration when the application's
+ * {@link javax.sql.DataSource} is not the auto-configured one (i.e with read replicas or sharding),
+ * so the rest of the pools are configured the same way.
+ */
+@Configuration
+@ConditionalOnExpression("${custom.persistence.read-replicas.enabled:false} " +
+        "or ${custom.persistence.sharding.enabled:false}")
+public class PrimaryPoolConfig {
+
+    /**
+     * Creates the configuration of the primary database's pool, like Spring Boot does when it creates the pool
+     * (i.e taking the {@code spring.datasource.tomcat} properties).
+     *
+     * @param properties The {@link DataSourceProperties} of the primary database.
+     * @return The {@link PoolProperties} of the primary database's pool.
+     */
+    @Bean
+    @ConfigurationProperties(prefix = "spring.datasource.tomcat")
+    public PoolProperties primaryPoolProperties(DataSourceProperties properties) {
+        final PoolProperties poolProperties = new PoolProperties();
+        poolProperties.setDriverClassName(properties.determineDriverClassName());
+        poolProperties.setUrl(properties.determineUrl());
+        poolProperties.setUsername(properties.determineUsername());
+        poolProperties.setPassword(properties.determinePassword());
+        final String validationQuery = DatabaseDriver.fromJdbcUrl(properties.determineUrl()).getValidationQuery();
+        if (validationQuery != null) {
+            poolProperties.setTestOnBorrow(true);
+            poolProperties.setValidationQuery(validationQuery);
+        }
+        return poolProperties;
+    }
+}
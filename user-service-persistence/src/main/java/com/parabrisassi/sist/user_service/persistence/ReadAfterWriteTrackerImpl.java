@@ -0,0 +1,129 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import com.parabrisassi.sist.user_service.persistence.replication.ReadAfterWriteTracker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Concrete implementation of {@link ReadAfterWriteTracker}, used by the {@link ReadReplicaRoutingDataSource}.
+ * The moment of the last write of each subject is kept in memory until the window after it closes
+ * (expired entries are removed, at most once per window, while recording writes).
+ */
+@Component
+public class ReadAfterWriteTrackerImpl implements ReadAfterWriteTracker {
+
+    /**
+     * The subject bound to each thread ({@code null} if none is bound).
+     */
+    private static final ThreadLocal<Object> BOUND_SUBJECT = new ThreadLocal<>();
+
+    /**
+     * Indicates whether read replicas are enabled (if not, nothing is tracked).
+     */
+    private final boolean enabled;
+
+    /**
+     * Amount of nanoseconds reads of a subject stay on the primary after it is written.
+     */
+    private final long window;
+
+    /**
+     * The moment (in {@link System#nanoTime()} terms) of the last write of each subject written within the window.
+     */
+    private final ConcurrentMap<Object, Long> lastWrites;
+
+    /**
+     * The moment (in {@link System#nanoTime()} terms) from which expired entries can be removed again.
+     */
+    private final AtomicLong nextExpiration;
+
+    @Autowired
+    public ReadAfterWriteTrackerImpl(@Value("${custom.persistence.read-replicas.enabled}") boolean enabled,
+                                     @Value("${custom.persistence.read-replicas.read-after-write-window}")
+                                             long readAfterWriteWindow) {
+        Assert.isTrue(readAfterWriteWindow >= 0, "The read after write window must not be negative");
+        this.enabled = enabled;
+        this.window = TimeUnit.MILLISECONDS.toNanos(readAfterWriteWindow);
+        this.lastWrites = new ConcurrentHashMap<>();
+        this.nextExpiration = new AtomicLong(System.nanoTime() + window);
+    }
+
+    @Override
+    public <T> T onBehalfOf(Object subject, Supplier<T> action) {
+        Assert.notNull(subject, "The subject must not be null");
+        final Object previous = bind(subject);
+        try {
+            return action.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    @Override
+    public void recordWrite(Object subject) {
+        if (!enabled || subject == null) {
+            return;
+        }
+        final long now = System.nanoTime();
+        lastWrites.put(subject, now);
+        final long expiration = nextExpiration.get();
+        if (now - expiration >= 0 && nextExpiration.compareAndSet(expiration, now + window)) {
+            lastWrites.values().removeIf(lastWrite -> now - lastWrite >= window);
+        }
+    }
+
+    @Override
+    public boolean isWithinWindow() {
+        final Object subject = BOUND_SUBJECT.get();
+        if (!enabled || subject == null) {
+            return false;
+        }
+        final Long lastWrite = lastWrites.get(subject);
+        return lastWrite != null && System.nanoTime() - lastWrite < window;
+    }
+
+
+    // ================================
+    // Subject binding
+    // ================================
+
+    /**
+     * Binds the given {@code subject} to the current thread.
+     *
+     * @param subject The subject.
+     * @return The subject bound before (to be restored with {@link #restore(Object)}), or {@code null} if none.
+     */
+    /* package */ static Object bind(Object subject) {
+        final Object previous = BOUND_SUBJECT.get();
+        BOUND_SUBJECT.set(subject);
+        return previous;
+    }
+
+    /**
+     * Restores the given subject binding (i.e that returned by {@link #bind(Object)}).
+     *
+     * @param previous The subject bound before, or {@code null} if none.
+     */
+    /* package */ static void restore(Object previous) {
+        if (previous == null) {
+            BOUND_SUBJECT.remove();
+        } else {
+            BOUND_SUBJECT.set(previous);
+        }
+    }
+
+    /**
+     * @return The subject bound to the current thread, or {@code null} if none is bound.
+     */
+    /* package */ static Object boundSubject() {
+        return BOUND_SUBJECT.get();
+    }
+}
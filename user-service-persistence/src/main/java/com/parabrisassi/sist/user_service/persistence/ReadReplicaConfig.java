@@ -0,0 +1,42 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+
+/**
+ * Configuration class to set up read replicas, replacing the auto-configured {@link DataSource}
+ * with one that routes read-only transactions to them (see {@link ReadReplicaRoutingDataSource}).
+ * Enabled through the {@code custom.persistence.read-replicas.enabled} property.
+ */
+@Configuration
+@ConditionalOnProperty(name = "custom.persistence.read-replicas.enabled", havingValue = "true")
+public class ReadReplicaConfig {
+
+    /**
+     * Creates the application's {@link DataSource}, which routes read-only transactions to the read replicas.
+     * It is the only {@link DataSource} bean, so everything else (e.g Flyway) uses it.
+     *
+     * @param primaryPoolProperties The {@link PoolProperties} of the primary database's pool
+     *                              (see {@link PrimaryPoolConfig}), like which replica pools are configured.
+     * @param replicaUrls           The urls of the read replicas.
+     * @param readAfterWriteTracker The {@link ReadAfterWriteTrackerImpl} that tells which reads must stay
+     *                              on the primary.
+     * @param healthCheckInterval   Amount of seconds between replica health checks.
+     * @return The {@link ReadReplicaRoutingDataSource}.
+     */
+    @Bean
+    /* package */ ReadReplicaRoutingDataSource dataSource(
+            PoolProperties primaryPoolProperties,
+            @Value("${custom.persistence.read-replicas.urls}") String[] replicaUrls,
+            ReadAfterWriteTrackerImpl readAfterWriteTracker,
+            @Value("${custom.persistence.read-replicas.health-check-interval}") long healthCheckInterval) {
+        return new ReadReplicaRoutingDataSource(primaryPoolProperties, Arrays.asList(replicaUrls),
+                readAfterWriteTracker, healthCheckInterval);
+    }
+}
@@ -0,0 +1,307 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import com.parabrisassi.sist.user_service.persistence.replication.ReadAfterWriteTracker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.tomcat.jdbc.pool.PoolConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link DataSource} that routes connections of read-only transactions to read replicas (in round-robin),
+ * and the rest of them to the primary database (it owns the pools of all of them). Reads of a subject (e.g a user)
+ * stay on the primary while any replica could be lagging behind a write of it (see {@link ReadAfterWriteTracker}),
+ * so writes do not hold back the reads of other subjects. Write connections are attributed to the subject bound
+ * when they are obtained, and its window starts again when they are released.
+ * <p>
+ * Replicas are checked periodically, and those that can not be connected to are skipped until they recover.
+ * If no replica is healthy, reads go to the primary. Replica pools are configured like the primary's one,
+ * except for their url (i.e they use the same credentials).
+ * <p>
+ * Transactions get their connection when they begin, before being marked as read-only, so connections are routed
+ * lazily (i.e when the first statement is executed), as done by {@link LazyConnectionDataSourceProxy}.
+ */
+/* package */ class ReadReplicaRoutingDataSource extends LazyConnectionDataSourceProxy
+        implements MultiPoolDataSource, DisposableBean {
+
+    /**
+     * The {@link Logger} object.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReadReplicaRoutingDataSource.class);
+
+    /**
+     * Name of the primary database (used to tag metrics).
+     */
+    private static final String PRIMARY = "primary";
+
+    /**
+     * Max. amount of seconds a health check waits for a replica to answer.
+     */
+    private static final int HEALTH_CHECK_TIMEOUT = 2;
+
+    /**
+     * The primary database's pool.
+     */
+    private final org.apache.tomcat.jdbc.pool.DataSource primary;
+
+    /**
+     * The read replicas.
+     */
+    private final List<Replica> replicas;
+
+    /**
+     * The {@link ReadAfterWriteTrackerImpl} that tells which reads must stay on the primary.
+     */
+    private final ReadAfterWriteTrackerImpl readAfterWriteTracker;
+
+    /**
+     * Amount of seconds between replica health checks.
+     */
+    private final long healthCheckInterval;
+
+    /**
+     * Index of the next replica to be used (modulo the amount of replicas).
+     */
+    private final AtomicInteger nextReplica;
+
+    /**
+     * Counts the connections given from the primary.
+     */
+    private final Counter primaryConnections;
+
+    /**
+     * {@link ScheduledExecutorService} running the health checks.
+     */
+    private final ScheduledExecutorService healthChecker;
+
+    /**
+     * Constructor.
+     *
+     * @param primaryConfiguration The {@link PoolConfiguration} of the primary database's pool.
+     * @param replicaUrls          The urls of the read replicas.
+     * @param readAfterWriteTracker The {@link ReadAfterWriteTrackerImpl} that tells which reads must stay
+     *                              on the primary.
+     * @param healthCheckInterval  Amount of seconds between replica health checks.
+     */
+    /* package */ ReadReplicaRoutingDataSource(PoolConfiguration primaryConfiguration, Collection<String> replicaUrls,
+                                               ReadAfterWriteTrackerImpl readAfterWriteTracker,
+                                               long healthCheckInterval) {
+        Assert.notNull(primaryConfiguration, "The primary pool configuration must not be null");
+        Assert.notEmpty(replicaUrls, "At least one replica url must be given");
+        Assert.notNull(readAfterWriteTracker, "The read after write tracker must not be null");
+        Assert.isTrue(healthCheckInterval > 0, "The health check interval must be positive");
+        this.primary = new org.apache.tomcat.jdbc.pool.DataSource(primaryConfiguration);
+        this.replicas = new ArrayList<>(replicaUrls.size());
+        for (String url : replicaUrls) {
+            final String name = "replica-" + replicas.size();
+            replicas.add(new Replica(name, TomcatPools.createLike(primaryConfiguration, name, url)));
+        }
+        this.readAfterWriteTracker = readAfterWriteTracker;
+        this.healthCheckInterval = healthCheckInterval;
+        this.nextReplica = new AtomicInteger();
+        this.primaryConnections = routedConnectionsCounter(PRIMARY);
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "read-replica-health-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Metrics.globalRegistry.gauge("db.replicas.healthy", replicas,
+                list -> list.stream().filter(replica -> replica.healthy).count());
+        setTargetDataSource(new Router());
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        healthChecker.scheduleWithFixedDelay(this::checkReplicas, 0, healthCheckInterval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        healthChecker.shutdownNow();
+        replicas.forEach(replica -> replica.pool.close());
+        primary.close();
+    }
+
+    /**
+     * @return The pools of the primary and the replicas, by name.
+     */
+    @Override
+    public Map<String, DataSource> getPools() {
+        final Map<String, DataSource> pools = new LinkedHashMap<>();
+        pools.put(PRIMARY, primary);
+        replicas.forEach(replica -> pools.put(replica.name, replica.pool));
+        return pools;
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Gets a connection from a replica if the current transaction is read-only, or from the primary otherwise.
+     *
+     * @return The {@link Connection}.
+     * @throws SQLException If the connection could not be obtained.
+     */
+    private Connection route() throws SQLException {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return getWriteConnection();
+        }
+        if (readAfterWriteTracker.isWithinWindow()) {
+            primaryConnections.increment();
+            return primary.getConnection(); // Replicas might not have the subject's last write yet
+        }
+        for (int i = 0; i < replicas.size(); i++) {
+            final Replica replica = replicas.get(Math.floorMod(nextReplica.getAndIncrement(), replicas.size()));
+            if (!replica.healthy) {
+                continue;
+            }
+            try {
+                final Connection connection = replica.pool.getConnection();
+                replica.connections.increment();
+                return connection;
+            } catch (SQLException e) {
+                LOGGER.warn("Could not connect to read replica {}. Skipping it until it recovers", replica.name, e);
+                replica.healthy = false;
+            }
+        }
+        primaryConnections.increment();
+        return primary.getConnection(); // No healthy replica
+    }
+
+    /**
+     * Gets a connection from the primary that, when closed, starts the read after write window of the subject
+     * bound when it is obtained (if any).
+     *
+     * @return The {@link Connection}.
+     * @throws SQLException If the connection could not be obtained.
+     */
+    private Connection getWriteConnection() throws SQLException {
+        final Object subject = ReadAfterWriteTrackerImpl.boundSubject();
+        readAfterWriteTracker.recordWrite(subject); // Reads overlapping the write must stay on the primary too
+        primaryConnections.increment();
+        final Connection connection = primary.getConnection();
+        if (subject == null) {
+            return connection; // Nothing to be tracked
+        }
+        return (Connection) Proxy.newProxyInstance(ReadReplicaRoutingDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        if ("close".equals(method.getName())) {
+                            readAfterWriteTracker.recordWrite(subject);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Checks whether each replica can be connected to, logging those whose health changed.
+     */
+    private void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection connection = replica.pool.getConnection()) {
+                healthy = connection.isValid(HEALTH_CHECK_TIMEOUT);
+            } catch (SQLException | RuntimeException e) {
+                healthy = false;
+            }
+            if (healthy != replica.healthy) {
+                if (healthy) {
+                    LOGGER.info("Read replica {} is healthy", replica.name);
+                } else {
+                    LOGGER.warn("Read replica {} is not healthy. Skipping it until it recovers", replica.name);
+                }
+            }
+            replica.healthy = healthy;
+        }
+    }
+
+    /**
+     * Creates the counter of the connections given from the given {@code pool}.
+     *
+     * @param pool The name of the pool.
+     * @return The {@link Counter}.
+     */
+    private static Counter routedConnectionsCounter(String pool) {
+        return Counter.builder("db.connections.routed")
+                .description("Amount of connections given from each database")
+                .tag("pool", pool)
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * The {@link DataSource} to which connections are lazily requested, which routes them.
+     */
+    private final class Router extends AbstractDataSource {
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return route();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            throw new UnsupportedOperationException("Connections can only be obtained with the configured " +
+                    "credentials");
+        }
+    }
+
+    /**
+     * A read replica, together with its health.
+     */
+    private static final class Replica {
+
+        /**
+         * The replica's name.
+         */
+        private final String name;
+
+        /**
+         * The replica's pool.
+         */
+        private final org.apache.tomcat.jdbc.pool.DataSource pool;
+
+        /**
+         * Counts the connections given from the replica.
+         */
+        private final Counter connections;
+
+        /**
+         * Indicates whether the replica could be connected to the last time it was checked.
+         */
+        private volatile boolean healthy;
+
+        /**
+         * @param name The replica's name.
+         * @param pool The replica's pool.
+         */
+        private Replica(String name, org.apache.tomcat.jdbc.pool.DataSource pool) {
+            this.name = name;
+            this.pool = pool;
+            this.connections = routedConnectionsCounter(name);
+            this.healthy = false; // Until checked
+        }
+    }
+}
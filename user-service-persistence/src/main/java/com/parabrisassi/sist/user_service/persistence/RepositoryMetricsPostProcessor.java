@@ -0,0 +1,135 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import com.parabrisassi.sist.user_service.instrumentation.DaoCallEvent;
+import com.parabrisassi.sist.user_service.instrumentation.FlightRecorderEvents;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link BeanPostProcessor} that wraps the application's repositories (i.e DAOs),
+ * recording the time taken by each call, tagged with the DAO, the method and the outcome.
+ * Calls are also recorded as {@link DaoCallEvent}s, if Java Flight Recorder is available.
+ */
+@Component
+public class RepositoryMetricsPostProcessor implements BeanPostProcessor {
+
+    /**
+     * Package containing the DAOs to be instrumented.
+     */
+    private static final String DAOS_PACKAGE = "com.parabrisassi.sist.user_service.persistence.daos";
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof Repository)) {
+            return bean;
+        }
+        return Arrays.stream(bean.getClass().getInterfaces())
+                .filter(type -> type.getPackage() != null && DAOS_PACKAGE.equals(type.getPackage().getName()))
+                .findFirst()
+                .map(dao -> instrument(bean, dao.getSimpleName()))
+                .orElse(bean);
+    }
+
+    /**
+     * Creates a proxy of the given {@code repository} that records the time taken by each call
+     * (and a {@link DaoCallEvent} for it).
+     *
+     * @param repository The repository to be instrumented.
+     * @param daoName    The name of the DAO (used as a tag).
+     * @return The proxy.
+     */
+    private static Object instrument(Object repository, String daoName) {
+        // Timers are cached by method, so they are not looked up in the registry in each call
+        final Map<Method, Timer> successTimers = new ConcurrentHashMap<>();
+        final Map<Method, Timer> errorTimers = new ConcurrentHashMap<>();
+        final ProxyFactory proxyFactory = new ProxyFactory(repository);
+        proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+            final DaoCallEvent event = FlightRecorderEvents.isAvailable() ? new DaoCallEvent() : null;
+            final long start = System.nanoTime();
+            boolean success = false;
+            Object result = null;
+            try {
+                result = invocation.proceed();
+                success = true;
+                return result;
+            } finally {
+                final Method method = invocation.getMethod();
+                final Timer timer = success ?
+                        successTimers.computeIfAbsent(method, m -> createTimer(daoName, m, "success")) :
+                        errorTimers.computeIfAbsent(method, m -> createTimer(daoName, m, "error"));
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (event != null) {
+                    event.complete(daoName, method.getName(), success ? rowCount(method, result) : -1, success);
+                }
+            }
+        });
+        return proxyFactory.getProxy(repository.getClass().getClassLoader());
+    }
+
+    /**
+     * Creates a {@link Timer} for calls to the given {@code method} with the given {@code outcome}.
+     *
+     * @param daoName The name of the DAO.
+     * @param method  The called {@link Method}.
+     * @param outcome The outcome of the calls (i.e success or error).
+     * @return The created {@link Timer}.
+     */
+    private static Timer createTimer(String daoName, Method method, String outcome) {
+        return Timer.builder("dao.calls")
+                .description("Time taken by DAO calls")
+                .tags("dao", daoName, "method", method.getName(), "outcome", outcome)
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Calculates the amount of rows returned (or affected) by a call to the given {@code method}.
+     *
+     * @param method The called {@link Method}.
+     * @param result The value returned by the call.
+     * @return The amount of rows, or -1 if it is not known (e.g for void methods).
+     */
+    private static int rowCount(Method method, Object result) {
+        if (method.getReturnType() == void.class) {
+            return -1;
+        }
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        }
+        if (result instanceof Iterable) {
+            return -1; // Might be lazy, so it is not iterated
+        }
+        if (result instanceof Number && method.isAnnotationPresent(Modifying.class)) {
+            return ((Number) result).intValue(); // Updated or deleted rows
+        }
+        return 1; // A single entity or value
+    }
+}
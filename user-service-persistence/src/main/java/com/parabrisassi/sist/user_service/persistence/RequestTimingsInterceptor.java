@@ -0,0 +1,69 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import com.parabrisassi.sist.user_service.instrumentation.RequestTimings;
+import org.apache.tomcat.jdbc.pool.interceptor.AbstractCreateStatementInterceptor;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Tomcat JDBC pool interceptor that records each executed statement (and the time it took)
+ * in the {@link RequestTimings} bound to the executing thread, failing with an {@link SQLException}
+ * instead of executing a statement if the request's statement limit has been reached.
+ * <p>
+ * It is enabled through the {@code spring.datasource.tomcat.jdbc-interceptors} property
+ * (that is why it must be public and have a no-args constructor).
+ */
+public class RequestTimingsInterceptor extends AbstractCreateStatementInterceptor {
+
+    @Override
+    public Object createStatement(Object proxy, Method method, Object[] args, Object statement, long time) {
+        final String name = method.getName();
+        final Class<? extends Statement> type = PREPARE_CALL.equals(name) ? CallableStatement.class
+                : PREPARE_STATEMENT.equals(name) ? PreparedStatement.class : Statement.class;
+        return Proxy.newProxyInstance(RequestTimingsInterceptor.class.getClassLoader(), new Class<?>[]{type},
+                (statementProxy, statementMethod, statementArgs) -> {
+                    final RequestTimings timings = RequestTimings.current().orElse(null);
+                    if (timings == null || !isExecute(statementMethod, false)) {
+                        return invokeStatement(statement, statementMethod, statementArgs);
+                    }
+                    if (timings.isStatementLimitReached()) {
+                        throw new SQLException("The request reached its limit of "
+                                + timings.getStatementLimit() + " statements");
+                    }
+                    final long start = System.nanoTime();
+                    try {
+                        return invokeStatement(statement, statementMethod, statementArgs);
+                    } finally {
+                        timings.recordStatement(System.nanoTime() - start);
+                    }
+                });
+    }
+
+    @Override
+    public void closeInvoked() {
+        // Nothing is kept per connection
+    }
+
+    /**
+     * Invokes the given {@code method}, unwrapping exceptions thrown by it.
+     *
+     * @param target The object on which the method is invoked.
+     * @param method The {@link Method} to be invoked.
+     * @param args   The arguments.
+     * @return The method's result.
+     * @throws Throwable The exception thrown by the method.
+     */
+    private static Object invokeStatement(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import org.hibernate.cache.spi.access.NaturalIdRegionAccessStrategy;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.NaturalIdCacheStatistics;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.function.ToLongFunction;
+
+/**
+ * Component in charge of exporting, for each Hibernate second-level cache region (i.e entity, collection
+ * and natural id regions), the amount of hits, misses and puts, together with the hit ratio.
+ * Values are taken from Hibernate's {@link Statistics}, so nothing is exported unless they are enabled
+ * (i.e {@code hibernate.generate_statistics} is set, only by some profiles, as it adds overhead to every session).
+ */
+@Component
+public class SecondLevelCacheMetrics implements InitializingBean {
+
+    /**
+     * The application's {@link SessionFactoryImplementor}.
+     */
+    private final SessionFactoryImplementor sessionFactory;
+
+    @Autowired
+    public SecondLevelCacheMetrics(EntityManagerFactory entityManagerFactory) {
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        final Statistics statistics = sessionFactory.getStatistics();
+        if (!statistics.isStatisticsEnabled()) {
+            return; // Nothing would be counted
+        }
+        // Regions are created together with the session factory, so all of them are known at this point
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            // Natural id lookups are counted apart from the rest of the second-level cache requests
+            if (sessionFactory.getNaturalIdCacheRegionAccessStrategy(region)
+                    instanceof NaturalIdRegionAccessStrategy) {
+                registerMeters(region, statistics.getNaturalIdCacheStatistics(region),
+                        NaturalIdCacheStatistics::getHitCount, NaturalIdCacheStatistics::getMissCount,
+                        NaturalIdCacheStatistics::getPutCount);
+            } else {
+                registerMeters(region, statistics.getSecondLevelCacheStatistics(region),
+                        SecondLevelCacheStatistics::getHitCount, SecondLevelCacheStatistics::getMissCount,
+                        SecondLevelCacheStatistics::getPutCount);
+            }
+        }
+    }
+
+    /**
+     * Registers the meters of the given {@code region}, whose values are taken from the given
+     * {@code regionStatistics}.
+     *
+     * @param region           The region name (used as a tag).
+     * @param regionStatistics The statistics of the region.
+     * @param hits             A {@link ToLongFunction} that takes the amount of hits from the statistics.
+     * @param misses           A {@link ToLongFunction} that takes the amount of misses from the statistics.
+     * @param puts             A {@link ToLongFunction} that takes the amount of puts from the statistics.
+     * @param <S>              The concrete type of the statistics.
+     */
+    private static <S> void registerMeters(String region, S regionStatistics, ToLongFunction<S> hits,
+                                           ToLongFunction<S> misses, ToLongFunction<S> puts) {
+        FunctionCounter.builder("hibernate.cache.requests", regionStatistics, stats -> hits.applyAsLong(stats))
+                .tags("region", region, "result", "hit")
+                .register(Metrics.globalRegistry);
+        FunctionCounter.builder("hibernate.cache.requests", regionStatistics, stats -> misses.applyAsLong(stats))
+                .tags("region", region, "result", "miss")
+                .register(Metrics.globalRegistry);
+        FunctionCounter.builder("hibernate.cache.puts", regionStatistics, stats -> puts.applyAsLong(stats))
+                .tags("region", region)
+                .register(Metrics.globalRegistry);
+        Gauge.builder("hibernate.cache.hit.ratio", regionStatistics, stats -> {
+            final long hitCount = hits.applyAsLong(stats);
+            final long requests = hitCount + misses.applyAsLong(stats);
+            return requests == 0 ? Double.NaN : (double) hitCount / requests;
+        })
+                .tags("region", region)
+                .register(Metrics.globalRegistry);
+    }
+}
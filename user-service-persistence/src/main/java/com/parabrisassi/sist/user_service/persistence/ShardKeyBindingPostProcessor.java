@@ -0,0 +1,188 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import com.parabrisassi.sist.user_service.persistence.replication.ReadAfterWriteTracker;
+import com.parabrisassi.sist.user_service.persistence.sharding.ShardKey;
+import com.parabrisassi.sist.user_service.persistence.sharding.ShardRouter;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.EnvironmentAware;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link BeanPostProcessor} that wraps the beans having methods with a {@link ShardKey} parameter,
+ * binding the shard it determines while the method is called. Beans are wrapped after any other proxy
+ * (e.g the transactional or security ones), so the shard is bound before their advices run.
+ * With read replicas, the parameter's value is bound as well, as the subject of the {@link ReadAfterWriteTracker}.
+ * Nothing is wrapped if both sharding and read replicas are disabled.
+ */
+@Component
+public class ShardKeyBindingPostProcessor implements BeanPostProcessor, EnvironmentAware, BeanFactoryAware {
+
+    /**
+     * Indicates whether sharding is enabled.
+     */
+    private boolean shardingEnabled;
+
+    /**
+     * Indicates whether read replicas are enabled.
+     */
+    private boolean readReplicasEnabled;
+
+    /**
+     * The {@link BeanFactory} from which the {@link ShardRouter} is taken (it can not be injected,
+     * as post processors are created before the beans it depends on).
+     */
+    private BeanFactory beanFactory;
+
+    /**
+     * The {@link ShardRouter} (lazily taken from the {@link BeanFactory}).
+     */
+    private volatile ShardRouter shardRouter;
+
+    @Override
+    public void setEnvironment(Environment environment) {
+        this.shardingEnabled =
+                environment.getProperty("custom.persistence.sharding.enabled", Boolean.class, false);
+        this.readReplicasEnabled =
+                environment.getProperty("custom.persistence.read-replicas.enabled", Boolean.class, false);
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!shardingEnabled && !readReplicasEnabled) {
+            return bean;
+        }
+        final Class<?> targetClass = AopUtils.getTargetClass(bean);
+        final boolean hasShardKeys = Arrays.stream(targetClass.getMethods())
+                .anyMatch(method -> findShardKey(method).isPresent());
+        return hasShardKeys ? bindShards(bean, targetClass) : bean;
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Creates a proxy of the given {@code bean} that binds the shard determined by the {@link ShardKey} parameter
+     * of the called method, and the parameter as the read after write subject (if enabled, if the method has one,
+     * and its value is not {@code null}).
+     *
+     * @param bean        The bean to be wrapped.
+     * @param targetClass The class of the bean (i.e that having the {@link ShardKey} parameters).
+     * @return The proxy.
+     */
+    private Object bindShards(Object bean, Class<?> targetClass) {
+        // Shard keys are cached by called method, so annotations are not looked up in each call
+        final Map<Method, Optional<ShardKeyParameter>> shardKeys = new ConcurrentHashMap<>();
+        final ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+            final Optional<ShardKeyParameter> shardKey = shardKeys.computeIfAbsent(invocation.getMethod(),
+                    method -> findShardKey(AopUtils.getMostSpecificMethod(method, targetClass)));
+            final Object key = shardKey.map(parameter -> invocation.getArguments()[parameter.index]).orElse(null);
+            if (key == null) {
+                return invocation.proceed();
+            }
+            final Integer previousShard = shardingEnabled ? ShardRouterImpl.bind(shardOf(shardKey.get(), key)) : null;
+            final Object previousSubject = readReplicasEnabled ? ReadAfterWriteTrackerImpl.bind(key) : null;
+            try {
+                return invocation.proceed();
+            } finally {
+                if (readReplicasEnabled) {
+                    ReadAfterWriteTrackerImpl.restore(previousSubject);
+                }
+                if (shardingEnabled) {
+                    ShardRouterImpl.restore(previousShard);
+                }
+            }
+        });
+        return proxyFactory.getProxy(bean.getClass().getClassLoader());
+    }
+
+    /**
+     * Gets the shard determined by the given {@code key}.
+     *
+     * @param shardKey The {@link ShardKeyParameter} whose value is the {@code key}.
+     * @param key      The key.
+     * @return The shard.
+     */
+    private int shardOf(ShardKeyParameter shardKey, Object key) {
+        return shardKey.kind == ShardKey.Kind.USERNAME ?
+                getShardRouter().shardOfUsername((String) key) : getShardRouter().shardOfToken((Long) key);
+    }
+
+    /**
+     * @return The {@link ShardRouter}.
+     */
+    private ShardRouter getShardRouter() {
+        if (shardRouter == null) {
+            shardRouter = beanFactory.getBean(ShardRouter.class);
+        }
+        return shardRouter;
+    }
+
+    /**
+     * Finds the {@link ShardKey} parameter of the given {@code method}.
+     *
+     * @param method The {@link Method}.
+     * @return An {@link Optional} containing the parameter, or empty if it has none.
+     */
+    private static Optional<ShardKeyParameter> findShardKey(Method method) {
+        final Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        for (int index = 0; index < parameterAnnotations.length; index++) {
+            for (Annotation annotation : parameterAnnotations[index]) {
+                if (annotation instanceof ShardKey) {
+                    return Optional.of(new ShardKeyParameter(index, ((ShardKey) annotation).value()));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * A parameter annotated with {@link ShardKey}.
+     */
+    private static final class ShardKeyParameter {
+
+        /**
+         * The parameter's index.
+         */
+        private final int index;
+
+        /**
+         * The kind of key the parameter is.
+         */
+        private final ShardKey.Kind kind;
+
+        /**
+         * @param index The parameter's index.
+         * @param kind  The kind of key the parameter is.
+         */
+        private ShardKeyParameter(int index, ShardKey.Kind kind) {
+            this.index = index;
+            this.kind = kind;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import com.parabrisassi.sist.user_service.error_handling.errros.ValidationError;
+import com.parabrisassi.sist.user_service.exceptions.ValidationException;
+import com.parabrisassi.sist.user_service.instrumentation.RequestTimings;
+import com.parabrisassi.sist.user_service.persistence.sharding.ShardRouter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+import static com.parabrisassi.sist.user_service.error_handling.errros.ValidationError.ErrorCause.ILLEGAL_VALUE;
+
+/**
+ * Concrete implementation of {@link ShardRouter}. Shards are the database configured in
+ * {@code spring.datasource.url} (i.e shard 0), followed by those configured in
+ * {@code custom.persistence.sharding.urls}, and connections are routed by the {@link ShardedDataSource}.
+ * <p>
+ * Users are assigned to a shard by the CRC32 of their username, and token ids are congruent with the shard
+ * of their owner, modulo the amount of shards (so with one shard they are unchanged). Hence, the amount of shards
+ * must not change once data has been stored (i.e re-sharding is not supported).
+ * <p>
+ * Actions performed in all the shards run in parallel, in a dedicated pool of threads.
+ * Pages merged from all the shards are sorted in memory, so shards must use a binary collation
+ * (e.g {@code "C"}) for the merged order to match the order of each of them. As each shard is asked for all the
+ * elements up to the end of the requested page, pages are limited to a maximum depth.
+ */
+@Component
+public class ShardRouterImpl implements ShardRouter, DisposableBean {
+
+    /**
+     * The shard bound to each thread ({@code null} if none is bound, in which case the first shard is used).
+     */
+    private static final ThreadLocal<Integer> BOUND_SHARD = new ThreadLocal<>();
+
+    /**
+     * The amount of shards.
+     */
+    private final int shardCount;
+
+    /**
+     * The maximum position (i.e offset plus size) up to which pages can be requested from all the shards.
+     */
+    private final int maxScatterDepth;
+
+    /**
+     * {@link TransactionTemplate} used to perform actions in each shard, in parallel (repeatable read,
+     * so all the statements of an action, like a page and its total, see the same data).
+     */
+    private final TransactionTemplate readOnlyTransactions;
+
+    /**
+     * {@link TransactionTemplate} used to perform actions in a shard, in a new transaction.
+     */
+    private final TransactionTemplate newTransactions;
+
+    /**
+     * {@link ExecutorService} running actions performed in each shard ({@code null} if there is only one shard).
+     */
+    private final ExecutorService scatterExecutor;
+
+    @Autowired
+    public ShardRouterImpl(@Value("${custom.persistence.sharding.enabled}") boolean shardingEnabled,
+                           @Value("${custom.persistence.sharding.urls}") String[] shardUrls,
+                           @Value("${custom.persistence.sharding.scatter-threads}") int scatterThreads,
+                           @Value("${custom.persistence.sharding.max-scatter-depth}") int maxScatterDepth,
+                           PlatformTransactionManager transactionManager) {
+        this.shardCount = shardingEnabled ? 1 + shardUrls.length : 1;
+        this.maxScatterDepth = maxScatterDepth;
+        this.readOnlyTransactions = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactions.setReadOnly(true);
+        this.readOnlyTransactions.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.newTransactions = new TransactionTemplate(transactionManager);
+        this.newTransactions.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        if (shardCount == 1) {
+            this.scatterExecutor = null;
+            return;
+        }
+        Assert.isTrue(scatterThreads > 0, "The amount of scatter threads must be positive");
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.scatterExecutor = Executors.newFixedThreadPool(scatterThreads, runnable -> {
+            final Thread thread = new Thread(runnable, "shard-scatter-" + threadCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    @Override
+    public int shardOfUsername(String username) {
+        Assert.notNull(username, "The username must not be null");
+        if (shardCount == 1) {
+            return 0;
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(username.getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % shardCount);
+    }
+
+    @Override
+    public int shardOfToken(long tokenId) {
+        return (int) Math.floorMod(tokenId, (long) shardCount);
+    }
+
+    @Override
+    public long encodeTokenId(long randomId, int shard) {
+        checkShard(shard);
+        if (shardCount == 1) {
+            return randomId;
+        }
+        final long value = randomId >>> 2; // Leaves room for the shard, so it never overflows
+        return value - value % shardCount + shard;
+    }
+
+    @Override
+    public <T> T onShard(int shard, Supplier<T> action) {
+        checkShard(shard);
+        final Integer previous = bind(shard);
+        try {
+            return action.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    @Override
+    public <T> T inNewTransaction(int shard, Supplier<T> action) {
+        return onShard(shard, () -> newTransactions.execute(status -> action.get()));
+    }
+
+    @Override
+    public <T> Map<Integer, T> onShards(Collection<Integer> shards, IntFunction<T> action) {
+        Assert.notNull(shards, "The shards must not be null");
+        shards.forEach(this::checkShard);
+        if (scatterExecutor == null) {
+            // Only one shard, so the action is performed in the caller's transaction
+            final Map<Integer, T> results = new LinkedHashMap<>();
+            shards.stream().distinct().forEach(shard -> results.put(shard, action.apply(shard)));
+            return results;
+        }
+        final RequestTimings timings = RequestTimings.current().orElse(null);
+        final Map<Integer, Future<T>> futures = new LinkedHashMap<>();
+        shards.stream().distinct().forEach(shard -> futures.put(shard, scatterExecutor.submit(() -> {
+            RequestTimings.bind(timings);
+            final Integer previous = bind(shard);
+            try {
+                return readOnlyTransactions.execute(status -> action.apply(shard));
+            } finally {
+                restore(previous);
+                RequestTimings.finish();
+            }
+        })));
+        final Map<Integer, T> results = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<Integer, Future<T>> entry : futures.entrySet()) {
+                results.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the shards", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Could not perform the action in a shard", cause);
+        } finally {
+            futures.values().forEach(future -> future.cancel(true));
+        }
+        return results;
+    }
+
+    @Override
+    public <T> Page<T> findPageInAllShards(Pageable pageable, Map<String, Comparator<T>> comparators,
+                                           Function<Pageable, Page<T>> query) throws ValidationException {
+        Assert.notNull(pageable, "The pageable must not be null");
+        if (shardCount == 1) {
+            return query.apply(pageable);
+        }
+        final Map<Integer, Page<T>> pages = queryAllShards(pageable, query);
+        final long total = pages.values().stream().mapToLong(Page::getTotalElements).sum();
+        return new PageImpl<>(merge(pageable, comparators, pages.values()).stream()
+                .skip(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .collect(Collectors.toList()), pageable, total);
+    }
+
+    @Override
+    public <T> Slice<T> findSliceInAllShards(Pageable pageable, Map<String, Comparator<T>> comparators,
+                                             Function<Pageable, Slice<T>> query) throws ValidationException {
+        Assert.notNull(pageable, "The pageable must not be null");
+        if (shardCount == 1) {
+            return query.apply(pageable);
+        }
+        final Map<Integer, Slice<T>> slices = queryAllShards(pageable, query);
+        final List<T> elements = merge(pageable, comparators, slices.values());
+        final boolean hasNext = elements.size() > pageable.getOffset() + pageable.getPageSize()
+                || slices.values().stream().anyMatch(Slice::hasNext);
+        return new SliceImpl<>(elements.stream()
+                .skip(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .collect(Collectors.toList()), pageable, hasNext);
+    }
+
+    @Override
+    public void destroy() {
+        if (scatterExecutor != null) {
+            scatterExecutor.shutdownNow();
+        }
+    }
+
+
+    // ================================
+    // Shard binding
+    // ================================
+
+    /**
+     * Binds the given {@code shard} to the current thread.
+     *
+     * @param shard The shard.
+     * @return The shard bound before (to be restored with {@link #restore(Integer)}), or {@code null} if none.
+     */
+    /* package */ static Integer bind(int shard) {
+        final Integer previous = BOUND_SHARD.get();
+        BOUND_SHARD.set(shard);
+        return previous;
+    }
+
+    /**
+     * Restores the given shard binding (i.e that returned by {@link #bind(int)}).
+     *
+     * @param previous The shard bound before, or {@code null} if none.
+     */
+    /* package */ static void restore(Integer previous) {
+        if (previous == null) {
+            BOUND_SHARD.remove();
+        } else {
+            BOUND_SHARD.set(previous);
+        }
+    }
+
+    /**
+     * @return The shard bound to the current thread (the first one if none is bound).
+     */
+    /* package */ static int currentShard() {
+        final Integer shard = BOUND_SHARD.get();
+        return shard == null ? 0 : shard;
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Checks that the given {@code shard} exists.
+     *
+     * @param shard The shard to be checked.
+     * @throws IllegalArgumentException If it does not exist.
+     */
+    private void checkShard(Integer shard) throws IllegalArgumentException {
+        if (shard == null || shard < 0 || shard >= shardCount) {
+            throw new IllegalArgumentException("Unknown shard " + shard + ". There are " + shardCount + " shards");
+        }
+    }
+
+    /**
+     * Performs the given {@code query} in all the shards, for all the elements up to the end of the requested page
+     * (as any element of the requested page can be in any position up to its end in each shard).
+     *
+     * @param pageable The requested page.
+     * @param query    A {@link Function} that performs the query in a shard, for the given page.
+     * @param <T>      The type of the elements.
+     * @param <S>      The type of the pages.
+     * @return The page of each shard, by shard.
+     * @throws ValidationException If the requested page ends beyond the maximum depth.
+     */
+    private <T, S extends Slice<T>> Map<Integer, S> queryAllShards(Pageable pageable, Function<Pageable, S> query)
+            throws ValidationException {
+        final int depth = pageable.getOffset() + pageable.getPageSize();
+        if (depth > maxScatterDepth) {
+            throw new ValidationException(Collections.singletonList(new ValidationError(ILLEGAL_VALUE, "page",
+                    "Pages can not end beyond the first " + maxScatterDepth + " elements")));
+        }
+        final Pageable shardPageable = new PageRequest(0, depth, pageable.getSort());
+        return onShards(IntStream.range(0, shardCount).boxed().collect(Collectors.toList()),
+                shard -> query.apply(shardPageable));
+    }
+
+    /**
+     * Merges the elements of the given {@code pages}, sorting them by the requested sort (if any).
+     *
+     * @param pageable    The requested page.
+     * @param comparators The {@link Comparator} of each property that can be used to sort.
+     * @param pages       The pages of each shard.
+     * @param <T>         The type of the elements.
+     * @return The merged elements.
+     */
+    private static <T> List<T> merge(Pageable pageable, Map<String, Comparator<T>> comparators,
+                                     Collection<? extends Slice<T>> pages) {
+        final List<T> elements = pages.stream()
+                .flatMap(page -> page.getContent().stream())
+                .collect(Collectors.toCollection(ArrayList::new));
+        Optional.ofNullable(pageable.getSort()).map(sort -> comparator(sort, comparators)).ifPresent(elements::sort);
+        return elements;
+    }
+
+    /**
+     * Creates a {@link Comparator} that sorts elements in memory like the given {@link Sort} does in the database,
+     * combining the {@link Comparator}s of the sorted properties (reversed when descending,
+     * which also puts nulls first, like PostgreSQL does).
+     *
+     * @param sort        The {@link Sort}.
+     * @param comparators The {@link Comparator} of each property that can be used to sort.
+     * @param <T>         The type of the elements.
+     * @return The {@link Comparator}.
+     * @throws IllegalArgumentException If any order ignores case, or uses a property without {@link Comparator}.
+     */
+    private static <T> Comparator<T> comparator(Sort sort, Map<String, Comparator<T>> comparators)
+            throws IllegalArgumentException {
+        Comparator<T> comparator = (first, second) -> 0;
+        for (Sort.Order order : sort) {
+            final Comparator<T> byProperty = comparators.get(order.getProperty());
+            if (byProperty == null || order.isIgnoreCase()) {
+                throw new IllegalArgumentException("Can not sort by " + order + " in memory");
+            }
+            comparator = comparator.thenComparing(order.isDescending() ? byProperty.reversed() : byProperty);
+        }
+        return comparator;
+    }
+}
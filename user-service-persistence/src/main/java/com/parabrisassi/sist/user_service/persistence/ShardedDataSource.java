@@ -0,0 +1,127 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.tomcat.jdbc.pool.PoolConfiguration;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.Assert;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link DataSource} that gives connections from the shard bound to the current thread
+ * (see {@link ShardRouterImpl}), owning the pools of all the shards. Shard pools are configured like the
+ * primary database's one (i.e the first shard), except for their url (i.e they use the same credentials).
+ * <p>
+ * Transactions get their connection when they begin, possibly before their shard is bound, so connections are routed
+ * lazily (i.e when the first statement is executed), as done by {@link LazyConnectionDataSourceProxy}.
+ */
+/* package */ class ShardedDataSource extends LazyConnectionDataSourceProxy
+        implements MultiPoolDataSource, DisposableBean {
+
+    /**
+     * The shards' pools, by shard.
+     */
+    private final List<org.apache.tomcat.jdbc.pool.DataSource> shards;
+
+    /**
+     * Counts the connections given from each shard, by shard.
+     */
+    private final List<Counter> connections;
+
+    /**
+     * Constructor.
+     *
+     * @param primaryConfiguration The {@link PoolConfiguration} of the first shard's pool.
+     * @param shardUrls            The urls of the rest of the shards.
+     */
+    /* package */ ShardedDataSource(PoolConfiguration primaryConfiguration, Collection<String> shardUrls) {
+        Assert.notNull(primaryConfiguration, "The primary pool configuration must not be null");
+        Assert.notEmpty(shardUrls, "At least one shard url must be given");
+        this.shards = new ArrayList<>(1 + shardUrls.size());
+        this.shards.add(new org.apache.tomcat.jdbc.pool.DataSource(primaryConfiguration));
+        shardUrls.forEach(url ->
+                shards.add(TomcatPools.createLike(primaryConfiguration, shardName(shards.size()), url)));
+        this.connections = new ArrayList<>(shards.size());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            connections.add(Counter.builder("db.connections.routed")
+                    .description("Amount of connections given from each database")
+                    .tag("pool", shardName(shard))
+                    .register(Metrics.globalRegistry));
+        }
+        setTargetDataSource(new Router());
+    }
+
+    @Override
+    public void destroy() {
+        shards.forEach(org.apache.tomcat.jdbc.pool.DataSource::close);
+    }
+
+    /**
+     * @return The pools of the shards, by name.
+     */
+    @Override
+    public Map<String, DataSource> getPools() {
+        final Map<String, DataSource> pools = new LinkedHashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            pools.put(shardName(shard), shards.get(shard));
+        }
+        return pools;
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Gets a connection from the shard bound to the current thread.
+     *
+     * @return The {@link Connection}.
+     * @throws SQLException If the connection could not be obtained.
+     */
+    private Connection route() throws SQLException {
+        final int shard = ShardRouterImpl.currentShard();
+        if (shard >= shards.size()) {
+            throw new IllegalStateException("Unknown shard " + shard + ". There are " + shards.size() + " shards");
+        }
+        connections.get(shard).increment();
+        return shards.get(shard).getConnection();
+    }
+
+    /**
+     * Gets the name of the given {@code shard} (used to name its pool, and to tag metrics).
+     *
+     * @param shard The shard.
+     * @return Its name.
+     */
+    private static String shardName(int shard) {
+        return "shard-" + shard;
+    }
+
+    /**
+     * The {@link DataSource} to which connections are lazily requested, which routes them.
+     */
+    private final class Router extends AbstractDataSource {
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return route();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            throw new UnsupportedOperationException("Connections can only be obtained with the configured " +
+                    "credentials");
+        }
+    }
+}
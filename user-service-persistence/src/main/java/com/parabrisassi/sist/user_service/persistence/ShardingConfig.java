@@ -0,0 +1,119 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.flywaydb.core.Flyway;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+
+/**
+ * Configuration class to set up sharding, replacing the auto-configured {@link DataSource}
+ * with one that gives connections from the shard bound to the current thread (see {@link ShardedDataSource}).
+ * Enabled through the {@code custom.persistence.sharding.enabled} property. It can not be used together
+ * with read replicas.
+ * <p>
+ * Each shard is migrated by Flyway, and its users id sequence is set to generate ids congruent with the shard,
+ * modulo the amount of shards, so ids are unique across all the shards (e.g they are used as cache keys).
+ */
+@Configuration
+@ConditionalOnProperty(name = "custom.persistence.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    /**
+     * The {@link Logger} object.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardingConfig.class);
+
+    /**
+     * The urls of the shards (except the first one, which is the primary database).
+     */
+    private final String[] shardUrls;
+
+    /**
+     * Constructor.
+     *
+     * @param shardUrls           The urls of the shards (except the first one, which is the primary database).
+     * @param readReplicasEnabled Indicates whether read replicas are enabled.
+     * @throws IllegalStateException If read replicas are enabled.
+     */
+    public ShardingConfig(@Value("${custom.persistence.sharding.urls}") String[] shardUrls,
+                          @Value("${custom.persistence.read-replicas.enabled}") boolean readReplicasEnabled)
+            throws IllegalStateException {
+        if (readReplicasEnabled) {
+            throw new IllegalStateException("Sharding can not be enabled together with read replicas");
+        }
+        this.shardUrls = shardUrls;
+    }
+
+    /**
+     * Creates the application's {@link DataSource}, which gives connections from the bound shard.
+     * It is the only {@link DataSource} bean, so everything else (e.g Flyway) uses it.
+     *
+     * @param primaryPoolProperties The {@link PoolProperties} of the primary database's pool
+     *                              (see {@link PrimaryPoolConfig}), like which shard pools are configured.
+     * @return The {@link ShardedDataSource}.
+     */
+    @Bean
+    /* package */ ShardedDataSource dataSource(PoolProperties primaryPoolProperties) {
+        return new ShardedDataSource(primaryPoolProperties, Arrays.asList(shardUrls));
+    }
+
+    /**
+     * Creates the {@link FlywayMigrationStrategy} that migrates each shard.
+     * Shards are bound directly (i.e not through the {@link ShardRouterImpl}),
+     * as migrations are performed before the beans the router depends on are created.
+     *
+     * @return The {@link FlywayMigrationStrategy}.
+     */
+    @Bean
+    public FlywayMigrationStrategy shardsMigrationStrategy() {
+        final int shardCount = 1 + shardUrls.length;
+        return flyway -> {
+            for (int shard = 0; shard < shardCount; shard++) {
+                final Integer previous = ShardRouterImpl.bind(shard);
+                try {
+                    flyway.migrate();
+                    alignUserIds(flyway, shard, shardCount);
+                } finally {
+                    ShardRouterImpl.restore(previous);
+                }
+            }
+        };
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Sets the users id sequence of the bound shard to generate ids congruent with the given {@code shard},
+     * modulo the given {@code shardCount}, after any id already in use. Nothing is done if it was already set.
+     *
+     * @param flyway     The {@link Flyway} whose {@link DataSource} is used.
+     * @param shard      The bound shard.
+     * @param shardCount The amount of shards.
+     */
+    private static void alignUserIds(Flyway flyway, int shard, int shardCount) {
+        final JdbcTemplate jdbcTemplate = new JdbcTemplate(flyway.getDataSource());
+        final String increment = jdbcTemplate.queryForObject("SELECT increment FROM information_schema.sequences " +
+                "WHERE sequence_name = 'users_id_seq'", String.class);
+        if (String.valueOf(shardCount).equals(increment)) {
+            return;
+        }
+        final long lastId = jdbcTemplate.queryForObject("SELECT GREATEST(COALESCE(MAX(id), 0), " +
+                "(SELECT last_value FROM users_id_seq)) FROM users", Long.class);
+        final long nextId = (lastId / shardCount + 1) * shardCount + shard;
+        jdbcTemplate.execute("ALTER SEQUENCE users_id_seq INCREMENT BY " + shardCount);
+        jdbcTemplate.queryForObject("SELECT setval('users_id_seq', ?, false)", Long.class, nextId);
+        LOGGER.info("Users ids of shard {} set to be generated from {}, by {}", shard, nextId, shardCount);
+    }
+}
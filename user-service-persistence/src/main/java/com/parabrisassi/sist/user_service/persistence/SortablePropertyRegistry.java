@@ -0,0 +1,128 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import javax.persistence.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Registry of the properties of an entity that can be used to sort (i.e those backed by an index),
+ * each mapped to the index backing it. It is built once from the entity's mapping annotations:
+ * the id is backed by the primary key index, and other basic properties by the single column indexes
+ * declared in the entity's {@link Table} annotation.
+ * <p>
+ * Sorting by other properties (e.g collections, or unindexed columns) would need the database to sort
+ * all the matching rows, so they are not sortable.
+ */
+/* package */ final class SortablePropertyRegistry {
+
+    /**
+     * Suffix PostgreSQL adds to the table name to name primary key indexes.
+     */
+    private static final String PRIMARY_KEY_INDEX_SUFFIX = "_pkey";
+
+    /**
+     * The name of the index backing each sortable property.
+     */
+    private final Map<String, String> indexes;
+
+    /**
+     * Constructor.
+     *
+     * @param indexes The name of the index backing each sortable property.
+     */
+    private SortablePropertyRegistry(Map<String, String> indexes) {
+        this.indexes = Collections.unmodifiableMap(new HashMap<>(indexes));
+    }
+
+    /**
+     * Builds the registry of the given {@code entityClass}.
+     *
+     * @param entityClass The class of the entity.
+     * @return The {@link SortablePropertyRegistry} of the entity.
+     */
+    /* package */ static SortablePropertyRegistry of(Class<?> entityClass) {
+        final Table table = entityClass.getAnnotation(Table.class);
+        final String tableName = table == null || table.name().isEmpty() ? entityClass.getSimpleName() : table.name();
+        final Map<String, String> singleColumnIndexes = table == null ? Collections.emptyMap() :
+                Arrays.stream(table.indexes())
+                        .filter(index -> !index.columnList().contains(","))
+                        .collect(Collectors.toMap(index -> indexedColumn(index.columnList()), Index::name,
+                                (first, second) -> first));
+
+        final Map<String, String> indexes = new HashMap<>();
+        for (Field field : entityClass.getDeclaredFields()) {
+            if (!isBasicProperty(field)) {
+                continue;
+            }
+            if (field.isAnnotationPresent(Id.class)) {
+                indexes.put(field.getName(), tableName + PRIMARY_KEY_INDEX_SUFFIX);
+                continue;
+            }
+            Optional.ofNullable(singleColumnIndexes.get(columnName(field)))
+                    .ifPresent(index -> indexes.put(field.getName(), index));
+        }
+        return new SortablePropertyRegistry(indexes);
+    }
+
+    /**
+     * Indicates whether the given {@code property} can be used to sort.
+     *
+     * @param property The property's name.
+     * @return {@code true} if it is backed by an index, or {@code false} otherwise.
+     */
+    /* package */ boolean isSortable(String property) {
+        return indexes.containsKey(property);
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Indicates whether the given {@code field} is mapped to a column of the entity's table
+     * (i.e it is not static, transient, a collection or an association).
+     *
+     * @param field The {@link Field}.
+     * @return {@code true} if it is a basic property, or {@code false} otherwise.
+     */
+    private static boolean isBasicProperty(Field field) {
+        final int modifiers = field.getModifiers();
+        return !Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)
+                && !field.isAnnotationPresent(Transient.class)
+                && !field.isAnnotationPresent(ElementCollection.class)
+                && !field.isAnnotationPresent(OneToMany.class)
+                && !field.isAnnotationPresent(ManyToMany.class)
+                && !field.isAnnotationPresent(ManyToOne.class)
+                && !field.isAnnotationPresent(OneToOne.class);
+    }
+
+    /**
+     * Gets the name of the column to which the given {@code field} is mapped.
+     *
+     * @param field The {@link Field}.
+     * @return The column name.
+     */
+    private static String columnName(Field field) {
+        return Optional.ofNullable(field.getAnnotation(Column.class))
+                .map(Column::name)
+                .filter(name -> !name.isEmpty())
+                .orElseGet(field::getName);
+    }
+
+    /**
+     * Gets the column of a single column index (i.e without the ordering, if any).
+     *
+     * @param columnList The {@link Index#columnList()} (e.g "username ASC").
+     * @return The column name.
+     */
+    private static String indexedColumn(String columnList) {
+        return columnList.trim().split("\\s+")[0];
+    }
+}
@@ -0,0 +1,42 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import org.apache.tomcat.jdbc.pool.DataSource;
+import org.apache.tomcat.jdbc.pool.PoolConfiguration;
+import org.apache.tomcat.jdbc.pool.PoolProperties;
+import org.springframework.beans.BeanUtils;
+
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Helper class to create Tomcat JDBC pools for the databases used together with the primary one
+ * (i.e read replicas and shards).
+ */
+/* package */ final class TomcatPools {
+
+    /**
+     * Private constructor to avoid instantiation.
+     */
+    private TomcatPools() {
+    }
+
+    /**
+     * Creates a pool configured like the given {@code baseConfiguration}, except for its name and url
+     * (i.e using the same credentials, sizes, interceptors, etc.).
+     *
+     * @param baseConfiguration The {@link PoolConfiguration} to be copied.
+     * @param name              The pool's name.
+     * @param url               The database's url.
+     * @return The pool.
+     */
+    /* package */ static DataSource createLike(PoolConfiguration baseConfiguration, String name, String url) {
+        final PoolProperties configuration = new PoolProperties();
+        BeanUtils.copyProperties(baseConfiguration, configuration, PoolConfiguration.class);
+        configuration.setName(name);
+        configuration.setUrl(url);
+        final Properties dbProperties = new Properties();
+        Optional.ofNullable(baseConfiguration.getDbProperties()).ifPresent(dbProperties::putAll);
+        configuration.setDbProperties(dbProperties);
+        return new DataSource(configuration);
+    }
+}
@@ -7,7 +7,12 @@ import org.hibernate.criterion.MatchMode;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
 
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -16,6 +21,29 @@ import java.util.Optional;
 @Component
 public class UserQueryHelperImpl implements UserQueryHelper {
 
+    /**
+     * The sortable properties of {@link User}s (built once, when this helper is created).
+     */
+    private final SortablePropertyRegistry sortableProperties;
+
+    /**
+     * The {@link Comparator} of each sortable property of {@link User}s.
+     */
+    private final Map<String, Comparator<User>> comparators;
+
+    /**
+     * Constructor.
+     */
+    public UserQueryHelperImpl() {
+        this.sortableProperties = SortablePropertyRegistry.of(User.class);
+        final Map<String, Comparator<User>> comparators = new HashMap<>();
+        comparators.put("id", Comparator.comparingLong(User::getId));
+        comparators.put("username", Comparator.comparing(User::getUsername));
+        Assert.isTrue(comparators.keySet().stream().allMatch(sortableProperties::isSortable),
+                "All the compared properties must be sortable");
+        this.comparators = Collections.unmodifiableMap(comparators);
+    }
+
     @Override
     public Specification<User> createUserSpecification(String username) {
         return (root, query, cb) ->
@@ -27,6 +55,11 @@ public class UserQueryHelperImpl implements UserQueryHelper {
 
     @Override
     public void validatePageable(Pageable pageable) throws InvalidPropertiesException {
-        PersistenceHelper.validatePageable(pageable, User.class);
+        PersistenceHelper.validatePageable(pageable, sortableProperties);
+    }
+
+    @Override
+    public Map<String, Comparator<User>> getComparators() {
+        return comparators;
     }
 }
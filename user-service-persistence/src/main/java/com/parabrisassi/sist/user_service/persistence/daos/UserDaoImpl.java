@@ -0,0 +1,173 @@
+package com.parabrisassi.sist.user_service.persistence.daos;
+
+import com.parabrisassi.sist.user_service.models.Role;
+import com.parabrisassi.sist.user_service.models.User;
+import com.parabrisassi.sist.user_service.persistence.projections.UserProjection;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.cache.spi.access.CollectionRegionAccessStrategy;
+import org.hibernate.cache.spi.access.EntityRegionAccessStrategy;
+import org.hibernate.cache.spi.access.RegionAccessStrategy;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Concrete implementation of {@link UserDaoCustom}, picked up by Spring Data as the custom part of the {@link UserDao}
+ * (that is why it must be in the DAOs package, and be named after it).
+ * As with the rest of the DAO methods, a read-only transaction is used if none is in progress
+ * (the natural id load needs the session bound to it).
+ */
+@Transactional(readOnly = true)
+public class UserDaoImpl implements UserDaoCustom {
+
+    /**
+     * The role (i.e name) of the users' roles collection.
+     */
+    private static final String ROLES = User.class.getName() + ".roles";
+
+    /**
+     * Query that retrieves the id, username and roles of a user (one row per role, or one with a {@code null} role
+     * if the user has none).
+     */
+    private static final String FIND_PROJECTION =
+            "SELECT u.id, u.username, r FROM User u LEFT JOIN u.roles r WHERE u.username = :username";
+
+    /**
+     * Statement that adds a role to a user, increasing its token version if it did not have it
+     * (returns the user's id in that case).
+     */
+    private static final String ADD_ROLE = "WITH added AS (" +
+            "INSERT INTO user_roles (user_id, role) SELECT id, :role FROM users WHERE username = :username " +
+            "ON CONFLICT DO NOTHING RETURNING user_id) " +
+            "UPDATE users SET token_version = token_version + 1 WHERE id IN (SELECT user_id FROM added) RETURNING id";
+
+    /**
+     * Statement that removes a role from a user, increasing its token version if it had it
+     * (returns the user's id in that case).
+     */
+    private static final String REMOVE_ROLE = "WITH removed AS (" +
+            "DELETE FROM user_roles r USING users u WHERE r.user_id = u.id AND u.username = :username " +
+            "AND r.role = :role RETURNING r.user_id) " +
+            "UPDATE users SET token_version = token_version + 1 WHERE id IN (SELECT user_id FROM removed) RETURNING id";
+
+    /**
+     * The {@link EntityManager} bound to the current transaction.
+     */
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Optional<User> findByUsername(String username) {
+        if (username == null) {
+            return Optional.empty(); // Natural ids are not nullable
+        }
+        return Optional.ofNullable(entityManager.unwrap(Session.class)
+                .bySimpleNaturalId(User.class)
+                .load(username));
+    }
+
+    @Override
+    public Optional<UserProjection> findProjectionByUsername(String username) {
+        if (username == null) {
+            return Optional.empty();
+        }
+        final List<Object[]> rows = entityManager.createQuery(FIND_PROJECTION, Object[].class)
+                .setParameter("username", username)
+                .getResultList();
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        final Set<Role> roles = EnumSet.noneOf(Role.class);
+        rows.stream().map(row -> (Role) row[2]).filter(Objects::nonNull).forEach(roles::add);
+        return Optional.of(new UserProjection((Long) rows.get(0)[0], (String) rows.get(0)[1], roles));
+    }
+
+    @Override
+    @Transactional
+    public int addRole(String username, Role role) {
+        return updateRoles(ADD_ROLE, username, role);
+    }
+
+    @Override
+    @Transactional
+    public int removeRole(String username, Role role) {
+        return updateRoles(REMOVE_ROLE, username, role);
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Executes the given roles {@code statement}. The statement returns the ids of the changed users, so Hibernate
+     * takes it as a query and does not invalidate cached data. Only the cached entries of those users are
+     * invalidated, here (see {@link #invalidateCachedUser(EventSource, Object)}).
+     *
+     * @param statement The statement to be executed.
+     * @param username  The username of the {@link User} whose roles are changed.
+     * @param role      The added or removed {@link Role}.
+     * @return The amount of {@link User}s whose roles changed.
+     */
+    private int updateRoles(String statement, String username, Role role) {
+        final List<?> changedIds = entityManager.createNativeQuery(statement)
+                .unwrap(SQLQuery.class)
+                .addSynchronizedEntityClass(User.class)
+                .addSynchronizedQuerySpace("user_roles")
+                .setString("username", username)
+                .setString("role", role.name())
+                .list();
+        final EventSource session = entityManager.unwrap(EventSource.class);
+        changedIds.forEach(id -> invalidateCachedUser(session, ((Number) id).longValue()));
+        return changedIds.size();
+    }
+
+    /**
+     * Invalidates the cached entity and roles of the {@link User} with the given {@code id},
+     * like Hibernate does with entities it updates (i.e the entries are locked until the transaction completes,
+     * so data loaded meanwhile is not cached).
+     *
+     * @param session The {@link EventSource} (i.e session) bound to the current transaction.
+     * @param id      The user's id.
+     */
+    private static void invalidateCachedUser(EventSource session, Object id) {
+        final SessionFactoryImplementor factory = session.getFactory();
+        final EntityPersister userPersister = factory.getEntityPersister(User.class.getName());
+        if (userPersister.hasCache()) {
+            final EntityRegionAccessStrategy cache = userPersister.getCacheAccessStrategy();
+            lockUntilCompletion(session, cache,
+                    cache.generateCacheKey(id, userPersister, factory, session.getTenantIdentifier()));
+        }
+        final CollectionPersister rolesPersister = factory.getCollectionPersister(ROLES);
+        if (rolesPersister.hasCache()) {
+            final CollectionRegionAccessStrategy cache = rolesPersister.getCacheAccessStrategy();
+            lockUntilCompletion(session, cache,
+                    cache.generateCacheKey(id, rolesPersister, factory, session.getTenantIdentifier()));
+        }
+    }
+
+    /**
+     * Locks the given cache {@code key} until the current transaction completes.
+     *
+     * @param session The {@link EventSource} (i.e session) bound to the current transaction.
+     * @param cache   The {@link RegionAccessStrategy} of the region holding the key.
+     * @param key     The cache key.
+     */
+    private static void lockUntilCompletion(EventSource session, RegionAccessStrategy cache, Object key) {
+        final SoftLock lock = cache.lockItem(session, key, null);
+        session.getActionQueue().registerProcess((success, completedSession) ->
+                cache.unlockItem(completedSession, key, lock));
+    }
+}
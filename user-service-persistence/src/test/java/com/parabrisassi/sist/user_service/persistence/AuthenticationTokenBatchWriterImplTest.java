@@ -0,0 +1,205 @@
+package com.parabrisassi.sist.user_service.persistence;
+
+import com.parabrisassi.sist.user_service.models.AuthenticationToken;
+import com.parabrisassi.sist.user_service.models.User;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the {@link AuthenticationTokenBatchWriterImpl} timeout, shutdown and error handling.
+ * Batches are written through a {@link StubJdbcTemplate}, which can block the writer thread.
+ */
+public class AuthenticationTokenBatchWriterImplTest {
+
+    /**
+     * Name of the writer thread.
+     */
+    private static final String WRITER_THREAD = "authentication-token-batch-writer";
+
+    /**
+     * Max. amount of milliseconds callers wait for their insertion to be taken in these tests.
+     */
+    private static final long INSERT_TIMEOUT = 200;
+
+    /**
+     * The {@link User} owning the inserted {@link AuthenticationToken}s.
+     */
+    private final User user = new User("batch_user");
+
+    /**
+     * {@link JdbcTemplate} through which tokens are inserted.
+     */
+    private final StubJdbcTemplate jdbcTemplate = new StubJdbcTemplate();
+
+    /**
+     * The {@link AuthenticationTokenBatchWriterImpl} being tested (without sharding).
+     */
+    private final AuthenticationTokenBatchWriterImpl batchWriter = new AuthenticationTokenBatchWriterImpl(jdbcTemplate,
+            new ShardRouterImpl(false, new String[0], 1, 1000, null), 64, 0, INSERT_TIMEOUT);
+
+    /**
+     * {@link ExecutorService} used to insert from other threads.
+     */
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        jdbcTemplate.release.countDown();
+        batchWriter.destroy();
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void insertNotTakenInTimeIsInsertedAlone() throws Exception {
+        jdbcTemplate.blockWriter = true;
+        final Future<Boolean> blocking = callers.submit(() -> batchWriter.insert(new AuthenticationToken(1, user)));
+        jdbcTemplate.awaitStatements(1); // The writer thread is now blocked writing the first token
+
+        Assert.assertTrue("The token was not inserted", batchWriter.insert(new AuthenticationToken(2, user)));
+        Assert.assertEquals("The token was not inserted by the caller",
+                Thread.currentThread().getName(), jdbcTemplate.threads.get(1));
+
+        // An insertion already taken by the writer thread is waited for once more
+        jdbcTemplate.release.countDown();
+        Assert.assertTrue("The taken token was not inserted", blocking.get(INSERT_TIMEOUT, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(WRITER_THREAD, jdbcTemplate.threads.get(0));
+    }
+
+    @Test
+    public void insertAfterShutdownIsRejected() {
+        batchWriter.destroy();
+        try {
+            batchWriter.insert(new AuthenticationToken(1, user));
+            Assert.fail("The insertion was not rejected");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue("A statement was executed", jdbcTemplate.threads.isEmpty());
+        }
+    }
+
+    @Test
+    public void pendingInsertsFailOnShutdown() throws Exception {
+        jdbcTemplate.blockWriter = true;
+        final AuthenticationTokenBatchWriterImpl slowBatchWriter = new AuthenticationTokenBatchWriterImpl(
+                jdbcTemplate, new ShardRouterImpl(false, new String[0], 1, 1000, null), 64, 0, 10_000);
+        final Future<Boolean> taken = callers.submit(() -> slowBatchWriter.insert(new AuthenticationToken(1, user)));
+        jdbcTemplate.awaitStatements(1);
+        final Future<Boolean> pending = callers.submit(() -> slowBatchWriter.insert(new AuthenticationToken(2, user)));
+        Thread.sleep(50); // Lets the second insertion be queued (if not, it is rejected anyway)
+
+        slowBatchWriter.destroy();
+        assertFailsWith(IllegalStateException.class, pending);
+        assertFailsWith(IllegalStateException.class, taken); // The blocked statement is interrupted
+        Assert.assertEquals("The pending token was inserted", 1, jdbcTemplate.threads.size());
+    }
+
+    @Test
+    public void writerThreadSurvivesErrors() throws Exception {
+        jdbcTemplate.error = new Error("Error thrown while writing a batch");
+        try {
+            batchWriter.insert(new AuthenticationToken(1, user));
+            Assert.fail("The error was not reported");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(WRITER_THREAD, jdbcTemplate.threads.get(0));
+        }
+
+        Assert.assertTrue("The token was not inserted", batchWriter.insert(new AuthenticationToken(2, user)));
+        Assert.assertEquals("The token was not inserted by the writer thread",
+                WRITER_THREAD, jdbcTemplate.threads.get(1));
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Asserts that the given {@code future} fails with the given {@code exceptionClass}.
+     *
+     * @param exceptionClass The expected class of the failure.
+     * @param future         The {@link Future}.
+     */
+    private static void assertFailsWith(Class<? extends Throwable> exceptionClass, Future<?> future)
+            throws Exception {
+        try {
+            future.get(INSERT_TIMEOUT, TimeUnit.MILLISECONDS);
+            Assert.fail("The insertion did not fail");
+        } catch (ExecutionException e) {
+            Assert.assertEquals(exceptionClass, e.getCause().getClass());
+        }
+    }
+
+    /**
+     * {@link JdbcTemplate} that, instead of executing insert statements, returns all the inserted ids,
+     * recording the thread executing each statement. It can block the writer thread, or make it fail once.
+     */
+    private static final class StubJdbcTemplate extends JdbcTemplate {
+
+        /**
+         * Names of the threads that executed each statement.
+         */
+        private final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+
+        /**
+         * Latch the writer thread waits for before executing statements, if it is blocked.
+         */
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        /**
+         * Indicates whether the writer thread is blocked.
+         */
+        private volatile boolean blockWriter;
+
+        /**
+         * An {@link Error} to be thrown by the next statement (or {@code null}).
+         */
+        private volatile Error error;
+
+        @Override
+        public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+            threads.add(Thread.currentThread().getName());
+            final Error toBeThrown = error;
+            if (toBeThrown != null) {
+                error = null;
+                throw toBeThrown;
+            }
+            if (blockWriter && WRITER_THREAD.equals(Thread.currentThread().getName())) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while executing a statement", e);
+                }
+            }
+            final List<T> ids = new ArrayList<>();
+            for (int index = 0; index < args.length; index += 4) {
+                ids.add(elementType.cast(args[index])); // The id is the first value of each tuple
+            }
+            return ids;
+        }
+
+        /**
+         * Waits until the given amount of statements were executed (or started to be executed).
+         *
+         * @param amount The amount of statements.
+         */
+        private void awaitStatements(int amount) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 5_000;
+            while (threads.size() < amount) {
+                Assert.assertTrue("The statements were not executed", System.currentTimeMillis() < deadline);
+                Thread.sleep(5);
+            }
+        }
+    }
+}
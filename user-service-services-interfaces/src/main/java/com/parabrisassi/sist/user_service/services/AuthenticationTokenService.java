@@ -6,10 +6,11 @@ import com.parabrisassi.sist.user_service.models.Role;
 import com.parabrisassi.sist.user_service.models.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
-import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
+import java.security.PublicKey;
+import java.time.Instant;
+import java.util.*;
 
 /**
  * Defines behaviour of the service in charge of managing authentication tokens.
@@ -17,49 +18,109 @@ import java.util.List;
 public interface AuthenticationTokenService {
 
     /**
-     * Retrieves a {@link Page} of {@link AuthenticationToken}s belonging to the {@link User}
+     * Retrieves a {@link Slice} of {@link AuthenticationToken}s belonging to the {@link User}
      * with the given {@code username}, according to the given {@code pageable}.
+     * The {@link AuthenticationToken}s are only counted if the total is requested.
      *
-     * @param username The username of the {@link User} owning the resultant {@link AuthenticationToken}s.
-     * @param pageable The {@link Pageable} used to set page stuff.
-     * @return The resultant {@link Page}.
+     * @param username  The username of the {@link User} owning the resultant {@link AuthenticationToken}s.
+     * @param pageable  The {@link Pageable} used to set page stuff.
+     * @param withTotal Indicates whether the total of {@link AuthenticationToken}s must be obtained.
+     * @return The resultant {@link Slice} (a {@link Page} if the total was requested).
+     * @throws com.parabrisassi.sist.user_service.exceptions.DisabledFeatureException If tokens are stateless.
      */
-    Page<AuthenticationToken> listTokens(String username, Pageable pageable);
+    Slice<AuthenticationToken> listTokens(String username, Pageable pageable, boolean withTotal);
 
     /**
      * Creates an {@link AuthenticationToken} if the credentials match,
      * and encodes it in a {@link String} representation.
+     * If refresh tokens are enabled, a refresh token is also issued.
+     * If tokens are stateless, nothing is stored (and refresh tokens are not issued).
      *
      * @param username The username of the {@link com.parabrisassi.sist.user_service.models.User}
      *                 that will own the created token.
      * @param password The {@link com.parabrisassi.sist.user_service.models.User}'s password
-     * @return The created {@link AuthenticationToken}.
+     * @return An {@link IssuedToken} holding the created {@link AuthenticationToken}.
      */
-    String createToken(String username, String password);
+    IssuedToken createToken(String username, String password);
+
+    /**
+     * Exchanges the given {@code refreshToken} for a new encoded {@link AuthenticationToken}
+     * (with the same id, and up to date roles) and a new refresh token.
+     * The given {@code refreshToken} can not be used again. If it is reused,
+     * the {@link AuthenticationToken} is blacklisted, as the refresh token might have been stolen.
+     *
+     * @param refreshToken The refresh token.
+     * @return An {@link IssuedToken} holding the refreshed {@link AuthenticationToken}.
+     * @throws TokenException If refresh tokens are disabled, or if the refresh token is unknown, used or expired,
+     *                        or if its {@link AuthenticationToken} is blacklisted.
+     */
+    IssuedToken refreshToken(String refreshToken) throws TokenException;
 
     /**
      * Retrieves an {@link AuthenticationToken} from a {@link String} representation of it.
+     * When refresh tokens are enabled, only the signature, the expiration and the token version are checked
+     * (i.e blacklisting takes effect when the token is refreshed).
+     * When tokens are stateless, the deny-list is checked instead of the stored token.
      *
      * @param encodedToken The encoded {@link AuthenticationToken}.
      * @return The {@link AuthenticationToken} represented by the given {@link String}.
      */
     TokenData fromEncodedToken(String encodedToken);
 
+    /**
+     * Retrieves an {@link AuthenticationToken} from a {@link String} representation of it, in order to answer
+     * an introspection request. Unlike {@link #fromEncodedToken(String)}, blacklisting is always checked
+     * (i.e also when refresh tokens are enabled), as consumers might cache the answer.
+     * When tokens are stateless, the deny-list is checked instead of the stored token.
+     *
+     * @param encodedToken The encoded {@link AuthenticationToken}.
+     * @return The {@link AuthenticationToken} represented by the given {@link String}.
+     */
+    TokenData introspectToken(String encodedToken);
+
     /**
      * Indicates whether an {@link AuthenticationToken} is valid (i.e not blacklisted).
+     * When tokens are stateless, they can only be validated from their encoded form
+     * (i.e {@link #introspectToken(String)}), as ids of tokens that were never issued can not be told apart.
      *
      * @param id The id of the {@link AuthenticationToken}.
      * @return {@code true} if the {@link AuthenticationToken} is valid, or {@code false} otherwise.
+     * @throws com.parabrisassi.sist.user_service.exceptions.DisabledFeatureException If tokens are stateless.
      */
     boolean isValidToken(long id);
 
+    /**
+     * Indicates, for each of the given ids, whether the {@link AuthenticationToken} with that id is valid
+     * (i.e it exists and it is not blacklisted).
+     *
+     * @param ids The ids of the {@link AuthenticationToken}s to be checked.
+     * @return A {@link Map} holding, for each of the given ids, {@code true} if the {@link AuthenticationToken}
+     * is valid, or {@code false} otherwise.
+     * @throws com.parabrisassi.sist.user_service.exceptions.ValidationException If the given {@link Collection}
+     *                                                                            is {@code null},
+     *                                                                            or if it has {@code null} elements.
+     * @throws com.parabrisassi.sist.user_service.exceptions.DisabledFeatureException If tokens are stateless
+     *                                                                                 (see {@link #isValidToken(long)}).
+     */
+    Map<Long, Boolean> validateTokens(Collection<Long> ids);
+
     /**
      * Invalidates an {@link AuthenticationToken}.
+     * When tokens are stateless, the id is added to the deny-list until the token expires.
      *
      * @param id The id of the {@link AuthenticationToken}.
      */
     void blacklistToken(long id);
 
+    /**
+     * Retrieves the public keys that can be used to verify the signature of encoded {@link AuthenticationToken}s
+     * without contacting this service.
+     *
+     * @return A {@link List} containing the {@link VerificationKeyData} of each public key.
+     * The {@link List} will be empty if tokens are signed with a symmetric (i.e secret) key.
+     */
+    List<VerificationKeyData> getVerificationKeys();
+
     /**
      * A wrapper class that encapsulates information taken from a token.
      */
@@ -81,14 +142,39 @@ public interface AuthenticationTokenService {
         private final List<Role> roles;
 
         /**
-         * @param id       The token's id.
-         * @param username The token's owner username.
-         * @param roles    The token's owner roles.
+         * The token's owner token version when the token was issued.
+         */
+        private final int tokenVersion;
+
+        /**
+         * The {@link Instant} at which the token expires
+         * (might be {@code null} if the token was not yet encoded).
+         */
+        private final Instant expiration;
+
+        /**
+         * @param id           The token's id.
+         * @param username     The token's owner username.
+         * @param roles        The token's owner roles.
+         * @param tokenVersion The token's owner token version.
+         */
+        public TokenData(long id, String username, Collection<Role> roles, int tokenVersion) {
+            this(id, username, roles, tokenVersion, null);
+        }
+
+        /**
+         * @param id           The token's id.
+         * @param username     The token's owner username.
+         * @param roles        The token's owner roles.
+         * @param tokenVersion The token's owner token version.
+         * @param expiration   The {@link Instant} at which the token expires.
          */
-        public TokenData(long id, String username, Collection<Role> roles) {
+        public TokenData(long id, String username, Collection<Role> roles, int tokenVersion, Instant expiration) {
             this.id = id;
             this.username = username;
             this.roles = new LinkedList<>(roles);
+            this.tokenVersion = tokenVersion;
+            this.expiration = expiration;
         }
 
         /**
@@ -111,6 +197,127 @@ public interface AuthenticationTokenService {
         public List<Role> getRoles() {
             return roles;
         }
+
+        /**
+         * @return The token's owner token version when the token was issued.
+         */
+        public int getTokenVersion() {
+            return tokenVersion;
+        }
+
+        /**
+         * @return An {@link Optional} containing the {@link Instant} at which the token expires,
+         * or empty if the token was not yet encoded.
+         */
+        public Optional<Instant> getExpiration() {
+            return Optional.ofNullable(expiration);
+        }
+    }
+
+    /**
+     * A wrapper class that encapsulates an issued (i.e created or refreshed) token.
+     */
+    final class IssuedToken {
+
+        /**
+         * The token's id.
+         */
+        private final long id;
+
+        /**
+         * The encoded token.
+         */
+        private final String encodedToken;
+
+        /**
+         * The refresh token (might be {@code null} if refresh tokens are disabled).
+         */
+        private final String refreshToken;
+
+        /**
+         * @param id           The token's id.
+         * @param encodedToken The encoded token.
+         * @param refreshToken The refresh token.
+         */
+        public IssuedToken(long id, String encodedToken, String refreshToken) {
+            this.id = id;
+            this.encodedToken = encodedToken;
+            this.refreshToken = refreshToken;
+        }
+
+        /**
+         * @return The token's id.
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return The encoded token.
+         */
+        public String getEncodedToken() {
+            return encodedToken;
+        }
+
+        /**
+         * @return An {@link Optional} containing the refresh token, or empty if refresh tokens are disabled.
+         */
+        public Optional<String> getRefreshToken() {
+            return Optional.ofNullable(refreshToken);
+        }
+    }
+
+    /**
+     * A wrapper class that encapsulates a public key used to verify tokens signatures.
+     */
+    final class VerificationKeyData {
+
+        /**
+         * The key id (i.e the value of the "kid" header of tokens signed with the matching private key).
+         */
+        private final String keyId;
+
+        /**
+         * The name of the signature algorithm with which the key is used (e.g ES256).
+         */
+        private final String algorithm;
+
+        /**
+         * The public key.
+         */
+        private final PublicKey publicKey;
+
+        /**
+         * @param keyId     The key id.
+         * @param algorithm The name of the signature algorithm with which the key is used (e.g ES256).
+         * @param publicKey The public key.
+         */
+        public VerificationKeyData(String keyId, String algorithm, PublicKey publicKey) {
+            this.keyId = keyId;
+            this.algorithm = algorithm;
+            this.publicKey = publicKey;
+        }
+
+        /**
+         * @return The key id.
+         */
+        public String getKeyId() {
+            return keyId;
+        }
+
+        /**
+         * @return The name of the signature algorithm with which the key is used (e.g ES256).
+         */
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        /**
+         * @return The public key.
+         */
+        public PublicKey getPublicKey() {
+            return publicKey;
+        }
     }
 
     /**
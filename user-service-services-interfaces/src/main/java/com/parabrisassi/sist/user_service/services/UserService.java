@@ -4,7 +4,10 @@ import com.parabrisassi.sist.user_service.models.Role;
 import com.parabrisassi.sist.user_service.models.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Optional;
 import java.util.Set;
 
@@ -17,22 +20,29 @@ public interface UserService {
      * Finds stored {@link User}s, applying optional filters and pagination.
      * String filters are compared with the "like" keyword, matching anywhere.
      *
-     * @param username A filter for the {@link User}'s username.
-     * @param pageable An {@link Object} implementing the {@link Pageable} interface.
-     * @return The resulting {@link Page}.
+     * Matching {@link User}s are only counted if the total is requested.
+     *
+     * @param username  A filter for the {@link User}'s username.
+     * @param pageable  An {@link Object} implementing the {@link Pageable} interface.
+     * @param withTotal Indicates whether the total of matching {@link User}s must be obtained.
+     * @return The resulting {@link Slice} (a {@link Page} if the total was requested).
+     * @throws com.parabrisassi.sist.user_service.exceptions.ValidationException If users are sharded,
+     *                                                                           and the requested page is too deep.
      * @apiNote Those parameter that are {@code null} must not be taken into account (they are optional).
      */
-    Page<User> findMatching(String username, Pageable pageable);
+    Slice<User> findMatching(String username, Pageable pageable, boolean withTotal);
 
 
     /**
-     * Retrieves the {@link User} with the given {@code username}.
+     * Retrieves a snapshot of the {@link User} with the given {@code username}.
+     * Snapshots might be cached, so they are only guaranteed to reflect changes made through this instance.
      *
      * @param username The {@link User}'s username.
-     * @return A <b>nullable</b> {@link Optional} of {@link User}
-     * containing the {@link User} with the given {@code username} if it exists, or {@code null} otherwise.
+     * @return A <b>nullable</b> {@link Optional} of {@link UserSnapshot}
+     * containing the snapshot of the {@link User} with the given {@code username} if it exists,
+     * or {@code null} otherwise.
      */
-    Optional<User> getByUsername(String username);
+    Optional<UserSnapshot> getByUsername(String username);
 
     /**
      * Creates a new {@link User}.
@@ -48,6 +58,9 @@ public interface UserService {
      *
      * @param oldUsername The actual username of the {@link User} to be altered.
      * @param newUsername The new username.
+     * @throws com.parabrisassi.sist.user_service.exceptions.DisabledFeatureException If users are sharded,
+     *                                                                                 and the new username belongs
+     *                                                                                 to another shard.
      */
     void changeUsername(String oldUsername, String newUsername);
 
@@ -93,4 +106,61 @@ public interface UserService {
      * @param username The username of the {@link User} to be deleted.
      */
     void deleteByUsername(String username);  // TODO: change to invalidate
+
+    /**
+     * A wrapper class that encapsulates an immutable snapshot of a {@link User}
+     * (i.e it is detached from the persistence context, and can be safely shared).
+     */
+    final class UserSnapshot {
+
+        /**
+         * The user's id.
+         */
+        private final long id;
+
+        /**
+         * The username.
+         */
+        private final String username;
+
+        /**
+         * The user's roles.
+         */
+        private final Set<Role> roles;
+
+        /**
+         * Constructor (the snapshot is taken from the user's data, so the {@link User} does not need to be loaded).
+         *
+         * @param id       The user's id.
+         * @param username The username.
+         * @param roles    The user's roles (copied).
+         */
+        public UserSnapshot(long id, String username, Set<Role> roles) {
+            this.id = id;
+            this.username = username;
+            this.roles = Collections.unmodifiableSet(roles.isEmpty() ?
+                    EnumSet.noneOf(Role.class) : EnumSet.copyOf(roles));
+        }
+
+        /**
+         * @return The user's id.
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return The username.
+         */
+        public String getUsername() {
+            return username;
+        }
+
+        /**
+         * @return The user's roles (unmodifiable).
+         */
+        public Set<Role> getRoles() {
+            return roles;
+        }
+    }
 }
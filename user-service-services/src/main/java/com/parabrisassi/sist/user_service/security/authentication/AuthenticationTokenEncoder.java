@@ -3,6 +3,9 @@ package com.parabrisassi.sist.user_service.security.authentication;
 import com.parabrisassi.sist.user_service.models.AuthenticationToken;
 import com.parabrisassi.sist.user_service.services.AuthenticationTokenService;
 import com.parabrisassi.sist.user_service.services.AuthenticationTokenService.TokenData;
+import com.parabrisassi.sist.user_service.services.AuthenticationTokenService.VerificationKeyData;
+
+import java.util.List;
 
 /**
  * Defines behaviour of an object that is in charge of encoding/decoding {@link AuthenticationToken}s.
@@ -26,16 +29,30 @@ public interface AuthenticationTokenEncoder {
      */
     TokenData decode(String encodedToken) throws TokenDecodingException;
 
+    /**
+     * Retrieves the public keys that can be used to verify encoded tokens.
+     *
+     * @return A {@link List} containing the public keys,
+     * which will be empty if tokens are not signed with an asymmetric algorithm.
+     */
+    List<VerificationKeyData> getVerificationKeys();
+
     /**
      * Exception thrown when there are token decoding issues.
      */
     final class TokenDecodingException extends AuthenticationTokenService.TokenException {
 
+        /**
+         * Indicates whether the token could not be decoded because it is expired.
+         */
+        private final boolean expired;
+
         /**
          * Default constructor.
          */
         /* package */ TokenDecodingException() {
             super();
+            this.expired = false;
         }
 
         /**
@@ -45,6 +62,7 @@ public interface AuthenticationTokenEncoder {
          */
         /* package */ TokenDecodingException(String message) {
             super(message);
+            this.expired = false;
         }
 
         /**
@@ -55,7 +73,27 @@ public interface AuthenticationTokenEncoder {
          *                For more information, see {@link RuntimeException#RuntimeException(Throwable)}.
          */
         /* package */ TokenDecodingException(String message, Throwable cause) {
+            this(message, cause, false);
+        }
+
+        /**
+         * Constructor which can set a mes{@code message}, a {@code cause}, and whether the token is expired.
+         *
+         * @param message The detail message, which is saved for later retrieval by the {@link #getMessage()} method.
+         * @param cause   The cause (which is saved for later retrieval by the {@link #getCause()} method).
+         *                For more information, see {@link RuntimeException#RuntimeException(Throwable)}.
+         * @param expired Whether the token could not be decoded because it is expired.
+         */
+        /* package */ TokenDecodingException(String message, Throwable cause, boolean expired) {
             super(message, cause);
+            this.expired = expired;
+        }
+
+        /**
+         * @return {@code true} if the token could not be decoded because it is expired, or {@code false} otherwise.
+         */
+        public boolean isExpired() {
+            return expired;
         }
     }
 }
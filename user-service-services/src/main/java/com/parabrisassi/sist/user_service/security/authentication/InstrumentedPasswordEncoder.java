@@ -0,0 +1,140 @@
+package com.parabrisassi.sist.user_service.security.authentication;
+
+import com.parabrisassi.sist.user_service.instrumentation.FlightRecorderEvents;
+import com.parabrisassi.sist.user_service.instrumentation.PasswordHashingEvent;
+import com.parabrisassi.sist.user_service.instrumentation.RequestTimings;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link PasswordEncoder} that decorates another one, recording how long encoding and matching take,
+ * and how many of those operations are being performed concurrently (as they are CPU bound on purpose).
+ * The time is also added to the {@link RequestTimings} of the request performing the operation,
+ * and each operation is recorded as a {@link PasswordHashingEvent}, if Java Flight Recorder is available.
+ */
+public class InstrumentedPasswordEncoder implements PasswordEncoder {
+
+    /**
+     * {@link Pattern} of BCrypt hashes, capturing their cost (e.g $2a$10$...).
+     */
+    private static final Pattern BCRYPT_COST_PATTERN = Pattern.compile("^\\$2[abxy]?\\$(\\d{2})\\$");
+
+    /**
+     * The decorated {@link PasswordEncoder}.
+     */
+    private final PasswordEncoder passwordEncoder;
+
+    /**
+     * Records the time taken to encode passwords.
+     */
+    private final Timer encodeTimer;
+
+    /**
+     * Records the time taken to match passwords.
+     */
+    private final Timer matchesTimer;
+
+    /**
+     * Amount of operations being performed right now.
+     */
+    private final AtomicInteger activeOperations;
+
+    /**
+     * Constructor.
+     *
+     * @param passwordEncoder The {@link PasswordEncoder} to be decorated.
+     */
+    public InstrumentedPasswordEncoder(PasswordEncoder passwordEncoder) {
+        Assert.notNull(passwordEncoder, "The password encoder must not be null");
+        this.passwordEncoder = passwordEncoder;
+        this.encodeTimer = Timer.builder("passwords.hashing")
+                .description("Time taken to hash passwords")
+                .tag("operation", "encode")
+                .register(Metrics.globalRegistry);
+        this.matchesTimer = Timer.builder("passwords.hashing")
+                .description("Time taken to hash passwords")
+                .tag("operation", "matches")
+                .register(Metrics.globalRegistry);
+        this.activeOperations = Metrics.globalRegistry.gauge("passwords.hashing.active", new AtomicInteger());
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        final PasswordHashingEvent event = beginEvent();
+        final String encodedPassword = record(encodeTimer, () -> passwordEncoder.encode(rawPassword));
+        completeEvent(event, "encode", encodedPassword);
+        return encodedPassword;
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        final PasswordHashingEvent event = beginEvent();
+        final boolean matches = record(matchesTimer, () -> passwordEncoder.matches(rawPassword, encodedPassword));
+        completeEvent(event, "matches", encodedPassword);
+        return matches;
+    }
+
+    /**
+     * Performs the given {@code operation}, recording it with the given {@link Timer}
+     * (and in the current {@link RequestTimings}), and keeping track of the amount of active operations.
+     *
+     * @param timer     The {@link Timer} to use.
+     * @param operation The operation to be performed.
+     * @param <T>       The type of the operation's result.
+     * @return The operation's result.
+     */
+    private <T> T record(Timer timer, Supplier<T> operation) {
+        activeOperations.incrementAndGet();
+        final long start = System.nanoTime();
+        try {
+            return operation.get();
+        } finally {
+            final long elapsed = System.nanoTime() - start;
+            timer.record(elapsed, TimeUnit.NANOSECONDS);
+            RequestTimings.record(RequestTimings.Category.PASSWORD_HASHING, elapsed);
+            activeOperations.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return A new {@link PasswordHashingEvent}, or {@code null} if Java Flight Recorder is not available.
+     */
+    private static PasswordHashingEvent beginEvent() {
+        return FlightRecorderEvents.isAvailable() ? new PasswordHashingEvent() : null;
+    }
+
+    /**
+     * Completes the given {@code event} (if any).
+     *
+     * @param event           The {@link PasswordHashingEvent} (or {@code null}).
+     * @param operation       The performed operation (i.e encode or matches).
+     * @param encodedPassword The hash involved in the operation (used to get the cost).
+     */
+    private static void completeEvent(PasswordHashingEvent event, String operation, String encodedPassword) {
+        if (event != null) {
+            event.complete(operation, cost(encodedPassword));
+        }
+    }
+
+    /**
+     * Gets the cost of the given {@code encodedPassword}.
+     *
+     * @param encodedPassword The hash.
+     * @return The cost (i.e log rounds), or -1 if it is not a BCrypt hash.
+     */
+    private static int cost(String encodedPassword) {
+        if (encodedPassword == null) {
+            return -1;
+        }
+        final Matcher matcher = BCRYPT_COST_PATTERN.matcher(encodedPassword);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+}
@@ -2,27 +2,43 @@ package com.parabrisassi.sist.user_service.security.authentication;
 
 import com.parabrisassi.sist.user_service.models.Role;
 import com.parabrisassi.sist.user_service.services.AuthenticationTokenService;
+import com.parabrisassi.sist.user_service.services.AuthenticationTokenService.VerificationKeyData;
 import io.jsonwebtoken.*;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
+import java.security.Key;
+import java.security.PublicKey;
 import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
 
 /**
  * Implementation of {@link AuthenticationTokenEncoder}, using JSON Web Tokens as the token encoding.
+ * Tokens are signed with the current key of a {@link SigningKeyRing} (either a shared secret for HS512,
+ * or an elliptic curve key pair for ES256), and they carry the key id in the "kid" header,
+ * so they can be verified with any of the keys in the ring.
  */
 @Component
 public class JwtAuthenticationTokenEncoder implements AuthenticationTokenEncoder {
 
     private final static String ROLES_CLAIM_NAME = "roles";
 
+    private final static String TOKEN_VERSION_CLAIM_NAME = "ver";
+
+    /**
+     * The {@link SigningKeyRing} holding the keys used to sign and verify tokens.
+     */
+    private final SigningKeyRing signingKeyRing;
+
     /**
-     * The secret key used to sign the tokens, encoded in base 64.
+     * The {@link JwtParser} used to decode tokens, built once as it resolves keys from the {@link #signingKeyRing}.
      */
-    private final String base64EncodedSecretKey;
+    private final JwtParser jwtParser;
 
     /**
      * The duration of tokens, in milliseconds.
@@ -30,49 +46,97 @@ public class JwtAuthenticationTokenEncoder implements AuthenticationTokenEncoder
     private final long duration;
 
     /**
-     * THe signing algorithm used to sign tokens.
+     * Records the time taken to encode tokens.
+     */
+    private final Timer encodeTimer;
+
+    /**
+     * Records the time taken to decode tokens (including signature verification).
      */
-    private final SignatureAlgorithm signatureAlgorithm;
+    private final Timer decodeTimer;
 
     /**
      * Constructor.
      *
-     * @param secretKey The secret key used to sign the tokens
-     * @param duration  The duration of tokens, in seconds
+     * @param signingKeyRing The {@link SigningKeyRing} holding the keys used to sign and verify tokens.
+     * @param duration       The duration of tokens, in seconds
      */
-    /* package */ JwtAuthenticationTokenEncoder(@Value("${custom.security.jwt.signing-key}") String secretKey,
+    @Autowired
+    /* package */ JwtAuthenticationTokenEncoder(SigningKeyRing signingKeyRing,
                                                 @Value("${custom.security.jwt.duration}") Long duration) {
-        this.base64EncodedSecretKey = Base64.getEncoder().encodeToString(secretKey.getBytes());
+        this.signingKeyRing = signingKeyRing;
+        this.jwtParser = Jwts.parser().setSigningKeyResolver(new KeyRingSigningKeyResolver(signingKeyRing));
         this.duration = duration * 1000;
-        this.signatureAlgorithm = SignatureAlgorithm.HS512;
+        final String algorithm = signingKeyRing.getSignatureAlgorithm().getValue();
+        this.encodeTimer = Timer.builder("tokens.encode")
+                .description("Time taken to encode (and sign) a token")
+                .tag("algorithm", algorithm)
+                .register(Metrics.globalRegistry);
+        this.decodeTimer = Timer.builder("tokens.decode")
+                .description("Time taken to decode (and verify) a token")
+                .tag("algorithm", algorithm)
+                .register(Metrics.globalRegistry);
     }
 
     @Override
     public String encode(AuthenticationTokenService.TokenData token) {
         Objects.requireNonNull(token, "The token must not be null");
+        return encodeTimer.record(() -> doEncode(token));
+    }
+
+    @Override
+    public AuthenticationTokenService.TokenData decode(String encodedToken) throws TokenDecodingException {
+        if (!StringUtils.hasText(encodedToken)) {
+            throw new IllegalArgumentException("The token must not be null or empty");
+        }
+        return decodeTimer.record(() -> doDecode(encodedToken));
+    }
+
+    @Override
+    public List<VerificationKeyData> getVerificationKeys() {
+        final String algorithm = signingKeyRing.getSignatureAlgorithm().getValue();
+        return signingKeyRing.getKeys().stream()
+                .filter(key -> key.getVerificationKey() instanceof PublicKey)
+                .map(key -> new VerificationKeyData(key.getKeyId(), algorithm, (PublicKey) key.getVerificationKey()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Encodes the given {@code token} into a signed JWT.
+     *
+     * @param token The token to be encoded.
+     * @return The encoded token.
+     */
+    private String doEncode(AuthenticationTokenService.TokenData token) {
 
         final Claims claims = Jwts.claims();
         claims.setId(String.valueOf(token.getId()));
         claims.setSubject(token.getUsername());
         claims.put(ROLES_CLAIM_NAME, token.getRoles());
+        claims.put(TOKEN_VERSION_CLAIM_NAME, token.getTokenVersion());
         final Instant now = Instant.now();
 
+        final SigningKeyRing.SigningKey signingKey = signingKeyRing.getCurrentKey();
+
         return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, signingKey.getKeyId())
                 .setClaims(claims)
                 .setIssuedAt(Date.from(now))
                 .setExpiration(Date.from(now.plusMillis(duration)))
-                .signWith(signatureAlgorithm, base64EncodedSecretKey)
+                .signWith(signingKeyRing.getSignatureAlgorithm(), signingKey.getSigningKey())
                 .compact();
     }
 
-    @Override
-    public AuthenticationTokenService.TokenData decode(String encodedToken) throws TokenDecodingException {
-        if (!StringUtils.hasText(encodedToken)) {
-            throw new IllegalArgumentException("The token must not be null or empty");
-        }
+    /**
+     * Decodes the given {@code encodedToken}, verifying its signature and its claims.
+     *
+     * @param encodedToken The encoded token.
+     * @return The decoded token.
+     * @throws TokenDecodingException If the token could not be decoded.
+     */
+    private AuthenticationTokenService.TokenData doDecode(String encodedToken) throws TokenDecodingException {
         try {
-            final Claims claims = Jwts.parser()
-                    .setSigningKey(base64EncodedSecretKey)
+            final Claims claims = jwtParser
                     .parse(encodedToken, CustomJwtHandlerAdapter.getInstance())
                     .getBody();
 
@@ -80,15 +144,47 @@ public class JwtAuthenticationTokenEncoder implements AuthenticationTokenEncoder
             final long tokenId = Long.valueOf(claims.getId());
             final String username = claims.getSubject();
             @SuppressWarnings("unchecked") final Set<Role> roles = (Set<Role>) claims.get(ROLES_CLAIM_NAME);
+            final int tokenVersion = (Integer) claims.get(TOKEN_VERSION_CLAIM_NAME);
+            final Instant expiration = claims.getExpiration().toInstant();
 
-            return new AuthenticationTokenService.TokenData(tokenId, username, roles);
+            return new AuthenticationTokenService.TokenData(tokenId, username, roles, tokenVersion, expiration);
 
-        } catch (MalformedJwtException | SignatureException | ExpiredJwtException | UnsupportedJwtException
-                | MissingClaimException e) {
+        } catch (ExpiredJwtException e) {
+            throw new TokenDecodingException("The jwt token is expired", e, true);
+        } catch (MalformedJwtException | SignatureException | UnsupportedJwtException | MissingClaimException e) {
             throw new TokenDecodingException("There was a problem with the jwt token", e);
         }
     }
 
+    /**
+     * {@link SigningKeyResolver} that resolves the verification key of a token
+     * from its "kid" header, using a {@link SigningKeyRing}.
+     */
+    private static final class KeyRingSigningKeyResolver extends SigningKeyResolverAdapter {
+
+        /**
+         * The {@link SigningKeyRing} from where keys are resolved.
+         */
+        private final SigningKeyRing signingKeyRing;
+
+        /**
+         * @param signingKeyRing The {@link SigningKeyRing} from where keys are resolved.
+         */
+        private KeyRingSigningKeyResolver(SigningKeyRing signingKeyRing) {
+            this.signingKeyRing = signingKeyRing;
+        }
+
+        @Override
+        public Key resolveSigningKey(JwsHeader header, Claims claims) {
+            if (!signingKeyRing.getSignatureAlgorithm().getValue().equals(header.getAlgorithm())) {
+                throw new UnsupportedJwtException("Unexpected signature algorithm " + header.getAlgorithm());
+            }
+            return signingKeyRing.findKey(header.getKeyId())
+                    .map(SigningKeyRing.SigningKey::getVerificationKey)
+                    .orElseThrow(() -> new SignatureException("Unknown key id " + header.getKeyId()));
+        }
+    }
+
     /**
      * Custom implementation of {@link JwtHandlerAdapter}.
      */
@@ -140,6 +236,14 @@ public class JwtAuthenticationTokenEncoder implements AuthenticationTokenEncoder
                     .collect(Collectors.toSet());
             claims.put(ROLES_CLAIM_NAME, roles);
 
+            // Check token version is an integer (tokens issued before versions existed have version 0)
+            final Object tokenVersionObject = claims.get(TOKEN_VERSION_CLAIM_NAME);
+            if (tokenVersionObject == null) {
+                claims.put(TOKEN_VERSION_CLAIM_NAME, 0);
+            } else if (!(tokenVersionObject instanceof Integer)) {
+                throw new MalformedJwtException("The \"token version\" claim must be an integer");
+            }
+
             // Check issued at date is present and it is not a future date
             final Date issuedAt = Optional.ofNullable(claims.getIssuedAt())
                     .orElseThrow(() ->
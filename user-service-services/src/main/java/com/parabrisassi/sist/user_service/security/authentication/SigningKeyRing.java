@@ -0,0 +1,309 @@
+package com.parabrisassi.sist.user_service.security.authentication;
+
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.*;
+
+/**
+ * Holds the keys used to sign and verify tokens, indexed by their key id (i.e the "kid" header of a token).
+ * There is always one current key, used to sign new tokens, and any amount of previous keys that can only be used
+ * to verify them. All the keys are configured, so every instance signs and verifies tokens the same way.
+ * <p>
+ * To rotate the signing key, a new current key (with a new id) is configured, and the replaced one is added to the
+ * previous keys, where it must be kept until all the tokens signed with it have expired (i.e for the duration
+ * of tokens). Tokens issued without a "kid" header are verified with the key whose id is the default one
+ * (i.e that used when no id is configured), or with the current key if there is none.
+ */
+@Component
+/* package */ class SigningKeyRing {
+
+    /**
+     * The default key id for the configured secret key, when none is configured.
+     */
+    private final static String DEFAULT_SECRET_KEY_ID = "default";
+
+    /**
+     * Separates the key id from the key in each configured previous key.
+     */
+    private final static char PREVIOUS_KEY_ID_SEPARATOR = ':';
+
+    /**
+     * The signing algorithm with which the keys in this ring are used.
+     */
+    private final SignatureAlgorithm signatureAlgorithm;
+
+    /**
+     * The keys that can be used to verify tokens, indexed by their id.
+     */
+    private final Map<String, SigningKey> keys;
+
+    /**
+     * The id of the key used to verify tokens issued without a "kid" header.
+     */
+    private final String defaultKeyId;
+
+    /**
+     * The key used to sign new tokens.
+     */
+    private final SigningKey currentKey;
+
+    /**
+     * Constructor.
+     *
+     * @param signatureAlgorithm The name of the algorithm used to sign tokens (i.e HS512 or ES256).
+     * @param secretKey          The secret key used to sign the tokens (used by HS512).
+     * @param privateKey         The base64 encoded (PKCS#8) private key used to sign the tokens (used by ES256).
+     * @param publicKey          The base64 encoded (X.509) public key used to verify the tokens (used by ES256).
+     * @param keyId              The id of the current key. If empty, a default one is used.
+     * @param previousKeys       The previous keys, each one as its id and the key
+     *                           (the secret key for HS512, or the base64 encoded public key for ES256),
+     *                           separated by a colon.
+     */
+    /* package */ SigningKeyRing(@Value("${custom.security.jwt.signing-algorithm:HS512}") String signatureAlgorithm,
+                                 @Value("${custom.security.jwt.signing-key:}") String secretKey,
+                                 @Value("${custom.security.jwt.private-key:}") String privateKey,
+                                 @Value("${custom.security.jwt.public-key:}") String publicKey,
+                                 @Value("${custom.security.jwt.key-id:}") String keyId,
+                                 @Value("${custom.security.jwt.previous-keys:}") String[] previousKeys) {
+        this.signatureAlgorithm = SignatureAlgorithm.forName(signatureAlgorithm);
+        this.currentKey = configuredKey(this.signatureAlgorithm, secretKey, privateKey, publicKey, keyId);
+
+        final Map<String, SigningKey> keys = new LinkedHashMap<>();
+        keys.put(currentKey.getKeyId(), currentKey);
+        for (String previousKey : previousKeys) {
+            final SigningKey key = previousKey(this.signatureAlgorithm, previousKey);
+            if (keys.putIfAbsent(key.getKeyId(), key) != null) {
+                throw new IllegalArgumentException("The key id " + key.getKeyId() + " is configured more than once");
+            }
+        }
+        this.keys = Collections.unmodifiableMap(keys);
+        this.defaultKeyId = keys.containsKey(DEFAULT_SECRET_KEY_ID) ? DEFAULT_SECRET_KEY_ID : currentKey.getKeyId();
+    }
+
+    /**
+     * @return The signature algorithm with which the keys in this ring are used.
+     */
+    /* package */ SignatureAlgorithm getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    /**
+     * @return The key to be used to sign new tokens.
+     */
+    /* package */ SigningKey getCurrentKey() {
+        return currentKey;
+    }
+
+    /**
+     * Retrieves the key with the given {@code keyId}, in constant time.
+     *
+     * @param keyId The id of the key (i.e the "kid" header of the token),
+     *              or {@code null} for tokens issued without key id.
+     * @return An {@link Optional} containing the key, or empty if there is no key with the given id.
+     */
+    /* package */ Optional<SigningKey> findKey(String keyId) {
+        return Optional.ofNullable(keys.get(keyId == null ? defaultKeyId : keyId));
+    }
+
+    /**
+     * @return A {@link Collection} holding all the keys that can be used to verify tokens.
+     */
+    /* package */ Collection<SigningKey> getKeys() {
+        return keys.values();
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Builds the configured current key for the given {@code signatureAlgorithm}.
+     *
+     * @param signatureAlgorithm The signature algorithm.
+     * @param secretKey          The secret key (used by HS512).
+     * @param base64PrivateKey   The base64 encoded (PKCS#8) private key (used by ES256).
+     * @param base64PublicKey    The base64 encoded (X.509) public key (used by ES256).
+     * @param keyId              The configured key id. If empty, a default one is used.
+     * @return The configured key.
+     * @throws IllegalArgumentException If the algorithm is not supported, or if keys are missing or not valid.
+     */
+    private static SigningKey configuredKey(SignatureAlgorithm signatureAlgorithm, String secretKey,
+                                            String base64PrivateKey, String base64PublicKey, String keyId)
+            throws IllegalArgumentException {
+        if (signatureAlgorithm == SignatureAlgorithm.HS512) {
+            if (!StringUtils.hasText(secretKey)) {
+                throw new IllegalArgumentException("A signing key must be set when using HS512");
+            }
+            final Key key = secretKey(signatureAlgorithm, secretKey);
+            return new SigningKey(StringUtils.hasText(keyId) ? keyId : DEFAULT_SECRET_KEY_ID, key, key);
+        }
+        if (signatureAlgorithm == SignatureAlgorithm.ES256) {
+            final KeyPair keyPair = ellipticCurveKeyPair(base64PrivateKey, base64PublicKey);
+            return new SigningKey(StringUtils.hasText(keyId) ? keyId : thumbprint(keyPair.getPublic()),
+                    keyPair.getPrivate(), keyPair.getPublic());
+        }
+        throw new IllegalArgumentException("Unsupported signing algorithm " + signatureAlgorithm
+                + ". Only HS512 and ES256 are supported");
+    }
+
+    /**
+     * Builds a configured previous key (which can only be used to verify tokens)
+     * for the given {@code signatureAlgorithm}.
+     *
+     * @param signatureAlgorithm The signature algorithm (already checked to be supported).
+     * @param previousKey        The key id and the key (the secret key for HS512,
+     *                           or the base64 encoded public key for ES256), separated by a colon.
+     * @return The previous key.
+     * @throws IllegalArgumentException If it has no key id or no key, or if the key is not valid.
+     */
+    private static SigningKey previousKey(SignatureAlgorithm signatureAlgorithm, String previousKey)
+            throws IllegalArgumentException {
+        final int separatorIndex = previousKey.indexOf(PREVIOUS_KEY_ID_SEPARATOR);
+        if (separatorIndex <= 0 || separatorIndex == previousKey.length() - 1) {
+            throw new IllegalArgumentException("Previous keys must be set as <key id>:<key>");
+        }
+        final String keyId = previousKey.substring(0, separatorIndex).trim();
+        final String key = previousKey.substring(separatorIndex + 1).trim();
+        final Key verificationKey = signatureAlgorithm == SignatureAlgorithm.HS512 ?
+                secretKey(signatureAlgorithm, key) : ellipticCurvePublicKey(key);
+        return new SigningKey(keyId, null, verificationKey);
+    }
+
+    /**
+     * Builds the {@link Key} for the given {@code secretKey}.
+     *
+     * @param signatureAlgorithm The signature algorithm.
+     * @param secretKey          The secret key.
+     * @return The {@link Key}.
+     */
+    private static Key secretKey(SignatureAlgorithm signatureAlgorithm, String secretKey) {
+        return new SecretKeySpec(secretKey.getBytes(StandardCharsets.UTF_8), signatureAlgorithm.getJcaName());
+    }
+
+    /**
+     * Builds the elliptic curve {@link KeyPair} used with the {@link SignatureAlgorithm#ES256} algorithm.
+     *
+     * @param base64PrivateKey The base64 encoded (PKCS#8) private key.
+     * @param base64PublicKey  The base64 encoded (X.509) public key.
+     * @return The {@link KeyPair}.
+     * @throws IllegalArgumentException If any of the keys is not set, or if they can not be decoded.
+     */
+    private static KeyPair ellipticCurveKeyPair(String base64PrivateKey, String base64PublicKey)
+            throws IllegalArgumentException {
+        if (!StringUtils.hasText(base64PrivateKey) || !StringUtils.hasText(base64PublicKey)) {
+            throw new IllegalArgumentException("Both the private and the public keys must be set when using ES256");
+        }
+        try {
+            final PrivateKey privateKey = KeyFactory.getInstance("EC")
+                    .generatePrivate(new PKCS8EncodedKeySpec(Base64.getDecoder().decode(base64PrivateKey)));
+            return new KeyPair(ellipticCurvePublicKey(base64PublicKey), privateKey);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Elliptic curve keys are not supported by this platform", e);
+        } catch (InvalidKeySpecException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("The configured ES256 keys could not be decoded", e);
+        }
+    }
+
+    /**
+     * Builds an elliptic curve {@link PublicKey} used with the {@link SignatureAlgorithm#ES256} algorithm.
+     *
+     * @param base64PublicKey The base64 encoded (X.509) public key.
+     * @return The {@link PublicKey}.
+     * @throws IllegalArgumentException If it can not be decoded.
+     */
+    private static PublicKey ellipticCurvePublicKey(String base64PublicKey) throws IllegalArgumentException {
+        try {
+            return KeyFactory.getInstance("EC")
+                    .generatePublic(new X509EncodedKeySpec(Base64.getDecoder().decode(base64PublicKey)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Elliptic curve keys are not supported by this platform", e);
+        } catch (InvalidKeySpecException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("The configured ES256 public key could not be decoded", e);
+        }
+    }
+
+    /**
+     * Calculates the thumbprint of the given {@link PublicKey}
+     * (i.e the base64url encoded SHA-256 digest of its encoded form).
+     *
+     * @param publicKey The {@link PublicKey} whose thumbprint must be calculated.
+     * @return The thumbprint.
+     */
+    private static String thumbprint(PublicKey publicKey) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(publicKey.getEncoded());
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this platform", e);
+        }
+    }
+
+    /**
+     * A key in the ring, with its id.
+     */
+    /* package */ static final class SigningKey {
+
+        /**
+         * The key id.
+         */
+        private final String keyId;
+
+        /**
+         * The key used to sign tokens ({@code null} for previous keys, which only verify them).
+         */
+        private final Key signingKey;
+
+        /**
+         * The key used to verify tokens (the same as the {@link #signingKey} for secret keys).
+         */
+        private final Key verificationKey;
+
+        /**
+         * @param keyId           The key id.
+         * @param signingKey      The key used to sign tokens ({@code null} for previous keys).
+         * @param verificationKey The key used to verify tokens.
+         */
+        private SigningKey(String keyId, Key signingKey, Key verificationKey) {
+            this.keyId = keyId;
+            this.signingKey = signingKey;
+            this.verificationKey = verificationKey;
+        }
+
+        /**
+         * @return The key id.
+         */
+        /* package */ String getKeyId() {
+            return keyId;
+        }
+
+        /**
+         * @return The key used to sign tokens ({@code null} for previous keys, which only verify them).
+         */
+        /* package */ Key getSigningKey() {
+            return signingKey;
+        }
+
+        /**
+         * @return The key used to verify tokens.
+         */
+        /* package */ Key getVerificationKey() {
+            return verificationKey;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.parabrisassi.sist.user_service.security.authentication;
+
+/**
+ * Defines behaviour of an object that keeps track of users' token versions,
+ * in order to check tokens without loading their owners.
+ */
+public interface TokenVersionRegistry {
+
+    /**
+     * Checks whether the given {@code tokenVersion} is the actual token version of the user
+     * with the given {@code username}.
+     *
+     * @param username     The username of the token's owner.
+     * @param tokenVersion The token version carried by the token.
+     * @return {@code true} if the token version is the actual one, or {@code false} otherwise
+     * (including the case in which the user does not exist).
+     */
+    boolean isCurrent(String username, int tokenVersion);
+
+    /**
+     * Discards the known token version of the user with the given {@code username},
+     * which must be called when it changes. If there is an active transaction,
+     * it is discarded once the transaction commits.
+     *
+     * @param username The username of the user whose token version changed.
+     */
+    void evict(String username);
+}
@@ -0,0 +1,141 @@
+package com.parabrisassi.sist.user_service.security.authentication;
+
+import com.parabrisassi.sist.user_service.persistence.daos.UserDao;
+import com.parabrisassi.sist.user_service.persistence.replication.ReadAfterWriteTracker;
+import com.parabrisassi.sist.user_service.services.LookupCoalescer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concrete implementation of {@link TokenVersionRegistry}, which keeps token versions in memory.
+ * Versions are loaded from the database when missing, or when they are older than the configured max. age,
+ * which bounds how long a version change made by another instance takes to be noticed.
+ * Versions are loaded on behalf of their user (see {@link ReadAfterWriteTracker}), so the version of a user
+ * whose tokens were just revoked through this instance is not loaded from a lagging read replica.
+ * Concurrent loads of the same version are coalesced into one database call.
+ */
+@Component
+public class TokenVersionRegistryImpl implements TokenVersionRegistry {
+
+    /**
+     * Max. amount of token versions kept in memory. When reached, all of them are discarded.
+     */
+    private static final int MAX_ENTRIES = 100_000;
+
+    /**
+     * DAO used to load token versions.
+     */
+    private final UserDao userDao;
+
+    /**
+     * Max. amount of milliseconds a token version is kept before being loaded again.
+     */
+    private final long maxAge;
+
+    /**
+     * The known token versions, by username.
+     */
+    private final Map<String, KnownVersion> versions;
+
+    /**
+     * {@link LookupCoalescer} used to load each missing version only once when many callers miss it at once.
+     */
+    private final LookupCoalescer<String, Optional<Integer>> loads;
+
+    /**
+     * {@link ReadAfterWriteTracker} on whose behalf versions are loaded.
+     */
+    private final ReadAfterWriteTracker readAfterWriteTracker;
+
+    @Autowired
+    public TokenVersionRegistryImpl(UserDao userDao,
+                                    @Value("${custom.security.token-version.max-age}") long maxAge,
+                                    ReadAfterWriteTracker readAfterWriteTracker) {
+        this.userDao = userDao;
+        this.maxAge = maxAge * 1000;
+        this.versions = new ConcurrentHashMap<>();
+        this.loads = new LookupCoalescer<>("token-versions", readAfterWriteTracker);
+        this.readAfterWriteTracker = readAfterWriteTracker;
+    }
+
+    @Override
+    public boolean isCurrent(String username, int tokenVersion) {
+        if (username == null) {
+            return false;
+        }
+        final long now = System.currentTimeMillis();
+        final KnownVersion known = versions.get(username);
+        if (known != null && now - known.loadedAt < maxAge) {
+            return known.version == tokenVersion;
+        }
+        return readAfterWriteTracker.onBehalfOf(username,
+                () -> loads.get(username, () -> userDao.findTokenVersionByUsername(username)))
+                .map(version -> {
+                    if (versions.size() >= MAX_ENTRIES) {
+                        versions.clear();
+                    }
+                    versions.put(username, new KnownVersion(version, now));
+                    return version == tokenVersion;
+                })
+                .orElseGet(() -> {
+                    versions.remove(username);
+                    return false;
+                });
+    }
+
+    @Override
+    public void evict(String username) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            doEvict(username);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                doEvict(username);
+            }
+        });
+    }
+
+    /**
+     * Discards the known version of the user with the given {@code username}.
+     *
+     * @param username The username of the user whose token version changed.
+     */
+    private void doEvict(String username) {
+        loads.forget(username);
+        versions.remove(username);
+    }
+
+    /**
+     * A token version, together with the moment it was loaded.
+     */
+    private static final class KnownVersion {
+
+        /**
+         * The token version.
+         */
+        private final int version;
+
+        /**
+         * The moment (in milliseconds since epoch) at which the version was loaded.
+         */
+        private final long loadedAt;
+
+        /**
+         * @param version  The token version.
+         * @param loadedAt The moment (in milliseconds since epoch) at which the version was loaded.
+         */
+        private KnownVersion(int version, long loadedAt) {
+            this.version = version;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -16,4 +16,12 @@ public interface AuthenticationTokenPermissionProvider {
      * @return {@code true} if it is the owner of the token, or if it is an admin, or {@code false} otherwise.
      */
     boolean isOwnerOrAdmin(long tokenId);
+
+    /**
+     * Discards the ownership lookups in flight, which must be called when the username of a
+     * {@link com.parabrisassi.sist.user_service.models.User} changes (the owner of a lookup is not known until
+     * it completes, so all of them are discarded). If there is an active transaction,
+     * they are discarded once the transaction commits.
+     */
+    void evictOwners();
 }
@@ -1,14 +1,19 @@
 package com.parabrisassi.sist.user_service.security.authorization;
 
-import com.parabrisassi.sist.user_service.models.AuthenticationToken;
-import com.parabrisassi.sist.user_service.models.User;
 import com.parabrisassi.sist.user_service.persistence.daos.AuthenticationTokenDao;
+import com.parabrisassi.sist.user_service.persistence.replication.ReadAfterWriteTracker;
 import com.parabrisassi.sist.user_service.services.AuthenticationTokenService;
+import com.parabrisassi.sist.user_service.services.LookupCoalescer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Optional;
 
 /**
  * Concrete implementation of {@link AuthenticationTokenPermissionProvider}.
@@ -27,8 +32,23 @@ public class AuthenticationTokenPermissionProviderImpl implements Authentication
      */
     private final AuthenticationTokenDao authenticationTokenDao;
 
-    public AuthenticationTokenPermissionProviderImpl(AuthenticationTokenDao authenticationTokenDao) {
+    /**
+     * Indicates whether tokens are stateless (i.e they are not stored, so ownership can not be checked).
+     */
+    private final boolean statelessTokens;
+
+    /**
+     * {@link LookupCoalescer} used to load each token's owner only once when many callers check it at once.
+     */
+    private final LookupCoalescer<Long, Optional<String>> ownerLookups;
+
+    public AuthenticationTokenPermissionProviderImpl(AuthenticationTokenDao authenticationTokenDao,
+                                                     @Value("${custom.security.stateless-tokens}")
+                                                             boolean statelessTokens,
+                                                     ReadAfterWriteTracker readAfterWriteTracker) {
         this.authenticationTokenDao = authenticationTokenDao;
+        this.statelessTokens = statelessTokens;
+        this.ownerLookups = new LookupCoalescer<>("token-owners", readAfterWriteTracker);
     }
 
 
@@ -49,10 +69,27 @@ public class AuthenticationTokenPermissionProviderImpl implements Authentication
             return false;
         }
 
-        return authenticationTokenDao.findById(tokenId)
-                .map(AuthenticationToken::getUser)
-                .map(User::getUsername)
+        if (statelessTokens) {
+            // Only the token being used (whose id is kept as the authentication details) is known to be owned
+            return Long.valueOf(tokenId).equals(authentication.getDetails());
+        }
+        // Only the owner's username is queried (i.e neither the token nor its user are loaded)
+        return ownerLookups.get(tokenId, () -> authenticationTokenDao.findOwnerUsername(tokenId))
                 .map(username -> username.equals(principal))
                 .orElseThrow(() -> new AuthenticationTokenService.TokenException("Invalid token"));
     }
+
+    @Override
+    public void evictOwners() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            ownerLookups.forgetAll();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                ownerLookups.forgetAll();
+            }
+        });
+    }
 }
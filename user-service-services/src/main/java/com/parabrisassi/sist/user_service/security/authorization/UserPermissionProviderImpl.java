@@ -3,6 +3,8 @@ package com.parabrisassi.sist.user_service.security.authorization;
 import com.parabrisassi.sist.user_service.models.Role;
 import com.parabrisassi.sist.user_service.models.User;
 import com.parabrisassi.sist.user_service.persistence.daos.UserDao;
+import com.parabrisassi.sist.user_service.services.UserService.UserSnapshot;
+import com.parabrisassi.sist.user_service.services.UserSnapshotCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -33,26 +35,33 @@ import java.util.stream.Collectors;
      */
     private final UserDao userDao;
 
+    /**
+     * A {@link UserSnapshotCache} used to retrieve a {@link User}'s snapshot when only reading it.
+     */
+    private final UserSnapshotCache userSnapshotCache;
+
 
     @Autowired
-    /* package */ UserPermissionProviderImpl(UserDao userDao) {
+    /* package */ UserPermissionProviderImpl(UserDao userDao, UserSnapshotCache userSnapshotCache) {
         this.userDao = userDao;
+        this.userSnapshotCache = userSnapshotCache;
     }
 
 
     @Override
     public boolean readByUsername(String username) {
-        return performAuthorization(userDao::findByUsername, username);
+        return performAuthorization(criteria -> userSnapshotCache.get(criteria).map(UserSnapshot::getUsername),
+                username);
     }
 
     @Override
     public boolean writeByUsername(String username) {
-        return performAuthorization(userDao::findByUsername, username);
+        return performAuthorization(criteria -> userDao.findByUsername(criteria).map(User::getUsername), username);
     }
 
     @Override
     public boolean deleteByUsername(String username) {
-        return performAuthorization(userDao::findByUsername, username);
+        return performAuthorization(criteria -> userDao.findByUsername(criteria).map(User::getUsername), username);
     }
 
     @Override
@@ -62,20 +71,21 @@ import java.util.stream.Collectors;
     }
 
     /**
-     * Performs authorization over the {@link User} contained in the {@link Optional}
-     * retrieved by the given {@code userGetterFunction}, which takes the given {@code searchCriteria}.
+     * Performs authorization over the {@link User} whose username is contained in the {@link Optional}
+     * retrieved by the given {@code usernameGetterFunction}, which takes the given {@code searchCriteria}.
      * The one performing the operation is the {@link User} whose {@code username} is stored
      * in the {@link Authentication} retrieved by the {@link SecurityContextHolder#getContext()} method.
      *
-     * @param userGetterFunction {@link Function} that takes a {@code T} an returns an {@link Optional} of {@link User}.
-     *                           This {@link Function} is used to query the {@link User}
-     *                           to which the operation is going to be applied.
-     * @param searchCriteria     The {@link User} search criteria
-     *                           (i.e the argument for the given {@code userGetterFunction}).
-     * @param <T>                The concrete type for the {@code searchCriteria} element.
+     * @param usernameGetterFunction {@link Function} that takes a {@code T} an returns an {@link Optional}
+     *                               of the username of the {@link User} to which the operation is going
+     *                               to be applied (empty if it does not exist).
+     * @param searchCriteria         The {@link User} search criteria
+     *                               (i.e the argument for the given {@code usernameGetterFunction}).
+     * @param <T>                    The concrete type for the {@code searchCriteria} element.
      * @return {@code true} if it is authorized, or {@code false} otherwise.
      */
-    private static <T> boolean performAuthorization(Function<T, Optional<User>> userGetterFunction, T searchCriteria) {
+    private static <T> boolean performAuthorization(Function<T, Optional<String>> usernameGetterFunction,
+                                                    T searchCriteria) {
         final Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         if (authentication == null) {
             return false;
@@ -91,8 +101,8 @@ import java.util.stream.Collectors;
             return false;
         }
 
-        return userGetterFunction.apply(searchCriteria)
-                .map(user -> user.getUsername().equals(principal))
+        return usernameGetterFunction.apply(searchCriteria)
+                .map(username -> username.equals(principal))
                 .orElse(false);
     }
 
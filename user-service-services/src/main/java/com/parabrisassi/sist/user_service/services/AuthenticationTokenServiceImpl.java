@@ -3,32 +3,63 @@ package com.parabrisassi.sist.user_service.services;
 import com.parabrisassi.sist.user_service.error_handling.errros.ValidationError;
 import com.parabrisassi.sist.user_service.error_handling.helpers.ValidationExceptionThrower;
 import com.parabrisassi.sist.user_service.error_handling.helpers.ValidationHelper;
+import com.parabrisassi.sist.user_service.exceptions.DisabledFeatureException;
 import com.parabrisassi.sist.user_service.exceptions.InvalidCredentialsException;
 import com.parabrisassi.sist.user_service.exceptions.NoSuchEntityException;
 import com.parabrisassi.sist.user_service.exceptions.ValidationException;
+import com.parabrisassi.sist.user_service.instrumentation.FlightRecorderEvents;
+import com.parabrisassi.sist.user_service.instrumentation.TokenValidationEvent;
 import com.parabrisassi.sist.user_service.models.AuthenticationToken;
+import com.parabrisassi.sist.user_service.models.RefreshToken;
+import com.parabrisassi.sist.user_service.models.RevokedToken;
 import com.parabrisassi.sist.user_service.models.User;
 import com.parabrisassi.sist.user_service.models.UserCredential;
+import com.parabrisassi.sist.user_service.persistence.batch.AuthenticationTokenBatchWriter;
 import com.parabrisassi.sist.user_service.persistence.daos.AuthenticationTokenDao;
+import com.parabrisassi.sist.user_service.persistence.daos.RefreshTokenDao;
+import com.parabrisassi.sist.user_service.persistence.daos.RevokedTokenDao;
 import com.parabrisassi.sist.user_service.persistence.daos.UserCredentialDao;
 import com.parabrisassi.sist.user_service.persistence.daos.UserDao;
+import com.parabrisassi.sist.user_service.persistence.paging.PagingExecutor;
 import com.parabrisassi.sist.user_service.persistence.query_helpers.AuthenticationTokenQueryHelper;
+import com.parabrisassi.sist.user_service.persistence.replication.ReadAfterWriteTracker;
+import com.parabrisassi.sist.user_service.persistence.sharding.ShardKey;
+import com.parabrisassi.sist.user_service.persistence.sharding.ShardRouter;
 import com.parabrisassi.sist.user_service.security.authentication.AuthenticationTokenEncoder;
+import com.parabrisassi.sist.user_service.security.authentication.AuthenticationTokenEncoder.TokenDecodingException;
+import com.parabrisassi.sist.user_service.security.authentication.TokenVersionRegistry;
+import io.micrometer.core.instrument.Metrics;
 import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.util.LinkedList;
-import java.util.List;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import static com.parabrisassi.sist.user_service.error_handling.errros.ValidationError.ErrorCause.ILLEGAL_VALUE;
 import static com.parabrisassi.sist.user_service.error_handling.errros.ValidationError.ErrorCause.MISSING_VALUE;
 import static com.parabrisassi.sist.user_service.models.constants.ValidationErrorConstants.MISSING_USERNAME;
+import static com.parabrisassi.sist.user_service.persistence.sharding.ShardKey.Kind.TOKEN_ID;
+import static com.parabrisassi.sist.user_service.persistence.sharding.ShardKey.Kind.USERNAME;
 
 /**
  * Concrete implementation of {@link AuthenticationTokenService}.
@@ -42,6 +73,26 @@ public class AuthenticationTokenServiceImpl implements AuthenticationTokenServic
      */
     private static final int MAX_TRIES = 10;
 
+    /**
+     * Amount of random bytes of a refresh token.
+     */
+    private static final int REFRESH_TOKEN_LENGTH = 32;
+
+    /**
+     * {@link SecureRandom} used to generate refresh tokens.
+     */
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    /**
+     * Separates the shard from the random part of a refresh token (refresh tokens only include it with sharding).
+     */
+    private static final String SHARD_SEPARATOR = ".";
+
+    /**
+     * The hexadecimal digits, by value (used to encode refresh token hashes).
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     /**
      * A DAO in charge of loading {@link User}s.
      */
@@ -75,66 +126,226 @@ public class AuthenticationTokenServiceImpl implements AuthenticationTokenServic
      */
     private final AuthenticationTokenEncoder authenticationTokenEncoder;
 
+    /**
+     * A DAO in charge of loading {@link RefreshToken}s.
+     */
+    private final RefreshTokenDao refreshTokenDao;
+
+    /**
+     * Amount of seconds a refresh token is valid. Refresh tokens are disabled if it is not positive.
+     */
+    private final long refreshTokenDuration;
+
+    /**
+     * A {@link TokenVersionRegistry} used to check the token version of encoded tokens.
+     */
+    private final TokenVersionRegistry tokenVersionRegistry;
+
+    /**
+     * A DAO in charge of managing the deny-list of stateless tokens.
+     */
+    private final RevokedTokenDao revokedTokenDao;
+
+    /**
+     * Indicates whether tokens are stateless (i.e they are not stored, and revoked ones are kept in a deny-list).
+     */
+    private final boolean statelessTokens;
+
+    /**
+     * The duration of encoded tokens, in seconds (i.e how long a revoked stateless token must be deny-listed).
+     */
+    private final long tokenDuration;
+
+    /**
+     * An {@link AuthenticationTokenBatchWriter} used to insert {@link AuthenticationToken}s
+     * together with concurrent logins.
+     */
+    private final AuthenticationTokenBatchWriter authenticationTokenBatchWriter;
+
+    /**
+     * Indicates whether {@link AuthenticationToken}s are inserted in batches.
+     */
+    private final boolean tokenBatchingEnabled;
+
+    /**
+     * {@link LookupCoalescer} used to validate each {@link AuthenticationToken} only once
+     * when many callers validate it at once.
+     */
+    private final LookupCoalescer<Long, Boolean> validations;
+
+    /**
+     * {@link ShardRouter} used to work in the shard of the {@link AuthenticationToken}s.
+     */
+    private final ShardRouter shardRouter;
+
+    /**
+     * {@link PagingExecutor} used to list {@link AuthenticationToken}s, counting them only if requested.
+     */
+    private final PagingExecutor pagingExecutor;
+
+    /**
+     * {@link TransactionTemplate} used by each step of token creation (they are not read-only,
+     * so credentials are always checked in the primary database).
+     */
+    private final TransactionTemplate transactions;
+
+    /**
+     * {@link ReadAfterWriteTracker} used to keep validations of just written {@link AuthenticationToken}s
+     * on the primary database.
+     */
+    private final ReadAfterWriteTracker readAfterWriteTracker;
+
     @Autowired
     public AuthenticationTokenServiceImpl(UserDao userDao, AuthenticationTokenDao authenticationTokenDao,
                                           UserCredentialDao userCredentialDao, PasswordEncoder passwordEncoder,
                                           AuthenticationTokenQueryHelper authenticationTokenQueryHelper,
-                                          AuthenticationTokenEncoder authenticationTokenEncoder) {
+                                          AuthenticationTokenEncoder authenticationTokenEncoder,
+                                          RefreshTokenDao refreshTokenDao,
+                                          @Value("${custom.security.refresh-token.duration}")
+                                                  long refreshTokenDuration,
+                                          TokenVersionRegistry tokenVersionRegistry,
+                                          RevokedTokenDao revokedTokenDao,
+                                          @Value("${custom.security.stateless-tokens}") boolean statelessTokens,
+                                          @Value("${custom.security.jwt.duration}") long tokenDuration,
+                                          AuthenticationTokenBatchWriter authenticationTokenBatchWriter,
+                                          @Value("${custom.persistence.token-batching.enabled}")
+                                                  boolean tokenBatchingEnabled,
+                                          ShardRouter shardRouter, PagingExecutor pagingExecutor,
+                                          PlatformTransactionManager transactionManager,
+                                          ReadAfterWriteTracker readAfterWriteTracker) {
         this.userDao = userDao;
         this.authenticationTokenDao = authenticationTokenDao;
         this.userCredentialDao = userCredentialDao;
         this.passwordEncoder = passwordEncoder;
         this.authenticationTokenQueryHelper = authenticationTokenQueryHelper;
         this.authenticationTokenEncoder = authenticationTokenEncoder;
+        this.refreshTokenDao = refreshTokenDao;
+        this.refreshTokenDuration = refreshTokenDuration;
+        this.tokenVersionRegistry = tokenVersionRegistry;
+        this.revokedTokenDao = revokedTokenDao;
+        this.statelessTokens = statelessTokens;
+        this.tokenDuration = tokenDuration;
+        this.authenticationTokenBatchWriter = authenticationTokenBatchWriter;
+        this.tokenBatchingEnabled = tokenBatchingEnabled;
+        this.validations = new LookupCoalescer<>("token-validations", readAfterWriteTracker);
+        this.shardRouter = shardRouter;
+        this.pagingExecutor = pagingExecutor;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.readAfterWriteTracker = readAfterWriteTracker;
     }
 
     @Override
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ) // A page and its total see the same data
     @PreAuthorize("@userPermissionProvider.readByUsername(#username)")
-    public Page<AuthenticationToken> listTokens(String username, Pageable pageable) {
+    public Slice<AuthenticationToken> listTokens(@ShardKey(USERNAME) String username, Pageable pageable,
+                                                 boolean withTotal) {
+        checkStoredTokens();
         final User user = userDao.findByUsername(username).orElseThrow(NoSuchEntityException::new);
         authenticationTokenQueryHelper.validatePageable(pageable);
-        return authenticationTokenDao.findByUser(user, pageable);
+        final Specification<AuthenticationToken> userTokens =
+                authenticationTokenQueryHelper.createUserTokensSpecification(user);
+        return withTotal ?
+                pagingExecutor.findPage(AuthenticationToken.class, userTokens, "user:" + user.getId(), pageable) :
+                pagingExecutor.findSlice(AuthenticationToken.class, userTokens, pageable);
     }
 
     @Override
-    @Transactional
-    public String createToken(String username, String password) {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) // Each step runs its own transaction
+    public IssuedToken createToken(@ShardKey(USERNAME) String username, String password) {
         validateTokenCreationArguments(username, password);
-        final User user = userDao.findByUsername(username)
-                .orElseThrow(() -> new InvalidCredentialsException("Unknown user"));
-        validateCredentials(user, password);
-        Hibernate.initialize(user.getRoles());
-
+        if (statelessTokens || !tokenBatchingEnabled) {
+            return transactions.execute(status -> {
+                final User user = findByCredentials(username, password);
+                if (statelessTokens) {
+                    // Nothing is stored, so the id is just a random value (within the user's shard)
+                    final long tokenId = shardRouter.encodeTokenId(SECURE_RANDOM.nextLong(),
+                            shardRouter.shardOfUsername(user.getUsername()));
+                    return new IssuedToken(tokenId, encodeToken(tokenId, user, user.getTokenVersion()), null);
+                }
+                return issueToken(doCreateToken(user));
+            });
+        }
+        // The batch writer uses its own connection, so no connection is held by this thread while it waits
+        // for the batch (i.e credentials are checked, and refresh tokens created, in separate transactions)
+        final User user = transactions.execute(status -> findByCredentials(username, password));
         final AuthenticationToken token = doCreateToken(user);
-        final TokenData tokenData = new TokenData(token.getId(),
-                token.getUser().getUsername(),
-                token.getUser().getRoles());
-        return authenticationTokenEncoder.encode(tokenData);
+        return refreshTokensEnabled() ? transactions.execute(status -> issueToken(token)) : issueToken(token);
+    }
+
+    @Override
+    @Transactional(noRollbackFor = TokenException.class) // Blacklisting on reuse must be committed
+    public IssuedToken refreshToken(String refreshToken) throws TokenException {
+        if (!refreshTokensEnabled()) {
+            throw new TokenException("Refresh tokens are disabled");
+        }
+        validateRefreshArguments(refreshToken);
+        // Refresh tokens are looked up in the shard they include (the connection is obtained with the first query)
+        return shardRouter.onShard(shardOfRefreshToken(refreshToken), () -> doRefreshToken(refreshToken));
     }
 
     @Override
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true) // Avoids acquiring a connection if not needed
     public TokenData fromEncodedToken(String encodedToken) {
-        final TokenData tokenData = authenticationTokenEncoder.decode(encodedToken);
-        if (!doValidateToken(tokenData.getId())) {
-            throw new TokenException("Blacklisted token");
+        // With refresh tokens, encoded tokens are short lived, and blacklisting is checked when refreshing
+        return decodeAndValidate(encodedToken, !refreshTokensEnabled());
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true) // Avoids acquiring a connection if not needed
+    public TokenData introspectToken(String encodedToken) {
+        return decodeAndValidate(encodedToken, true);
+    }
+
+    @Override
+    public boolean isValidToken(@ShardKey(TOKEN_ID) long id) {
+        checkStoredTokens();
+        final TokenValidationEvent event = beginValidationEvent();
+        final boolean valid = doValidateToken(id);
+        if (event != null) {
+            event.complete(id, valid ? "valid" : "blacklisted");
         }
-        return tokenData;
+        return valid;
     }
 
     @Override
-    public boolean isValidToken(long id) {
-        return doValidateToken(id);
+    public Map<Long, Boolean> validateTokens(Collection<Long> ids) {
+        checkStoredTokens();
+        validateBatchValidationArguments(ids);
+        final Set<Long> distinctIds = new HashSet<>(ids);
+        if (distinctIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        // Each token is looked up in its shard
+        final Map<Integer, List<Long>> idsByShard = distinctIds.stream()
+                .collect(Collectors.groupingBy(shardRouter::shardOfToken));
+        final Set<Long> validIds = findInShards(idsByShard, authenticationTokenDao::findValidIds);
+        return distinctIds.stream().collect(Collectors.toMap(Function.identity(), validIds::contains));
     }
 
     @Override
     @Transactional
     @PreAuthorize("@authenticationTokenPermissionProvider.isOwnerOrAdmin(#id)")
-    public void blacklistToken(long id) {
-        authenticationTokenDao.findById(id)
-                .ifPresent(token -> {
-                    token.blacklist();
-                    authenticationTokenDao.save(token);
-                });
+    public void blacklistToken(@ShardKey(TOKEN_ID) long id) {
+        if (statelessTokens) {
+            // Entries are kept until the revoked token is surely expired (see ExpiredTokenPurger)
+            revokedTokenDao.save(new RevokedToken(id, Instant.now().plusSeconds(tokenDuration)));
+            return;
+        }
+        if (authenticationTokenDao.blacklist(id) == 0) {
+            return; // Unknown token
+        }
+        // Validations in flight might have started before blacklisting, so they must not be joined anymore
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                validations.forget(id);
+            }
+        });
+    }
+
+    @Override
+    public List<VerificationKeyData> getVerificationKeys() {
+        return authenticationTokenEncoder.getVerificationKeys();
     }
 
 
@@ -142,6 +353,85 @@ public class AuthenticationTokenServiceImpl implements AuthenticationTokenServic
     // Helpers
     // ================================
 
+    /**
+     * Issues a new encoded token (and refresh token) for the {@link AuthenticationToken} the given
+     * {@code refreshToken} belongs to, which is marked as used.
+     *
+     * @param refreshToken The refresh token.
+     * @return The {@link IssuedToken}.
+     * @throws TokenException If the refresh token is unknown, expired or reused,
+     *                        or if its {@link AuthenticationToken} is not valid anymore.
+     */
+    private IssuedToken doRefreshToken(String refreshToken) throws TokenException {
+        final RefreshToken storedRefreshToken = refreshTokenDao.findByTokenHash(hashRefreshToken(refreshToken))
+                .orElseThrow(() -> new TokenException("Unknown refresh token"));
+        final AuthenticationToken token = storedRefreshToken.getAuthenticationToken();
+        if (!token.isValid() || token.getTokenVersion() != token.getUser().getTokenVersion()
+                || storedRefreshToken.isExpired(Instant.now())) {
+            throw new TokenException("Expired refresh token, or blacklisted or revoked token");
+        }
+        if (refreshTokenDao.markUsed(storedRefreshToken.getId()) == 0) {
+            // The refresh token was already used, so it might have been stolen
+            token.blacklist();
+            authenticationTokenDao.save(token);
+            recordTokenWrite(token.getId());
+            throw new TokenException("Reused refresh token");
+        }
+
+        return issueToken(token);
+    }
+
+    /**
+     * Decodes the given {@code encodedToken}, and validates it (see {@link #validateDecodedToken}).
+     *
+     * @param encodedToken   The encoded token.
+     * @param checkBlacklist Indicates whether blacklisting must be checked (ignored if tokens are stateless).
+     * @return The {@link TokenData} of the decoded token.
+     * @throws TokenException If the token could not be decoded, or if it was revoked or blacklisted.
+     */
+    private TokenData decodeAndValidate(String encodedToken, boolean checkBlacklist) throws TokenException {
+        final TokenValidationEvent event = beginValidationEvent();
+        final TokenData tokenData;
+        try {
+            tokenData = authenticationTokenEncoder.decode(encodedToken);
+        } catch (TokenDecodingException e) {
+            countValidation(event, 0, e.isExpired() ? "expired" : "malformed");
+            throw e;
+        }
+        // The token's data is in its owner's shard (and in the primary database if it was just written)
+        return shardRouter.onShard(shardRouter.shardOfUsername(tokenData.getUsername()),
+                () -> readAfterWriteTracker.onBehalfOf(tokenData.getId(),
+                        () -> validateDecodedToken(tokenData, checkBlacklist, event)));
+    }
+
+    /**
+     * Validates the given decoded token (i.e that it was not revoked nor blacklisted),
+     * counting the validation with its outcome.
+     *
+     * @param tokenData      The {@link TokenData} of the decoded token.
+     * @param checkBlacklist Indicates whether blacklisting must be checked (ignored if tokens are stateless).
+     * @param event          The {@link TokenValidationEvent} of the validation (or {@code null}).
+     * @return The given {@link TokenData}.
+     * @throws TokenException If the token was revoked or blacklisted.
+     */
+    private TokenData validateDecodedToken(TokenData tokenData, boolean checkBlacklist, TokenValidationEvent event)
+            throws TokenException {
+        if (!tokenVersionRegistry.isCurrent(tokenData.getUsername(), tokenData.getTokenVersion())) {
+            countValidation(event, tokenData.getId(), "revoked");
+            throw new TokenException("Revoked token");
+        }
+        if (statelessTokens && revokedTokenDao.exists(tokenData.getId())) {
+            countValidation(event, tokenData.getId(), "revoked");
+            throw new TokenException("Revoked token");
+        }
+        if (!statelessTokens && checkBlacklist && !doValidateToken(tokenData.getId())) {
+            countValidation(event, tokenData.getId(), "blacklisted");
+            throw new TokenException("Blacklisted token");
+        }
+        countValidation(event, tokenData.getId(), "valid");
+        return tokenData;
+    }
+
     /**
      * Validates the given arguments for {@link AuthenticationToken} creation.
      *
@@ -157,6 +447,64 @@ public class AuthenticationTokenServiceImpl implements AuthenticationTokenServic
         throwValidationException(errorList);
     }
 
+    /**
+     * Validates the given {@code refreshToken}.
+     *
+     * @param refreshToken The refresh token to be validated.
+     * @throws ValidationException If the refresh token is {@code null}.
+     */
+    private void validateRefreshArguments(String refreshToken) throws ValidationException {
+        final List<ValidationError> errorList = new LinkedList<>();
+        ValidationHelper.objectNotNull(refreshToken, errorList, MISSING_REFRESH_TOKEN);
+
+        throwValidationException(errorList);
+    }
+
+    /**
+     * Checks that tokens are stored (i.e they are not stateless), as an operation needing them is requested.
+     *
+     * @throws DisabledFeatureException If tokens are stateless.
+     */
+    private void checkStoredTokens() throws DisabledFeatureException {
+        if (statelessTokens) {
+            throw new DisabledFeatureException("Tokens are not stored when they are stateless");
+        }
+    }
+
+    /**
+     * Validates the given {@code ids} for batch {@link AuthenticationToken} validation.
+     *
+     * @param ids The {@link Collection} of ids to be validated.
+     * @throws ValidationException If the {@link Collection} is {@code null}, or if it has {@code null} elements.
+     */
+    private void validateBatchValidationArguments(Collection<Long> ids) throws ValidationException {
+        final List<ValidationError> errorList = new LinkedList<>();
+        ValidationHelper.objectNotNull(ids, errorList, MISSING_TOKEN_IDS);
+        if (ids != null && ids.stream().anyMatch(Objects::isNull)) {
+            errorList.add(ILLEGAL_TOKEN_IDS);
+        }
+
+        throwValidationException(errorList);
+    }
+
+    /**
+     * Retrieves the {@link User} with the given {@code username}, validating the given {@code password}.
+     * Its roles are initialized, so tokens can be encoded after the transaction ends.
+     *
+     * @param username The {@link User}'s username.
+     * @param password The provided password.
+     * @return The {@link User}.
+     * @throws InvalidCredentialsException If there is no {@link User} with the given {@code username},
+     *                                     or if the password does not match.
+     */
+    private User findByCredentials(String username, String password) throws InvalidCredentialsException {
+        final User user = userDao.findByUsername(username)
+                .orElseThrow(() -> new InvalidCredentialsException("Unknown user"));
+        validateCredentials(user, password);
+        Hibernate.initialize(user.getRoles());
+        return user;
+    }
+
     /**
      * Validates that the given {@code password} matches the given {@link User}s actual password.
      *
@@ -176,6 +524,8 @@ public class AuthenticationTokenServiceImpl implements AuthenticationTokenServic
     /**
      * Tries to create an {@link AuthenticationToken}. Might fail if it already exists a {@link AuthenticationToken}
      * with the same id, although this is a rare situation.
+     * If batching is enabled, the {@link AuthenticationToken} is inserted (and committed) together with
+     * concurrent logins, and the returned instance is not managed.
      *
      * @param user The {@link User} to which the {@link AuthenticationToken} belongs to.
      * @return The created token.
@@ -184,9 +534,17 @@ public class AuthenticationTokenServiceImpl implements AuthenticationTokenServic
     private AuthenticationToken doCreateToken(User user) throws RuntimeException {
         int tries = 0;
         while (tries < MAX_TRIES) {
-            final long randomId = new SecureRandom().nextLong();
-            if (!authenticationTokenDao.exists(randomId)) {
+            final long randomId = shardRouter.encodeTokenId(new SecureRandom().nextLong(),
+                    shardRouter.shardOfUsername(user.getUsername()));
+            if (tokenBatchingEnabled) {
                 final AuthenticationToken token = new AuthenticationToken(randomId, user);
+                if (authenticationTokenBatchWriter.insert(token)) {
+                    recordTokenWrite(randomId);
+                    return token;
+                }
+            } else if (!authenticationTokenDao.exists(randomId)) {
+                final AuthenticationToken token = new AuthenticationToken(randomId, user);
+                recordTokenWrite(randomId);
                 return authenticationTokenDao.save(token);
             }
             tries++;
@@ -194,19 +552,180 @@ public class AuthenticationTokenServiceImpl implements AuthenticationTokenServic
         throw new RuntimeException("Could not create an authentication token after " + MAX_TRIES + "tries");
     }
 
+    /**
+     * Records a write of the {@link AuthenticationToken} with the given {@code id} (once committed, if there is
+     * a transaction), so it is validated in the primary database while read replicas might not have it yet.
+     *
+     * @param id The id of the written {@link AuthenticationToken}.
+     */
+    private void recordTokenWrite(long id) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            readAfterWriteTracker.recordWrite(id);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                readAfterWriteTracker.recordWrite(id);
+            }
+        });
+    }
+
+    /**
+     * Encodes the given {@link AuthenticationToken} (using its owner's actual roles),
+     * creating also a refresh token for it if they are enabled.
+     *
+     * @param token The {@link AuthenticationToken} to be issued.
+     * @return The {@link IssuedToken}.
+     */
+    private IssuedToken issueToken(AuthenticationToken token) {
+        final String encodedToken = encodeToken(token.getId(), token.getUser(), token.getTokenVersion());
+        final String refreshToken = refreshTokensEnabled() ? doCreateRefreshToken(token) : null;
+
+        return new IssuedToken(token.getId(), encodedToken, refreshToken);
+    }
+
+    /**
+     * Encodes a token with the given {@code tokenId}, for the given {@link User} (using its actual roles).
+     *
+     * @param tokenId      The token's id.
+     * @param user         The {@link User} owning the token.
+     * @param tokenVersion The token version.
+     * @return The encoded token.
+     */
+    private String encodeToken(long tokenId, User user, int tokenVersion) {
+        Hibernate.initialize(user.getRoles());
+        return authenticationTokenEncoder.encode(new TokenData(tokenId, user.getUsername(), user.getRoles(),
+                tokenVersion));
+    }
+
+    /**
+     * Creates a {@link RefreshToken} for the given {@link AuthenticationToken}.
+     *
+     * @param token The {@link AuthenticationToken} that can be refreshed with the created {@link RefreshToken}.
+     * @return The refresh token value (only its hash is stored).
+     */
+    private String doCreateRefreshToken(AuthenticationToken token) {
+        final byte[] randomBytes = new byte[REFRESH_TOKEN_LENGTH];
+        SECURE_RANDOM.nextBytes(randomBytes);
+        // With sharding, the refresh token includes the shard in which it is stored
+        final String shardPrefix = shardRouter.getShardCount() > 1 ?
+                shardRouter.shardOfToken(token.getId()) + SHARD_SEPARATOR : "";
+        final String refreshToken = shardPrefix + Base64.getUrlEncoder().withoutPadding().encodeToString(randomBytes);
+        final Instant expiration = Instant.now().plusSeconds(refreshTokenDuration);
+        // A reference is used, as the given token might have been inserted in a batch (i.e it is not managed)
+        final AuthenticationToken reference = authenticationTokenDao.getOne(token.getId());
+        refreshTokenDao.save(new RefreshToken(reference, hashRefreshToken(refreshToken), expiration));
+
+        return refreshToken;
+    }
+
+    /**
+     * Gets the shard in which the given {@code refreshToken} is stored (the first one if it does not include it).
+     *
+     * @param refreshToken The refresh token.
+     * @return The shard.
+     * @throws TokenException If the included shard does not exist.
+     */
+    private int shardOfRefreshToken(String refreshToken) throws TokenException {
+        final int separatorIndex = refreshToken.indexOf(SHARD_SEPARATOR);
+        if (separatorIndex < 0) {
+            return 0;
+        }
+        try {
+            final int shard = Integer.parseInt(refreshToken.substring(0, separatorIndex));
+            if (shard >= 0 && shard < shardRouter.getShardCount()) {
+                return shard;
+            }
+        } catch (NumberFormatException ignored) {
+            // Handled below
+        }
+        throw new TokenException("Unknown refresh token");
+    }
+
+    /**
+     * Finds, in each shard, which of the ids of that shard match a query (e.g the valid or revoked token ids).
+     *
+     * @param idsByShard The ids to be queried, by shard.
+     * @param query      A {@link Function} that takes the ids of a shard, and returns those matching the query.
+     * @return The matching ids, of all the shards.
+     */
+    private Set<Long> findInShards(Map<Integer, List<Long>> idsByShard, Function<List<Long>, List<Long>> query) {
+        return shardRouter.onShards(idsByShard.keySet(), shard -> query.apply(idsByShard.get(shard))).values()
+                .stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Hashes the given {@code refreshToken} (using SHA-256). As refresh tokens are long random values,
+     * a fast hash is enough, and allows looking them up by hash.
+     *
+     * @param refreshToken The refresh token to be hashed.
+     * @return The hex representation of the hash.
+     */
+    private static String hashRefreshToken(String refreshToken) {
+        try {
+            final byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(refreshToken.getBytes(StandardCharsets.UTF_8));
+            final char[] hex = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; i++) {
+                hex[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+                hex[2 * i + 1] = HEX_DIGITS[hash[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    /**
+     * Counts an encoded token validation with the given {@code outcome},
+     * completing its {@link TokenValidationEvent} (if any).
+     *
+     * @param event   The {@link TokenValidationEvent} of the validation (or {@code null}).
+     * @param tokenId The id of the validated token (0 if it could not be decoded).
+     * @param outcome The outcome of the validation (e.g valid, expired, blacklisted).
+     */
+    private static void countValidation(TokenValidationEvent event, long tokenId, String outcome) {
+        Metrics.counter("tokens.validations", "outcome", outcome).increment();
+        if (event != null) {
+            event.complete(tokenId, outcome);
+        }
+    }
+
+    /**
+     * @return A new {@link TokenValidationEvent}, or {@code null} if Java Flight Recorder is not available.
+     */
+    private static TokenValidationEvent beginValidationEvent() {
+        return FlightRecorderEvents.isAvailable() ? new TokenValidationEvent() : null;
+    }
+
+    /**
+     * @return {@code true} if refresh tokens are enabled, or {@code false} otherwise.
+     */
+    private boolean refreshTokensEnabled() {
+        return !statelessTokens && refreshTokenDuration > 0;
+    }
+
     /**
      * Validates that an {@link AuthenticationToken} exists with the given {@code tokenId},
-     * and that is valid (i.e not blacklisted).
+     * and that is valid (i.e not blacklisted, and with the same token version as its owner).
      *
      * @param tokenId The id of the {@link AuthenticationToken} to be validated.
      * @return {@code true} if the token is valid, or {@code false} otherwise.
      */
     private boolean doValidateToken(long tokenId) {
-        return authenticationTokenDao.findById(tokenId)
-                .map(AuthenticationToken::isValid)
-                .orElse(false);
+        return validations.get(tokenId,
+                () -> !authenticationTokenDao.findValidIds(Collections.singleton(tokenId)).isEmpty());
     }
 
     private static final ValidationError MISSING_PASSWORD = new ValidationError(MISSING_VALUE, "password",
             "The password is missing");
+    private static final ValidationError MISSING_REFRESH_TOKEN = new ValidationError(MISSING_VALUE, "refreshToken",
+            "The refresh token is missing");
+    private static final ValidationError MISSING_TOKEN_IDS = new ValidationError(MISSING_VALUE, "tokenIds",
+            "The token ids are missing");
+    private static final ValidationError ILLEGAL_TOKEN_IDS = new ValidationError(ILLEGAL_VALUE, "tokenIds",
+            "The token ids must not be null");
 }
@@ -0,0 +1,117 @@
+package com.parabrisassi.sist.user_service.services;
+
+import com.parabrisassi.sist.user_service.models.RefreshToken;
+import com.parabrisassi.sist.user_service.models.RevokedToken;
+import com.parabrisassi.sist.user_service.persistence.daos.RefreshTokenDao;
+import com.parabrisassi.sist.user_service.persistence.daos.RevokedTokenDao;
+import com.parabrisassi.sist.user_service.persistence.sharding.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Component in charge of periodically removing, from all the shards, the stored data of tokens that are already
+ * expired (i.e {@link RefreshToken}s, and {@link RevokedToken}s of stateless tokens), so it does not grow
+ * without bound.
+ * Each instance purges on its own (removing expired rows twice is harmless).
+ */
+@Component
+public class ExpiredTokenPurger implements InitializingBean, DisposableBean {
+
+    /**
+     * The {@link Logger} object.
+     */
+    private final static Logger LOGGER = LoggerFactory.getLogger(ExpiredTokenPurger.class);
+
+    /**
+     * A DAO in charge of removing {@link RefreshToken}s.
+     */
+    private final RefreshTokenDao refreshTokenDao;
+
+    /**
+     * A DAO in charge of removing {@link RevokedToken}s.
+     */
+    private final RevokedTokenDao revokedTokenDao;
+
+    /**
+     * {@link ShardRouter} used to purge each shard.
+     */
+    private final ShardRouter shardRouter;
+
+    /**
+     * Amount of seconds between purges. Purging is disabled if it is not positive.
+     */
+    private final long purgeInterval;
+
+    /**
+     * The {@link ScheduledExecutorService} performing the purges, or {@code null} if purging is disabled.
+     */
+    private final ScheduledExecutorService purgeExecutor;
+
+    @Autowired
+    public ExpiredTokenPurger(RefreshTokenDao refreshTokenDao, RevokedTokenDao revokedTokenDao,
+                              ShardRouter shardRouter,
+                              @Value("${custom.security.expired-tokens.purge-interval}") long purgeInterval) {
+        this.refreshTokenDao = refreshTokenDao;
+        this.revokedTokenDao = revokedTokenDao;
+        this.shardRouter = shardRouter;
+        this.purgeInterval = purgeInterval;
+        this.purgeExecutor = purgeInterval > 0 ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "expired-token-purger");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (purgeExecutor != null) {
+            purgeExecutor.scheduleWithFixedDelay(this::purgeSafely, purgeInterval, purgeInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (purgeExecutor != null) {
+            purgeExecutor.shutdownNow();
+        }
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Removes the expired tokens data from all the shards, each in its own transaction.
+     */
+    private void purge() {
+        final Instant now = Instant.now();
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            final int refreshTokens = shardRouter.inNewTransaction(shard, () -> refreshTokenDao.deleteExpired(now));
+            final int revokedTokens = shardRouter.inNewTransaction(shard, () -> revokedTokenDao.deleteExpired(now));
+            LOGGER.debug("Removed {} expired refresh tokens and {} expired revoked tokens from shard {}",
+                    refreshTokens, revokedTokens, shard);
+        }
+    }
+
+    /**
+     * Performs a purge, logging (instead of propagating) any error, so next purges are still performed.
+     */
+    private void purgeSafely() {
+        try {
+            purge();
+        } catch (Throwable e) {
+            LOGGER.error("Could not purge expired tokens", e);
+        }
+    }
+}
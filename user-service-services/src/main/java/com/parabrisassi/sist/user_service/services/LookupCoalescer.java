@@ -0,0 +1,182 @@
+package com.parabrisassi.sist.user_service.services;
+
+import com.parabrisassi.sist.user_service.persistence.replication.ReadAfterWriteTracker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical lookups (i.e those with the same key), so only one of them reaches the database.
+ * The first caller for a key performs the lookup, and those arriving while it is in flight wait for its result,
+ * instead of performing the same lookup again (e.g many requests using the same token right after a deploy).
+ * <p>
+ * In flight lookups are kept in stripes (chosen by the key's hash), so lookups for different keys
+ * do not contend with each other. The amount of calls that shared another one's lookup is counted
+ * in the {@code lookups.coalesced} metric.
+ * <p>
+ * Results are shared across threads (and transactions), so lookups must return immutable values
+ * (i.e never managed entities). Lookups performed in a read-write transaction are never coalesced,
+ * as they might depend on changes not committed yet. Neither are those whose caller reads from the primary database
+ * because of a recent write (see {@link ReadAfterWriteTracker}), as others' lookups might be running
+ * in a read replica that does not have that write yet.
+ *
+ * @param <K> The type of the lookup keys.
+ * @param <V> The type of the lookup results.
+ */
+public final class LookupCoalescer<K, V> {
+
+    /**
+     * Amount of stripes in which in flight lookups are kept (must be a power of two).
+     */
+    private static final int STRIPES = 32;
+
+    /**
+     * The stripes, each holding the lookups in flight, by key.
+     */
+    private final Map<K, CompletableFuture<V>>[] stripes;
+
+    /**
+     * Counts the calls that shared a lookup in flight.
+     */
+    private final Counter coalescedCalls;
+
+    /**
+     * {@link ReadAfterWriteTracker} used to tell whether the caller reads from the primary database.
+     */
+    private final ReadAfterWriteTracker readAfterWriteTracker;
+
+    /**
+     * Constructor.
+     *
+     * @param lookup                The name of the lookup (used to tag the metric).
+     * @param readAfterWriteTracker {@link ReadAfterWriteTracker} used to tell whether the caller reads
+     *                              from the primary database.
+     */
+    @SuppressWarnings("unchecked")
+    public LookupCoalescer(String lookup, ReadAfterWriteTracker readAfterWriteTracker) {
+        Assert.hasText(lookup, "The lookup name must not be empty");
+        Assert.notNull(readAfterWriteTracker, "The read after write tracker must not be null");
+        this.stripes = new Map[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            this.stripes[i] = new HashMap<>();
+        }
+        this.coalescedCalls = Counter.builder("lookups.coalesced")
+                .description("Amount of lookups that shared another one's database call")
+                .tag("lookup", lookup)
+                .register(Metrics.globalRegistry);
+        this.readAfterWriteTracker = readAfterWriteTracker;
+    }
+
+    /**
+     * Performs the lookup of the given {@code key} with the given {@code loader},
+     * unless there is already one in flight, in which case its result is awaited.
+     *
+     * @param key    The key being looked up.
+     * @param loader A {@link Supplier} that performs the lookup.
+     * @return The lookup's result.
+     */
+    public V get(K key, Supplier<V> loader) {
+        Assert.notNull(key, "The key must not be null");
+        if (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || readAfterWriteTracker.isWithinWindow()) {
+            return loader.get();
+        }
+        final Map<K, CompletableFuture<V>> stripe = stripeOf(key);
+        final CompletableFuture<V> ownLookup = new CompletableFuture<>();
+        final CompletableFuture<V> inFlight;
+        synchronized (stripe) {
+            inFlight = stripe.putIfAbsent(key, ownLookup);
+        }
+        if (inFlight != null) {
+            coalescedCalls.increment();
+            return await(inFlight);
+        }
+        try {
+            final V value = loader.get();
+            ownLookup.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            ownLookup.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (stripe) {
+                stripe.remove(key, ownLookup);
+            }
+        }
+    }
+
+    /**
+     * Forgets the lookup in flight for the given {@code key} (if any), so callers arriving after this
+     * do not get its result. Must be called when the looked up value changes (i.e the lookup might be stale).
+     * Callers already waiting for it will still get its result.
+     *
+     * @param key The key whose value changed.
+     */
+    public void forget(K key) {
+        if (key == null) {
+            return;
+        }
+        final Map<K, CompletableFuture<V>> stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+        }
+    }
+
+    /**
+     * Forgets all the lookups in flight, like {@link #forget(Object)} does (e.g when the changed value
+     * might have been looked up by any key).
+     */
+    public void forgetAll() {
+        for (Map<K, CompletableFuture<V>> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Gets the stripe holding the lookups in flight for the given {@code key}.
+     *
+     * @param key The key.
+     * @return The stripe.
+     */
+    private Map<K, CompletableFuture<V>> stripeOf(K key) {
+        final int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * Waits for the given {@code lookup} to complete, rethrowing the exception it failed with (if any).
+     *
+     * @param lookup The lookup in flight.
+     * @param <V>    The type of the lookup's result.
+     * @return The lookup's result.
+     */
+    private static <V> V await(CompletableFuture<V> lookup) {
+        try {
+            return lookup.join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -2,7 +2,9 @@ package com.parabrisassi.sist.user_service.services;
 
 import com.parabrisassi.sist.user_service.error_handling.errros.UniqueViolationError;
 import com.parabrisassi.sist.user_service.error_handling.helpers.UniqueViolationExceptionThrower;
+import com.parabrisassi.sist.user_service.exceptions.DisabledFeatureException;
 import com.parabrisassi.sist.user_service.exceptions.NoSuchEntityException;
+import com.parabrisassi.sist.user_service.exceptions.UniqueViolationException;
 import com.parabrisassi.sist.user_service.exceptions.UnauthorizedException;
 import com.parabrisassi.sist.user_service.exceptions.ValidationException;
 import com.parabrisassi.sist.user_service.models.Role;
@@ -10,25 +12,36 @@ import com.parabrisassi.sist.user_service.models.User;
 import com.parabrisassi.sist.user_service.models.UserCredential;
 import com.parabrisassi.sist.user_service.persistence.daos.UserCredentialDao;
 import com.parabrisassi.sist.user_service.persistence.daos.UserDao;
+import com.parabrisassi.sist.user_service.persistence.paging.PagingExecutor;
 import com.parabrisassi.sist.user_service.persistence.query_helpers.UserQueryHelper;
+import com.parabrisassi.sist.user_service.persistence.sharding.ShardKey;
+import com.parabrisassi.sist.user_service.persistence.sharding.ShardRouter;
 import com.parabrisassi.sist.user_service.security.authentication.PasswordValidator;
+import com.parabrisassi.sist.user_service.security.authentication.TokenVersionRegistry;
+import com.parabrisassi.sist.user_service.security.authorization.AuthenticationTokenPermissionProvider;
 import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Function;
 
+import static com.parabrisassi.sist.user_service.persistence.sharding.ShardKey.Kind.USERNAME;
+
 /**
  * Concrete implementation of {@link UserService}.
  */
@@ -61,64 +74,118 @@ public class UserServiceImpl implements UserService, UniqueViolationExceptionThr
      */
     private final PasswordEncoder passwordEncoder;
 
+    /**
+     * {@link TokenVersionRegistry} to be notified when a {@link User}'s token version changes.
+     */
+    private final TokenVersionRegistry tokenVersionRegistry;
+
+    /**
+     * {@link UserSnapshotCache} used to serve {@link User}s reads, which must be notified when a {@link User} changes.
+     */
+    private final UserSnapshotCache userSnapshotCache;
+
+    /**
+     * {@link AuthenticationTokenPermissionProvider} to be notified when a {@link User}'s username changes
+     * (i.e the owner of its tokens).
+     */
+    private final AuthenticationTokenPermissionProvider authenticationTokenPermissionProvider;
+
+    /**
+     * {@link ShardRouter} used to work with {@link User}s of other shards (e.g when listing all of them).
+     */
+    private final ShardRouter shardRouter;
+
+    /**
+     * {@link PagingExecutor} used to list {@link User}s, counting them only if requested.
+     */
+    private final PagingExecutor pagingExecutor;
+
 
     @Autowired
     public UserServiceImpl(UserDao userDao, UserCredentialDao userCredentialDao, UserQueryHelper userQueryHelper,
-                           PasswordValidator passwordValidator, PasswordEncoder passwordEncoder) {
+                           PasswordValidator passwordValidator, PasswordEncoder passwordEncoder,
+                           TokenVersionRegistry tokenVersionRegistry, UserSnapshotCache userSnapshotCache,
+                           AuthenticationTokenPermissionProvider authenticationTokenPermissionProvider,
+                           ShardRouter shardRouter, PagingExecutor pagingExecutor) {
         this.userDao = userDao;
         this.userCredentialDao = userCredentialDao;
         this.userQueryHelper = userQueryHelper;
         this.passwordValidator = passwordValidator;
         this.passwordEncoder = passwordEncoder;
+        this.tokenVersionRegistry = tokenVersionRegistry;
+        this.userSnapshotCache = userSnapshotCache;
+        this.authenticationTokenPermissionProvider = authenticationTokenPermissionProvider;
+        this.shardRouter = shardRouter;
+        this.pagingExecutor = pagingExecutor;
     }
 
 
     @Override
+    @Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ) // A page and its total see the same data
     @PreAuthorize("@userPermissionProvider.isAdmin()")
-    public Page<User> findMatching(String username, Pageable pageable) {
+    public Slice<User> findMatching(String username, Pageable pageable, boolean withTotal) {
         userQueryHelper.validatePageable(pageable);
         final Specification<User> matching = userQueryHelper.createUserSpecification(username);
 
-        return userDao.findAll(matching, pageable);
+        if (withTotal) {
+            final String filterKey = "username:" + username;
+            return shardRouter.findPageInAllShards(pageable, userQueryHelper.getComparators(),
+                    page -> pagingExecutor.findPage(User.class, matching, filterKey, page));
+        }
+        return shardRouter.findSliceInAllShards(pageable, userQueryHelper.getComparators(),
+                page -> pagingExecutor.findSlice(User.class, matching, page));
     }
 
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED) // Snapshots are loaded in their own transaction if missing
     @PreAuthorize("@userPermissionProvider.readByUsername(#username)")
-    public Optional<User> getByUsername(String username) {
-        return getInitializing(userDao::findByUsername, username);
+    public Optional<UserSnapshot> getByUsername(@ShardKey(USERNAME) String username) {
+        return userSnapshotCache.get(username);
     }
 
 
     @Override
     @Transactional
-    public User register(String username, String password) {
+    public User register(@ShardKey(USERNAME) String username, String password) {
         final List<UniqueViolationError> errorList = new LinkedList<>();
         checkUsernameUniqueness(username, errorList);
         throwUniqueViolationException(errorList);
 
         final User user = userDao.save(new User(username));
         createCredential(user, password);
+        userSnapshotCache.evict(username);
         return user;
     }
 
     @Override
     @Transactional
     @PreAuthorize("@userPermissionProvider.writeByUsername(#oldUsername)")
-    public void changeUsername(String oldUsername, String newUsername) {
-        final User user = userDao.findByUsername(oldUsername).orElseThrow(NoSuchEntityException::new);
-
-        final List<UniqueViolationError> errorList = new LinkedList<>();
-        checkUsernameUniqueness(newUsername, errorList);
-        throwUniqueViolationException(errorList);
+    public void changeUsername(@ShardKey(USERNAME) String oldUsername, String newUsername) {
+        User.checkUsername(newUsername);
+        if (shardRouter.shardOfUsername(newUsername) != shardRouter.shardOfUsername(oldUsername)) {
+            // Users are in the shard of their username, and there is no way yet to move them (with all their data)
+            throw new DisabledFeatureException("Usernames can not be changed to one of another shard");
+        }
 
-        user.changeUsername(newUsername);
-        userDao.save(user);
+        final int changed;
+        try {
+            changed = userDao.changeUsername(oldUsername, newUsername);
+        } catch (DataIntegrityViolationException e) {
+            throw new UniqueViolationException(Collections.singletonList(USERNAME_IN_USE));
+        }
+        if (changed == 0) {
+            throw new NoSuchEntityException();
+        }
+        tokenVersionRegistry.evict(oldUsername);
+        userSnapshotCache.evict(oldUsername);
+        userSnapshotCache.evict(newUsername);
+        authenticationTokenPermissionProvider.evictOwners();
     }
 
     @Override
     @Transactional
     @PreAuthorize("@userPermissionProvider.writeByUsername(#username)")
-    public void changePassword(String username, String currentPassword, String newPassword) {
+    public void changePassword(@ShardKey(USERNAME) String username, String currentPassword, String newPassword) {
         final User user = userDao.findByUsername(username).orElseThrow(NoSuchEntityException::new);
         final UserCredential userCredential = userCredentialDao.findActualByUser(user)
                 .orElseThrow(RuntimeException::new); // TODO: define what happens here
@@ -128,11 +195,15 @@ public class UserServiceImpl implements UserService, UniqueViolationExceptionThr
             throw new UnauthorizedException("The given current password did not match the user's password");
         }
         createCredential(user, newPassword);
+        // Changing the password revokes all the user's tokens
+        user.invalidateTokens();
+        userDao.save(user);
+        tokenVersionRegistry.evict(username);
     }
 
     @Override
     @PreAuthorize("@userPermissionProvider.isAdmin()")
-    public Set<Role> getRoles(String username) {
+    public Set<Role> getRoles(@ShardKey(USERNAME) String username) {
         return getInitializing(userDao::findByUsername, username)
                 .map(User::getRoles)
                 .orElseThrow(NoSuchEntityException::new);
@@ -141,26 +212,34 @@ public class UserServiceImpl implements UserService, UniqueViolationExceptionThr
     @Override
     @Transactional
     @PreAuthorize("@userPermissionProvider.isAdmin()")
-    public void addRole(String username, Role role) {
-        final User user = userDao.findByUsername(username).orElseThrow(NoSuchEntityException::new);
-        user.addRole(role);
-        userDao.save(user);
+    public void addRole(@ShardKey(USERNAME) String username, Role role) {
+        User.checkRole(role);
+        if (userDao.addRole(username, role) == 0 && !userDao.existsByUsername(username)) {
+            throw new NoSuchEntityException(); // Otherwise, it already had the role
+        }
+        tokenVersionRegistry.evict(username);
+        userSnapshotCache.evict(username);
     }
 
     @Override
     @Transactional
     @PreAuthorize("@userPermissionProvider.isAdmin()")
-    public void removeRole(String username, Role role) {
-        final User user = userDao.findByUsername(username).orElseThrow(NoSuchEntityException::new);
-        user.removeRole(role);
-        userDao.save(user);
+    public void removeRole(@ShardKey(USERNAME) String username, Role role) {
+        User.checkRole(role);
+        if (userDao.removeRole(username, role) == 0 && !userDao.existsByUsername(username)) {
+            throw new NoSuchEntityException(); // Otherwise, it did not have the role
+        }
+        tokenVersionRegistry.evict(username);
+        userSnapshotCache.evict(username);
     }
 
     @Override
     @Transactional
     @PreAuthorize("@userPermissionProvider.deleteByUsername(#username)")
-    public void deleteByUsername(String username) {
+    public void deleteByUsername(@ShardKey(USERNAME) String username) {
         userDao.findByUsername(username).ifPresent(userDao::delete);
+        tokenVersionRegistry.evict(username);
+        userSnapshotCache.evict(username);
         // TODO: remove all credentials?
     }
 
@@ -0,0 +1,32 @@
+package com.parabrisassi.sist.user_service.services;
+
+import com.parabrisassi.sist.user_service.models.User;
+import com.parabrisassi.sist.user_service.services.UserService.UserSnapshot;
+
+import java.util.Optional;
+
+/**
+ * Defines behaviour of an object that keeps {@link UserSnapshot}s, by username,
+ * in order to serve reads of {@link User}s without reaching the persistence layer.
+ */
+public interface UserSnapshotCache {
+
+    /**
+     * Retrieves the {@link UserSnapshot} of the {@link User} with the given {@code username},
+     * loading it (in its own read-only transaction) if it is not cached.
+     *
+     * @param username The {@link User}'s username.
+     * @return A <b>nullable</b> {@link Optional} of {@link UserSnapshot} containing the snapshot
+     * of the {@link User} with the given {@code username} if it exists, or {@code null} otherwise.
+     */
+    Optional<UserSnapshot> get(String username);
+
+    /**
+     * Discards the {@link UserSnapshot} of the user with the given {@code username},
+     * which must be called when the user is created, changed or deleted. If there is an active transaction,
+     * it is discarded once the transaction commits.
+     *
+     * @param username The username of the user that changed.
+     */
+    void evict(String username);
+}
@@ -0,0 +1,184 @@
+package com.parabrisassi.sist.user_service.services;
+
+import com.parabrisassi.sist.user_service.persistence.daos.UserDao;
+import com.parabrisassi.sist.user_service.persistence.replication.ReadAfterWriteTracker;
+import com.parabrisassi.sist.user_service.services.UserService.UserSnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concrete implementation of {@link UserSnapshotCache}, which keeps snapshots in memory.
+ * Snapshots are loaded from the database when missing, or when they are older than the configured max. age,
+ * which bounds how long a change made by another instance takes to be noticed.
+ * <p>
+ * Snapshots are loaded on behalf of their user (see {@link ReadAfterWriteTracker}), so the snapshot of a user
+ * that was just changed through this instance is not loaded from a lagging read replica.
+ * A snapshot loaded while an eviction happens is not kept, as it might have been taken before the change.
+ * Concurrent loads of the same snapshot are coalesced into one database call.
+ */
+@Component
+public class UserSnapshotCacheImpl implements UserSnapshotCache {
+
+    /**
+     * DAO used to load users.
+     */
+    private final UserDao userDao;
+
+    /**
+     * {@link TransactionTemplate} used to load snapshots in a read-only transaction.
+     */
+    private final TransactionTemplate readOnlyTransaction;
+
+    /**
+     * Max. amount of snapshots kept in memory. When reached, all of them are discarded.
+     */
+    private final int maxEntries;
+
+    /**
+     * Max. amount of milliseconds a snapshot is kept before being loaded again.
+     */
+    private final long maxAge;
+
+    /**
+     * The cached snapshots, by username.
+     */
+    private final Map<String, CachedSnapshot> snapshots;
+
+    /**
+     * {@link LookupCoalescer} used to load each missing snapshot only once when many callers miss it at once.
+     */
+    private final LookupCoalescer<String, Optional<UserSnapshot>> loads;
+
+    /**
+     * Amount of evictions performed, used to detect evictions that happen while a snapshot is being loaded.
+     */
+    private final AtomicLong evictions;
+
+    /**
+     * {@link ReadAfterWriteTracker} on whose behalf snapshots are loaded.
+     */
+    private final ReadAfterWriteTracker readAfterWriteTracker;
+
+    @Autowired
+    public UserSnapshotCacheImpl(UserDao userDao, PlatformTransactionManager transactionManager,
+                                 @Value("${custom.services.user-snapshots.max-entries}") int maxEntries,
+                                 @Value("${custom.services.user-snapshots.max-age}") long maxAge,
+                                 ReadAfterWriteTracker readAfterWriteTracker) {
+        this.userDao = userDao;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.maxEntries = maxEntries;
+        this.maxAge = maxAge * 1000;
+        this.snapshots = new ConcurrentHashMap<>();
+        this.loads = new LookupCoalescer<>("user-snapshots", readAfterWriteTracker);
+        this.evictions = new AtomicLong();
+        this.readAfterWriteTracker = readAfterWriteTracker;
+    }
+
+    @Override
+    public Optional<UserSnapshot> get(String username) {
+        if (username == null) {
+            return Optional.empty();
+        }
+        // Changes made by an active transaction are not committed yet, so snapshots taken in it are not cached
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return loadSnapshot(username);
+        }
+        final long now = System.currentTimeMillis();
+        final CachedSnapshot cached = snapshots.get(username);
+        if (cached != null && now - cached.loadedAt < maxAge) {
+            return Optional.of(cached.snapshot);
+        }
+
+        final long evictionsBeforeLoading = evictions.get();
+        final Optional<UserSnapshot> loaded = readAfterWriteTracker.onBehalfOf(username,
+                () -> loads.get(username, () -> readOnlyTransaction.execute(status -> loadSnapshot(username))));
+        if (!loaded.isPresent()) {
+            snapshots.remove(username);
+            return loaded;
+        }
+        if (snapshots.size() >= maxEntries) {
+            snapshots.clear();
+        }
+        final CachedSnapshot loadedSnapshot = new CachedSnapshot(loaded.get(), now);
+        snapshots.put(username, loadedSnapshot);
+        // Checked after putting, so an eviction happening meanwhile either removes the snapshot, or is detected here
+        if (evictions.get() != evictionsBeforeLoading) {
+            snapshots.remove(username, loadedSnapshot);
+        }
+        return loaded;
+    }
+
+    @Override
+    public void evict(String username) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            doEvict(username);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                doEvict(username);
+            }
+        });
+    }
+
+    /**
+     * Discards the snapshot of the user with the given {@code username}.
+     *
+     * @param username The username of the user that changed.
+     */
+    private void doEvict(String username) {
+        // Forgotten before counting, so loads joining a stale one have read the previous count, and are detected
+        loads.forget(username);
+        evictions.incrementAndGet();
+        snapshots.remove(username);
+    }
+
+    /**
+     * Loads the snapshot of the user with the given {@code username} from its projection
+     * (i.e without loading the user entity, which would be kept in the persistence context for nothing).
+     *
+     * @param username The username.
+     * @return An {@link Optional} containing the snapshot, or empty if the user does not exist.
+     */
+    private Optional<UserSnapshot> loadSnapshot(String username) {
+        return userDao.findProjectionByUsername(username)
+                .map(user -> new UserSnapshot(user.getId(), user.getUsername(), user.getRoles()));
+    }
+
+    /**
+     * A {@link UserSnapshot}, together with the moment it was loaded.
+     */
+    private static final class CachedSnapshot {
+
+        /**
+         * The snapshot.
+         */
+        private final UserSnapshot snapshot;
+
+        /**
+         * The moment (in milliseconds since epoch) at which the snapshot was loaded.
+         */
+        private final long loadedAt;
+
+        /**
+         * @param snapshot The snapshot.
+         * @param loadedAt The moment (in milliseconds since epoch) at which the snapshot was loaded.
+         */
+        private CachedSnapshot(UserSnapshot snapshot, long loadedAt) {
+            this.snapshot = snapshot;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -39,6 +39,11 @@ public class Constants {
      */
     public static final int MAX_PAGE_SIZE = 100;
 
+    /**
+     * The max. amount of tokens that can be validated in one request.
+     */
+    public static final int MAX_TOKEN_VALIDATIONS = 100;
+
 
     // ================================================================
     // Missing HTTP Statuses
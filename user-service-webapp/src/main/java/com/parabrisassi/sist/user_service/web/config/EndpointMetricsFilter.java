@@ -0,0 +1,195 @@
+package com.parabrisassi.sist.user_service.web.config;
+
+import com.parabrisassi.sist.user_service.instrumentation.RequestTimings;
+import com.parabrisassi.sist.user_service.persistence.sharding.ShardRouter;
+import com.parabrisassi.sist.user_service.web.support.annotations.StatementLimit;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.uri.UriTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Provider;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filter that records the time taken by each request handled by the Jersey application,
+ * tagged with the method, the matched URI template (to avoid one series per resource id) and the status,
+ * together with the amount of sql statements it executed.
+ * <p>
+ * It also applies the {@link StatementLimit} of the matched endpoint to the request's {@link RequestTimings},
+ * and (if enabled) reports them in a {@code Server-Timing} header.
+ */
+@Provider
+@Component
+/* package */ class EndpointMetricsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EndpointMetricsFilter.class);
+
+    /**
+     * Name of the request property holding the moment (in nanoseconds) at which the request started.
+     */
+    private static final String START_PROPERTY = EndpointMetricsFilter.class.getName() + ".start";
+
+    /**
+     * Name of the header in which {@link RequestTimings} are reported.
+     */
+    private static final String SERVER_TIMING_HEADER = "Server-Timing";
+
+    /**
+     * Indicates whether {@link RequestTimings} are reported in the {@code Server-Timing} header.
+     */
+    private final boolean serverTimingEnabled;
+
+    /**
+     * Indicates whether requests exceeding their {@link StatementLimit} fail (instead of being logged).
+     */
+    private final boolean statementLimitsEnforced;
+
+    /**
+     * The amount of shards besides the first one, by which the per shard part of {@link StatementLimit}s
+     * is multiplied.
+     */
+    private final int additionalShards;
+
+    @Autowired
+    /* package */ EndpointMetricsFilter(@Value("${custom.web.server-timing.enabled:false}")
+                                                boolean serverTimingEnabled,
+                                        @Value("${custom.web.statement-limits.enforced:false}")
+                                                boolean statementLimitsEnforced,
+                                        ShardRouter shardRouter) {
+        this.serverTimingEnabled = serverTimingEnabled;
+        this.statementLimitsEnforced = statementLimitsEnforced;
+        this.additionalShards = shardRouter.getShardCount() - 1;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        requestContext.setProperty(START_PROPERTY, System.nanoTime());
+        if (statementLimitsEnforced) {
+            final int limit = statementLimit(requestContext.getUriInfo());
+            RequestTimings.current().ifPresent(timings -> timings.setStatementLimit(limit));
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        final Object start = requestContext.getProperty(START_PROPERTY);
+        if (!(start instanceof Long)) {
+            return; // The request did not reach the request filter (e.g it was not matched)
+        }
+        final String method = requestContext.getMethod();
+        final String uri = uriTemplate(requestContext.getUriInfo());
+        Timer.builder("http.requests")
+                .description("Time taken to handle requests")
+                .tags("method", method,
+                        "uri", uri,
+                        "status", Integer.toString(responseContext.getStatus()))
+                .register(Metrics.globalRegistry)
+                .record(System.nanoTime() - (Long) start, TimeUnit.NANOSECONDS);
+
+        final Optional<RequestTimings> timingsOptional = RequestTimings.current();
+        if (!timingsOptional.isPresent()) {
+            return; // Not bound (e.g the request did not go through the RequestTimingsFilter)
+        }
+        final RequestTimings timings = timingsOptional.get();
+        DistributionSummary.builder("http.requests.statements")
+                .description("Amount of sql statements executed by requests")
+                .tags("method", method, "uri", uri)
+                .register(Metrics.globalRegistry)
+                .record(timings.getStatements());
+        if (!statementLimitsEnforced) {
+            final int limit = statementLimit(requestContext.getUriInfo());
+            if (limit != RequestTimings.NO_STATEMENT_LIMIT && timings.getStatements() > limit) {
+                LOGGER.warn("Request to {} {} executed {} sql statements (limit is {})",
+                        method, uri, timings.getStatements(), limit);
+            }
+        }
+        if (serverTimingEnabled) {
+            responseContext.getHeaders().add(SERVER_TIMING_HEADER, serverTiming(timings));
+        }
+    }
+
+
+    // ================================
+    // Helpers
+    // ================================
+
+    /**
+     * Builds the URI template matched by the request (e.g /users/{username}).
+     *
+     * @param uriInfo The request's {@link UriInfo}.
+     * @return The matched URI template, or "UNKNOWN" if it can not be built.
+     */
+    private static String uriTemplate(UriInfo uriInfo) {
+        if (!(uriInfo instanceof ExtendedUriInfo)) {
+            return "UNKNOWN";
+        }
+        // Templates are sorted from the most specific to the least one
+        final List<UriTemplate> templates = ((ExtendedUriInfo) uriInfo).getMatchedTemplates();
+        if (templates.isEmpty()) {
+            return "UNKNOWN";
+        }
+        final StringBuilder path = new StringBuilder();
+        for (int i = templates.size() - 1; i >= 0; i--) {
+            path.append(templates.get(i).getTemplate());
+        }
+        return path.toString().replaceAll("/+", "/");
+    }
+
+    /**
+     * Gets the {@link StatementLimit} of the endpoint matched by the request (for the configured amount of shards).
+     *
+     * @param uriInfo The request's {@link UriInfo}.
+     * @return The limit, or {@link RequestTimings#NO_STATEMENT_LIMIT} if the endpoint is not annotated.
+     */
+    private int statementLimit(UriInfo uriInfo) {
+        if (!(uriInfo instanceof ExtendedUriInfo)) {
+            return RequestTimings.NO_STATEMENT_LIMIT;
+        }
+        final ResourceMethod resourceMethod = ((ExtendedUriInfo) uriInfo).getMatchedResourceMethod();
+        if (resourceMethod == null) {
+            return RequestTimings.NO_STATEMENT_LIMIT;
+        }
+        return Optional.ofNullable(resourceMethod.getInvocable().getDefinitionMethod()
+                .getAnnotation(StatementLimit.class))
+                .map(limit -> limit.value() + limit.perAdditionalShard() * additionalShards)
+                .orElse(RequestTimings.NO_STATEMENT_LIMIT);
+    }
+
+    /**
+     * Builds the {@code Server-Timing} header value for the given {@code timings}
+     * (e.g {@code db;dur=1.250;desc="3 statements", auth;dur=0.900, hash;dur=0.000}).
+     *
+     * @param timings The {@link RequestTimings}.
+     * @return The header value (durations are in milliseconds).
+     */
+    private static String serverTiming(RequestTimings timings) {
+        final StringBuilder value = new StringBuilder();
+        for (RequestTimings.Category category : RequestTimings.Category.values()) {
+            if (value.length() > 0) {
+                value.append(", ");
+            }
+            value.append(String.format(Locale.ROOT, "%s;dur=%.3f",
+                    category.getShortName(), timings.getNanos(category) / 1_000_000d));
+            if (category == RequestTimings.Category.DATABASE) {
+                value.append(";desc=\"").append(timings.getStatements()).append(" statements\"");
+            }
+        }
+        return value.toString();
+    }
+}
@@ -21,7 +21,8 @@ import java.util.Collection;
 
 
     @Autowired
-    /* package */ JerseyConfig(ObjectMapper objectMapper, ThrowableMapper throwableMapper) {
+    /* package */ JerseyConfig(ObjectMapper objectMapper, ThrowableMapper throwableMapper,
+                               EndpointMetricsFilter endpointMetricsFilter) {
 
         // Register packages with resources and providers
         registerPackages(this,
@@ -31,6 +32,8 @@ import java.util.Collection;
         register(new JacksonJaxbJsonProvider(objectMapper, JacksonJaxbJsonProvider.DEFAULT_ANNOTATIONS));
         // Register the ThrowableMapper that will wire the exception into the error handler
         register(throwableMapper);
+        // Register the filter that records the time taken by each endpoint
+        register(endpointMetricsFilter);
     }
 
     /**
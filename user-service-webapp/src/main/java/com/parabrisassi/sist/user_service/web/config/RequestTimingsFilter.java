@@ -0,0 +1,34 @@
+package com.parabrisassi.sist.user_service.web.config;
+
+import com.parabrisassi.sist.user_service.instrumentation.RequestTimings;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.GenericFilterBean;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+
+/**
+ * Filter that binds a new {@link RequestTimings} to the thread handling each request,
+ * before any other filter (but the {@link UncaughtExceptionHandlerFilter}) can execute statements
+ * (e.g the authentication ones).
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+/* package */ class RequestTimingsFilter extends GenericFilterBean {
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        RequestTimings.start();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestTimings.finish();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.parabrisassi.sist.user_service.web.controller.dtos.authentication;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.parabrisassi.sist.user_service.services.AuthenticationTokenService.VerificationKeyData;
+
+import java.math.BigInteger;
+import java.security.interfaces.ECPublicKey;
+import java.util.Base64;
+
+/**
+ * Data transfer object to be used to publish a token verification public key
+ * in JSON Web Key format (i.e RFC 7517).
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc7517">RFC 7517</a>
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class JsonWebKeyDto {
+
+    /**
+     * The key type (e.g "EC").
+     */
+    @SuppressWarnings({"unused", "FieldCanBeLocal"})
+    @JsonProperty(value = "kty", access = JsonProperty.Access.READ_ONLY)
+    private final String keyType;
+
+    /**
+     * The intended use of the key (i.e "sig").
+     */
+    @SuppressWarnings({"unused", "FieldCanBeLocal"})
+    @JsonProperty(value = "use", access = JsonProperty.Access.READ_ONLY)
+    private final String use;
+
+    /**
+     * The signature algorithm with which the key is used (e.g "ES256").
+     */
+    @SuppressWarnings({"unused", "FieldCanBeLocal"})
+    @JsonProperty(value = "alg", access = JsonProperty.Access.READ_ONLY)
+    private final String algorithm;
+
+    /**
+     * The key id (i.e the value of the "kid" header of the tokens that can be verified with this key).
+     */
+    @SuppressWarnings({"unused", "FieldCanBeLocal"})
+    @JsonProperty(value = "kid", access = JsonProperty.Access.READ_ONLY)
+    private final String keyId;
+
+    /**
+     * The elliptic curve name (e.g "P-256").
+     */
+    @SuppressWarnings({"unused", "FieldCanBeLocal"})
+    @JsonProperty(value = "crv", access = JsonProperty.Access.READ_ONLY)
+    private final String curve;
+
+    /**
+     * The base64url encoded x coordinate of the elliptic curve point.
+     */
+    @SuppressWarnings({"unused", "FieldCanBeLocal"})
+    @JsonProperty(value = "x", access = JsonProperty.Access.READ_ONLY)
+    private final String x;
+
+    /**
+     * The base64url encoded y coordinate of the elliptic curve point.
+     */
+    @SuppressWarnings({"unused", "FieldCanBeLocal"})
+    @JsonProperty(value = "y", access = JsonProperty.Access.READ_ONLY)
+    private final String y;
+
+    /**
+     * Constructor.
+     *
+     * @param verificationKeyData The {@link VerificationKeyData} from which the dto will be built.
+     * @throws IllegalArgumentException If the key is not an elliptic curve key.
+     */
+    public JsonWebKeyDto(VerificationKeyData verificationKeyData) throws IllegalArgumentException {
+        if (!(verificationKeyData.getPublicKey() instanceof ECPublicKey)) {
+            throw new IllegalArgumentException("Only elliptic curve keys are supported");
+        }
+        final ECPublicKey publicKey = (ECPublicKey) verificationKeyData.getPublicKey();
+        final int fieldSize = publicKey.getParams().getCurve().getField().getFieldSize();
+        final int coordinateLength = (fieldSize + 7) / 8;
+
+        this.keyType = "EC";
+        this.use = "sig";
+        this.algorithm = verificationKeyData.getAlgorithm();
+        this.keyId = verificationKeyData.getKeyId();
+        this.curve = "P-" + fieldSize;
+        this.x = encodeCoordinate(publicKey.getW().getAffineX(), coordinateLength);
+        this.y = encodeCoordinate(publicKey.getW().getAffineY(), coordinateLength);
+    }
+
+    /**
+     * Encodes the given elliptic curve {@code coordinate} as a base64url unsigned big endian value
+     * of exactly {@code length} bytes (as required by RFC 7518, section 6.2.1.2).
+     *
+     * @param coordinate The coordinate to be encoded.
+     * @param length     The length of the encoded value, in bytes.
+     * @return The encoded coordinate.
+     */
+    private static String encodeCoordinate(BigInteger coordinate, int length) {
+        final byte[] bytes = coordinate.toByteArray();
+        final byte[] unsigned = new byte[length];
+        final int copyLength = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copyLength, unsigned, length - copyLength, copyLength);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(unsigned);
+    }
+}
@@ -0,0 +1,30 @@
+package com.parabrisassi.sist.user_service.web.controller.dtos.authentication;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Data transfer object to be used to publish the set of token verification public keys
+ * in JSON Web Key Set format (i.e RFC 7517, section 5).
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc7517#section-5">RFC 7517, section 5</a>
+ */
+public final class JsonWebKeySetDto {
+
+    /**
+     * The published keys.
+     */
+    @SuppressWarnings({"unused", "FieldCanBeLocal"})
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private final List<JsonWebKeyDto> keys;
+
+    /**
+     * Constructor.
+     *
+     * @param keys The published keys.
+     */
+    public JsonWebKeySetDto(List<JsonWebKeyDto> keys) {
+        this.keys = keys;
+    }
+}
@@ -0,0 +1,16 @@
+package com.parabrisassi.sist.user_service.web.controller.dtos.authentication;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Data transfer object to be used to transfer a refresh token from a client.
+ */
+public final class RefreshTokenDto {
+
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private String refreshToken;
+
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+}
@@ -0,0 +1,55 @@
+package com.parabrisassi.sist.user_service.web.controller.dtos.authentication;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.parabrisassi.sist.user_service.models.Role;
+import com.parabrisassi.sist.user_service.services.AuthenticationTokenService.TokenData;
+import com.parabrisassi.sist.user_service.web.support.data_transfer.Base64UrlHelper;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Data transfer object to be used to send the data held by a valid token to a client.
+ */
+public final class TokenIntrospectionDto {
+
+    /**
+     * The token's id (in base64url format).
+     */
+    @SuppressWarnings({"unused", "FieldCanBeLocal"})
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private final String tokenId;
+
+    /**
+     * The token's owner username.
+     */
+    @SuppressWarnings({"unused", "FieldCanBeLocal"})
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private final String username;
+
+    /**
+     * The token's owner roles.
+     */
+    @SuppressWarnings({"unused", "FieldCanBeLocal"})
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private final List<Role> roles;
+
+    /**
+     * The token's expiration time, in seconds since epoch.
+     */
+    @SuppressWarnings({"unused", "FieldCanBeLocal"})
+    @JsonProperty(value = "exp", access = JsonProperty.Access.READ_ONLY)
+    private final Long expiration;
+
+    /**
+     * Constructor.
+     *
+     * @param tokenData The {@link TokenData} from which the dto will be built.
+     */
+    public TokenIntrospectionDto(TokenData tokenData) {
+        this.tokenId = Base64UrlHelper.encodeFromNumber(tokenData.getId(), Object::toString);
+        this.username = tokenData.getUsername();
+        this.roles = tokenData.getRoles();
+        this.expiration = tokenData.getExpiration().map(Instant::getEpochSecond).orElse(null);
+    }
+}
@@ -0,0 +1,34 @@
+package com.parabrisassi.sist.user_service.web.controller.dtos.authentication;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Data transfer object to be used to send the validation result of a token to a client.
+ */
+public final class TokenValidationDto {
+
+    /**
+     * The id of the validated token (in base64url format, as sent by the client).
+     */
+    @SuppressWarnings({"unused", "FieldCanBeLocal"})
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private final String tokenId;
+
+    /**
+     * Indicates whether the token is valid.
+     */
+    @SuppressWarnings({"unused", "FieldCanBeLocal"})
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private final boolean valid;
+
+    /**
+     * Constructor.
+     *
+     * @param tokenId The id of the validated token (in base64url format, as sent by the client).
+     * @param valid   Indicates whether the token is valid.
+     */
+    public TokenValidationDto(String tokenId, boolean valid) {
+        this.tokenId = tokenId;
+        this.valid = valid;
+    }
+}
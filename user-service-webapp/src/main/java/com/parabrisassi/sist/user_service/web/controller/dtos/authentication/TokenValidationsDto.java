@@ -0,0 +1,21 @@
+package com.parabrisassi.sist.user_service.web.controller.dtos.authentication;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Data transfer object to be used to receive a batch of token ids to be validated from a client.
+ */
+public final class TokenValidationsDto {
+
+    /**
+     * The ids of the tokens to be validated (in base64url format).
+     */
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private List<String> tokenIds;
+
+    public List<String> getTokenIds() {
+        return tokenIds;
+    }
+}
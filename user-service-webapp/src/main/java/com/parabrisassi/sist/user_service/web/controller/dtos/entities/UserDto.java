@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.parabrisassi.sist.user_service.models.Role;
 import com.parabrisassi.sist.user_service.models.User;
+import com.parabrisassi.sist.user_service.services.UserService.UserSnapshot;
 import com.parabrisassi.sist.user_service.web.support.data_transfer.json.serializers.URISerializer;
 import org.hibernate.Hibernate;
 
@@ -49,6 +50,19 @@ public class UserDto {
         this.locationUrl = locationUrl;
     }
 
+    /**
+     * Constructor.
+     *
+     * @param user        The {@link UserSnapshot} from which the dto will be built.
+     * @param locationUrl The location url (in {@link URI} format) of the given {@link UserSnapshot}'s user.
+     */
+    public UserDto(UserSnapshot user, URI locationUrl) {
+        this.username = user.getUsername();
+        this.roles = user.getRoles();
+
+        this.locationUrl = locationUrl;
+    }
+
     public String getUsername() {
         return username;
     }
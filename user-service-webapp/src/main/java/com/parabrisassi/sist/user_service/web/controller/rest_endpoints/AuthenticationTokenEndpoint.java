@@ -1,24 +1,37 @@
 package com.parabrisassi.sist.user_service.web.controller.rest_endpoints;
 
 import com.parabrisassi.sist.user_service.services.AuthenticationTokenService;
+import com.parabrisassi.sist.user_service.services.AuthenticationTokenService.IssuedToken;
+import com.parabrisassi.sist.user_service.services.AuthenticationTokenService.TokenData;
+import com.parabrisassi.sist.user_service.services.AuthenticationTokenService.VerificationKeyData;
+import com.parabrisassi.sist.user_service.web.Constants;
 import com.parabrisassi.sist.user_service.web.controller.dtos.authentication.CredentialsDto;
+import com.parabrisassi.sist.user_service.web.controller.dtos.authentication.JsonWebKeyDto;
+import com.parabrisassi.sist.user_service.web.controller.dtos.authentication.JsonWebKeySetDto;
+import com.parabrisassi.sist.user_service.web.controller.dtos.authentication.RefreshTokenDto;
+import com.parabrisassi.sist.user_service.web.controller.dtos.authentication.TokenIntrospectionDto;
+import com.parabrisassi.sist.user_service.web.controller.dtos.authentication.TokenValidationDto;
+import com.parabrisassi.sist.user_service.web.controller.dtos.authentication.TokenValidationsDto;
 import com.parabrisassi.sist.user_service.web.support.annotations.Base64url;
 import com.parabrisassi.sist.user_service.web.support.annotations.JerseyController;
+import com.parabrisassi.sist.user_service.web.support.annotations.StatementLimit;
+import com.parabrisassi.sist.user_service.web.support.data_transfer.Base64UrlHelper;
 import com.parabrisassi.sist.user_service.web.support.exceptions.IllegalParamValueException;
 import com.parabrisassi.sist.user_service.web.support.exceptions.MissingJsonException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.util.Base64Utils;
+import org.springframework.util.StringUtils;
 
 import javax.ws.rs.*;
-import javax.ws.rs.core.Context;
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
-import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.core.*;
 import java.net.URI;
-import java.util.Collections;
-import java.util.Optional;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * API endpoint for sessions management.
@@ -33,11 +46,36 @@ public class AuthenticationTokenEndpoint {
      */
     private static final String TOKEN_HEADER = "X-Token";
 
+    /**
+     * Indicates the header in which the refresh token will be sent to the consumer.
+     */
+    private static final String REFRESH_TOKEN_HEADER = "X-Refresh-Token";
+
     /**
      * Endpoint for token management (i.e issue, validation and blacklisting).
      */
     public static final String TOKENS_ENDPOINT = "/tokens";
 
+    /**
+     * Path (relative to the {@link #TOKENS_ENDPOINT}) for batch token validation.
+     */
+    public static final String VALIDATIONS_PATH = "/validations";
+
+    /**
+     * Path (relative to the {@link #TOKENS_ENDPOINT}) for token refreshing.
+     */
+    public static final String REFRESH_PATH = "/refresh";
+
+    /**
+     * Path (relative to the {@link #TOKENS_ENDPOINT}) for token introspection.
+     */
+    public static final String INTROSPECTION_PATH = "/introspection";
+
+    /**
+     * Path (relative to the {@link #TOKENS_ENDPOINT}) where token verification keys are published.
+     */
+    public static final String KEYS_PATH = "/keys";
+
 
     /**
      * The {@link Logger} object.
@@ -46,36 +84,74 @@ public class AuthenticationTokenEndpoint {
 
     private final AuthenticationTokenService authenticationTokenService;
 
+    /**
+     * Max. amount of seconds an introspection response can be cached by consumers
+     * (i.e how long a blacklisted token can still be considered valid by them).
+     */
+    private final long introspectionMaxAge;
+
+    /**
+     * Max. amount of seconds the published verification keys can be cached by consumers.
+     */
+    private final long keysMaxAge;
+
     @Context
     private UriInfo uriInfo;
 
+    @Context
+    private Request request;
+
     @Autowired
-    public AuthenticationTokenEndpoint(AuthenticationTokenService authenticationTokenService) {
+    public AuthenticationTokenEndpoint(AuthenticationTokenService authenticationTokenService,
+                                       @Value("${custom.security.token-introspection.max-age}")
+                                               long introspectionMaxAge,
+                                       @Value("${custom.security.jwt.keys-max-age}") long keysMaxAge) {
         this.authenticationTokenService = authenticationTokenService;
+        this.introspectionMaxAge = introspectionMaxAge;
+        this.keysMaxAge = keysMaxAge;
     }
 
     @POST
+    @StatementLimit(6)
     public Response issueToken(CredentialsDto credentialsDto) {
         if (credentialsDto == null) {
             throw new MissingJsonException();
         }
         LOGGER.debug("Issuing a new token for user {}", credentialsDto.getUsername());
-        final String rawToken = authenticationTokenService
+        final IssuedToken issuedToken = authenticationTokenService
                 .createToken(credentialsDto.getUsername(), credentialsDto.getPassword());
         LOGGER.debug("User {} successfully logged in", credentialsDto.getUsername());
-        final long tokenId = authenticationTokenService.fromEncodedToken(rawToken).getId();
         final URI tokenUri = uriInfo.getBaseUriBuilder()
                 .path(TOKENS_ENDPOINT)
-                .path(Base64Utils.encodeToUrlSafeString(Long.toString(tokenId).getBytes()))
-                .build();
-        return Response.created(tokenUri)
-                .header(TOKEN_HEADER, rawToken)
+                .path(Base64Utils.encodeToUrlSafeString(Long.toString(issuedToken.getId()).getBytes()))
                 .build();
+        return withTokenHeaders(Response.created(tokenUri), issuedToken).build();
 
     }
 
+    /**
+     * Exchanges a refresh token for a new token and a new refresh token,
+     * which are sent in the {@link #TOKEN_HEADER} and {@link #REFRESH_TOKEN_HEADER} headers.
+     *
+     * @param refreshTokenDto The refresh token.
+     * @return The {@link Response}.
+     */
+    @POST
+    @Path(REFRESH_PATH)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response refreshToken(final RefreshTokenDto refreshTokenDto) {
+        if (refreshTokenDto == null) {
+            throw new MissingJsonException();
+        }
+        LOGGER.debug("Refreshing authentication token");
+        final IssuedToken issuedToken = authenticationTokenService.refreshToken(refreshTokenDto.getRefreshToken());
+        LOGGER.debug("Authentication token with id {} successfully refreshed", issuedToken.getId());
+        return withTokenHeaders(Response.noContent(), issuedToken).build();
+    }
+
     @GET
     @Path("{tokenId : .+}")
+    @StatementLimit(3)
     public Response validateToken(@PathParam("tokenId") @Base64url final Long tokenId) {
         validateTokenId(tokenId);
         LOGGER.debug("Validating authentication token with id {}", tokenId);
@@ -87,8 +163,106 @@ public class AuthenticationTokenEndpoint {
                 .build();
     }
 
+    /**
+     * Returns the data held by the token sent in the {@link #TOKEN_HEADER} header, if it is valid
+     * (i.e blacklisting is checked even when refresh tokens are enabled).
+     * Responses can be cached for, at most, {@link #introspectionMaxAge} seconds (or until the token expires),
+     * and can be revalidated using the returned entity tag. HEAD requests are supported automatically by Jersey.
+     *
+     * @param rawToken The token to be introspected.
+     * @return The {@link Response}.
+     */
+    @GET
+    @Path(INTROSPECTION_PATH)
+    @StatementLimit(2)
+    public Response introspectToken(@HeaderParam(TOKEN_HEADER) final String rawToken) {
+        if (!StringUtils.hasText(rawToken)) {
+            throw new IllegalParamValueException(Collections.singletonList(TOKEN_HEADER));
+        }
+        LOGGER.debug("Introspecting authentication token");
+        final TokenData tokenData;
+        try {
+            tokenData = authenticationTokenService.introspectToken(rawToken);
+        } catch (AuthenticationTokenService.TokenException e) {
+            final CacheControl noStore = new CacheControl();
+            noStore.setNoStore(true);
+            return Response.status(Response.Status.NOT_FOUND).cacheControl(noStore).entity("").build();
+        }
+
+        final Instant expiration = tokenData.getExpiration().orElseGet(Instant::now);
+        final long secondsToExpiration = Duration.between(Instant.now(), expiration).getSeconds();
+        final CacheControl cacheControl = new CacheControl();
+        cacheControl.setMaxAge((int) Math.max(0, Math.min(introspectionMaxAge, secondsToExpiration)));
+        final EntityTag entityTag =
+                new EntityTag(Long.toHexString(tokenData.getId()) + "-" + expiration.getEpochSecond());
+
+        // If the consumer already has the same representation, a 304 Not Modified is returned
+        return Optional.ofNullable(request.evaluatePreconditions(entityTag))
+                .orElseGet(() -> Response.ok(new TokenIntrospectionDto(tokenData)))
+                .tag(entityTag)
+                .cacheControl(cacheControl)
+                .header(HttpHeaders.VARY, TOKEN_HEADER)
+                .build();
+    }
+
+    /**
+     * Publishes the public keys that can be used to verify tokens locally, in JSON Web Key Set format.
+     * The set is empty when tokens are signed with a shared secret.
+     *
+     * @return The {@link Response}.
+     */
+    @GET
+    @Path(KEYS_PATH)
+    @StatementLimit(0)
+    public Response getVerificationKeys() {
+        LOGGER.debug("Getting token verification keys");
+        final List<VerificationKeyData> verificationKeys = authenticationTokenService.getVerificationKeys();
+        final CacheControl cacheControl = new CacheControl();
+        cacheControl.setMaxAge((int) keysMaxAge);
+        final EntityTag entityTag = new EntityTag(Integer.toHexString(verificationKeys.stream()
+                .map(VerificationKeyData::getKeyId)
+                .collect(Collectors.toList())
+                .hashCode()));
+
+        return Optional.ofNullable(request.evaluatePreconditions(entityTag))
+                .orElseGet(() -> Response.ok(new JsonWebKeySetDto(verificationKeys.stream()
+                        .map(JsonWebKeyDto::new)
+                        .collect(Collectors.toList()))))
+                .tag(entityTag)
+                .cacheControl(cacheControl)
+                .build();
+    }
+
+    @POST
+    @Path(VALIDATIONS_PATH)
+    @Consumes(MediaType.APPLICATION_JSON)
+    @StatementLimit(value = 1, perAdditionalShard = 1)
+    public Response validateTokens(final TokenValidationsDto tokenValidationsDto) {
+        final List<String> encodedTokenIds = Optional.ofNullable(tokenValidationsDto)
+                .map(TokenValidationsDto::getTokenIds)
+                .orElseThrow(MissingJsonException::new);
+        if (encodedTokenIds.size() > Constants.MAX_TOKEN_VALIDATIONS) {
+            throw new IllegalParamValueException(Collections.singletonList("tokenIds"));
+        }
+        LOGGER.debug("Validating {} authentication tokens", encodedTokenIds.size());
+
+        // Ids that can not be decoded are reported as not valid, without reaching the service layer
+        final Map<String, Long> decodedTokenIds = new HashMap<>();
+        encodedTokenIds.forEach(encoded -> decodeTokenId(encoded).ifPresent(id -> decodedTokenIds.put(encoded, id)));
+        final Map<Long, Boolean> results = authenticationTokenService.validateTokens(decodedTokenIds.values());
+
+        return Response.ok(encodedTokenIds.stream()
+                .distinct()
+                .map(encoded -> new TokenValidationDto(encoded, Optional.ofNullable(decodedTokenIds.get(encoded))
+                        .map(results::get)
+                        .orElse(false)))
+                .collect(Collectors.toList()))
+                .build();
+    }
+
     @DELETE
     @Path("{tokenId : .+}")
+    @StatementLimit(4)
     public Response blacklistToken(@PathParam("tokenId") @Base64url final Long tokenId) {
         validateTokenId(tokenId);
         LOGGER.debug("Blacklisting authentication token with id {}", tokenId);
@@ -96,6 +270,39 @@ public class AuthenticationTokenEndpoint {
         return Response.noContent().build();
     }
 
+    /**
+     * Adds the headers holding the encoded token and, if present, the refresh token of the given {@link IssuedToken}.
+     *
+     * @param responseBuilder The {@link Response.ResponseBuilder} to which headers will be added.
+     * @param issuedToken     The {@link IssuedToken}.
+     * @return The given {@link Response.ResponseBuilder}.
+     */
+    private static Response.ResponseBuilder withTokenHeaders(final Response.ResponseBuilder responseBuilder,
+                                                             final IssuedToken issuedToken) {
+        responseBuilder.header(TOKEN_HEADER, issuedToken.getEncodedToken());
+        issuedToken.getRefreshToken()
+                .ifPresent(refreshToken -> responseBuilder.header(REFRESH_TOKEN_HEADER, refreshToken));
+        return responseBuilder;
+    }
+
+    /**
+     * Decodes the given base64url {@code encodedTokenId}.
+     *
+     * @param encodedTokenId The token id to be decoded.
+     * @return A <b>nullable</b> {@link Optional} containing the decoded token id,
+     * or empty if it could not be decoded.
+     */
+    private static Optional<Long> decodeTokenId(final String encodedTokenId) {
+        if (encodedTokenId == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Base64UrlHelper.decodeToNumber(encodedTokenId, Long::valueOf));
+        } catch (RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
     /**
      * Validates the given {@code tokenId}, throwing an {@link IllegalParamValueException} in case it does not validate.
      *
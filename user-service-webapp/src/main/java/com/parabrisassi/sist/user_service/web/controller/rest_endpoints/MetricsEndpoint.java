@@ -0,0 +1,54 @@
+package com.parabrisassi.sist.user_service.web.controller.rest_endpoints;
+
+import com.parabrisassi.sist.user_service.security.authorization.UserPermissionProvider;
+import com.parabrisassi.sist.user_service.web.support.annotations.JerseyController;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.AccessDeniedException;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+
+/**
+ * API endpoint exposing the application metrics in the Prometheus text format.
+ * Metrics reveal internals (e.g timings of each endpoint and DAO, or the pool's state), so only admins can read them.
+ */
+@Path(MetricsEndpoint.METRICS_ENDPOINT)
+@JerseyController
+public class MetricsEndpoint {
+
+    /**
+     * Endpoint for metrics scraping.
+     */
+    public static final String METRICS_ENDPOINT = "/metrics";
+
+    /**
+     * The {@link PrometheusMeterRegistry} to be scraped.
+     */
+    private final PrometheusMeterRegistry registry;
+
+    /**
+     * The {@link UserPermissionProvider} used to check that metrics are read by an admin.
+     */
+    private final UserPermissionProvider userPermissionProvider;
+
+
+    @Autowired
+    public MetricsEndpoint(PrometheusMeterRegistry registry, UserPermissionProvider userPermissionProvider) {
+        this.registry = registry;
+        this.userPermissionProvider = userPermissionProvider;
+    }
+
+
+    @GET
+    @Produces(TextFormat.CONTENT_TYPE_004)
+    public Response scrape() {
+        if (!userPermissionProvider.isAdmin()) {
+            throw new AccessDeniedException("Only admins can read metrics");
+        }
+        return Response.ok(registry.scrape()).build();
+    }
+}
@@ -4,11 +4,13 @@ import com.parabrisassi.sist.user_service.error_handling.helpers.ValidationExcep
 import com.parabrisassi.sist.user_service.models.Role;
 import com.parabrisassi.sist.user_service.models.User;
 import com.parabrisassi.sist.user_service.services.UserService;
+import com.parabrisassi.sist.user_service.services.UserService.UserSnapshot;
 import com.parabrisassi.sist.user_service.web.controller.dtos.authentication.PasswordChangeDto;
 import com.parabrisassi.sist.user_service.web.controller.dtos.entities.StringValueDto;
 import com.parabrisassi.sist.user_service.web.controller.dtos.entities.UserDto;
 import com.parabrisassi.sist.user_service.web.support.annotations.JerseyController;
 import com.parabrisassi.sist.user_service.web.support.annotations.PaginationParam;
+import com.parabrisassi.sist.user_service.web.support.annotations.StatementLimit;
 import com.parabrisassi.sist.user_service.web.support.exceptions.IllegalParamValueException;
 import com.parabrisassi.sist.user_service.web.support.exceptions.MissingJsonException;
 import org.slf4j.Logger;
@@ -16,6 +18,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
@@ -45,6 +48,16 @@ public class UserEndpoint implements ValidationExceptionThrower {
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(UserEndpoint.class);
 
+    /**
+     * Indicates the header in which the total of matching {@link User}s is sent (only if requested).
+     */
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
+    /**
+     * Indicates the header in which it is sent whether there is a next page of matching {@link User}s.
+     */
+    private static final String HAS_NEXT_HEADER = "X-Has-Next";
+
     @Context
     private UriInfo uriInfo;
 
@@ -70,20 +83,27 @@ public class UserEndpoint implements ValidationExceptionThrower {
 
 
     @GET
+    @StatementLimit(value = 5, perAdditionalShard = 4) // Parallel counts export and import a snapshot per shard
     public Response findMatching(@QueryParam("username") final String username,
+                                 @QueryParam("withTotal") final boolean withTotal,
                                  @PaginationParam final Pageable pageable) {
         LOGGER.debug("Getting users matching");
 
-        final Page<User> users = userService
-                .findMatching(username, pageable);
-        return Response.ok(users.getContent().stream()
-                .map(user -> new UserDto(user, getLocationUri(user, uriInfo)))
+        final Slice<User> users = userService
+                .findMatching(username, pageable, withTotal);
+        final Response.ResponseBuilder responseBuilder = Response.ok(users.getContent().stream()
+                .map(user -> new UserDto(user, getLocationUri(user.getId(), uriInfo)))
                 .collect(Collectors.toList()))
-                .build();
+                .header(HAS_NEXT_HEADER, users.hasNext());
+        if (users instanceof Page) {
+            responseBuilder.header(TOTAL_COUNT_HEADER, ((Page<User>) users).getTotalElements());
+        }
+        return responseBuilder.build();
     }
 
     @GET
     @Path("{username : .+}")
+    @StatementLimit(5)
     public Response getUserByUsername(@PathParam("username") final String username) {
         if (username == null) {
             throw new IllegalParamValueException(Collections.singletonList("username"));
@@ -94,6 +114,7 @@ public class UserEndpoint implements ValidationExceptionThrower {
 
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
+    @StatementLimit(4)
     public Response register(final UserDto userDto) {
         return Optional.ofNullable(userDto)
                 .map(dto -> {
@@ -109,6 +130,7 @@ public class UserEndpoint implements ValidationExceptionThrower {
     @PUT
     @Path("{username : .+}/username")
     @Consumes(MediaType.APPLICATION_JSON)
+    @StatementLimit(5)
     public Response changeUsername(@PathParam("username") final String username, final StringValueDto newUsernameDto) {
         if (username == null) {
             throw new IllegalParamValueException(Collections.singletonList("username"));
@@ -126,6 +148,7 @@ public class UserEndpoint implements ValidationExceptionThrower {
     @PUT
     @Path("{username : .+}/password")
     @Consumes(MediaType.APPLICATION_JSON)
+    @StatementLimit(7)
     public Response changePassword(@PathParam("username") final String username,
                                    final PasswordChangeDto passwordChangeDto) {
         if (username == null) {
@@ -189,30 +212,31 @@ public class UserEndpoint implements ValidationExceptionThrower {
     /**
      * Returns a {@link Response} according to the given {@code userOptional} content.
      *
-     * @param userOptional The {@link Optional} that might hold a {@link User}.
+     * @param userOptional The {@link Optional} that might hold a {@link UserSnapshot}.
      * @return A {@link Response} containing the {@link UserDto}
      * created with the held in the given {@link Optional} if present,
      * or a {@link Response.Status#NOT_FOUND} {@link Response} otherwise.
      */
     private static Response getUserBySomePropertyResponse(@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
-                                                                  Optional<User> userOptional, UriInfo uriInfo) {
-        return userOptional.map(user -> Response.ok(new UserDto(user, getLocationUri(user, uriInfo))))
+                                                                  Optional<UserSnapshot> userOptional,
+                                                          UriInfo uriInfo) {
+        return userOptional.map(user -> Response.ok(new UserDto(user, getLocationUri(user.getId(), uriInfo))))
                 .orElse(Response.status(Response.Status.NOT_FOUND).entity(""))
                 .build();
     }
 
     /**
-     * Returns the location {@link URI} of the given {@link User}
+     * Returns the location {@link URI} of the {@link User} with the given {@code userId}
      * according to the context hold by the given {@link UriInfo}
      *
-     * @param user    The {@link User}'s whose location {@link URI} must be retrieved.
+     * @param userId  The id of the {@link User} whose location {@link URI} must be retrieved.
      * @param uriInfo The {@link UriInfo} holding the context.
-     * @return The location {@link URI} of the given {@link User}
+     * @return The location {@link URI} of the {@link User}
      */
-    private static URI getLocationUri(User user, UriInfo uriInfo) {
+    private static URI getLocationUri(long userId, UriInfo uriInfo) {
         return uriInfo.getBaseUriBuilder().clone()
                 .path(USERS_ENDPOINT)
-                .path(Long.toString(user.getId()))
+                .path(Long.toString(userId))
                 .build();
     }
 
@@ -0,0 +1,21 @@
+package com.parabrisassi.sist.user_service.web.error_handlers;
+
+import com.parabrisassi.sist.user_service.exceptions.DisabledFeatureException;
+import com.bellotapps.utils.error_handler.ErrorHandler;
+import com.bellotapps.utils.error_handler.ExceptionHandler;
+import com.bellotapps.utils.error_handler.ExceptionHandlerObject;
+
+import javax.ws.rs.core.Response;
+
+/**
+ * {@link ExceptionHandler} in charge of handling {@link DisabledFeatureException}.
+ * Will result into a <b>501 Not Implemented</b> response.
+ */
+@ExceptionHandlerObject
+/* package */ class DisabledFeatureExceptionHandler implements ExceptionHandler<DisabledFeatureException> {
+
+    @Override
+    public ErrorHandler.HandlingResult handle(DisabledFeatureException exception) {
+        return new ErrorHandler.HandlingResult(Response.Status.NOT_IMPLEMENTED.getStatusCode(), null);
+    }
+}
@@ -103,7 +103,13 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter implements I
      */
     private List<RequestMatcher> optionalAuthenticationMatchers() {
         return Stream.of(
-                new AntPathRequestMatcher(jerseyApplicationPath + UserEndpoint.USERS_ENDPOINT, "POST")
+                new AntPathRequestMatcher(jerseyApplicationPath + UserEndpoint.USERS_ENDPOINT, "POST"),
+                new AntPathRequestMatcher(jerseyApplicationPath + AuthenticationTokenEndpoint.TOKENS_ENDPOINT
+                        + AuthenticationTokenEndpoint.VALIDATIONS_PATH, "POST"),
+                new AntPathRequestMatcher(jerseyApplicationPath + AuthenticationTokenEndpoint.TOKENS_ENDPOINT
+                        + AuthenticationTokenEndpoint.REFRESH_PATH, "POST"),
+                new AntPathRequestMatcher(jerseyApplicationPath + AuthenticationTokenEndpoint.TOKENS_ENDPOINT
+                        + AuthenticationTokenEndpoint.INTROSPECTION_PATH, "HEAD")
         ).collect(Collectors.toList());
     }
 }
@@ -1,5 +1,8 @@
 package com.parabrisassi.sist.user_service.web.security.authentication;
 
+import com.parabrisassi.sist.user_service.instrumentation.RequestTimings;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
@@ -20,6 +23,7 @@ import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 import static com.parabrisassi.sist.user_service.web.security.authentication.AuthenticationConstants.AUTHENTICATION_HEADER;
 import static com.parabrisassi.sist.user_service.web.security.authentication.AuthenticationConstants.AUTHENTICATION_SCHEME;
@@ -34,6 +38,21 @@ public class TokenAuthenticationFilter extends AbstractAuthenticationProcessingF
      */
     private final RequestMatcher optionalAuthenticationMatcher;
 
+    /**
+     * Records the time taken by successful authentications.
+     */
+    private final Timer successTimer;
+
+    /**
+     * Records the time taken by anonymous authentications.
+     */
+    private final Timer anonymousTimer;
+
+    /**
+     * Records the time taken by failed authentications.
+     */
+    private final Timer failureTimer;
+
     /**
      * Default constructor.
      *
@@ -62,11 +81,35 @@ public class TokenAuthenticationFilter extends AbstractAuthenticationProcessingF
         this.setAuthenticationSuccessHandler((request, response, authentication) -> {
             // Do nothing
         });
+        this.successTimer = authenticationTimer("success");
+        this.anonymousTimer = authenticationTimer("anonymous");
+        this.failureTimer = authenticationTimer("failure");
     }
 
     @Override
     public Authentication attemptAuthentication(HttpServletRequest request, HttpServletResponse response)
             throws AuthenticationException, IOException, ServletException {
+        final long start = System.nanoTime();
+        Timer timer = failureTimer;
+        try {
+            final Authentication authentication = doAttemptAuthentication(request);
+            timer = authentication instanceof AnonymousAuthenticationToken ? anonymousTimer : successTimer;
+            return authentication;
+        } finally {
+            final long elapsed = System.nanoTime() - start;
+            timer.record(elapsed, TimeUnit.NANOSECONDS);
+            RequestTimings.record(RequestTimings.Category.AUTHENTICATION, elapsed);
+        }
+    }
+
+    /**
+     * Performs the authentication of the given {@code request}.
+     *
+     * @param request The {@link HttpServletRequest} to be authenticated.
+     * @return The resultant {@link Authentication}.
+     * @throws AuthenticationException If the authentication fails.
+     */
+    private Authentication doAttemptAuthentication(HttpServletRequest request) throws AuthenticationException {
         final String authorizationHeader = request.getHeader(AUTHENTICATION_HEADER);
 
         if (!StringUtils.hasText(authorizationHeader)) {
@@ -106,4 +149,17 @@ public class TokenAuthenticationFilter extends AbstractAuthenticationProcessingF
         // Continue with normal flow
         chain.doFilter(request, response);
     }
+
+    /**
+     * Creates a {@link Timer} for authentications with the given {@code outcome}.
+     *
+     * @param outcome The outcome of the authentications.
+     * @return The created {@link Timer}.
+     */
+    private static Timer authenticationTimer(String outcome) {
+        return Timer.builder("http.authentication")
+                .description("Time taken to authenticate requests")
+                .tag("outcome", outcome)
+                .register(Metrics.globalRegistry);
+    }
 }
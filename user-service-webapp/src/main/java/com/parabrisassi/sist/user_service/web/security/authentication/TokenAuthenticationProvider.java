@@ -36,6 +36,7 @@ public final class TokenAuthenticationProvider implements AuthenticationProvider
             // We create a new token with the needed data (username, roles, etc.)
             final AuthenticationTokenAdapter resultToken =
                     new AuthenticationTokenAdapter(tokenData.getUsername(), tokenData.getRoles());
+            resultToken.setDetails(tokenData.getId()); // Allows identifying the token being used
             resultToken.authenticate();
 
             return resultToken;
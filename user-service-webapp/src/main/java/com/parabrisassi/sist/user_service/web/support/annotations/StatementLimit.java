@@ -0,0 +1,27 @@
+package com.parabrisassi.sist.user_service.web.support.annotations;
+
+import java.lang.annotation.*;
+
+/**
+ * Indicates the max. amount of sql statements a request handled by the annotated endpoint is expected to execute
+ * (including those executed while authenticating it). Requests exceeding the limit are logged,
+ * or fail if limits are enforced (i.e {@code custom.web.statement-limits.enforced}).
+ * Endpoints working with other shards besides the first one (e.g querying all of them) declare the statements
+ * they execute in each additional shard with {@link #perAdditionalShard()}, as statements of all the shards
+ * count towards the request's limit.
+ */
+@Target({ElementType.METHOD,})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface StatementLimit {
+
+    /**
+     * @return The max. amount of sql statements (with only one shard).
+     */
+    int value();
+
+    /**
+     * @return The max. amount of sql statements added to the limit for each shard besides the first one.
+     */
+    int perAdditionalShard() default 0;
+}
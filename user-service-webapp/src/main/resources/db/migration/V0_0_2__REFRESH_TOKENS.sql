@@ -0,0 +1,14 @@
+CREATE TABLE refresh_tokens (
+    id                      BIGSERIAL PRIMARY KEY    NOT NULL,
+    authentication_token_id BIGINT                   NOT NULL,
+    token_hash              VARCHAR(64)              NOT NULL,
+    expires_at              TIMESTAMP                NOT NULL,
+    used                    BOOLEAN DEFAULT FALSE    NOT NULL,
+    FOREIGN KEY (authentication_token_id) REFERENCES authentication_tokens (id) ON DELETE CASCADE
+);
+
+CREATE UNIQUE INDEX refresh_tokens_token_hash_unique_index
+    ON refresh_tokens (token_hash);
+
+CREATE INDEX refresh_tokens_authentication_token_id_index
+    ON refresh_tokens (authentication_token_id);
@@ -0,0 +1,5 @@
+ALTER TABLE users
+    ADD COLUMN token_version INTEGER DEFAULT 0 NOT NULL;
+
+ALTER TABLE authentication_tokens
+    ADD COLUMN token_version INTEGER DEFAULT 0 NOT NULL;
@@ -0,0 +1,7 @@
+CREATE TABLE revoked_tokens (
+    id         BIGINT PRIMARY KEY    NOT NULL,
+    expires_at TIMESTAMP             NOT NULL
+);
+
+CREATE INDEX revoked_tokens_expires_at_index
+    ON revoked_tokens (expires_at);
@@ -0,0 +1,2 @@
+CREATE INDEX refresh_tokens_expires_at_index
+    ON refresh_tokens (expires_at);
@@ -0,0 +1,5 @@
+CREATE INDEX authentication_tokens_user_id_index
+    ON authentication_tokens (user_id);
+
+CREATE INDEX user_credentials_user_id_created_at_index
+    ON user_credentials (user_id, created_at);